@@ -21,7 +21,8 @@ package org.nuxeo.ecm.blob.azure;
 
 import java.net.URISyntaxException;
 import java.util.EnumSet;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
 
@@ -30,6 +31,7 @@ import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.blob.AbstractBinaryGarbageCollector;
 
 import com.microsoft.azure.storage.ResultContinuation;
+import com.microsoft.azure.storage.ResultContinuationType;
 import com.microsoft.azure.storage.ResultSegment;
 import com.microsoft.azure.storage.StorageException;
 import com.microsoft.azure.storage.blob.BlobListingDetails;
@@ -57,8 +59,20 @@ public class AzureGarbageCollector extends AbstractBinaryGarbageCollector<AzureB
 
     @Override
     public Set<String> getUnmarkedBlobs() {
-        Set<String> unmarked = new HashSet<>();
+        return collectUnmarkedBlobs();
+    }
+
+    @Override
+    protected void sweep(boolean delete) {
+        // list the blobs of the container, resuming after the checkpointed marker if any
+        // and sweep each segment in parallel
         ResultContinuation continuationToken = null;
+        String marker = getSweepMarker();
+        if (marker != null) {
+            continuationToken = new ResultContinuation();
+            continuationToken.setContinuationType(ResultContinuationType.BLOB);
+            continuationToken.setNextMarker(marker);
+        }
         ResultSegment<ListBlobItem> lbs;
         do {
             try {
@@ -68,6 +82,7 @@ public class AzureGarbageCollector extends AbstractBinaryGarbageCollector<AzureB
                 throw new RuntimeException(e);
             }
 
+            Map<String, Long> chunk = new HashMap<>();
             for (ListBlobItem item : lbs.getResults()) {
 
                 if (!(item instanceof CloudBlockBlob)) {
@@ -93,24 +108,14 @@ public class AzureGarbageCollector extends AbstractBinaryGarbageCollector<AzureB
                     continue;
                 }
 
-                long length = blob.getProperties().getLength();
-                if (marked.contains(digest)) {
-                    status.numBinaries++;
-                    status.sizeBinaries += length;
-                    marked.remove(digest); // optimize memory
-                } else {
-                    status.numBinariesGC++;
-                    status.sizeBinariesGC += length;
-                    // record file to delete
-                    unmarked.add(digest);
-                }
+                chunk.put(digest, Long.valueOf(blob.getProperties().getLength()));
             }
 
             continuationToken = lbs.getContinuationToken();
+            boolean hasMore = lbs.getHasMoreResults() && continuationToken != null;
+            submitSweepChunk(hasMore ? continuationToken.getNextMarker() : null, chunk, delete);
         } while (lbs.getHasMoreResults());
-        marked = null; // help GC
-
-        return unmarked;
+        awaitSweepChunks();
     }
 
     public static boolean isMD5(String digest) {
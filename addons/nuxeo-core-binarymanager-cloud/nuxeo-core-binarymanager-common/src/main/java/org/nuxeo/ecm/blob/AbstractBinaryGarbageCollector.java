@@ -19,26 +19,156 @@
 
 package org.nuxeo.ecm.blob;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.common.Environment;
+import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.ecm.core.blob.binary.BinaryGarbageCollector;
 import org.nuxeo.ecm.core.blob.binary.BinaryManagerStatus;
 import org.nuxeo.ecm.core.blob.binary.CachingBinaryManager;
+import org.nuxeo.ecm.core.blob.binary.DigestBloomFilter;
+import org.nuxeo.runtime.api.Framework;
 
 /**
+ * Base garbage collector for cloud binary managers.
+ * <p>
+ * Marked digests are recorded in a {@link DigestBloomFilter} stored on disk, together with a checkpoint of the
+ * progress of the sweep, so that an interrupted run can be resumed by the next {@link #start}: all the repositories are
+ * marked again (documents may have changed since the interruption), and the sweep restarts after the last chunk of the
+ * listing fully processed.
+ * <p>
+ * The filter is sized from the number of binaries found by the previous garbage collection. If it turns out to be too
+ * small, its false positive probability grows; when it's too high the sweep doesn't delete anything.
+ * <p>
+ * Subclasses implement {@link #getUnmarkedBlobs}, used by the default sequential {@link #sweep}. For a parallel and
+ * resumable sweep they override {@link #sweep} to list the storage and feed chunks of the listing to
+ * {@link #submitSweepChunk}, and can then implement {@link #getUnmarkedBlobs} with {@link #collectUnmarkedBlobs}.
+ *
  * @author <a href="mailto:ak@nuxeo.com">Arnaud Kervern</a>
  * @since 7.10
  */
 public abstract class AbstractBinaryGarbageCollector<T extends CachingBinaryManager> implements BinaryGarbageCollector {
 
+    private static final Log log = LogFactory.getLog(AbstractBinaryGarbageCollector.class);
+
+    /** @since 11.1 */
+    public static final String EXPECTED_BINARIES_PROPERTY = "nuxeo.binarymanager.gc.expectedBinaries";
+
+    /**
+     * Expected number of binaries used when it's not configured and there's no previous garbage collection.
+     *
+     * @since 11.1
+     */
+    public static final long DEFAULT_EXPECTED_BINARIES = 10_000_000;
+
+    /**
+     * Margin applied to the number of binaries found by the previous garbage collection, for the binaries created
+     * since.
+     *
+     * @since 11.1
+     */
+    public static final double EXPECTED_BINARIES_GROWTH = 1.5;
+
+    /**
+     * Factor by which the false positive probability of the marks may exceed the configured one before the sweep
+     * refuses to delete.
+     *
+     * @since 11.1
+     */
+    public static final double MAX_FALSE_POSITIVE_FACTOR = 10;
+
+    /** @since 11.1 */
+    public static final String FALSE_POSITIVE_PROBABILITY_PROPERTY = "nuxeo.binarymanager.gc.falsePositiveProbability";
+
+    /** @since 11.1 */
+    public static final double DEFAULT_FALSE_POSITIVE_PROBABILITY = 0.0001;
+
+    /** @since 11.1 */
+    public static final String SWEEP_THREADS_PROPERTY = "nuxeo.binarymanager.gc.sweep.threads";
+
+    /** @since 11.1 */
+    public static final int DEFAULT_SWEEP_THREADS = 4;
+
+    /**
+     * Maximum age (in seconds) of an interrupted garbage collection for it to be resumed, after that a new one is
+     * started.
+     *
+     * @since 11.1
+     */
+    public static final String CHECKPOINT_MAX_AGE_PROPERTY = "nuxeo.binarymanager.gc.checkpoint.maxAge";
+
+    /** @since 11.1 */
+    public static final long DEFAULT_CHECKPOINT_MAX_AGE = 24 * 3600; // 1 day
+
+    protected static final String MARKS_FILE = "marks";
+
+    protected static final String CHECKPOINT_FILE = "checkpoint.properties";
+
+    /** Stats of the last completed garbage collection, kept next to the checkpoint directory. */
+    protected static final String LAST_RUN_FILE_SUFFIX = ".last.properties";
+
+    protected static final String CHECKPOINT_START_TIME = "startTime";
+
+    protected static final String CHECKPOINT_FALSE_POSITIVE_PROBABILITY = "falsePositiveProbability";
+
+    protected static final String CHECKPOINT_SWEEP_MARKER = "sweepMarker";
+
+    protected static final String CHECKPOINT_NUM_BINARIES = "numBinaries";
+
+    protected static final String CHECKPOINT_SIZE_BINARIES = "sizeBinaries";
+
+    protected static final String CHECKPOINT_NUM_BINARIES_GC = "numBinariesGC";
+
+    protected static final String CHECKPOINT_SIZE_BINARIES_GC = "sizeBinariesGC";
+
     protected T binaryManager;
 
     protected BinaryManagerStatus status;
 
     protected volatile long startTime;
 
-    protected Set<String> marked;
+    /** @since 11.1 */
+    protected DigestBloomFilter marked;
+
+    /** @since 11.1 */
+    protected Path checkpointDir;
+
+    /** @since 11.1 */
+    protected Properties checkpoint;
+
+    /** Chunks submitted to the sweep executor, in listing order, with the marker to checkpoint when done. */
+    protected Deque<Pair<String, Future<BinaryManagerStatus>>> sweepChunks;
+
+    protected ExecutorService sweepExecutor;
+
+    protected int sweepThreads;
+
+    /** Collects the unmarked digests found by the sweep, when called from {@link #collectUnmarkedBlobs}. */
+    protected Set<String> unmarkedCollector;
 
     protected AbstractBinaryGarbageCollector(T binaryManager) {
         this.binaryManager = binaryManager;
@@ -51,38 +181,385 @@ public abstract class AbstractBinaryGarbageCollector<T extends CachingBinaryMana
         }
         startTime = System.currentTimeMillis();
         status = new BinaryManagerStatus();
-        marked = new HashSet<>();
+        try {
+            openMarks();
+        } catch (IOException e) {
+            startTime = 0;
+            throw new NuxeoException("Cannot initialize garbage collector: " + getId(), e);
+        }
 
         // XXX : we should be able to do better
         // and only remove the cache entry that will be removed from S3
         binaryManager.fileCache.clear();
     }
 
+    /**
+     * Gets the directory where the marks and the checkpoint of this garbage collector are stored.
+     *
+     * @since 11.1
+     */
+    protected Path getCheckpointDir() {
+        String dirName = getId().replaceAll("[^-_a-zA-Z0-9]", "_");
+        return new File(Environment.getDefault().getData(), "binarygc").toPath().resolve(dirName);
+    }
+
+    /**
+     * Opens the marks, resuming an interrupted garbage collection if there's a recent enough checkpoint.
+     *
+     * @since 11.1
+     */
+    protected void openMarks() throws IOException {
+        checkpointDir = getCheckpointDir();
+        Path checkpointFile = checkpointDir.resolve(CHECKPOINT_FILE);
+        Path marksFile = checkpointDir.resolve(MARKS_FILE);
+        if (Files.exists(checkpointFile) && Files.exists(marksFile)) {
+            Properties props = new Properties();
+            try (InputStream in = Files.newInputStream(checkpointFile)) {
+                props.load(in);
+            }
+            long maxAge = Long.parseLong(
+                    Framework.getProperty(CHECKPOINT_MAX_AGE_PROPERTY, String.valueOf(DEFAULT_CHECKPOINT_MAX_AGE)));
+            long checkpointStartTime = Long.parseLong(props.getProperty(CHECKPOINT_START_TIME, "0"));
+            if (checkpointStartTime > startTime - maxAge * 1000) {
+                try {
+                    marked = DigestBloomFilter.open(marksFile);
+                    checkpoint = props;
+                    status.numBinaries = Long.parseLong(props.getProperty(CHECKPOINT_NUM_BINARIES, "0"));
+                    status.sizeBinaries = Long.parseLong(props.getProperty(CHECKPOINT_SIZE_BINARIES, "0"));
+                    status.numBinariesGC = Long.parseLong(props.getProperty(CHECKPOINT_NUM_BINARIES_GC, "0"));
+                    status.sizeBinariesGC = Long.parseLong(props.getProperty(CHECKPOINT_SIZE_BINARIES_GC, "0"));
+                    log.warn("Resuming interrupted binaries garbage collection: " + getId() + " started at "
+                            + checkpointStartTime + ", marking all repositories again");
+                    return;
+                } catch (IOException e) {
+                    log.warn("Cannot resume interrupted binaries garbage collection: " + getId(), e);
+                }
+            }
+        }
+        // new garbage collection
+        FileUtils.deleteDirectory(checkpointDir.toFile());
+        Files.createDirectories(checkpointDir);
+        long expected = getExpectedBinaries();
+        double fpp = Double.parseDouble(Framework.getProperty(FALSE_POSITIVE_PROBABILITY_PROPERTY,
+                String.valueOf(DEFAULT_FALSE_POSITIVE_PROBABILITY)));
+        marked = DigestBloomFilter.create(marksFile, expected, fpp);
+        checkpoint = new Properties();
+        checkpoint.setProperty(CHECKPOINT_START_TIME, String.valueOf(startTime));
+        checkpoint.setProperty(CHECKPOINT_FALSE_POSITIVE_PROBABILITY, String.valueOf(fpp));
+        saveCheckpoint();
+    }
+
+    /**
+     * Gets the number of binaries for which to size the marks: the configured one if any, otherwise the number of
+     * binaries found by the previous garbage collection, with a margin.
+     *
+     * @since 11.1
+     */
+    protected long getExpectedBinaries() throws IOException {
+        String expected = Framework.getProperty(EXPECTED_BINARIES_PROPERTY);
+        if (StringUtils.isNotBlank(expected)) {
+            return Long.parseLong(expected);
+        }
+        Path lastRunFile = getLastRunFile();
+        if (Files.exists(lastRunFile)) {
+            Properties props = new Properties();
+            try (InputStream in = Files.newInputStream(lastRunFile)) {
+                props.load(in);
+            }
+            long numBinaries = Long.parseLong(props.getProperty(CHECKPOINT_NUM_BINARIES, "0"))
+                    + Long.parseLong(props.getProperty(CHECKPOINT_NUM_BINARIES_GC, "0"));
+            if (numBinaries > 0) {
+                return (long) (numBinaries * EXPECTED_BINARIES_GROWTH);
+            }
+        }
+        return DEFAULT_EXPECTED_BINARIES;
+    }
+
+    /**
+     * Gets the file where the stats of the last completed garbage collection are kept.
+     *
+     * @since 11.1
+     */
+    protected Path getLastRunFile() {
+        Path dir = getCheckpointDir();
+        return dir.resolveSibling(dir.getFileName() + LAST_RUN_FILE_SUFFIX);
+    }
+
+    /**
+     * Records the number of binaries found by this garbage collection, to size the marks of the next one.
+     */
+    protected void saveLastRun() throws IOException {
+        Properties props = new Properties();
+        props.setProperty(CHECKPOINT_NUM_BINARIES, String.valueOf(status.numBinaries));
+        props.setProperty(CHECKPOINT_NUM_BINARIES_GC, String.valueOf(status.numBinariesGC));
+        try (OutputStream out = Files.newOutputStream(getLastRunFile())) {
+            props.store(out, getId());
+        }
+    }
+
+    /**
+     * Checks if the marks have a false positive probability too high for the sweep to be meaningful, because much more
+     * binaries than expected have been marked.
+     *
+     * @since 11.1
+     */
+    protected boolean isMarksSaturated() {
+        double fpp = Double.parseDouble(checkpoint.getProperty(CHECKPOINT_FALSE_POSITIVE_PROBABILITY,
+                String.valueOf(DEFAULT_FALSE_POSITIVE_PROBABILITY)));
+        double actual = marked.getFalsePositiveProbability();
+        if (actual <= fpp * MAX_FALSE_POSITIVE_FACTOR) {
+            return false;
+        }
+        log.error("Binaries garbage collection: " + getId() + " marked more binaries than expected, "
+                + "false positive probability is " + actual + " instead of " + fpp + ", not deleting anything. "
+                + "Configure " + EXPECTED_BINARIES_PROPERTY + " with the number of binaries");
+        return true;
+    }
+
+    /**
+     * Atomically writes the checkpoint, after the marks.
+     *
+     * @since 11.1
+     */
+    protected synchronized void saveCheckpoint() {
+        marked.flush();
+        checkpoint.setProperty(CHECKPOINT_NUM_BINARIES, String.valueOf(status.numBinaries));
+        checkpoint.setProperty(CHECKPOINT_SIZE_BINARIES, String.valueOf(status.sizeBinaries));
+        checkpoint.setProperty(CHECKPOINT_NUM_BINARIES_GC, String.valueOf(status.numBinariesGC));
+        checkpoint.setProperty(CHECKPOINT_SIZE_BINARIES_GC, String.valueOf(status.sizeBinariesGC));
+        Path tmp = checkpointDir.resolve(CHECKPOINT_FILE + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                checkpoint.store(out, getId());
+            }
+            Files.move(tmp, checkpointDir.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Gets the sweep marker of an interrupted garbage collection, after which the sweep must resume.
+     *
+     * @return the marker, or {@code null} if the sweep must start from the beginning
+     * @since 11.1
+     */
+    protected synchronized String getSweepMarker() {
+        return checkpoint.getProperty(CHECKPOINT_SWEEP_MARKER);
+    }
+
     @Override
     public void stop(boolean delete) {
         if (startTime == 0) {
             throw new RuntimeException("Not started");
         }
+        boolean completed = false;
         try {
-            Set<String> unmarked = getUnmarkedBlobs();
+            sweep(delete && !isMarksSaturated());
+            completed = true;
+        } finally {
+            try {
+                marked.close();
+                if (completed) {
+                    FileUtils.deleteDirectory(checkpointDir.toFile());
+                    saveLastRun();
+                }
+            } catch (IOException e) {
+                log.error("Cannot clean up garbage collector: " + getId(), e);
+            }
             marked = null;
-
-            if (delete) {
-                binaryManager.removeBinaries(unmarked);
+            if (sweepExecutor != null) {
+                // interrupted sweep
+                sweepExecutor.shutdownNow();
+                sweepExecutor = null;
+                sweepChunks = null;
             }
-        } finally {
             status.gcDuration = System.currentTimeMillis() - startTime;
             startTime = 0;
         }
     }
 
+    /**
+     * Deletes all binaries that have not been marked, or only counts them in the status if {@code delete} is
+     * {@code false}.
+     *
+     * @since 11.1
+     */
+    protected void sweep(boolean delete) {
+        Set<String> unmarked = getUnmarkedBlobs();
+        if (delete) {
+            binaryManager.removeBinaries(unmarked);
+        }
+    }
+
+    /**
+     * Gets the binaries that have not been marked, and updates the status accordingly.
+     */
     public abstract Set<String> getUnmarkedBlobs();
 
+    /**
+     * Gets the binaries that have not been marked by running the sweep without deleting anything, and updates the
+     * status accordingly.
+     * <p>
+     * Can be used to implement {@link #getUnmarkedBlobs} when {@link #sweep} is overridden to submit chunks.
+     *
+     * @since 11.1
+     */
+    protected Set<String> collectUnmarkedBlobs() {
+        unmarkedCollector = ConcurrentHashMap.newKeySet();
+        try {
+            sweep(false);
+            return new HashSet<>(unmarkedCollector);
+        } finally {
+            unmarkedCollector = null;
+        }
+    }
+
     @Override
     public void mark(String digest) {
         marked.add(digest);
     }
 
+    /**
+     * Checks if a digest has been marked.
+     * <p>
+     * May return {@code true} for a few digests that haven't been marked, which are then kept.
+     *
+     * @since 11.1
+     */
+    protected boolean isMarked(String digest) {
+        return marked.mightContain(digest);
+    }
+
+    /**
+     * Submits a chunk of the storage listing to be swept in parallel with the listing of the next ones.
+     * <p>
+     * Chunks must be submitted in listing order: once a chunk and all the previous ones are swept, the given marker is
+     * checkpointed to resume the listing from there if the garbage collection is interrupted.
+     *
+     * @param marker the listing marker after which the chunks following this one are listed, or {@code null} for the
+     *            last chunk of the listing
+     * @param chunk the map of digests to their length
+     * @param delete whether unmarked binaries are actually deleted
+     * @since 11.1
+     */
+    protected void submitSweepChunk(String marker, Map<String, Long> chunk, boolean delete) {
+        if (sweepExecutor == null) {
+            sweepThreads = Math.max(1, Integer.parseInt(
+                    Framework.getProperty(SWEEP_THREADS_PROPERTY, String.valueOf(DEFAULT_SWEEP_THREADS))));
+            AtomicInteger threadNumber = new AtomicInteger();
+            sweepExecutor = Executors.newFixedThreadPool(sweepThreads, r -> {
+                Thread thread = new Thread(r, "Nuxeo-BinaryGC-Sweep-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            sweepChunks = new ArrayDeque<>();
+        }
+        sweepChunks.add(Pair.of(marker, sweepExecutor.submit(() -> sweepChunk(chunk, delete))));
+        // bound the number of listed chunks in memory
+        checkpointSweepChunks(sweepChunks.size() > 2 * sweepThreads);
+    }
+
+    /**
+     * Waits for all the submitted chunks to be swept.
+     *
+     * @since 11.1
+     */
+    protected void awaitSweepChunks() {
+        if (sweepExecutor == null) {
+            return;
+        }
+        try {
+            while (!sweepChunks.isEmpty()) {
+                checkpointSweepChunks(true);
+            }
+        } finally {
+            sweepExecutor.shutdownNow();
+            sweepExecutor = null;
+            sweepChunks = null;
+        }
+    }
+
+    /**
+     * Checkpoints the marker of the last chunk swept whose predecessors have all been swept too.
+     *
+     * @param wait whether to wait for the oldest chunk to be swept
+     */
+    protected void checkpointSweepChunks(boolean wait) {
+        String marker = null;
+        while (!sweepChunks.isEmpty()) {
+            Pair<String, Future<BinaryManagerStatus>> pair = sweepChunks.peek();
+            Future<BinaryManagerStatus> future = pair.getRight();
+            if (!future.isDone() && !wait) {
+                break;
+            }
+            BinaryManagerStatus chunkStatus;
+            try {
+                chunkStatus = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new NuxeoException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new NuxeoException(cause);
+            }
+            sweepChunks.poll();
+            // only account for contiguous chunks, so that the status matches the checkpointed marker
+            synchronized (this) {
+                status.numBinaries += chunkStatus.numBinaries;
+                status.sizeBinaries += chunkStatus.sizeBinaries;
+                status.numBinariesGC += chunkStatus.numBinariesGC;
+                status.sizeBinariesGC += chunkStatus.sizeBinariesGC;
+            }
+            marker = pair.getLeft();
+            wait = false;
+        }
+        // no checkpoint for the last chunk, the stored counters must match the stored marker
+        if (marker != null) {
+            synchronized (this) {
+                checkpoint.setProperty(CHECKPOINT_SWEEP_MARKER, marker);
+                saveCheckpoint();
+            }
+        }
+    }
+
+    /**
+     * Sweeps a chunk of the storage listing.
+     *
+     * @param chunk the map of digests to their length
+     * @param delete whether unmarked binaries are actually deleted
+     * @return the status of the chunk
+     * @since 11.1
+     */
+    protected BinaryManagerStatus sweepChunk(Map<String, Long> chunk, boolean delete) {
+        BinaryManagerStatus chunkStatus = new BinaryManagerStatus();
+        Set<String> unmarked = new HashSet<>();
+        for (Map.Entry<String, Long> en : chunk.entrySet()) {
+            String digest = en.getKey();
+            long length = en.getValue().longValue();
+            if (isMarked(digest)) {
+                chunkStatus.numBinaries++;
+                chunkStatus.sizeBinaries += length;
+            } else {
+                chunkStatus.numBinariesGC++;
+                chunkStatus.sizeBinariesGC += length;
+                unmarked.add(digest);
+            }
+        }
+        if (delete && !unmarked.isEmpty()) {
+            binaryManager.removeBinaries(unmarked);
+        }
+        Set<String> collector = unmarkedCollector;
+        if (collector != null) {
+            collector.addAll(unmarked);
+        }
+        return chunkStatus;
+    }
+
     @Override
     public BinaryManagerStatus getStatus() {
         return status;
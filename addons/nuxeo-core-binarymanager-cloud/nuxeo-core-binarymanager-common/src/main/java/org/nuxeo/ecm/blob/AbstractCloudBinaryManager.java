@@ -89,12 +89,45 @@ public abstract class AbstractCloudBinaryManager extends CachingBinaryManager im
 
     public static final String CACHE_MIN_AGE_PROPERTY = "cacheminage";
 
+    /**
+     * Persistent cache directory. When absent, a temporary directory is used and cleared on shutdown.
+     *
+     * @since 11.1
+     */
+    public static final String CACHE_DIR_PROPERTY = "cachedir";
+
+    /**
+     * Write-behind mode: new binaries are stored in the persistent cache and uploaded asynchronously. Requires
+     * {@link #CACHE_DIR_PROPERTY}.
+     *
+     * @since 11.1
+     */
+    public static final String WRITE_BEHIND_PROPERTY = "writebehind";
+
+    /**
+     * Number of threads uploading binaries in write-behind mode.
+     *
+     * @since 11.1
+     */
+    public static final String WRITE_BEHIND_THREADS_PROPERTY = "writebehind.threads";
+
+    /**
+     * Number of threads fetching binaries into the cache as soon as their blob is read. Prefetch is disabled when 0
+     * (the default).
+     *
+     * @since 11.1
+     */
+    public static final String PREFETCH_THREADS_PROPERTY = "prefetch.threads";
+
     public static final String DEFAULT_CACHE_SIZE = "100 mb";
 
     public static final String DEFAULT_CACHE_COUNT = "10000";
 
     public static final String DEFAULT_CACHE_MIN_AGE = "3600"; // 1h
 
+    /** @since 11.1 */
+    public static final int DEFAULT_WRITE_BEHIND_THREADS = 4;
+
     public static final String DIRECTDOWNLOAD_PROPERTY = "directdownload";
 
     public static final String DEFAULT_DIRECTDOWNLOAD = "false";
@@ -125,7 +158,16 @@ public abstract class AbstractCloudBinaryManager extends CachingBinaryManager im
         String cacheSizeStr = getProperty(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE);
         String cacheCountStr = getProperty(CACHE_COUNT_PROPERTY, DEFAULT_CACHE_COUNT);
         String minAgeStr = getProperty(CACHE_MIN_AGE_PROPERTY, DEFAULT_CACHE_MIN_AGE);
-        initializeCache(cacheSizeStr, cacheCountStr, minAgeStr, getFileStorage());
+        String cacheDirStr = getProperty(CACHE_DIR_PROPERTY);
+        initializeCache(cacheSizeStr, cacheCountStr, minAgeStr, cacheDirStr, getFileStorage());
+        if (getBooleanProperty(WRITE_BEHIND_PROPERTY)) {
+            int threads = getIntProperty(WRITE_BEHIND_THREADS_PROPERTY);
+            initializeWriteBehind(threads > 0 ? threads : DEFAULT_WRITE_BEHIND_THREADS);
+        }
+        int prefetchThreads = getIntProperty(PREFETCH_THREADS_PROPERTY);
+        if (prefetchThreads > 0) {
+            initializePrefetch(prefetchThreads);
+        }
 
         garbageCollector = instantiateGarbageCollector();
     }
@@ -23,13 +23,24 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -43,6 +54,11 @@ import org.nuxeo.ecm.core.blob.binary.BinaryManager;
 import org.nuxeo.ecm.core.blob.binary.BinaryManagerStatus;
 import org.nuxeo.ecm.core.blob.binary.CachingBinaryManager;
 import org.nuxeo.ecm.core.blob.binary.LazyBinary;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
 
 /**
  * @author <a href="mailto:ak@nuxeo.com">Arnaud Kervern</a>
@@ -130,6 +146,38 @@ public abstract class AbstractTestCloudBinaryManager<T extends CachingBinaryMana
         assertEquals(CONTENT, toString(binary.getStream()));
     }
 
+    protected long getCacheMetric(String name) {
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        String metricName = MetricRegistry.name("nuxeo", "binaries", binaryManager.blobProviderId, "cache", name);
+        return ((Number) registry.getGauges().get(metricName).getValue()).longValue();
+    }
+
+    @Test
+    public void testConcurrentGetFile() throws Exception {
+        binaryManager.getBinary(Blobs.createBlob(CONTENT));
+        binaryManager.fileCache.clear();
+        long fetches = getCacheMetric("fetches");
+
+        int n = 10;
+        ExecutorService executor = Executors.newFixedThreadPool(n);
+        try {
+            List<Callable<File>> tasks = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                tasks.add(() -> binaryManager.getFile(CONTENT_MD5));
+            }
+            for (Future<File> future : executor.invokeAll(tasks)) {
+                File file = future.get();
+                assertNotNull(file);
+                assertEquals(CONTENT, FileUtils.readFileToString(file, "UTF-8"));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, binaryManager.fileCache.getNumberOfItems());
+        // the other threads waited for the single fetch, or found its result in the cache
+        assertEquals(1, getCacheMetric("fetches") - fetches);
+    }
+
     @Test
     public void testAsBlobProvider() throws Exception {
         // to acquire the BinaryGarbageCollector, the BlobManagerComponent only has a BlobProvider
@@ -222,6 +270,81 @@ public abstract class AbstractTestCloudBinaryManager<T extends CachingBinaryMana
         assertEquals(Collections.singleton(CONTENT_MD5), listObjects());
     }
 
+    /**
+     * Gets a new garbage collector, as after a restart, if the binary manager has a resumable one.
+     */
+    protected AbstractBinaryGarbageCollector<?> newResumableGarbageCollector() {
+        assumeTrue("No resumable garbage collector", binaryManager instanceof AbstractCloudBinaryManager);
+        BinaryGarbageCollector gc = ((AbstractCloudBinaryManager) binaryManager).instantiateGarbageCollector();
+        assumeTrue("No resumable garbage collector", gc instanceof AbstractBinaryGarbageCollector);
+        return (AbstractBinaryGarbageCollector<?>) gc;
+    }
+
+    /**
+     * NOTE THAT THIS TEST WILL REMOVE ALL FILES IN THE BUCKET!!!
+     */
+    @Test
+    public void testBinaryManagerGCResumed() throws Exception {
+        binaryManager.getBinary(Blobs.createBlob(CONTENT));
+        binaryManager.getBinary(Blobs.createBlob(CONTENT2));
+        binaryManager.getBinary(Blobs.createBlob(CONTENT3));
+        assertEquals(new HashSet<>(Arrays.asList(CONTENT_MD5, CONTENT2_MD5, CONTENT3_MD5)), listObjects());
+
+        // a GC is interrupted during its mark phase
+        AbstractBinaryGarbageCollector<?> gc = newResumableGarbageCollector();
+        gc.start();
+        gc.mark(CONTENT_MD5);
+        gc.saveCheckpoint();
+        // the node is restarted, the marks of the interrupted GC are kept
+        AbstractBinaryGarbageCollector<?> resumed = newResumableGarbageCollector();
+        resumed.start();
+        assertTrue(resumed.isMarked(CONTENT_MD5));
+        // the mark phase is done again, with content1 not referenced anymore
+        resumed.mark(CONTENT3_MD5);
+        resumed.stop(true);
+        BinaryManagerStatus status = resumed.getStatus();
+        // content1 may have been referenced during the interruption, it is kept
+        assertEquals(2, status.numBinaries);
+        assertEquals(1, status.numBinariesGC);
+        assertEquals(new HashSet<>(Arrays.asList(CONTENT_MD5, CONTENT3_MD5)), listObjects());
+        gc.marked.close();
+
+        // the next GC starts from scratch
+        gc = newResumableGarbageCollector();
+        gc.start();
+        assertFalse(gc.isMarked(CONTENT_MD5));
+        gc.mark(CONTENT3_MD5);
+        gc.stop(true);
+        assertEquals(Collections.singleton(CONTENT3_MD5), listObjects());
+    }
+
+    /**
+     * NOTE THAT THIS TEST WILL REMOVE ALL FILES IN THE BUCKET!!!
+     */
+    @Test
+    public void testBinaryManagerGCSaturatedMarks() throws Exception {
+        binaryManager.getBinary(Blobs.createBlob(CONTENT));
+        binaryManager.getBinary(Blobs.createBlob(CONTENT2));
+        assertEquals(new HashSet<>(Arrays.asList(CONTENT_MD5, CONTENT2_MD5)), listObjects());
+
+        Properties properties = Framework.getProperties();
+        properties.setProperty(AbstractBinaryGarbageCollector.EXPECTED_BINARIES_PROPERTY, "1");
+        try {
+            AbstractBinaryGarbageCollector<?> gc = newResumableGarbageCollector();
+            gc.start();
+            gc.mark(CONTENT_MD5);
+            // many more binaries than expected are referenced
+            for (int i = 0; i < 1000; i++) {
+                gc.mark(String.format("%032x", i));
+            }
+            gc.stop(true);
+        } finally {
+            properties.remove(AbstractBinaryGarbageCollector.EXPECTED_BINARIES_PROPERTY);
+        }
+        // nothing is deleted
+        assertEquals(new HashSet<>(Arrays.asList(CONTENT_MD5, CONTENT2_MD5)), listObjects());
+    }
+
     protected static String toString(InputStream stream) throws IOException {
         return IOUtils.toString(stream, "UTF-8");
     }
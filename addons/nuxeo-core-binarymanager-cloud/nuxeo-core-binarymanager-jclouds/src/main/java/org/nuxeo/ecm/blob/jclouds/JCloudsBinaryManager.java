@@ -32,6 +32,7 @@ import java.net.PasswordAuthentication;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import org.apache.commons.io.IOUtils;
@@ -333,7 +334,7 @@ public class JCloudsBinaryManager extends CachingBinaryManager {
             }
             startTime = System.currentTimeMillis();
             status = new BinaryManagerStatus();
-            marked = new HashSet<>();
+            marked = ConcurrentHashMap.newKeySet(); // repositories may be marked in parallel
         }
 
         @Override
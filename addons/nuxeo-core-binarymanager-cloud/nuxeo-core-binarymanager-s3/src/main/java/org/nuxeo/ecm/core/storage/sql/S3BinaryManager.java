@@ -37,7 +37,8 @@ import java.security.PublicKey;
 import java.security.cert.Certificate;
 import java.util.Collection;
 import java.util.Date;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
 
@@ -659,7 +660,10 @@ public class S3BinaryManager extends AbstractCloudBinaryManager {
     }
 
     /**
-     * Garbage collector for S3 binaries that stores the marked (in use) binaries in memory.
+     * Garbage collector for S3 binaries.
+     * <p>
+     * The sweep processes each page of the bucket listing in parallel with the listing of the next one, and
+     * checkpoints the listing marker so that an interrupted sweep resumes where it stopped.
      */
     public static class S3BinaryGarbageCollector extends AbstractBinaryGarbageCollector<S3BinaryManager> {
 
@@ -674,42 +678,41 @@ public class S3BinaryManager extends AbstractCloudBinaryManager {
 
         @Override
         public Set<String> getUnmarkedBlobs() {
-            // list S3 objects in the bucket
-            // record those not marked
-            Set<String> unmarked = new HashSet<>();
+            return collectUnmarkedBlobs();
+        }
+
+        @Override
+        protected void sweep(boolean delete) {
+            // list S3 objects in the bucket, resuming after the checkpointed marker if any
+            // and sweep each page in parallel
             ObjectListing list = null;
             do {
                 if (list == null) {
                     // use delimiter to avoid useless listing of objects in "subdirectories"
                     ListObjectsRequest listObjectsRequest = new ListObjectsRequest(binaryManager.bucketName,
-                            binaryManager.bucketNamePrefix, null, DELIMITER, null);
+                            binaryManager.bucketNamePrefix, getSweepMarker(), DELIMITER, null);
                     list = binaryManager.amazonS3.listObjects(listObjectsRequest);
                 } else {
                     list = binaryManager.amazonS3.listNextBatchOfObjects(list);
                 }
                 int prefixLength = binaryManager.bucketNamePrefix.length();
+                Map<String, Long> chunk = new HashMap<>();
+                String lastKey = null;
                 for (S3ObjectSummary summary : list.getObjectSummaries()) {
-                    String digest = summary.getKey().substring(prefixLength);
+                    lastKey = summary.getKey();
+                    String digest = lastKey.substring(prefixLength);
                     if (!isMD5(digest)) {
                         // ignore files that cannot be MD5 digests for
                         // safety
                         continue;
                     }
-                    long length = summary.getSize();
-                    if (marked.contains(digest)) {
-                        status.numBinaries++;
-                        status.sizeBinaries += length;
-                    } else {
-                        status.numBinariesGC++;
-                        status.sizeBinariesGC += length;
-                        // record file to delete
-                        unmarked.add(digest);
-                        marked.remove(digest); // optimize memory
-                    }
+                    chunk.put(digest, Long.valueOf(summary.getSize()));
+                }
+                if (lastKey != null) {
+                    submitSweepChunk(lastKey, chunk, delete);
                 }
             } while (list.isTruncated());
-
-            return unmarked;
+            awaitSweepChunks();
         }
     }
 
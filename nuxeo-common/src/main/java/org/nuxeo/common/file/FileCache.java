@@ -93,4 +93,32 @@ public interface FileCache {
      */
     void clear();
 
+    /**
+     * Pins a file in the cache, so that it's not evicted until it's unpinned.
+     * <p>
+     * The default implementation does nothing.
+     *
+     * @param key the cache key
+     * @since 11.1
+     */
+    default void pin(String key) {
+    }
+
+    /**
+     * Unpins a file previously pinned with {@link #pin}, making it eligible for eviction again.
+     *
+     * @param key the cache key
+     * @since 11.1
+     */
+    default void unpin(String key) {
+    }
+
+    /**
+     * Closes the cache, releasing any resource it holds. The cached files are left in place.
+     *
+     * @since 11.1
+     */
+    default void close() {
+    }
+
 }
@@ -18,18 +18,31 @@
  */
 package org.nuxeo.common.file;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Pattern;
@@ -44,6 +57,10 @@ import org.apache.commons.logging.LogFactory;
  * Cache entries that are old enough and whose size makes the cache bigger than its maximum size are deleted.
  * <p>
  * The cache keys are restricted to a subset of ASCII: letters, digits and dashes. Usually a MD5 or SHA1 hash is used.
+ * <p>
+ * The cache entries are tracked in an in-memory index ordered by access, so that eviction only has to look at the
+ * least recently used entries instead of scanning the whole directory. When the cache is persistent, the index is
+ * also recorded in a journal file stored in the cache directory, and replayed at startup.
  */
 public class LRUFileCache implements FileCache {
 
@@ -56,6 +73,22 @@ public class LRUFileCache implements FileCache {
 
     private static final String TMP_SUFFIX = ".tmp";
 
+    /**
+     * Name of the journal file in the cache directory. It cannot clash with a cache key as keys can't contain dots.
+     *
+     * @since 11.1
+     */
+    public static final String JOURNAL_NAME = ".nxcache.journal";
+
+    protected static final String JOURNAL_PUT = "P";
+
+    protected static final String JOURNAL_ACCESS = "A";
+
+    protected static final String JOURNAL_DELETE = "D";
+
+    /** Minimum number of journal lines before a compaction is considered. */
+    protected static final long JOURNAL_COMPACT_MIN_LINES = 10_000;
+
     public static final long CLEAR_OLD_ENTRIES_INTERVAL_MILLIS_DEFAULT = 5000; // 5 s
 
     protected long clearOldEntriesIntervalMillis = CLEAR_OLD_ENTRIES_INTERVAL_MILLIS_DEFAULT;
@@ -80,6 +113,23 @@ public class LRUFileCache implements FileCache {
         }
     }
 
+    /**
+     * An entry of the index.
+     *
+     * @since 11.1
+     */
+    protected static class Entry {
+
+        protected final long size;
+
+        protected long time;
+
+        protected Entry(long size, long time) {
+            this.size = size;
+            this.time = time;
+        }
+    }
+
     protected final Path dir;
 
     protected final long maxSize;
@@ -88,10 +138,55 @@ public class LRUFileCache implements FileCache {
 
     protected final long minAgeMillis;
 
+    protected final boolean persistent;
+
     protected Lock clearOldEntriesLock = new ReentrantLock();
 
     protected long clearOldEntriesLast;
 
+    /**
+     * The cache entries, least recently used first. All accesses are synchronized on the map itself.
+     *
+     * @since 11.1
+     */
+    protected final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The keys of the pinned entries, which are never evicted.
+     *
+     * @since 11.1
+     */
+    protected final Set<String> pinned = ConcurrentHashMap.newKeySet();
+
+    /** Total size of the entries of the index, guarded by {@link #entries}. */
+    protected long size;
+
+    /** Journal writer, guarded by {@link #entries}. */
+    protected Writer journal;
+
+    /** Number of lines in the journal, guarded by {@link #entries}. */
+    protected long journalLines;
+
+    /** Incremented each time the journal is rewritten from the index, guarded by {@link #entries}. */
+    protected long journalGeneration;
+
+    /** Whether the journal has grown too much and must be compacted, guarded by {@link #entries}. */
+    protected boolean journalCompactionNeeded;
+
+    /**
+     * Lines appended to the journal while it's being compacted, to be copied to the compacted journal, or {@code null}
+     * if no compaction is in progress. Guarded by {@link #entries}.
+     */
+    protected List<String> journalBacklog;
+
+    protected final AtomicLong hitCount = new AtomicLong();
+
+    protected final AtomicLong missCount = new AtomicLong();
+
+    protected final AtomicLong evictionCount = new AtomicLong();
+
+    protected final AtomicLong evictedBytes = new AtomicLong();
+
     /**
      * Constructs a cache in the given directory with the given maximum size (in bytes).
      *
@@ -101,10 +196,29 @@ public class LRUFileCache implements FileCache {
      * @param minAge the minimum age of a file in the cache to be eligible for removal (in seconds)
      */
     public LRUFileCache(File dir, long maxSize, long maxCount, long minAge) {
+        this(dir, maxSize, maxCount, minAge, false);
+    }
+
+    /**
+     * Constructs a cache in the given directory with the given maximum size (in bytes).
+     * <p>
+     * A persistent cache records its index in a journal, so that it can be reloaded without scanning the directory
+     * when the cache is reopened.
+     *
+     * @param dir the directory to use to store cached files
+     * @param maxSize the maximum size of the cache (in bytes)
+     * @param maxCount the maximum number of files in the cache
+     * @param minAge the minimum age of a file in the cache to be eligible for removal (in seconds)
+     * @param persistent whether the index is persisted in a journal
+     * @since 11.1
+     */
+    public LRUFileCache(File dir, long maxSize, long maxCount, long minAge, boolean persistent) {
         this.dir = dir.toPath();
         this.maxSize = maxSize;
         this.maxCount = maxCount;
         this.minAgeMillis = minAge * 1000;
+        this.persistent = persistent;
+        loadIndex();
     }
 
     // for tests
@@ -128,40 +242,324 @@ public class LRUFileCache implements FileCache {
             if (filename.startsWith(TMP_PREFIX) && filename.endsWith(TMP_SUFFIX)) {
                 return false;
             }
+            if (filename.equals(JOURNAL_NAME) || filename.startsWith(JOURNAL_NAME + ".")) {
+                return false;
+            }
             return true;
         }
     }
 
-    @Override
-    public long getSize() {
-        long size = 0;
+    /**
+     * Loads the index, from the journal if there is one, otherwise from a scan of the directory.
+     *
+     * @since 11.1
+     */
+    protected void loadIndex() {
+        synchronized (entries) {
+            entries.clear();
+            size = 0;
+            if (!Files.isDirectory(dir)) {
+                return;
+            }
+            Path journalPath = dir.resolve(JOURNAL_NAME);
+            if (persistent && Files.exists(journalPath)) {
+                try {
+                    replayJournal(journalPath);
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Cannot replay cache journal: " + journalPath + ", scanning directory", e);
+                    entries.clear();
+                    size = 0;
+                    scanDirectory();
+                }
+            } else {
+                scanDirectory();
+            }
+            if (persistent) {
+                rewriteJournal();
+            }
+        }
+    }
+
+    protected void scanDirectory() {
+        List<PathInfo> files = new ArrayList<>();
         try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, RegularFileFilter.INSTANCE)) {
             for (Path path : ds) {
-                size += Files.size(path);
+                try {
+                    files.add(new PathInfo(path));
+                } catch (IOException e) {
+                    log.error(e, e);
+                }
             }
         } catch (IOException e) {
             log.error(e, e);
         }
-        return size;
+        Collections.sort(files);
+        Collections.reverse(files); // least recent first
+        for (PathInfo pi : files) {
+            addEntry(pi.path.getFileName().toString(), new Entry(pi.size, pi.time));
+        }
     }
 
-    @Override
-    public int getNumberOfItems() {
-        int count = 0;
-        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, RegularFileFilter.INSTANCE)) {
-            for (Path path : ds) {
-                count++;
+    protected void replayJournal(Path journalPath) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(journalPath, StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(" ");
+                String key = parts[1];
+                switch (parts[0]) {
+                case JOURNAL_PUT:
+                    removeEntry(key);
+                    addEntry(key, new Entry(Long.parseLong(parts[2]), Long.parseLong(parts[3])));
+                    break;
+                case JOURNAL_ACCESS:
+                    Entry entry = entries.get(key);
+                    if (entry != null) {
+                        entry.time = Long.parseLong(parts[2]);
+                    }
+                    break;
+                case JOURNAL_DELETE:
+                    removeEntry(key);
+                    break;
+                default:
+                    throw new IOException("Invalid journal line: " + line);
+                }
             }
+        }
+    }
+
+    /**
+     * Rewrites the journal from the current index, and reopens it for appending. Must be called with the lock held.
+     */
+    protected void rewriteJournal() {
+        closeJournal();
+        journalGeneration++;
+        journalCompactionNeeded = false;
+        Path journalPath = dir.resolve(JOURNAL_NAME);
+        Path tmp = dir.resolve(JOURNAL_NAME + ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.US_ASCII)) {
+                for (Map.Entry<String, Entry> es : entries.entrySet()) {
+                    Entry entry = es.getValue();
+                    writer.write(JOURNAL_PUT + ' ' + es.getKey() + ' ' + entry.size + ' ' + entry.time + '\n');
+                }
+            }
+            Files.move(tmp, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            journal = Files.newBufferedWriter(journalPath, StandardCharsets.US_ASCII, StandardOpenOption.APPEND);
+            journalLines = entries.size();
         } catch (IOException e) {
-            log.error(e, e);
+            log.error("Cannot write cache journal: " + journalPath, e);
+            journal = null;
+        }
+    }
+
+    protected void closeJournal() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                log.error(e, e);
+            }
+            journal = null;
+        }
+    }
+
+    /**
+     * Appends a line to the journal, and marks it for compaction if it's grown too much. Must be called with the lock
+     * held, the compaction itself is done by {@link #compactJournalIfNeeded} once the lock is released.
+     */
+    protected void writeJournal(String line, boolean flush) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.write(line);
+            journal.write('\n');
+            if (flush) {
+                journal.flush();
+            }
+            journalLines++;
+        } catch (IOException e) {
+            log.error("Cannot write cache journal, disabling it", e);
+            closeJournal();
+            return;
+        }
+        if (journalBacklog != null) {
+            journalBacklog.add(line);
+        } else if (journalLines > JOURNAL_COMPACT_MIN_LINES && journalLines > 2L * entries.size()) {
+            journalCompactionNeeded = true;
         }
-        return count;
+    }
+
+    /**
+     * Compacts the journal if it's grown too much. Must be called without the lock held.
+     * <p>
+     * The compacted journal is written from a snapshot of the index, outside of the lock. The lines appended to the
+     * current journal in the meantime are then copied to the compacted journal, which replaces the current one.
+     *
+     * @since 11.1
+     */
+    protected void compactJournalIfNeeded() {
+        List<String> lines;
+        long generation;
+        synchronized (entries) {
+            if (!journalCompactionNeeded || journalBacklog != null || journal == null) {
+                return;
+            }
+            journalCompactionNeeded = false;
+            generation = journalGeneration;
+            lines = new ArrayList<>(entries.size());
+            for (Map.Entry<String, Entry> es : entries.entrySet()) {
+                Entry entry = es.getValue();
+                lines.add(JOURNAL_PUT + ' ' + es.getKey() + ' ' + entry.size + ' ' + entry.time);
+            }
+            journalBacklog = new ArrayList<>();
+        }
+        Path journalPath = dir.resolve(JOURNAL_NAME);
+        Path tmp = dir.resolve(JOURNAL_NAME + ".compact");
+        try {
+            try {
+                writeLines(tmp, lines, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+            } catch (IOException e) {
+                log.error("Cannot compact cache journal: " + journalPath, e);
+                return;
+            }
+            synchronized (entries) {
+                if (journal == null || generation != journalGeneration) {
+                    // closed or rewritten in the meantime
+                    return;
+                }
+                try {
+                    writeLines(tmp, journalBacklog, StandardOpenOption.APPEND);
+                    closeJournal();
+                    Files.move(tmp, journalPath, StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                    journalLines = lines.size() + journalBacklog.size();
+                } catch (IOException e) {
+                    log.error("Cannot compact cache journal: " + journalPath, e);
+                }
+                try {
+                    if (journal == null) {
+                        journal = Files.newBufferedWriter(journalPath, StandardCharsets.US_ASCII,
+                                StandardOpenOption.APPEND);
+                    }
+                } catch (IOException e) {
+                    log.error("Cannot reopen cache journal, disabling it: " + journalPath, e);
+                }
+            }
+        } finally {
+            synchronized (entries) {
+                journalBacklog = null;
+            }
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException e) {
+                log.error(e, e);
+            }
+        }
+    }
+
+    protected void writeLines(Path path, List<String> lines, StandardOpenOption... options) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.US_ASCII, options)) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        }
+    }
+
+    protected void addEntry(String key, Entry entry) {
+        entries.put(key, entry);
+        size += entry.size;
+    }
+
+    protected Entry removeEntry(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            size -= entry.size;
+        }
+        return entry;
+    }
+
+    @Override
+    public long getSize() {
+        synchronized (entries) {
+            return size;
+        }
+    }
+
+    @Override
+    public int getNumberOfItems() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Gets the number of {@link #getFile} calls that found the file in the cache.
+     *
+     * @since 11.1
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Gets the number of {@link #getFile} calls that didn't find the file in the cache.
+     *
+     * @since 11.1
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Gets the number of files evicted from the cache.
+     *
+     * @since 11.1
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Gets the total size of the files evicted from the cache, in bytes.
+     *
+     * @since 11.1
+     */
+    public long getEvictedBytes() {
+        return evictedBytes.get();
+    }
+
+    @Override
+    public void pin(String key) {
+        checkKey(key);
+        pinned.add(key);
     }
 
+    @Override
+    public void unpin(String key) {
+        pinned.remove(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Pinned entries are kept.
+     */
     @Override
     public void clear() {
+        synchronized (entries) {
+            entries.keySet().retainAll(pinned);
+            size = entries.values().stream().mapToLong(entry -> entry.size).sum();
+            if (persistent && Files.isDirectory(dir)) {
+                rewriteJournal();
+            }
+        }
         try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, RegularFileFilter.INSTANCE)) {
             for (Path path : ds) {
+                if (pinned.contains(path.getFileName().toString())) {
+                    continue;
+                }
                 try {
                     Files.delete(path);
                 } catch (IOException e) {
@@ -173,13 +571,20 @@ public class LRUFileCache implements FileCache {
         }
     }
 
+    @Override
+    public void close() {
+        synchronized (entries) {
+            closeJournal();
+        }
+    }
+
     /**
      * Clears cache entries if they are old enough and their size makes the cache bigger than its maximum size.
      */
     protected void clearOldEntries() {
         if (clearOldEntriesLock.tryLock()) {
             try {
-                if (System.currentTimeMillis() > clearOldEntriesLast + clearOldEntriesIntervalMillis) {
+                if (System.currentTimeMillis() >= clearOldEntriesLast + clearOldEntriesIntervalMillis) {
                     doClearOldEntries();
                     clearOldEntriesLast = System.currentTimeMillis();
                     return;
@@ -192,47 +597,73 @@ public class LRUFileCache implements FileCache {
     }
 
     protected void doClearOldEntries() {
-        List<PathInfo> files = new ArrayList<>();
-        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, RegularFileFilter.INSTANCE)) {
-            for (Path path : ds) {
-                try {
-                    files.add(new PathInfo(path));
-                } catch (IOException e) {
-                    log.error(e, e);
+        // pick the victims from the least recently used end of the index and remove them from it under the lock, the
+        // files are deleted after releasing it so that gets and puts are not blocked by the file system
+        List<String> keys = new ArrayList<>();
+        synchronized (entries) {
+            long threshold = System.currentTimeMillis() - minAgeMillis;
+            Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+            while ((size > maxSize || entries.size() > maxCount) && it.hasNext()) {
+                Map.Entry<String, Entry> es = it.next();
+                Entry entry = es.getValue();
+                if (entry.time >= threshold) {
+                    // all following entries are more recent
+                    break;
+                }
+                if (pinned.contains(es.getKey())) {
+                    continue;
                 }
+                it.remove();
+                size -= entry.size;
+                keys.add(es.getKey());
+                evictionCount.incrementAndGet();
+                evictedBytes.addAndGet(entry.size);
             }
-        } catch (IOException e) {
-            log.error(e, e);
         }
-        Collections.sort(files); // sort by most recent first
-
-        long size = 0;
-        long count = 0;
-        long threshold = System.currentTimeMillis() - minAgeMillis;
-        for (PathInfo pi : files) {
-            size += pi.size;
-            count++;
-            if (pi.time < threshold) {
-                // old enough to be candidate
-                if (size > maxSize || count > maxCount) {
-                    // delete file
-                    try {
-                        Files.delete(pi.path);
-                        size -= pi.size;
-                        count--;
-                    } catch (IOException e) {
-                        log.error(e, e);
+        if (keys.isEmpty()) {
+            return;
+        }
+        for (String key : keys) {
+            try {
+                Files.delete(dir.resolve(key));
+            } catch (NoSuchFileException e) {
+                // already deleted
+            } catch (IOException e) {
+                log.error(e, e);
+            }
+        }
+        synchronized (entries) {
+            for (String key : keys) {
+                if (entries.containsKey(key)) {
+                    if (Files.exists(dir.resolve(key))) {
+                        // put again after its deletion, keep it
+                        continue;
                     }
+                    // a concurrent access indexed the file again just before its deletion
+                    removeEntry(key);
+                }
+                writeJournal(JOURNAL_DELETE + ' ' + key, false);
+            }
+            if (journal != null) {
+                try {
+                    journal.flush();
+                } catch (IOException e) {
+                    log.error(e, e);
                 }
             }
         }
+        compactJournalIfNeeded();
     }
 
     @Override
     public File getTempFile() throws IOException {
         // make sure we have a temporary directory
         // even if it's been deleted by an external process doing cleanup
-        Files.createDirectories(dir);
+        if (!Files.isDirectory(dir)) {
+            // forget entries that have disappeared with the directory
+            Files.createDirectories(dir);
+            loadIndex();
+        }
         return Files.createTempFile(dir, TMP_PREFIX, TMP_SUFFIX).toFile();
     }
 
@@ -254,8 +685,7 @@ public class LRUFileCache implements FileCache {
             // check the cache
             checkKey(key);
             Path path = dir.resolve(key);
-            if (Files.exists(path)) {
-                recordAccess(path);
+            if (Files.exists(path) && recordAccess(key, path)) {
                 return path.toFile();
             }
 
@@ -282,34 +712,87 @@ public class LRUFileCache implements FileCache {
         // put file in cache
         checkKey(key);
         Path path = dir.resolve(key);
-        try {
-            Files.move(source, path);
-            recordAccess(path);
-            clearOldEntries();
-        } catch (FileAlreadyExistsException faee) {
-            // already something there
-            recordAccess(path);
-            // remove unused tmp file
+        for (int attempt = 0;; attempt++) {
             try {
-                Files.delete(source);
-            } catch (IOException e) {
-                log.error(e, e);
+                Files.move(source, path);
+                recordAccess(key, path);
+                clearOldEntries();
+                return path.toFile();
+            } catch (FileAlreadyExistsException faee) {
+                // already something there
+                if (recordAccess(key, path) || attempt > 0) {
+                    // remove unused tmp file
+                    try {
+                        Files.delete(source);
+                    } catch (IOException e) {
+                        log.error(e, e);
+                    }
+                    return path.toFile();
+                }
+                // evicted in the meantime, move our file in place
             }
         }
-        return path.toFile();
     }
 
     @Override
     public File getFile(String key) {
         checkKey(key);
         Path path = dir.resolve(key);
-        if (!Files.exists(path)) {
+        if (!Files.exists(path) || !recordAccess(key, path)) {
+            synchronized (entries) {
+                if (removeEntry(key) != null) {
+                    // deleted behind our back
+                    writeJournal(JOURNAL_DELETE + ' ' + key, true);
+                }
+            }
+            compactJournalIfNeeded();
+            missCount.incrementAndGet();
             return null;
         }
-        recordAccess(path);
+        hitCount.incrementAndGet();
         return path.toFile();
     }
 
+    /**
+     * Records access to a file by moving it to the most recent end of the index.
+     * <p>
+     * For a non-persistent cache the file modification time is also updated, so that the order can be rebuilt from a
+     * directory scan.
+     * <p>
+     * A file that isn't indexed yet is checked under the lock, so that a file already deleted by a concurrent eviction
+     * is not indexed again. A file indexed again just before its eviction deletes it is removed from the index by the
+     * eviction, or by the next {@link #getFile} not finding it.
+     *
+     * @return {@code false} if the file doesn't exist anymore
+     * @since 11.1
+     */
+    protected boolean recordAccess(String key, Path path) {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry entry = entries.get(key); // moves it to the end
+            if (entry != null) {
+                entry.time = now;
+                writeJournal(JOURNAL_ACCESS + ' ' + key + ' ' + now, false);
+            } else {
+                try {
+                    entry = new Entry(Files.size(path), now);
+                } catch (NoSuchFileException e) {
+                    return false;
+                } catch (IOException e) {
+                    log.error(e, e);
+                    return false;
+                }
+                addEntry(key, entry);
+                writeJournal(JOURNAL_PUT + ' ' + key + ' ' + entry.size + ' ' + now, true);
+            }
+        }
+        compactJournalIfNeeded();
+        if (!persistent) {
+            recordAccess(path);
+        }
+        return true;
+    }
+
     /** Records access to a file by changing its modification time. */
     protected void recordAccess(Path path) {
         try {
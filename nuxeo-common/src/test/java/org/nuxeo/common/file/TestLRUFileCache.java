@@ -20,6 +20,12 @@ package org.nuxeo.common.file;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.Before;
@@ -155,6 +161,39 @@ public class TestLRUFileCache {
         assertEquals(0, cache.getNumberOfItems());
     }
 
+    @Test
+    public void testLRUFileCachePinned() throws Exception {
+        LRUFileCache cache = new LRUFileCache(dir, 10000, 2, 1); // 2 files max
+        cache.setClearOldEntriesIntervalMillis(0); // clear immediately
+
+        byte[] buf = new byte[30];
+
+        cache.pin("1");
+        cache.putFile("1", new ByteArrayInputStream(buf));
+        Thread.sleep(1000);
+        cache.putFile("2", new ByteArrayInputStream(buf));
+        Thread.sleep(2000);
+        cache.putFile("3", new ByteArrayInputStream(buf));
+        // least recently used is pinned, the next one is evicted
+        assertEquals(2, cache.getNumberOfItems());
+        assertTrue(new File(dir, "1").exists());
+        assertFalse(new File(dir, "2").exists());
+        assertTrue(new File(dir, "3").exists());
+
+        // pinned file survives a clear
+        cache.clear();
+        assertEquals(1, cache.getNumberOfItems());
+        assertEquals(30, cache.getSize());
+        assertTrue(new File(dir, "1").exists());
+        assertFalse(new File(dir, "3").exists());
+
+        // unpinned, it can go away
+        cache.unpin("1");
+        cache.clear();
+        assertEquals(0, cache.getNumberOfItems());
+        assertFalse(new File(dir, "1").exists());
+    }
+
     @Test
     public void testLRUFileCacheExternalCleanup() throws Exception {
         LRUFileCache cache = new LRUFileCache(dir, 100, 9999, 1); // 100 bytes max
@@ -180,4 +219,105 @@ public class TestLRUFileCache {
         assertTrue(new File(dir, "2").exists());
     }
 
+    @Test
+    public void testLRUFileCacheStats() throws Exception {
+        LRUFileCache cache = new LRUFileCache(dir, 50, 9999, 0); // 50 bytes max, no min age
+        cache.setClearOldEntriesIntervalMillis(0); // clear immediately
+
+        cache.putFile("1", new ByteArrayInputStream(new byte[30]));
+        assertNotNull(cache.getFile("1"));
+        assertNull(cache.getFile("2"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        Thread.sleep(10);
+        cache.putFile("2", new ByteArrayInputStream(new byte[30]));
+        assertEquals(1, cache.getNumberOfItems());
+        assertEquals(30, cache.getSize());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(30, cache.getEvictedBytes());
+        assertFalse(new File(dir, "1").exists());
+        assertTrue(new File(dir, "2").exists());
+    }
+
+    @Test
+    public void testLRUFileCacheJournal() throws Exception {
+        LRUFileCache cache = new LRUFileCache(dir, 100, 9999, 0, true);
+        cache.putFile("1", new ByteArrayInputStream(new byte[30]));
+        Thread.sleep(10);
+        cache.putFile("2", new ByteArrayInputStream(new byte[20]));
+        Thread.sleep(10);
+        // access 1 so that 2 becomes the least recently used
+        assertNotNull(cache.getFile("1"));
+        assertEquals(2, cache.getNumberOfItems());
+        assertEquals(50, cache.getSize());
+        // journal is not counted as a cached file
+        assertTrue(new File(dir, LRUFileCache.JOURNAL_NAME).exists());
+        assertEquals(50, getDirSize() - new File(dir, LRUFileCache.JOURNAL_NAME).length());
+        cache.close();
+
+        // reopen, the index is restored from the journal
+        cache = new LRUFileCache(dir, 100, 9999, 0, true);
+        assertEquals(2, cache.getNumberOfItems());
+        assertEquals(50, cache.getSize());
+
+        // adding a big file evicts the least recently used entry first
+        Thread.sleep(10);
+        cache.putFile("3", new ByteArrayInputStream(new byte[60]));
+        assertEquals(2, cache.getNumberOfItems());
+        assertEquals(90, cache.getSize());
+        assertTrue(new File(dir, "1").exists());
+        assertFalse(new File(dir, "2").exists());
+        assertTrue(new File(dir, "3").exists());
+        cache.close();
+
+        cache = new LRUFileCache(dir, 100, 9999, 0, true);
+        assertEquals(2, cache.getNumberOfItems());
+        assertEquals(90, cache.getSize());
+        cache.clear();
+        assertEquals(0, cache.getNumberOfItems());
+        cache.close();
+    }
+
+    @Test
+    public void testLRUFileCacheConcurrentEviction() throws Exception {
+        LRUFileCache cache = new LRUFileCache(dir, 100, 9999, 0, true); // 100 bytes max, no min age
+        cache.setClearOldEntriesIntervalMillis(0); // clear immediately
+        int nbThreads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < nbThreads; t++) {
+            futures.add(executor.submit(() -> {
+                // enough journal lines for compactions to happen
+                for (int i = 0; i < 2000; i++) {
+                    String key = String.valueOf(i % 10);
+                    cache.putFile(key, new ByteArrayInputStream(new byte[30]));
+                    cache.getFile(key);
+                }
+                return null;
+            }));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        // the index never points to an evicted file
+        long journalSize = new File(dir, LRUFileCache.JOURNAL_NAME).length();
+        assertEquals(cache.getSize(), getDirSize() - journalSize);
+        for (int i = 0; i < 10; i++) {
+            String key = String.valueOf(i);
+            assertEquals(new File(dir, key).exists(), cache.getFile(key) != null);
+        }
+        int items = cache.getNumberOfItems();
+        long size = cache.getSize();
+        cache.close();
+
+        // the journal is consistent with the index
+        LRUFileCache reopened = new LRUFileCache(dir, 100, 9999, 0, true);
+        assertEquals(items, reopened.getNumberOfItems());
+        assertEquals(size, reopened.getSize());
+        reopened.close();
+    }
+
 }
@@ -239,6 +239,20 @@ public interface CoreSession {
      */
     DocumentModelList getDocuments(DocumentRef[] docRefs) throws DocumentNotFoundException;
 
+    /**
+     * Gets a list of documents given their ids, in the same order.
+     * <p>
+     * The documents are loaded in bulk from the repository, without going through a query. Documents that don't exist
+     * or that the current user cannot browse are skipped, like for a query; the read ACLs of the whole batch are
+     * checked at once.
+     *
+     * @param ids the document ids
+     * @param schemas the schemas to load eagerly, or {@code null} for the prefetched schemas of each document type;
+     *            other schemas are loaded lazily
+     * @since 11.1
+     */
+    DocumentModelList getDocumentsByIds(List<String> ids, String[] schemas);
+
     /**
      * Gets a child document given its name and the parent reference.
      * <p>
@@ -1138,6 +1152,33 @@ public interface CoreSession {
      */
     ScrollResult<String> scroll(String scrollId);
 
+    /**
+     * Executes the given query and returns the first batch of results containing documents, next batch must be
+     * requested within the {@code keepAliveSeconds} delay.
+     * <p>
+     * Unlike {@link #scroll(String, int, int)}, the documents are returned directly, without an additional round trip
+     * to load them from their ids. When the backend supports it the full documents are read from the underlying
+     * cursor. At most one batch is held in memory by the scroll, however the documents returned are kept by the
+     * session until the end of the transaction.
+     *
+     * @param query The NXQL query to execute
+     * @param batchSize The expected result batch size
+     * @param keepAliveSeconds The scroll context lifetime in seconds
+     * @return A {@link ScrollResult} including the documents and a scroll id, to be passed to the subsequent calls to
+     *         {@link #scrollDocuments(String)}
+     * @since 11.1
+     */
+    ScrollResult<DocumentModel> scrollDocuments(String query, int batchSize, int keepAliveSeconds);
+
+    /**
+     * Get the next batch of results containing documents, the {@code scrollId} is part of the previous
+     * {@link ScrollResult} response returned by {@link #scrollDocuments(String, int, int)}.
+     *
+     * @throws NuxeoException when the {@code scrollId} is unknown or when the scroll operation has timed out
+     * @since 11.1
+     */
+    ScrollResult<DocumentModel> scrollDocuments(String scrollId);
+
     /** -------------------------- Security API --------------------------- * */
 
     /**
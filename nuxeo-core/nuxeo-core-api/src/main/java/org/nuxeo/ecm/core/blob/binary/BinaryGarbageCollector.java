@@ -28,6 +28,9 @@ package org.nuxeo.ecm.core.blob.binary;
  * Finally when all binaries have been marked, call{@link #stop} to delete the non-marked binaries.
  * <p>
  * After this, {@link #getStatus} returns information about the binaries remaining and those that have been GCed.
+ * <p>
+ * A garbage collector may be resumable: if a previous run was interrupted, {@link #start} resumes it. All the binaries
+ * in use must still be marked again, as documents may have been created or modified since the interruption.
  */
 public interface BinaryGarbageCollector {
 
@@ -48,6 +51,8 @@ public interface BinaryGarbageCollector {
 
     /**
      * Marks a binary as being in use.
+     * <p>
+     * Repositories may be marked in parallel, so this method may be called concurrently by several threads.
      *
      * @param digest the binary's digest
      */
@@ -24,9 +24,26 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.common.file.FileCache;
@@ -34,12 +51,29 @@ import org.nuxeo.common.file.LRUFileCache;
 import org.nuxeo.common.utils.SizeUtils;
 import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.kv.KeyValueService;
+import org.nuxeo.runtime.kv.KeyValueStore;
+import org.nuxeo.runtime.metrics.MetricsService;
 import org.nuxeo.runtime.trackers.files.FileEventTracker;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.codahale.metrics.SharedMetricRegistries;
+
 /**
  * Abstract class for a {@link BinaryManager} that uses a cache for its files because fetching them is expensive.
  * <p>
  * Initialization of the {@link BinaryManager} must call {@link #initializeCache} from the {@link #initialize} method.
+ * <p>
+ * With a persistent cache, {@link #initializeWriteBehind} can be called to enable the write-behind mode: new files are
+ * then only written to the cache before being returned, and are uploaded to the storage asynchronously. Until their
+ * upload is confirmed they are recorded in a pending directory, which is replayed at startup, and pinned in the cache.
+ * Reads of a pending file on the node that staged it are served from the local file. Other nodes reading a file whose
+ * upload is pending wait for it to be uploaded.
+ * <p>
+ * Concurrent cache misses for the same file are coalesced into a single fetch from the storage. With
+ * {@link #initializePrefetch}, files are also fetched in the background as soon as a blob referencing them is read.
  *
  * @since 5.7
  */
@@ -49,10 +83,89 @@ public abstract class CachingBinaryManager extends AbstractBinaryManager {
 
     protected File cachedir;
 
+    /**
+     * Whether the cache directory is persistent, in which case it's kept on close.
+     *
+     * @since 11.1
+     */
+    protected boolean persistentCache;
+
     public FileCache fileCache;
 
     protected FileStorage fileStorage;
 
+    /**
+     * Name of the directory, in the cache directory, holding a marker file for each pending upload.
+     *
+     * @since 11.1
+     */
+    public static final String WRITE_BEHIND_PENDING_DIR = ".pending";
+
+    /**
+     * Key/value store name in which pending uploads are advertised to other nodes.
+     *
+     * @since 11.1
+     */
+    public static final String WRITE_BEHIND_KV_STORE = "binaries-write-behind";
+
+    /** TTL of the pending upload keys, refreshed on each attempt. */
+    protected static final long WRITE_BEHIND_PENDING_TTL = TimeUnit.HOURS.toSeconds(1);
+
+    protected static final long WRITE_BEHIND_RETRY_DELAY_MILLIS = 1_000;
+
+    protected static final long WRITE_BEHIND_RETRY_MAX_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /** How long a node waits for the pending upload of a file done by another node. */
+    protected static final long WRITE_BEHIND_FETCH_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /** Initial delay between two fetches of a file whose upload is pending on another node, doubled each time. */
+    protected static final long WRITE_BEHIND_FETCH_POLL_MILLIS = 50;
+
+    protected static final long WRITE_BEHIND_FETCH_POLL_MAX_MILLIS = 2_000;
+
+    /**
+     * The executor uploading files in write-behind mode, or {@code null} if write-behind is disabled.
+     *
+     * @since 11.1
+     */
+    protected ScheduledThreadPoolExecutor writeBehindExecutor;
+
+    /** @since 11.1 */
+    protected Path pendingDir;
+
+    /** @since 11.1 */
+    protected final AtomicInteger pendingUploads = new AtomicInteger();
+
+    /**
+     * The fetches from the storage in progress, by digest.
+     *
+     * @since 11.1
+     */
+    protected final ConcurrentMap<String, CompletableFuture<File>> inFlightFetches = new ConcurrentHashMap<>();
+
+    /**
+     * The number of fetches from the storage.
+     *
+     * @since 11.1
+     */
+    protected final AtomicLong storageFetches = new AtomicLong();
+
+    /** @since 11.1 */
+    protected final AtomicLong coalescedFetches = new AtomicLong();
+
+    /** @since 11.1 */
+    protected final AtomicLong coalescedBytes = new AtomicLong();
+
+    /** Maximum number of queued prefetches, further ones are dropped. */
+    protected static final int PREFETCH_QUEUE_SIZE = 1000;
+
+    /**
+     * The executor fetching files in the background, or {@code null} if prefetch is disabled.
+     *
+     * @since 11.1
+     */
+    protected ThreadPoolExecutor prefetchExecutor;
+
     @Override
     public void initialize(String blobProviderId, Map<String, String> properties) throws IOException {
         super.initialize(blobProviderId, properties);
@@ -72,8 +185,9 @@ public abstract class CachingBinaryManager extends AbstractBinaryManager {
      * @since 5.9.2
      */
     protected void initializeCache(File dir, long maxSize, long maxCount, long minAge, FileStorage fileStorage) {
-        fileCache = new LRUFileCache(dir, maxSize, maxCount, minAge);
+        fileCache = new LRUFileCache(dir, maxSize, maxCount, minAge, persistentCache);
         this.fileStorage = fileStorage;
+        registerCacheMetrics();
     }
 
     /**
@@ -102,22 +216,182 @@ public abstract class CachingBinaryManager extends AbstractBinaryManager {
      */
     public void initializeCache(String maxSizeStr, String maxCountStr, String minAgeStr, FileStorage fileStorage)
             throws IOException {
-        cachedir = Framework.createTempFile("nxbincache.", "");
-        cachedir.delete();
-        cachedir.mkdir();
+        initializeCache(maxSizeStr, maxCountStr, minAgeStr, null, fileStorage);
+    }
+
+    /**
+     * Initializes the cache.
+     * <p>
+     * If a cache directory is provided, the cache is persistent: its index is journaled and its content is kept when
+     * the binary manager is closed, so that it's still warm after a restart. Otherwise a temporary directory is used.
+     *
+     * @param maxSizeStr the maximum size of the cache (as a String)
+     * @param maxCountStr the maximum number of files in the cache
+     * @param minAgeStr the minimum age of a file in the cache to be eligible for removal (in seconds)
+     * @param cacheDirStr the persistent cache directory, or {@code null} for a temporary one
+     * @param fileStorage the file storage mechanism to use to store and fetch files
+     * @see SizeUtils#parseSizeInBytes(String)
+     * @since 11.1
+     */
+    public void initializeCache(String maxSizeStr, String maxCountStr, String minAgeStr, String cacheDirStr,
+            FileStorage fileStorage) throws IOException {
+        if (StringUtils.isBlank(cacheDirStr)) {
+            persistentCache = false;
+            cachedir = Framework.createTempFile("nxbincache.", "");
+            cachedir.delete();
+            cachedir.mkdir();
+        } else {
+            persistentCache = true;
+            cachedir = new File(cacheDirStr);
+            FileUtils.forceMkdir(cachedir);
+        }
         long maxSize = SizeUtils.parseSizeInBytes(maxSizeStr);
         long maxCount = Long.parseLong(maxCountStr);
         long minAge = Long.parseLong(minAgeStr);
         initializeCache(cachedir, maxSize, maxCount, minAge, fileStorage);
         log.info("Using binary cache directory: " + cachedir.getPath() + " size: " + maxSizeStr + " maxCount: "
-                + maxCount + " minAge: " + minAge);
+                + maxCount + " minAge: " + minAge + " persistent: " + persistentCache);
 
         // be sure FileTracker won't steal our files !
         FileEventTracker.registerProtectedPath(cachedir.getAbsolutePath());
     }
 
+    /**
+     * Enables the write-behind mode, in which new files are uploaded to the storage asynchronously.
+     * <p>
+     * Must be called after {@link #initializeCache}, with a persistent cache directory. The uploads that were pending
+     * when the previous instance was stopped are resumed.
+     *
+     * @param threads the number of upload threads
+     * @since 11.1
+     */
+    public void initializeWriteBehind(int threads) throws IOException {
+        if (!persistentCache) {
+            log.warn("Write-behind for binary manager '" + blobProviderId
+                    + "' requires a persistent cache directory, disabling it");
+            return;
+        }
+        pendingDir = cachedir.toPath().resolve(WRITE_BEHIND_PENDING_DIR);
+        Files.createDirectories(pendingDir);
+        writeBehindExecutor = new ScheduledThreadPoolExecutor(threads,
+                new NamedThreadFactory("Nuxeo-Binary-WriteBehind-" + blobProviderId + "-"));
+        writeBehindExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        registry.remove(cacheMetricName("write-behind-pending"));
+        registry.register(cacheMetricName("write-behind-pending"), (Gauge<Integer>) pendingUploads::get);
+        // resume the uploads interrupted by a shutdown or a crash
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(pendingDir)) {
+            for (Path marker : ds) {
+                String digest = marker.getFileName().toString();
+                if (fileCache.getFile(digest) == null) {
+                    log.error("Binary " + digest + " pending upload is missing from the cache, it is lost");
+                    Files.deleteIfExists(marker);
+                    continue;
+                }
+                fileCache.pin(digest);
+                pendingUploads.incrementAndGet();
+                setPendingUpload(digest, true);
+                scheduleUpload(digest, 0, 0);
+            }
+        }
+        log.info("Using write-behind for binary manager '" + blobProviderId + "' with " + threads + " threads, "
+                + pendingUploads.get() + " pending uploads resumed");
+    }
+
+    /**
+     * Enables the prefetch of files: when a blob is read, its file is fetched into the cache in the background, so that
+     * it's already there when the blob content is accessed.
+     * <p>
+     * Prefetching is best effort: when too many prefetches are queued, new ones are dropped.
+     *
+     * @param threads the number of prefetch threads
+     * @since 11.1
+     */
+    public void initializePrefetch(int threads) {
+        prefetchExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(PREFETCH_QUEUE_SIZE),
+                new NamedThreadFactory("Nuxeo-Binary-Prefetch-" + blobProviderId + "-"),
+                new ThreadPoolExecutor.DiscardPolicy());
+        prefetchExecutor.allowCoreThreadTimeOut(true);
+        log.info("Using prefetch for binary manager '" + blobProviderId + "' with " + threads + " threads");
+    }
+
+    protected static class NamedThreadFactory implements ThreadFactory {
+
+        protected final String prefix;
+
+        protected final AtomicInteger count = new AtomicInteger();
+
+        protected NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    protected String cacheMetricName(String name) {
+        return MetricRegistry.name("nuxeo", "binaries", blobProviderId, "cache", name);
+    }
+
+    /**
+     * Registers hit ratio and eviction metrics for the cache.
+     *
+     * @since 11.1
+     */
+    protected void registerCacheMetrics() {
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        unregisterCacheMetrics(registry);
+        registry.register(cacheMetricName("fetches"), (Gauge<Long>) storageFetches::get);
+        registry.register(cacheMetricName("coalesced-fetches"), (Gauge<Long>) coalescedFetches::get);
+        registry.register(cacheMetricName("coalesced-bytes"), (Gauge<Long>) coalescedBytes::get);
+        if (!(fileCache instanceof LRUFileCache)) {
+            return;
+        }
+        LRUFileCache cache = (LRUFileCache) fileCache;
+        registry.register(cacheMetricName("hit-ratio"), new RatioGauge() {
+
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(cache.getHitCount(), cache.getHitCount() + cache.getMissCount());
+            }
+        });
+        registry.register(cacheMetricName("size"), (Gauge<Long>) cache::getSize);
+        registry.register(cacheMetricName("eviction-counter"), (Gauge<Long>) cache::getEvictionCount);
+        registry.register(cacheMetricName("evicted-bytes"), (Gauge<Long>) cache::getEvictedBytes);
+    }
+
+    protected void unregisterCacheMetrics(MetricRegistry registry) {
+        registry.removeMatching((name, metric) -> name.startsWith(cacheMetricName("") + '.'));
+    }
+
     @Override
     public void close() {
+        unregisterCacheMetrics(SharedMetricRegistries.getOrCreate(MetricsService.class.getName()));
+        if (prefetchExecutor != null) {
+            prefetchExecutor.shutdownNow();
+            prefetchExecutor = null;
+        }
+        if (writeBehindExecutor != null) {
+            // running uploads are given a chance to finish, the others are resumed at next startup
+            writeBehindExecutor.shutdown();
+            try {
+                writeBehindExecutor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writeBehindExecutor.shutdownNow();
+            writeBehindExecutor = null;
+        }
+        fileCache.close();
+        if (persistentCache) {
+            // keep the cache content for the next startup
+            return;
+        }
         fileCache.clear();
         if (cachedir != null) {
             try {
@@ -149,25 +423,217 @@ public abstract class CachingBinaryManager extends AbstractBinaryManager {
             }
             // delete tmp file, not needed anymore
             tmp.delete();
+        } else if (writeBehindExecutor != null) {
+            // keep the file in the cache, it will be sent to storage asynchronously
+            writeBehind(digest, tmp);
         } else {
             // send the file to storage
             fileStorage.storeFile(digest, tmp);
             // register the file in the file cache
             fileCache.putFile(digest, tmp);
         }
-        return getBinary(digest);
+        // don't go through getBinary(digest), the file is already in the cache and doesn't need a prefetch
+        return new LazyBinary(digest, blobProviderId, this);
+    }
+
+    /**
+     * Puts a file in the cache and schedules its upload to the storage.
+     * <p>
+     * The file content and its pending marker are synced to disk before returning, so that the upload can be resumed
+     * after a crash.
+     *
+     * @since 11.1
+     */
+    protected void writeBehind(String digest, File tmp) throws IOException {
+        try (FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Path marker = pendingDir.resolve(digest);
+        try (FileChannel channel = FileChannel.open(marker, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        fileCache.pin(digest);
+        fileCache.putFile(digest, tmp);
+        pendingUploads.incrementAndGet();
+        setPendingUpload(digest, true);
+        scheduleUpload(digest, 0, 0);
+    }
+
+    protected void scheduleUpload(String digest, int attempt, long delayMillis) {
+        writeBehindExecutor.schedule(() -> upload(digest, attempt), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Uploads a pending file to the storage, retrying with an exponential backoff in case of failure.
+     *
+     * @since 11.1
+     */
+    protected void upload(String digest, int attempt) {
+        File file = fileCache.getFile(digest);
+        if (file == null) {
+            // should not happen as the file is pinned
+            log.error("Binary " + digest + " pending upload is missing from the cache, it is lost");
+            uploadDone(digest);
+            return;
+        }
+        try {
+            fileStorage.storeFile(digest, file);
+        } catch (IOException | RuntimeException e) {
+            long delay = Math.min(WRITE_BEHIND_RETRY_DELAY_MILLIS << Math.min(attempt, 20),
+                    WRITE_BEHIND_RETRY_MAX_DELAY_MILLIS);
+            log.warn("Failed to upload binary " + digest + " (attempt " + (attempt + 1) + "), retrying in " + delay
+                    + "ms", e);
+            setPendingUpload(digest, true);
+            scheduleUpload(digest, attempt + 1, delay);
+            return;
+        }
+        uploadDone(digest);
+    }
+
+    protected void uploadDone(String digest) {
+        try {
+            Files.deleteIfExists(pendingDir.resolve(digest));
+        } catch (IOException e) {
+            log.error("Cannot delete pending upload marker for binary " + digest, e);
+        }
+        fileCache.unpin(digest);
+        setPendingUpload(digest, false);
+        pendingUploads.decrementAndGet();
+    }
+
+    /**
+     * Gets the number of uploads not yet confirmed by the storage, in write-behind mode.
+     *
+     * @since 11.1
+     */
+    public int getPendingUploads() {
+        return pendingUploads.get();
+    }
+
+    protected KeyValueStore getWriteBehindKeyValueStore() {
+        KeyValueService kvService = Framework.getService(KeyValueService.class);
+        return kvService == null ? null : kvService.getKeyValueStore(WRITE_BEHIND_KV_STORE);
+    }
+
+    protected String getPendingUploadKey(String digest) {
+        return blobProviderId + ':' + digest;
+    }
+
+    /**
+     * Advertises to other nodes that the upload of a file is pending, or done.
+     */
+    protected void setPendingUpload(String digest, boolean pending) {
+        KeyValueStore kvStore = getWriteBehindKeyValueStore();
+        if (kvStore == null) {
+            return;
+        }
+        String key = getPendingUploadKey(digest);
+        try {
+            if (pending) {
+                kvStore.put(key, Long.valueOf(System.currentTimeMillis()), WRITE_BEHIND_PENDING_TTL);
+            } else {
+                kvStore.put(key, (String) null);
+            }
+        } catch (RuntimeException e) {
+            log.error("Cannot record pending upload for binary " + digest, e);
+        }
+    }
+
+    /**
+     * Checks whether the upload of a file is pending on a node.
+     */
+    protected boolean isPendingUpload(String digest) {
+        KeyValueStore kvStore = getWriteBehindKeyValueStore();
+        return kvStore != null && kvStore.get(getPendingUploadKey(digest)) != null;
+    }
+
+    /**
+     * Checks whether the upload of a file is pending on this node.
+     *
+     * @since 11.1
+     */
+    protected boolean isStaged(String digest) {
+        return pendingDir != null && Files.exists(pendingDir.resolve(digest));
+    }
+
+    /**
+     * Gets the file of a pending upload staged on this node.
+     *
+     * @return the staged file, or {@code null} if the upload of the file is not pending on this node
+     * @since 11.1
+     */
+    protected File getStagedFile(String digest) {
+        return isStaged(digest) ? fileCache.getFile(digest) : null;
+    }
+
+    /**
+     * Waits for the pending upload of a file, then fetches it.
+     * <p>
+     * If the file is staged on this node it's returned directly. Otherwise the storage is polled with an increasing
+     * delay until the upload done by another node completes, or a timeout expires.
+     *
+     * @return the staged file, {@code tmp} if the file was fetched, or {@code null} if it was not found
+     * @since 11.1
+     */
+    protected File fetchPendingFile(String digest, File tmp) throws IOException {
+        long deadline = System.currentTimeMillis() + WRITE_BEHIND_FETCH_TIMEOUT_MILLIS;
+        long delay = WRITE_BEHIND_FETCH_POLL_MILLIS;
+        for (;;) {
+            File staged = getStagedFile(digest);
+            if (staged != null) {
+                return staged;
+            }
+            if (fileStorage.fetchFile(digest, tmp)) {
+                return tmp;
+            }
+            if ((!isStaged(digest) && !isPendingUpload(digest)) || System.currentTimeMillis() >= deadline) {
+                // the upload may have completed just after the last attempt
+                return fileStorage.fetchFile(digest, tmp) ? tmp : null;
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new NuxeoException(e);
+            }
+            delay = Math.min(delay * 2, WRITE_BEHIND_FETCH_POLL_MAX_MILLIS);
+        }
     }
 
     @Override
     public Binary getBinary(String digest) {
+        if (prefetchExecutor != null) {
+            prefetch(digest);
+        }
         return new LazyBinary(digest, blobProviderId, this);
     }
 
+    /**
+     * Fetches a file into the cache in the background, if it's not already there.
+     *
+     * @since 11.1
+     */
+    protected void prefetch(String digest) {
+        if (inFlightFetches.containsKey(digest)) {
+            return;
+        }
+        prefetchExecutor.execute(() -> {
+            try {
+                getFile(digest);
+            } catch (IOException | RuntimeException e) {
+                log.debug("Cannot prefetch binary " + digest, e);
+            }
+        });
+    }
+
     /* =============== Methods used by LazyBinary =============== */
 
     /**
      * Gets a file from cache or storage.
      * <p>
+     * If the file is already being fetched from the storage by another thread, waits for this fetch instead of doing
+     * a new one.
+     * <p>
      * Used by {@link LazyBinary}.
      */
     public File getFile(String digest) throws IOException {
@@ -176,17 +642,73 @@ public abstract class CachingBinaryManager extends AbstractBinaryManager {
         if (file != null) {
             return file;
         }
-        // fetch file from storage
+        CompletableFuture<File> fetch = new CompletableFuture<>();
+        CompletableFuture<File> inFlightFetch = inFlightFetches.putIfAbsent(digest, fetch);
+        if (inFlightFetch != null) {
+            file = waitForFetch(inFlightFetch);
+            coalescedFetches.incrementAndGet();
+            if (file != null) {
+                coalescedBytes.addAndGet(file.length());
+            }
+            return file;
+        }
+        try {
+            // the file may have been put in the cache by a fetch that just completed
+            file = fileCache.getFile(digest);
+            if (file == null) {
+                file = fetchFile(digest);
+            }
+            fetch.complete(file);
+            return file;
+        } catch (IOException | RuntimeException e) {
+            fetch.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightFetches.remove(digest, fetch);
+        }
+    }
+
+    protected File waitForFetch(CompletableFuture<File> fetch) throws IOException {
+        try {
+            return fetch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NuxeoException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new NuxeoException(cause);
+        }
+    }
+
+    /**
+     * Fetches a file from storage and puts it in the cache.
+     *
+     * @return the cached file, or {@code null} if the file is not in the storage
+     * @since 11.1
+     */
+    protected File fetchFile(String digest) throws IOException {
+        File staged = getStagedFile(digest);
+        if (staged != null) {
+            return staged;
+        }
+        storageFetches.incrementAndGet();
         File tmp = fileCache.getTempFile();
-        if (fileStorage.fetchFile(digest, tmp)) {
+        File file = fileStorage.fetchFile(digest, tmp) ? tmp : null;
+        if (file == null && (isStaged(digest) || isPendingUpload(digest))) {
+            file = fetchPendingFile(digest, tmp);
+        }
+        if (file == tmp) {
             // put file in cache
-            file = fileCache.putFile(digest, tmp);
-            return file;
-        } else {
-            // file not in storage
-            tmp.delete();
-            return null;
+            return fileCache.putFile(digest, tmp);
         }
+        tmp.delete();
+        // staged file, or file not in storage
+        return file;
     }
 
 }
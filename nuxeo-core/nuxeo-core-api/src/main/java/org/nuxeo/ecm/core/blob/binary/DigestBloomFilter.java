@@ -0,0 +1,225 @@
+/*
+ * (C) Copyright 2019 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.blob.binary;
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+
+/**
+ * A Bloom filter of digests whose bits are stored in a memory-mapped file.
+ * <p>
+ * Used by garbage collectors to mark the binaries in use: the memory needed is a few bits per digest instead of a
+ * whole string, the bits are paged out by the OS when memory is tight, and the file can be reopened to resume an
+ * interrupted garbage collection.
+ * <p>
+ * A Bloom filter may have false positives but no false negatives: a digest that was added is always found, while a
+ * digest that wasn't may be found with a probability close to the one requested at creation. For a garbage collector
+ * this means that a few unused binaries may be kept, but a binary in use is never deleted.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @since 11.1
+ */
+public class DigestBloomFilter implements Closeable {
+
+    protected static final int MAGIC = 0x4e584246; // NXBF
+
+    protected static final int HEADER_SIZE = 16; // magic, number of hashes, number of bits
+
+    protected static final long MAX_BITS = ((Integer.MAX_VALUE - HEADER_SIZE) / Long.BYTES) * (long) Long.SIZE;
+
+    protected static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class,
+            ByteOrder.BIG_ENDIAN);
+
+    protected final Path file;
+
+    protected final FileChannel channel;
+
+    protected final MappedByteBuffer buffer;
+
+    protected final int numHashes;
+
+    protected final long numBits;
+
+    protected DigestBloomFilter(Path file, FileChannel channel, MappedByteBuffer buffer, int numHashes,
+            long numBits) {
+        this.file = file;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.numHashes = numHashes;
+        this.numBits = numBits;
+    }
+
+    /**
+     * Creates a new filter in the given file, which must not exist.
+     *
+     * @param file the file
+     * @param expectedDigests the expected number of digests
+     * @param fpp the desired false positive probability, for instance 0.001
+     */
+    public static DigestBloomFilter create(Path file, long expectedDigests, double fpp) throws IOException {
+        if (expectedDigests <= 0) {
+            throw new IllegalArgumentException("Invalid expected number of digests: " + expectedDigests);
+        }
+        if (fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("Invalid false positive probability: " + fpp);
+        }
+        long bits = (long) Math.ceil(-expectedDigests * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        bits = Math.min(Math.max(Long.SIZE, (bits + Long.SIZE - 1) / Long.SIZE * Long.SIZE), MAX_BITS);
+        int numHashes = Math.max(1, (int) Math.round((double) bits / expectedDigests * Math.log(2)));
+        FileChannel channel = FileChannel.open(file, CREATE_NEW, READ, WRITE);
+        try {
+            MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, HEADER_SIZE + bits / Byte.SIZE);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, numHashes);
+            buffer.putLong(8, bits);
+            return new DigestBloomFilter(file, channel, buffer, numHashes, bits);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an existing filter previously created with {@link #create}.
+     *
+     * @param file the file
+     */
+    public static DigestBloomFilter open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, READ, WRITE);
+        try {
+            MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, channel.size());
+            if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a digest filter: " + file);
+            }
+            int numHashes = buffer.getInt(4);
+            long bits = buffer.getLong(8);
+            if (numHashes <= 0 || bits <= 0 || HEADER_SIZE + bits / Byte.SIZE != buffer.capacity()) {
+                throw new IOException("Corrupted digest filter: " + file);
+            }
+            return new DigestBloomFilter(file, channel, buffer, numHashes, bits);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Adds a digest to the filter.
+     */
+    public void add(String digest) {
+        long h1 = hash(digest, 0x9e3779b97f4a7c15L);
+        long h2 = hash(digest, 0xc2b2ae3d27d4eb4fL) | 1;
+        for (int i = 0; i < numHashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, numBits);
+            int offset = HEADER_SIZE + (int) (bit >>> 6) * Long.BYTES;
+            long mask = 1L << (bit & 63);
+            long word;
+            do {
+                word = (long) LONGS.getVolatile(buffer, offset);
+                if ((word & mask) != 0) {
+                    break;
+                }
+            } while (!LONGS.compareAndSet(buffer, offset, word, word | mask));
+        }
+    }
+
+    /**
+     * Checks if a digest may have been added to the filter.
+     *
+     * @return {@code false} if the digest was definitely never added, {@code true} if it was probably added
+     */
+    public boolean mightContain(String digest) {
+        long h1 = hash(digest, 0x9e3779b97f4a7c15L);
+        long h2 = hash(digest, 0xc2b2ae3d27d4eb4fL) | 1;
+        for (int i = 0; i < numHashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, numBits);
+            int offset = HEADER_SIZE + (int) (bit >>> 6) * Long.BYTES;
+            long word = (long) LONGS.getVolatile(buffer, offset);
+            if ((word & (1L << (bit & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Estimates the current false positive probability of the filter, from the proportion of bits set.
+     * <p>
+     * This grows above the probability requested at creation when more digests than expected have been added. This
+     * method reads the whole filter.
+     */
+    public double getFalsePositiveProbability() {
+        long setBits = 0;
+        int end = HEADER_SIZE + (int) (numBits / Byte.SIZE);
+        for (int offset = HEADER_SIZE; offset < end; offset += Long.BYTES) {
+            setBits += Long.bitCount((long) LONGS.getVolatile(buffer, offset));
+        }
+        return Math.pow((double) setBits / numBits, numHashes);
+    }
+
+    /**
+     * 64-bit hash of a string (FNV-1a with a murmur3 finalizer).
+     */
+    protected static long hash(String s, long seed) {
+        long h = 0xcbf29ce484222325L ^ seed;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Gets the file in which the filter is stored.
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Writes the bits to disk.
+     */
+    public void flush() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+}
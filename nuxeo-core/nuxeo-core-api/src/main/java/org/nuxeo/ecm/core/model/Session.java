@@ -20,15 +20,19 @@
 package org.nuxeo.ecm.core.model;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentNotFoundException;
 import org.nuxeo.ecm.core.api.IterableQueryResult;
 import org.nuxeo.ecm.core.api.PartialList;
 import org.nuxeo.ecm.core.api.ScrollResult;
+import org.nuxeo.ecm.core.api.ScrollResultImpl;
 import org.nuxeo.ecm.core.api.VersionModel;
 import org.nuxeo.ecm.core.api.lock.LockManager;
 import org.nuxeo.ecm.core.api.security.ACP;
@@ -93,6 +97,45 @@ public interface Session<T extends QueryFilter> {
      */
     ScrollResult<String> scroll(String scrollId);
 
+    /**
+     * Executes the given query and returns the first batch of results containing documents, next batch must be
+     * requested within the keepAliveSeconds delay.
+     * <p>
+     * The default implementation scrolls on ids and loads the documents of each batch in bulk.
+     *
+     * @param queryFilter the query filter, or {@code null} for no security filtering
+     * @since 11.1
+     */
+    default ScrollResult<Document> scrollDocuments(String query, T queryFilter, int batchSize, int keepAliveSeconds) {
+        ScrollResult<String> scrollResult;
+        if (queryFilter == null) {
+            scrollResult = scroll(query, batchSize, keepAliveSeconds);
+        } else {
+            scrollResult = scroll(query, queryFilter, batchSize, keepAliveSeconds);
+        }
+        return getScrollDocuments(scrollResult);
+    }
+
+    /**
+     * Get the next batch of results containing documents.
+     *
+     * @since 11.1
+     */
+    default ScrollResult<Document> scrollDocuments(String scrollId) {
+        return getScrollDocuments(scroll(scrollId));
+    }
+
+    /**
+     * Loads the documents for a batch of scrolled ids.
+     *
+     * @since 11.1
+     */
+    default ScrollResult<Document> getScrollDocuments(ScrollResult<String> scrollResult) {
+        List<String> ids = scrollResult.getResults();
+        List<Document> docs = ids.isEmpty() ? Collections.emptyList() : getDocumentsByUUID(ids);
+        return new ScrollResultImpl<>(scrollResult.getScrollId(), docs);
+    }
+
     /**
      * Gets the lock manager for this session.
      *
@@ -134,6 +177,44 @@ public interface Session<T extends QueryFilter> {
      */
     Document getDocumentByUUID(String uuid) throws DocumentNotFoundException;
 
+    /**
+     * Gets the documents with the given IDs, in the same order.
+     * <p>
+     * Documents that don't exist are skipped.
+     *
+     * @param uuids the document ids
+     * @return the documents
+     * @since 11.1
+     */
+    default List<Document> getDocumentsByUUID(List<String> uuids) {
+        List<Document> docs = new ArrayList<>(uuids.size());
+        for (String uuid : uuids) {
+            try {
+                docs.add(getDocumentByUUID(uuid));
+            } catch (DocumentNotFoundException e) {
+                // skip
+            }
+        }
+        return docs;
+    }
+
+    /**
+     * Filters the given documents using the read ACLs maintained by the repository for queries, keeping those that can
+     * be browsed by at least one of the given principals.
+     * <p>
+     * This checks a whole batch of documents at once instead of computing the merged ACP of each document. Security
+     * policies are not taken into account.
+     *
+     * @param docs the documents
+     * @param principals the principals to check
+     * @return the browsable documents, in the same order, or {@code null} if this session cannot check read ACLs in
+     *         memory, in which case the caller must use another way
+     * @since 11.1
+     */
+    default List<Document> filterByReadAcls(List<Document> docs, Set<String> principals) {
+        return null;
+    }
+
     /**
      * Gets the root document in this repository.
      *
@@ -258,6 +339,21 @@ public interface Session<T extends QueryFilter> {
      */
     void updateReadACLs(Collection<String> docIds);
 
+    /**
+     * Updates the Read ACLs for some documents and for the descendants inheriting their ACLs.
+     * <p>
+     * The descendants having their own ACP are not updated, nor their own descendants.
+     * <p>
+     * Only DBS repositories implement it, VCS maintains the Read ACLs of a tree in the database itself and never
+     * schedules the corresponding bulk action.
+     *
+     * @param docIds the document ids
+     * @since 11.1
+     */
+    default void updateTreeReadACLs(Collection<String> docIds) {
+        throw new UnsupportedOperationException("Tree Read ACLs update is only implemented by DBS repositories");
+    }
+
     /**
      * Gets the fulltext extracted from the binary fields.
      *
@@ -0,0 +1,223 @@
+/*
+ * (C) Copyright 2019 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.blob.binary;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.nuxeo.ecm.core.blob.binary.CachingBinaryManager.WRITE_BEHIND_PENDING_DIR;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.RuntimeFeature;
+
+/**
+ * Tests the write-behind mode of the {@link CachingBinaryManager}.
+ *
+ * @since 11.1
+ */
+@RunWith(FeaturesRunner.class)
+@Features(RuntimeFeature.class)
+@Deploy("org.nuxeo.runtime.kv")
+public class TestCachingBinaryManagerWriteBehind {
+
+    private static final String CONTENT = "this is a file au caf\u00e9";
+
+    private static final String CONTENT_MD5 = "d25ea4f4642073b7f218024d397dbaef";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    protected final TestFileStorage storage = new TestFileStorage();
+
+    protected final List<CachingBinaryManager> binaryManagers = new ArrayList<>();
+
+    /**
+     * A storage shared by all the nodes, whose uploads can be held or made to fail.
+     */
+    protected static class TestFileStorage implements FileStorage {
+
+        protected final Map<String, byte[]> files = new ConcurrentHashMap<>();
+
+        protected final AtomicInteger uploads = new AtomicInteger();
+
+        protected final AtomicInteger failures = new AtomicInteger();
+
+        protected volatile CountDownLatch uploadsAllowed = new CountDownLatch(0);
+
+        @Override
+        public void storeFile(String key, File file) throws IOException {
+            try {
+                uploadsAllowed.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            uploads.incrementAndGet();
+            if (failures.getAndUpdate(n -> Math.max(n - 1, 0)) > 0) {
+                throw new IOException("Simulated upload failure");
+            }
+            files.put(key, Files.readAllBytes(file.toPath()));
+        }
+
+        @Override
+        public boolean fetchFile(String key, File file) throws IOException {
+            byte[] bytes = files.get(key);
+            if (bytes == null) {
+                return false;
+            }
+            Files.write(file.toPath(), bytes);
+            return true;
+        }
+    }
+
+    protected static class WriteBehindBinaryManager extends CachingBinaryManager {
+    }
+
+    /** A binary manager with its own persistent cache, like on a node. */
+    protected CachingBinaryManager newBinaryManager(File cacheDir) throws IOException {
+        CachingBinaryManager binaryManager = new WriteBehindBinaryManager();
+        binaryManager.initialize("writebehind", Collections.emptyMap());
+        binaryManager.initializeCache("10MB", "100", "0", cacheDir.getPath(), storage);
+        binaryManager.initializeWriteBehind(2);
+        binaryManagers.add(binaryManager);
+        return binaryManager;
+    }
+
+    @After
+    public void tearDown() {
+        storage.uploadsAllowed.countDown();
+        binaryManagers.forEach(CachingBinaryManager::close);
+    }
+
+    protected static void awaitUploads(CachingBinaryManager binaryManager) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (binaryManager.getPendingUploads() > 0) {
+            assertTrue("Uploads still pending", System.currentTimeMillis() < deadline);
+            Thread.sleep(50);
+        }
+    }
+
+    protected static String read(File file) throws IOException {
+        assertNotNull(file);
+        return FileUtils.readFileToString(file, UTF_8);
+    }
+
+    @Test
+    public void testPendingUploadIsResumed() throws Exception {
+        File cacheDir = folder.newFolder();
+        CachingBinaryManager binaryManager = newBinaryManager(cacheDir);
+        storage.failures.set(Integer.MAX_VALUE);
+
+        String digest = binaryManager.getBinary(Blobs.createBlob(CONTENT)).getDigest();
+        assertEquals(CONTENT_MD5, digest);
+        assertEquals(1, binaryManager.getPendingUploads());
+        File marker = new File(new File(cacheDir, WRITE_BEHIND_PENDING_DIR), digest);
+        assertTrue(marker.exists());
+        // the pending file is kept by the cache
+        binaryManager.fileCache.clear();
+        assertEquals(CONTENT, read(binaryManager.fileCache.getFile(digest)));
+
+        // restart while the upload is failing
+        binaryManager.close();
+        binaryManagers.remove(binaryManager);
+        assertNull(storage.files.get(digest));
+        storage.failures.set(0);
+        binaryManager = newBinaryManager(cacheDir);
+
+        awaitUploads(binaryManager);
+        assertEquals(CONTENT, new String(storage.files.get(digest), UTF_8));
+        assertFalse(marker.exists());
+    }
+
+    @Test
+    public void testReadDuringPendingUpload() throws Exception {
+        CachingBinaryManager binaryManager = newBinaryManager(folder.newFolder());
+        CachingBinaryManager otherNode = newBinaryManager(folder.newFolder());
+        storage.uploadsAllowed = new CountDownLatch(1);
+
+        String digest = binaryManager.getBinary(Blobs.createBlob(CONTENT)).getDigest();
+        assertEquals(1, binaryManager.getPendingUploads());
+        assertNull(storage.files.get(digest));
+
+        // the node that staged the file reads it locally, without waiting
+        assertEquals(CONTENT, read(binaryManager.getFile(digest)));
+        // another node waits for the upload
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<File> future = executor.submit(() -> otherNode.getFile(digest));
+            Thread.sleep(500);
+            assertFalse(future.isDone());
+            storage.uploadsAllowed.countDown();
+            assertEquals(CONTENT, read(future.get(30, TimeUnit.SECONDS)));
+        } finally {
+            executor.shutdownNow();
+        }
+        awaitUploads(binaryManager);
+        assertEquals(1, storage.uploads.get());
+
+        // a file that is neither stored nor pending is not waited for
+        assertNull(otherNode.getFile("00000000000000000000000000000000"));
+    }
+
+    @Test
+    public void testFailedUploadIsRetried() throws Exception {
+        File cacheDir = folder.newFolder();
+        CachingBinaryManager binaryManager = newBinaryManager(cacheDir);
+        storage.failures.set(2);
+
+        String digest = binaryManager.getBinary(Blobs.createBlob(CONTENT)).getDigest();
+        awaitUploads(binaryManager);
+        // two failures, then success
+        assertEquals(3, storage.uploads.get());
+        assertEquals(CONTENT, new String(storage.files.get(digest), UTF_8));
+        assertFalse(new File(new File(cacheDir, WRITE_BEHIND_PENDING_DIR), digest).exists());
+        // the file is not pinned anymore
+        binaryManager.fileCache.clear();
+        assertNull(binaryManager.fileCache.getFile(digest));
+        assertEquals(CONTENT, read(binaryManager.getFile(digest)));
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * (C) Copyright 2019 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.blob.binary;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Path;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestDigestBloomFilter {
+
+    protected File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("nxtestbloom.", "");
+        dir.delete();
+        dir.mkdir();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    @Test
+    public void testAddAndReopen() throws Exception {
+        Path file = dir.toPath().resolve("marks");
+        int n = 10_000;
+        try (DigestBloomFilter filter = DigestBloomFilter.create(file, n, 0.001)) {
+            for (int i = 0; i < n; i++) {
+                filter.add(DigestUtils.md5Hex("in" + i));
+            }
+            for (int i = 0; i < n; i++) {
+                assertTrue(filter.mightContain(DigestUtils.md5Hex("in" + i)));
+            }
+            assertFalse(filter.mightContain(DigestUtils.md5Hex("out")));
+        }
+        try (DigestBloomFilter filter = DigestBloomFilter.open(file)) {
+            int falsePositives = 0;
+            for (int i = 0; i < n; i++) {
+                assertTrue(filter.mightContain(DigestUtils.md5Hex("in" + i)));
+                if (filter.mightContain(DigestUtils.md5Hex("out" + i))) {
+                    falsePositives++;
+                }
+            }
+            // expected around 10 for 0.1%
+            assertTrue(String.valueOf(falsePositives), falsePositives < 50);
+            double fpp = filter.getFalsePositiveProbability();
+            assertTrue(String.valueOf(fpp), fpp > 0.0001 && fpp < 0.005);
+        }
+    }
+
+    @Test
+    public void testSaturation() throws Exception {
+        Path file = dir.toPath().resolve("marks");
+        int n = 1_000;
+        try (DigestBloomFilter filter = DigestBloomFilter.create(file, n, 0.001)) {
+            assertEquals(0, filter.getFalsePositiveProbability(), 0);
+            // ten times more digests than expected
+            for (int i = 0; i < 10 * n; i++) {
+                filter.add(DigestUtils.md5Hex("in" + i));
+            }
+            double fpp = filter.getFalsePositiveProbability();
+            assertTrue(String.valueOf(fpp), fpp > 0.1);
+        }
+    }
+
+}
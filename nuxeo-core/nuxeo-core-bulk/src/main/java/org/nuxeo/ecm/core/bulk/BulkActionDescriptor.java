@@ -34,6 +34,9 @@ public class BulkActionDescriptor implements Descriptor {
 
     public static final Integer DEFAULT_BATCH_SIZE = 25;
 
+    // @since 11.1
+    public static final Integer DEFAULT_SCROLL_SLICES = 1;
+
     // @since 11.1
     @XNode("@enabled")
     protected boolean isEnabled = true;
@@ -53,6 +56,10 @@ public class BulkActionDescriptor implements Descriptor {
     @XNode("@sequentialCommands")
     public Boolean sequentialCommands = Boolean.FALSE;
 
+    // @since 11.1
+    @XNode("@scrollSlices")
+    public Integer scrollSlices = DEFAULT_SCROLL_SLICES;
+
     @XNode("@validationClass")
     public Class<? extends BulkActionValidation> validationClass;
 
@@ -69,6 +76,11 @@ public class BulkActionDescriptor implements Descriptor {
         return batchSize;
     }
 
+    // @since 11.1
+    public Integer getScrollSlices() {
+        return scrollSlices;
+    }
+
     /**
      * @since 10.10
      */
@@ -53,6 +53,14 @@ public interface BulkAdminService {
      */
     boolean isSequentialCommands(String actionId);
 
+    /**
+     * Returns the number of slices in which the document set of a command about this action is split, each slice being
+     * scrolled independently and concurrently.
+     *
+     * @since 11.1
+     */
+    int getScrollSlices(String action);
+
     /**
      * Gets the validation class of an action.
      *
@@ -198,6 +198,11 @@ public class BulkAdminServiceImpl implements BulkAdminService {
         return descriptors.get(actionId).sequentialCommands;
     }
 
+    @Override
+    public int getScrollSlices(String action) {
+        return descriptors.get(action).getScrollSlices();
+    }
+
     @Override
     public BulkActionValidation getActionValidation(String action) {
         return actionValidations.get(action);
@@ -30,9 +30,13 @@ import java.time.Instant;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.CoreInstance;
+import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.repository.RepositoryManager;
 import org.nuxeo.ecm.core.bulk.message.BulkCommand;
 import org.nuxeo.ecm.core.bulk.message.BulkStatus;
@@ -79,6 +83,8 @@ public class BulkServiceImpl implements BulkService {
     // How long we keep the command and its status in the kv store once aborted
     public static final long ABORTED_TTL_SECONDS = 7_200;
 
+    protected final Map<String, Boolean> uuidRepositories = new ConcurrentHashMap<>();
+
     @Override
     public String submit(BulkCommand command) {
         log.debug("Run action with command={}", command);
@@ -111,6 +117,15 @@ public class BulkServiceImpl implements BulkService {
                 command.setBatchSize(adminService.getBatchSize(command.getAction()));
             }
         }
+        if (command.getScrollSlices() == 0) {
+            command.setScrollSlices(adminService.getScrollSlices(command.getAction()));
+        }
+        boolean sequential = adminService.isSequentialCommands(command.getAction());
+        int slices = sequential ? 1 : command.getScrollSlices();
+        if (slices > 1 && !hasUUIDs(command.getRepository())) {
+            log.debug("Repository: {} doesn't use UUIDs, scroll without slices: {}", command.getRepository(), command);
+            slices = 1;
+        }
 
         // store the bulk command and status in the key/value store
         BulkStatus status = new BulkStatus(command.getId());
@@ -118,11 +133,22 @@ public class BulkServiceImpl implements BulkService {
         status.setAction(command.getAction());
         status.setUsername(command.getUsername());
         status.setSubmitTime(Instant.now());
+        if (slices > 1) {
+            status.setScrollSlices(slices);
+        }
         setStatus(status);
         byte[] commandAsBytes = setCommand(command);
 
+        if (slices > 1) {
+            // send one command per slice, each slice goes to a random partition to be scrolled concurrently
+            for (int i = 0; i < slices; i++) {
+                command.setScrollSlice(Integer.valueOf(i));
+                submit(command.getId() + ":" + i, command.getId(), BulkCodecs.getCommandCodec().encode(command));
+            }
+            return command.getId();
+        }
         String shardKey;
-        if (adminService.isSequentialCommands(command.getAction())) {
+        if (sequential) {
             // no concurrency all commands for this action goes to the same partition
             shardKey = command.getAction();
         } else {
@@ -133,6 +159,27 @@ public class BulkServiceImpl implements BulkService {
         return submit(shardKey, command.getId(), commandAsBytes);
     }
 
+    /**
+     * Checks whether the documents of a repository have UUIDs, which the scroll slices split into ranges. Repositories
+     * using sequence ids are not sliced.
+     *
+     * @since 11.1
+     */
+    protected boolean hasUUIDs(String repositoryName) {
+        return uuidRepositories.computeIfAbsent(repositoryName, name -> {
+            String rootId = CoreInstance.doPrivileged(name, (CoreSession session) -> session.getRootDocument().getId());
+            return Boolean.valueOf(isUUID(rootId));
+        }).booleanValue();
+    }
+
+    protected static boolean isUUID(String id) {
+        try {
+            return UUID.fromString(id).toString().equals(id);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
     @SuppressWarnings("resource") // LogManager not ours to close
     protected String submit(String shardKey, String key, byte[] bytes) {
         LogManager logManager = Framework.getService(StreamService.class).getLogManager(BULK_LOG_MANAGER_NAME);
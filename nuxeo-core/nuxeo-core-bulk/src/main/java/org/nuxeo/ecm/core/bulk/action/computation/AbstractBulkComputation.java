@@ -70,6 +70,10 @@ public abstract class AbstractBulkComputation extends AbstractComputation {
 
     private static final Logger log = LogManager.getLogger(AbstractBulkComputation.class);
 
+    /**
+     * @deprecated since 11.1, documents are loaded with {@link CoreSession#getDocumentsByIds}
+     */
+    @Deprecated
     protected static final String SELECT_DOCUMENTS_IN = "SELECT * FROM Document, Relation WHERE ecm:uuid IN ('%s')";
 
     protected Map<String, BulkCommand> commands = new PassiveExpiringMap<>(60, TimeUnit.SECONDS);
@@ -189,6 +193,6 @@ public abstract class AbstractBulkComputation extends AbstractComputation {
         if (documentIds == null || documentIds.isEmpty()) {
             return new DocumentModelListImpl(0);
         }
-        return session.query(String.format(SELECT_DOCUMENTS_IN, String.join("', '", documentIds)));
+        return session.getDocumentsByIds(documentIds, null);
     }
 }
@@ -48,6 +48,15 @@ import org.nuxeo.ecm.core.bulk.message.BulkBucket;
 import org.nuxeo.ecm.core.bulk.message.BulkCommand;
 import org.nuxeo.ecm.core.bulk.message.BulkStatus;
 import org.nuxeo.ecm.core.query.QueryParseException;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.ecm.core.query.sql.NXQLQueryWriter;
+import org.nuxeo.ecm.core.query.sql.SQLQueryParser;
+import org.nuxeo.ecm.core.query.sql.model.MultiExpression;
+import org.nuxeo.ecm.core.query.sql.model.Operator;
+import org.nuxeo.ecm.core.query.sql.model.Predicate;
+import org.nuxeo.ecm.core.query.sql.model.Reference;
+import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
+import org.nuxeo.ecm.core.query.sql.model.StringLiteral;
 import org.nuxeo.lib.stream.computation.AbstractComputation;
 import org.nuxeo.lib.stream.computation.ComputationContext;
 import org.nuxeo.lib.stream.computation.Record;
@@ -58,6 +67,10 @@ import org.nuxeo.runtime.transaction.TransactionHelper;
 /**
  * Materializes the document set for a command.
  * <p>
+ * When the command is split into slices, each record is about one slice of the document set, which is a range of
+ * document ids. The slices are scrolled independently and concurrently, and the status is complete once all the slices
+ * are scrolled.
+ * <p>
  * Inputs:
  * <ul>
  * <li>i1: Reads a stream of {@link BulkCommand} sharded by action</li>
@@ -123,13 +136,19 @@ public class BulkScrollerComputation extends AbstractComputation {
                     scrollSize = bucketSize = MAX_SCROLL_SIZE;
                 }
             }
+            Integer slice = command.getScrollSlice();
+            String query = command.getQuery();
+            if (slice != null) {
+                query = getSliceQuery(query, slice.intValue(), command.getScrollSlices());
+            }
+            String bucketPrefix = slice == null ? commandId : commandId + ":" + slice;
             updateStatusAsScrolling(context, commandId);
             String username = command.getUsername();
             LoginContext loginContext = SYSTEM_USERNAME.equals(username) ? Framework.login()
                     : Framework.loginAsUser(username);
             try (CloseableCoreSession session = CoreInstance.openCoreSession(command.getRepository())) {
                 // scroll documents
-                ScrollResult<String> scroll = session.scroll(command.getQuery(), scrollSize, scrollKeepAliveSeconds);
+                ScrollResult<String> scroll = session.scroll(query, scrollSize, scrollKeepAliveSeconds);
                 long documentCount = 0;
                 long bucketNumber = 1;
                 while (scroll.hasResults()) {
@@ -141,7 +160,8 @@ public class BulkScrollerComputation extends AbstractComputation {
                     List<String> docIds = scroll.getResults();
                     documentIds.addAll(docIds);
                     while (documentIds.size() >= bucketSize) {
-                        produceBucket(context, command.getAction(), commandId, bucketSize, bucketNumber++);
+                        produceBucket(context, command.getAction(), commandId, bucketPrefix, bucketSize,
+                                bucketNumber++);
                     }
 
                     documentCount += docIds.size();
@@ -153,12 +173,13 @@ public class BulkScrollerComputation extends AbstractComputation {
                 // send remaining document ids
                 // there's at most one record because we loop while scrolling
                 if (!documentIds.isEmpty()) {
-                    produceBucket(context, command.getAction(), commandId, bucketSize, bucketNumber++);
+                    produceBucket(context, command.getAction(), commandId, bucketPrefix, bucketSize,
+                            bucketNumber++);
                 }
-                updateStatusAfterScroll(context, commandId, documentCount);
+                updateStatusAfterScroll(context, commandId, slice != null, documentCount, null);
             } catch (IllegalArgumentException | QueryParseException | DocumentNotFoundException e) {
                 log.error("Invalid query results in an empty document set: {}", command, e);
-                updateStatusAfterScroll(context, commandId, "Invalid query");
+                updateStatusAfterScroll(context, commandId, slice != null, 0, "Invalid query");
             } finally {
                 if (loginContext != null) {
                     loginContext.logout();
@@ -167,7 +188,8 @@ public class BulkScrollerComputation extends AbstractComputation {
         } catch (NuxeoException | LoginException e) {
             if (command != null) {
                 log.error("Invalid command produces an empty document set: {}", command, e);
-                updateStatusAfterScroll(context, command.getId(), "Invalid command");
+                updateStatusAfterScroll(context, command.getId(), command.getScrollSlice() != null, 0,
+                        "Invalid command");
             } else {
                 log.error("Discard invalid record: {}", record, e);
             }
@@ -200,10 +222,22 @@ public class BulkScrollerComputation extends AbstractComputation {
 
     protected void updateStatusAfterScroll(ComputationContext context, String commandId, long documentCount,
             String errorMessage) {
+        updateStatusAfterScroll(context, commandId, false, documentCount, errorMessage);
+    }
+
+    /**
+     * @param slice whether the scroll was about a slice of the document set, the count is then the slice size
+     * @since 11.1
+     */
+    protected void updateStatusAfterScroll(ComputationContext context, String commandId, boolean slice,
+            long documentCount, String errorMessage) {
         BulkStatus delta = BulkStatus.deltaOf(commandId);
         if (errorMessage != null) {
             delta.inError(errorMessage);
         }
+        if (slice) {
+            delta.setScrolledSlices(1);
+        }
         if (documentCount == 0) {
             delta.setState(COMPLETED);
             delta.setCompletedTime(Instant.now());
@@ -221,9 +255,20 @@ public class BulkScrollerComputation extends AbstractComputation {
      */
     protected void produceBucket(ComputationContext context, String action, String commandId, int bucketSize,
             long bucketNumber) {
+        produceBucket(context, action, commandId, commandId, bucketSize, bucketNumber);
+    }
+
+    /**
+     * Produces a bucket as a record to appropriate bulk action stream.
+     *
+     * @param bucketPrefix the prefix of the record key, distinct for each slice of the command
+     * @since 11.1
+     */
+    protected void produceBucket(ComputationContext context, String action, String commandId, String bucketPrefix,
+            int bucketSize, long bucketNumber) {
         List<String> ids = documentIds.subList(0, min(bucketSize, documentIds.size()));
         BulkBucket bucket = new BulkBucket(commandId, ids);
-        String key = commandId + ":" + Long.toString(bucketNumber);
+        String key = bucketPrefix + ":" + Long.toString(bucketNumber);
         Record record = Record.of(key, BulkCodecs.getBucketCodec().encode(bucket));
         if (produceImmediate) {
             ((ComputationContextImpl) context).produceRecordImmediate(action, record);
@@ -233,4 +278,42 @@ public class BulkScrollerComputation extends AbstractComputation {
         ids.clear(); // this clear the documentIds part that has been sent
     }
 
+    /**
+     * Gets the query restricted to a slice of the document set.
+     * <p>
+     * The slices are ranges of document ids, splitting evenly the space of UUIDs. The first and last slices are not
+     * bounded below and above, so that the slices always cover the whole document set. Repositories using sequence
+     * ids are not sliced, see {@link org.nuxeo.ecm.core.bulk.BulkServiceImpl#submit}.
+     *
+     * @param query the NXQL query
+     * @param slice the slice index, from {@code 0} to {@code slices - 1}
+     * @param slices the number of slices, at least {@code 2}
+     * @since 11.1
+     */
+    public static String getSliceQuery(String query, int slice, int slices) {
+        SQLQuery sqlQuery = SQLQueryParser.parse(query);
+        List<Predicate> predicates = new ArrayList<>(3);
+        Reference id = new Reference(NXQL.ECM_UUID);
+        if (slice > 0) {
+            predicates.add(new Predicate(id, Operator.GTEQ, new StringLiteral(getSliceBoundary(slice, slices))));
+        }
+        if (slice < slices - 1) {
+            predicates.add(new Predicate(id, Operator.LT, new StringLiteral(getSliceBoundary(slice + 1, slices))));
+        }
+        if (sqlQuery.where != null) {
+            predicates.add(sqlQuery.where.predicate);
+        }
+        Predicate predicate = predicates.size() == 1 ? predicates.get(0)
+                : new MultiExpression(Operator.AND, predicates);
+        return NXQLQueryWriter.toNXQL(sqlQuery.withPredicate(predicate));
+    }
+
+    /**
+     * Gets the lower bound of a slice of the UUIDs space, split on their first 32 bits.
+     */
+    protected static String getSliceBoundary(int slice, int slices) {
+        long start = (slice * 0x1_0000_0000L) / slices;
+        return String.format("%08x-0000-0000-0000-000000000000", start);
+    }
+
 }
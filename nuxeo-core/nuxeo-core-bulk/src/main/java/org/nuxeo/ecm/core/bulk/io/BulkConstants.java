@@ -63,6 +63,12 @@ public class BulkConstants {
 
     public static final String STATUS_ERROR_MESSAGE = "errorMessage";
 
+    // @since 11.1
+    public static final String STATUS_SCROLL_SLICES = "scrollSlices";
+
+    // @since 11.1
+    public static final String STATUS_SCROLLED_SLICES = "scrolledSlices";
+
     // BulkCommand
 
     public static final String COMMAND_ENTITY_TYPE = "bulkCommand";
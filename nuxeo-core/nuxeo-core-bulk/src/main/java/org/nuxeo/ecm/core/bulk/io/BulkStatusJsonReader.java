@@ -31,7 +31,9 @@ import static org.nuxeo.ecm.core.bulk.io.BulkConstants.STATUS_PROCESSING_END_TIM
 import static org.nuxeo.ecm.core.bulk.io.BulkConstants.STATUS_PROCESSING_MILLIS;
 import static org.nuxeo.ecm.core.bulk.io.BulkConstants.STATUS_PROCESSING_START_TIME;
 import static org.nuxeo.ecm.core.bulk.io.BulkConstants.STATUS_RESULT;
+import static org.nuxeo.ecm.core.bulk.io.BulkConstants.STATUS_SCROLLED_SLICES;
 import static org.nuxeo.ecm.core.bulk.io.BulkConstants.STATUS_SCROLL_END_TIME;
+import static org.nuxeo.ecm.core.bulk.io.BulkConstants.STATUS_SCROLL_SLICES;
 import static org.nuxeo.ecm.core.bulk.io.BulkConstants.STATUS_SCROLL_START_TIME;
 import static org.nuxeo.ecm.core.bulk.io.BulkConstants.STATUS_STATE;
 import static org.nuxeo.ecm.core.bulk.io.BulkConstants.STATUS_SUBMIT_TIME;
@@ -118,6 +120,14 @@ public class BulkStatusJsonReader extends EntityJsonReader<BulkStatus> {
         if (processingMillis != null) {
             status.setProcessingDurationMillis(processingMillis);
         }
+        Long slices = getLongField(jn, STATUS_SCROLL_SLICES);
+        if (slices != null) {
+            status.setScrollSlices(slices.intValue());
+        }
+        slices = getLongField(jn, STATUS_SCROLLED_SLICES);
+        if (slices != null) {
+            status.setScrolledSlices(slices.intValue());
+        }
         instantString = getStringField(jn, STATUS_USERNAME);
         if (isNotEmpty(instantString)) {
             status.setUsername(instantString);
@@ -30,7 +30,9 @@ import static org.nuxeo.ecm.core.bulk.io.BulkConstants.STATUS_PROCESSING_END_TIM
 import static org.nuxeo.ecm.core.bulk.io.BulkConstants.STATUS_PROCESSING_MILLIS;
 import static org.nuxeo.ecm.core.bulk.io.BulkConstants.STATUS_PROCESSING_START_TIME;
 import static org.nuxeo.ecm.core.bulk.io.BulkConstants.STATUS_RESULT;
+import static org.nuxeo.ecm.core.bulk.io.BulkConstants.STATUS_SCROLLED_SLICES;
 import static org.nuxeo.ecm.core.bulk.io.BulkConstants.STATUS_SCROLL_END_TIME;
+import static org.nuxeo.ecm.core.bulk.io.BulkConstants.STATUS_SCROLL_SLICES;
 import static org.nuxeo.ecm.core.bulk.io.BulkConstants.STATUS_SCROLL_START_TIME;
 import static org.nuxeo.ecm.core.bulk.io.BulkConstants.STATUS_STATE;
 import static org.nuxeo.ecm.core.bulk.io.BulkConstants.STATUS_SUBMIT_TIME;
@@ -85,6 +87,10 @@ public class BulkStatusJsonWriter extends ExtensibleEntityJsonWriter<BulkStatus>
         jg.writeStringField(STATUS_COMPLETED_TIME,
                 entity.getCompletedTime() != null ? entity.getCompletedTime().toString() : null);
         jg.writeNumberField(STATUS_PROCESSING_MILLIS, entity.getProcessingDurationMillis());
+        if (entity.getScrollSlices() > 0) {
+            jg.writeNumberField(STATUS_SCROLL_SLICES, entity.getScrollSlices());
+            jg.writeNumberField(STATUS_SCROLLED_SLICES, entity.getScrolledSlices());
+        }
         Map<String, Serializable> result = entity.getResult();
         if (!result.isEmpty()) {
             jg.writeObjectField(STATUS_RESULT, result);
@@ -59,6 +59,14 @@ public class BulkCommand implements Serializable {
     @AvroEncode(using = MapAsJsonAsStringEncoding.class)
     protected Map<String, Serializable> params;
 
+    // @since 11.1
+    @Nullable
+    protected Integer scrollSlices;
+
+    // @since 11.1
+    @Nullable
+    protected Integer scrollSlice;
+
     protected BulkCommand() {
         // Empty constructor for Avro decoder
     }
@@ -72,6 +80,7 @@ public class BulkCommand implements Serializable {
         this.bucketSize = builder.bucketSize;
         this.batchSize = builder.batchSize;
         this.params = builder.params;
+        this.scrollSlices = builder.scrollSlices > 0 ? Integer.valueOf(builder.scrollSlices) : null;
     }
 
     public String getUsername() {
@@ -111,6 +120,26 @@ public class BulkCommand implements Serializable {
         return batchSize;
     }
 
+    /**
+     * Gets the number of slices in which the document set is split to be scrolled concurrently, or {@code 0} if not
+     * defined.
+     *
+     * @since 11.1
+     */
+    public int getScrollSlices() {
+        return scrollSlices == null ? 0 : scrollSlices.intValue();
+    }
+
+    /**
+     * Gets the index of the slice of the document set to scroll, or {@code null} if the whole document set is scrolled
+     * at once.
+     *
+     * @since 11.1
+     */
+    public Integer getScrollSlice() {
+        return scrollSlice;
+    }
+
     @Override
     public int hashCode() {
         return HashCodeBuilder.reflectionHashCode(this);
@@ -138,6 +167,16 @@ public class BulkCommand implements Serializable {
         this.repository = repository;
     }
 
+    // @since 11.1
+    public void setScrollSlices(int scrollSlices) {
+        this.scrollSlices = Integer.valueOf(scrollSlices);
+    }
+
+    // @since 11.1
+    public void setScrollSlice(Integer scrollSlice) {
+        this.scrollSlice = scrollSlice;
+    }
+
     public static class Builder {
         protected final String action;
 
@@ -151,6 +190,8 @@ public class BulkCommand implements Serializable {
 
         protected int batchSize;
 
+        protected int scrollSlices;
+
         protected Map<String, Serializable> params = new HashMap<>();
 
         /**
@@ -244,6 +285,19 @@ public class BulkCommand implements Serializable {
             return this;
         }
 
+        /**
+         * The number of slices in which the document set is split to be scrolled concurrently
+         *
+         * @since 11.1
+         */
+        public Builder scrollSlices(int slices) {
+            if (slices <= 0) {
+                throw new IllegalArgumentException("Invalid scroll slices must > 0");
+            }
+            this.scrollSlices = slices;
+            return this;
+        }
+
         /**
          * Add an action parameter
          */
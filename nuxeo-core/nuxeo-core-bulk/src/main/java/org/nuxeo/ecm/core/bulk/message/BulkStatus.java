@@ -111,6 +111,14 @@ public class BulkStatus implements AsyncStatus<String> {
     @Nullable
     protected Long processingDurationMillis;
 
+    // @since 11.1
+    @Nullable
+    protected Integer scrollSlices;
+
+    // @since 11.1
+    @Nullable
+    protected Integer scrolledSlices;
+
     @Nullable
     @AvroEncode(using = MapAsJsonAsStringEncoding.class)
     protected Map<String, Serializable> result = new HashMap<>();
@@ -158,16 +166,22 @@ public class BulkStatus implements AsyncStatus<String> {
             throw new IllegalArgumentException(
                     String.format("Cannot merge different command: %s with %s", this, update));
         }
-        if (update.getState() != null && getState() != State.ABORTED) {
+        // the end of the scroll of a slice only ends the scroll when all the slices are scrolled
+        boolean sliceScrolled = update.scrolledSlices != null;
+        if (sliceScrolled) {
+            mergeScrolledSlice(update);
+        }
+        if (update.getState() != null && getState() != State.ABORTED && !sliceScrolled) {
             setState(update.getState());
         }
         if (update.processed != null) {
             setProcessed(getProcessed() + update.getProcessed());
         }
-        if (update.scrollStartTime != null) {
+        if (update.scrollStartTime != null && (scrollStartTime == null || update.scrollStartTime < scrollStartTime)) {
+            // we take the minimum
             scrollStartTime = update.scrollStartTime;
         }
-        if (update.scrollEndTime != null) {
+        if (update.scrollEndTime != null && !sliceScrolled) {
             scrollEndTime = update.scrollEndTime;
         }
         if (update.submitTime != null) {
@@ -187,12 +201,15 @@ public class BulkStatus implements AsyncStatus<String> {
             long deltaDuration = update.processingEndTime - update.processingStartTime;
             setProcessingDurationMillis(getProcessingDurationMillis() + deltaDuration);
         }
-        if (update.completedTime != null) {
+        if (update.completedTime != null && !sliceScrolled) {
             completedTime = update.completedTime;
         }
-        if (update.total != null) {
+        if (update.total != null && !sliceScrolled) {
             setTotal(update.getTotal());
         }
+        if (update.scrollSlices != null) {
+            scrollSlices = update.scrollSlices;
+        }
         if (update.getAction() != null && getAction() == null) {
             setAction(update.action);
         }
@@ -211,8 +228,30 @@ public class BulkStatus implements AsyncStatus<String> {
         checkForCompletedState();
     }
 
+    /**
+     * Merges the end of the scroll of a slice: the slice total is added to the total, and the scroll ends with the
+     * last slice.
+     */
+    protected void mergeScrolledSlice(BulkStatus update) {
+        scrolledSlices = Integer.valueOf(getScrolledSlices() + update.getScrolledSlices());
+        setTotal(getTotal() + update.getTotal());
+        if (isScrollingSlices()) {
+            return;
+        }
+        scrollEndTime = update.scrollEndTime;
+        if (getState() == State.ABORTED) {
+            return;
+        }
+        if (getTotal() == 0) {
+            setState(State.COMPLETED);
+            setCompletedTime(Instant.now());
+        } else {
+            setState(State.RUNNING);
+        }
+    }
+
     protected void checkForCompletedState() {
-        if (!isDelta() && getTotal() > 0 && getProcessed() >= getTotal()) {
+        if (!isDelta() && !isScrollingSlices() && getTotal() > 0 && getProcessed() >= getTotal()) {
             if (getState() != State.COMPLETED && getState() != State.ABORTED) {
                 setState(State.COMPLETED);
                 setCompletedTime(Instant.now());
@@ -412,6 +451,55 @@ public class BulkStatus implements AsyncStatus<String> {
         this.processingDurationMillis = processingDurationMillis;
     }
 
+    /**
+     * Gets the number of slices in which the document set is split to be scrolled concurrently, or {@code 0} if the
+     * document set is scrolled at once.
+     *
+     * @since 11.1
+     */
+    public int getScrollSlices() {
+        if (scrollSlices == null) {
+            return 0;
+        }
+        return scrollSlices;
+    }
+
+    /**
+     * @since 11.1
+     */
+    public void setScrollSlices(int scrollSlices) {
+        this.scrollSlices = scrollSlices;
+    }
+
+    /**
+     * For a full status returns the number of slices already scrolled. For a delta this is a relative value that is
+     * aggregated during {@link #merge(BulkStatus)} operation, and the total of the delta is the size of the slice.
+     *
+     * @since 11.1
+     */
+    public int getScrolledSlices() {
+        if (scrolledSlices == null) {
+            return 0;
+        }
+        return scrolledSlices;
+    }
+
+    /**
+     * @since 11.1
+     */
+    public void setScrolledSlices(int scrolledSlices) {
+        this.scrolledSlices = scrolledSlices;
+    }
+
+    /**
+     * Returns true if some slices of the document set are not yet scrolled.
+     *
+     * @since 11.1
+     */
+    public boolean isScrollingSlices() {
+        return getScrolledSlices() < getScrollSlices();
+    }
+
     public boolean hasError() {
         return errorCount > 0;
     }
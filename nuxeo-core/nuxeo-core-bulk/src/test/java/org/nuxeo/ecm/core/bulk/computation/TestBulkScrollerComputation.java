@@ -0,0 +1,71 @@
+/*
+ * (C) Copyright 2019 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.bulk.computation;
+
+import static org.junit.Assert.assertEquals;
+import static org.nuxeo.ecm.core.bulk.computation.BulkScrollerComputation.getSliceQuery;
+
+import org.junit.Test;
+
+/**
+ * @since 11.1
+ */
+public class TestBulkScrollerComputation {
+
+    @Test
+    public void testSliceQueryWithoutWhere() {
+        assertEquals("SELECT * FROM Document WHERE ecm:uuid < '80000000-0000-0000-0000-000000000000'",
+                getSliceQuery("SELECT * FROM Document", 0, 2));
+        assertEquals("SELECT * FROM Document WHERE ecm:uuid >= '80000000-0000-0000-0000-000000000000'",
+                getSliceQuery("SELECT * FROM Document", 1, 2));
+    }
+
+    @Test
+    public void testSliceQueryWithWhere() {
+        assertEquals("SELECT * FROM File WHERE (ecm:uuid >= '55555555-0000-0000-0000-000000000000')"
+                + " AND (ecm:uuid < 'aaaaaaaa-0000-0000-0000-000000000000')" //
+                + " AND ((ecm:isTrashed = 0) OR (dc:title = 'foo'))",
+                getSliceQuery("SELECT * FROM File WHERE ecm:isTrashed = 0 OR dc:title = 'foo'", 1, 3));
+    }
+
+    @Test
+    public void testSliceQueryWithOrderBy() {
+        assertEquals("SELECT * FROM File WHERE (ecm:uuid < '40000000-0000-0000-0000-000000000000')"
+                + " AND (dc:title = 'x') ORDER BY dc:title",
+                getSliceQuery("SELECT * FROM File WHERE dc:title = 'x' ORDER BY dc:title", 0, 4));
+        assertEquals("SELECT * FROM File WHERE ecm:uuid >= 'c0000000-0000-0000-0000-000000000000'"
+                + " ORDER BY dc:title", getSliceQuery("SELECT * FROM File ORDER BY dc:title", 3, 4));
+    }
+
+    @Test
+    public void testSliceQueryKeywordsInLiterals() {
+        assertEquals("SELECT * FROM File WHERE (ecm:uuid < '80000000-0000-0000-0000-000000000000')"
+                + " AND (dc:title = 'a where b order \\'c\\'')",
+                getSliceQuery("select * from File where dc:title = 'a where b order \\'c\\''", 0, 2));
+    }
+
+    @Test
+    public void testSliceQueryKeywordsInIdentifiers() {
+        assertEquals("SELECT * FROM File WHERE (ecm:uuid < '80000000-0000-0000-0000-000000000000')"
+                + " AND (my:whereabouts = 'x') ORDER BY my:orderNumber LIMIT 10",
+                getSliceQuery("SELECT * FROM File WHERE my:whereabouts = 'x' ORDER BY my:orderNumber LIMIT 10", 0,
+                        2));
+    }
+
+}
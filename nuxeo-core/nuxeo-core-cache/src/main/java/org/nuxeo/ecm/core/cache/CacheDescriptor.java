@@ -55,6 +55,13 @@ public class CacheDescriptor implements Descriptor {
     /** @since 9.3 */
     public static final String OPTION_CONCURRENCY_LEVEL = "concurrencyLevel";
 
+    /**
+     * Maximum number of bytes the cache values may use, for caches bounded by size.
+     *
+     * @since 11.1
+     */
+    public static final String OPTION_MAX_BYTES = "maxBytes";
+
     @XNode("@name")
     public String name;
 
@@ -46,6 +46,24 @@ public interface CacheManagement extends Cache {
      */
     long getSize();
 
+    /**
+     * Returns the number of bytes used by the cache values, or {@code -1} if unknown.
+     *
+     * @since 11.1
+     */
+    default long getSizeInBytes() {
+        return -1;
+    }
+
+    /**
+     * Returns the number of entries evicted to make room for new ones, or {@code -1} if unknown.
+     *
+     * @since 11.1
+     */
+    default long getEvictionCount() {
+        return -1;
+    }
+
     /**
      * Stores a {@link Serializable} value into the cache locally. Does not propagate invalidations.
      *
@@ -44,6 +44,12 @@ public class CacheMetrics extends CacheWrapper {
 
     protected Gauge<Long> size;
 
+    // @since 11.1
+    protected Gauge<Long> bytes;
+
+    // @since 11.1
+    protected Gauge<Long> eviction;
+
     protected final String READ_HIT_NAME = nameOf("read-hit-counter");
 
     protected final String READ_HIT_RATIO_NAME = nameOf("read-hit-ratio");
@@ -58,6 +64,10 @@ public class CacheMetrics extends CacheWrapper {
 
     protected final String SIZE_NAME = nameOf("size");
 
+    protected final String BYTES_NAME = nameOf("bytes");
+
+    protected final String EVICTION_NAME = nameOf("eviction-counter");
+
     protected String nameOf(String name) {
         return MetricRegistry.name("nuxeo", "cache", getName(), name);
     }
@@ -89,6 +99,13 @@ public class CacheMetrics extends CacheWrapper {
                 return Long.valueOf(getSize());
             }
         });
+        // only for caches able to report them
+        if (getSizeInBytes() >= 0) {
+            registry.register(BYTES_NAME, bytes = this::getSizeInBytes);
+        }
+        if (getEvictionCount() >= 0) {
+            registry.register(EVICTION_NAME, eviction = this::getEvictionCount);
+        }
     }
 
     @Override
@@ -100,6 +117,8 @@ public class CacheMetrics extends CacheWrapper {
         registry.remove(WRITE_NAME);
         registry.remove(INVALIDATE_ALL_NAME);
         registry.remove(SIZE_NAME);
+        registry.remove(BYTES_NAME);
+        registry.remove(EVICTION_NAME);
     }
 
     @Override
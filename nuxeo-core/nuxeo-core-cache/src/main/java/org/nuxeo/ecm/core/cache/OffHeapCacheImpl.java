@@ -0,0 +1,542 @@
+/*
+ * (C) Copyright 2019 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.cache;
+
+import static org.nuxeo.ecm.core.cache.CacheDescriptor.OPTION_CONCURRENCY_LEVEL;
+import static org.nuxeo.ecm.core.cache.CacheDescriptor.OPTION_MAX_BYTES;
+import static org.nuxeo.ecm.core.cache.CacheDescriptor.OPTION_MAX_SIZE;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Cache implementation storing serialized values outside of the Java heap, bounded by a total number of bytes.
+ * <p>
+ * The cache is split into segments, each key belonging to one segment. Each segment has its own lock, its own LRU index
+ * and its own arena: a direct buffer allocated once when the cache is created, divided into fixed size blocks. Values
+ * are serialized into free blocks of their segment, and the blocks of evicted or invalidated values are put back in
+ * the free list and reused. The direct memory used by the cache is therefore {@code maxBytes}, allocated upfront, and
+ * never depends on garbage collections to be released; the direct memory available to the JVM must be sized
+ * accordingly ({@code -XX:MaxDirectMemorySize}).
+ * <p>
+ * When a segment is full, its least recently used entries are evicted, but a new entry is only admitted if it has been
+ * requested more frequently than the entries it would evict (W-TinyLFU-style admission). Access frequencies are
+ * approximated using a count-min sketch which is periodically aged.
+ * <p>
+ * Options:
+ * <ul>
+ * <li>{@code maxBytes}: the maximum total size of the serialized values, rounded to blocks (default 64 MB)</li>
+ * <li>{@code maxSize}: the maximum number of entries (default unbounded)</li>
+ * <li>{@code blockSize}: the size of the blocks the values are stored into (default 256 bytes)</li>
+ * <li>{@code concurrencyLevel}: the maximum number of segments (default 16), segments have at least 1 MB</li>
+ * </ul>
+ *
+ * @since 11.1
+ */
+public class OffHeapCacheImpl extends AbstractCache {
+
+    private static final Log log = LogFactory.getLog(OffHeapCacheImpl.class);
+
+    public static final String OPTION_BLOCK_SIZE = "blockSize";
+
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    public static final int DEFAULT_BLOCK_SIZE = 256;
+
+    public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    /** Minimum size of a segment, small caches have fewer segments so that large values still fit. */
+    protected static final long MIN_SEGMENT_BYTES = 1024L * 1024;
+
+    /** Maximum size of a single direct buffer of an arena. */
+    protected static final int MAX_SLAB_BYTES = 1 << 30;
+
+    /** Estimated average entry size, used to size the frequency sketch when the number of entries is unbounded. */
+    protected static final int ESTIMATED_ENTRY_BYTES = 1024;
+
+    protected final long maxBytes;
+
+    protected final long maxSize;
+
+    protected final int blockSize;
+
+    protected final long ttlMillis;
+
+    protected final Segment[] segments;
+
+    protected final LongAdder evictions = new LongAdder();
+
+    protected final LongAdder rejections = new LongAdder();
+
+    public OffHeapCacheImpl(CacheDescriptor desc) {
+        super(desc);
+        Map<String, String> options = desc.options;
+        maxBytes = options.containsKey(OPTION_MAX_BYTES) ? Long.parseLong(options.get(OPTION_MAX_BYTES))
+                : DEFAULT_MAX_BYTES;
+        maxSize = options.containsKey(OPTION_MAX_SIZE) ? Long.parseLong(options.get(OPTION_MAX_SIZE))
+                : Long.MAX_VALUE;
+        blockSize = options.containsKey(OPTION_BLOCK_SIZE) ? Integer.parseInt(options.get(OPTION_BLOCK_SIZE))
+                : DEFAULT_BLOCK_SIZE;
+        int concurrencyLevel = options.containsKey(OPTION_CONCURRENCY_LEVEL)
+                ? Integer.parseInt(options.get(OPTION_CONCURRENCY_LEVEL))
+                : DEFAULT_CONCURRENCY_LEVEL;
+        if (blockSize <= 0 || blockSize > MAX_SLAB_BYTES) {
+            throw new IllegalArgumentException("Invalid block size: " + blockSize + " for cache: " + name);
+        }
+        ttlMillis = TimeUnit.MINUTES.toMillis(desc.getTTL());
+        // power of two number of segments, each one big enough
+        int nbSegments = (int) Math.max(1, Math.min(concurrencyLevel, maxBytes / MIN_SEGMENT_BYTES));
+        nbSegments = Integer.highestOneBit(nbSegments);
+        long segmentBlocks = maxBytes / nbSegments / blockSize;
+        long segmentMaxSize = maxSize == Long.MAX_VALUE ? Long.MAX_VALUE : (maxSize + nbSegments - 1) / nbSegments;
+        segments = new Segment[nbSegments];
+        for (int i = 0; i < nbSegments; i++) {
+            segments[i] = new Segment(segmentBlocks, segmentMaxSize);
+        }
+    }
+
+    protected Segment segmentFor(String key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return segments[hash & (segments.length - 1)];
+    }
+
+    @Override
+    public Serializable get(String key) {
+        if (key == null) {
+            return null;
+        }
+        byte[] data = segmentFor(key).get(key);
+        // deserialize outside of the lock
+        return data == null ? null : SerializationUtils.deserialize(data);
+    }
+
+    @Override
+    public Set<String> keySet() {
+        Set<String> keys = new HashSet<>();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                keys.addAll(segment.entries.keySet());
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public void invalidate(String key) {
+        invalidateLocal(key);
+    }
+
+    @Override
+    public void invalidateLocal(String key) {
+        if (key != null) {
+            Segment segment = segmentFor(key);
+            synchronized (segment) {
+                segment.remove(key);
+            }
+        } else {
+            log.warn(String.format("Can't invalidate a null key for the cache '%s'!", name));
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        invalidateLocalAll();
+    }
+
+    @Override
+    public void invalidateLocalAll() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    @Override
+    public void put(String key, Serializable value) {
+        putLocal(key, value);
+    }
+
+    @Override
+    public void putLocal(String key, Serializable value) {
+        if (key == null || value == null) {
+            log.warn(String.format("Can't put a null key nor a null value in the cache '%s'!", name));
+            return;
+        }
+        // serialize outside of the lock
+        byte[] data = SerializationUtils.serialize(value);
+        if (!segmentFor(key).put(key, data)) {
+            rejections.increment();
+            if (log.isTraceEnabled()) {
+                log.trace(String.format("Entry '%s' of %d bytes not admitted in the cache '%s'", key, data.length,
+                        name));
+            }
+        }
+    }
+
+    @Override
+    public boolean hasEntry(String key) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            // containsKey doesn't change the access order
+            return segment.entries.containsKey(key);
+        }
+    }
+
+    @Override
+    public long getSize() {
+        long size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes of the blocks used by the stored values.
+     */
+    @Override
+    public long getSizeInBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                bytes += (long) segment.arena.getUsedBlocks() * blockSize;
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns the number of values that have not been stored because of the admission policy.
+     */
+    public long getRejectionCount() {
+        return rejections.sum();
+    }
+
+    /**
+     * A part of the cache, with its own LRU index, frequency sketch and arena, guarded by itself.
+     */
+    protected class Segment {
+
+        // access ordered: the first entry is the least recently used one
+        protected final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        protected final FrequencySketch sketch;
+
+        protected final Arena arena;
+
+        protected final long maxSize;
+
+        protected Segment(long blocks, long maxSize) {
+            this.maxSize = maxSize;
+            arena = new Arena(blocks);
+            sketch = new FrequencySketch(Math.min(maxSize, blocks * blockSize / ESTIMATED_ENTRY_BYTES));
+        }
+
+        protected synchronized byte[] get(String key) {
+            sketch.increment(key);
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.isExpired(System.currentTimeMillis())) {
+                remove(key);
+                return null;
+            }
+            // the blocks may be reused as soon as the lock is released, copy them now
+            return arena.read(entry.blocks, entry.length);
+        }
+
+        protected synchronized boolean put(String key, byte[] data) {
+            sketch.increment(key);
+            // the previous value is stale in any case
+            remove(key);
+            int nbBlocks = (data.length + blockSize - 1) / blockSize;
+            if (!makeRoom(key, nbBlocks)) {
+                return false;
+            }
+            int[] blocks = arena.allocate(nbBlocks);
+            arena.write(blocks, data);
+            entries.put(key, new Entry(blocks, data.length, System.currentTimeMillis()));
+            return true;
+        }
+
+        /**
+         * Evicts the least recently used entries until there are enough free blocks for the candidate. Must be called
+         * with the lock held.
+         * <p>
+         * The admission is decided before evicting anything, so that a rejected candidate leaves the cache unchanged.
+         *
+         * @return {@code false} if the candidate must not be admitted
+         */
+        protected boolean makeRoom(String candidate, int nbBlocks) {
+            if (nbBlocks > arena.getCapacity() || maxSize <= 0) {
+                return false;
+            }
+            long now = System.currentTimeMillis();
+            int candidateFrequency = sketch.frequency(candidate);
+            // first find the victims, in least recently used order
+            List<String> victims = new ArrayList<>();
+            long freeBlocks = arena.getFreeBlocks();
+            int remainingSize = entries.size();
+            Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+            while ((freeBlocks < nbBlocks || remainingSize >= maxSize) && it.hasNext()) {
+                Map.Entry<String, Entry> victim = it.next();
+                if (!victim.getValue().isExpired(now) && sketch.frequency(victim.getKey()) > candidateFrequency) {
+                    // the victim is more popular than the candidate, keep it and don't admit the candidate
+                    return false;
+                }
+                victims.add(victim.getKey());
+                freeBlocks += victim.getValue().blocks.length;
+                remainingSize--;
+            }
+            // then evict them, the candidate is admitted
+            for (String victim : victims) {
+                remove(victim);
+                evictions.increment();
+            }
+            return true;
+        }
+
+        /**
+         * Removes an entry and frees its blocks. Must be called with the lock held.
+         */
+        protected void remove(String key) {
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                arena.free(entry.blocks);
+            }
+        }
+
+        /**
+         * Removes all the entries. Must be called with the lock held.
+         */
+        protected void clear() {
+            entries.clear();
+            arena.reset();
+        }
+    }
+
+    /**
+     * Fixed size blocks carved out of direct buffers allocated once, with a free list of block numbers. Not thread
+     * safe, guarded by the lock of its segment.
+     */
+    protected class Arena {
+
+        protected final ByteBuffer[] slabs;
+
+        protected final int blocksPerSlab;
+
+        protected final int capacity;
+
+        // stack of the free block numbers
+        protected final int[] freeList;
+
+        protected int freeCount;
+
+        protected Arena(long blocks) {
+            if (blocks > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many blocks: " + blocks + " for cache: " + name
+                        + ", increase the block size or the concurrency level");
+            }
+            capacity = (int) blocks;
+            blocksPerSlab = MAX_SLAB_BYTES / blockSize;
+            int nbSlabs = (capacity + blocksPerSlab - 1) / blocksPerSlab;
+            slabs = new ByteBuffer[nbSlabs];
+            for (int i = 0; i < nbSlabs; i++) {
+                int slabBlocks = Math.min(blocksPerSlab, capacity - i * blocksPerSlab);
+                slabs[i] = ByteBuffer.allocateDirect(slabBlocks * blockSize);
+            }
+            freeList = new int[capacity];
+            reset();
+        }
+
+        protected int getCapacity() {
+            return capacity;
+        }
+
+        protected int getFreeBlocks() {
+            return freeCount;
+        }
+
+        protected int getUsedBlocks() {
+            return capacity - freeCount;
+        }
+
+        protected void reset() {
+            // lowest block numbers on top of the stack
+            for (int i = 0; i < capacity; i++) {
+                freeList[i] = capacity - 1 - i;
+            }
+            freeCount = capacity;
+        }
+
+        protected int[] allocate(int nbBlocks) {
+            int[] blocks = new int[nbBlocks];
+            for (int i = 0; i < nbBlocks; i++) {
+                blocks[i] = freeList[--freeCount];
+            }
+            return blocks;
+        }
+
+        protected void free(int[] blocks) {
+            for (int block : blocks) {
+                freeList[freeCount++] = block;
+            }
+        }
+
+        protected void write(int[] blocks, byte[] data) {
+            int offset = 0;
+            for (int block : blocks) {
+                int length = Math.min(blockSize, data.length - offset);
+                ByteBuffer slab = position(block);
+                slab.put(data, offset, length);
+                offset += length;
+            }
+        }
+
+        protected byte[] read(int[] blocks, int totalLength) {
+            byte[] data = new byte[totalLength];
+            int offset = 0;
+            for (int block : blocks) {
+                int length = Math.min(blockSize, totalLength - offset);
+                ByteBuffer slab = position(block);
+                slab.get(data, offset, length);
+                offset += length;
+            }
+            return data;
+        }
+
+        protected ByteBuffer position(int block) {
+            ByteBuffer slab = slabs[block / blocksPerSlab];
+            slab.clear();
+            slab.position((block % blocksPerSlab) * blockSize);
+            return slab;
+        }
+    }
+
+    protected class Entry {
+
+        protected final int[] blocks;
+
+        protected final int length;
+
+        protected final long writeTime;
+
+        protected Entry(int[] blocks, int length, long writeTime) {
+            this.blocks = blocks;
+            this.length = length;
+            this.writeTime = writeTime;
+        }
+
+        protected boolean isExpired(long now) {
+            return now - writeTime >= ttlMillis;
+        }
+    }
+
+    /**
+     * Count-min sketch of 4 bits counters estimating the access frequency of the keys. The counters are halved once
+     * the number of increments reaches 10 times the width, so that the popularity of old entries decays. Not thread
+     * safe.
+     */
+    protected static class FrequencySketch {
+
+        protected static final int MIN_WIDTH = 256;
+
+        protected static final int MAX_WIDTH = 1 << 20;
+
+        protected static final int MAX_COUNT = 15;
+
+        protected static final int[] SEEDS = { 0x97cb3127, 0xb4f9a1d1, 0x2c1b3c6d, 0x297a2d39 };
+
+        protected final byte[][] table;
+
+        protected final int mask;
+
+        protected final int sampleSize;
+
+        protected int additions;
+
+        protected FrequencySketch(long expectedEntries) {
+            int width = (int) Math.max(MIN_WIDTH, Math.min(MAX_WIDTH, expectedEntries));
+            width = Integer.highestOneBit(width - 1) << 1;
+            table = new byte[SEEDS.length][width];
+            mask = width - 1;
+            sampleSize = 10 * width;
+        }
+
+        protected int indexOf(String key, int row) {
+            int hash = key.hashCode() * SEEDS[row];
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+
+        protected void increment(String key) {
+            boolean added = false;
+            for (int row = 0; row < table.length; row++) {
+                int i = indexOf(key, row);
+                if (table[row][i] < MAX_COUNT) {
+                    table[row][i]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        protected int frequency(String key) {
+            int frequency = MAX_COUNT;
+            for (int row = 0; row < table.length; row++) {
+                frequency = Math.min(frequency, table[row][indexOf(key, row)]);
+            }
+            return frequency;
+        }
+
+        protected void reset() {
+            for (byte[] counters : table) {
+                for (int i = 0; i < counters.length; i++) {
+                    counters[i] >>= 1;
+                }
+            }
+            additions /= 2;
+        }
+    }
+
+}
@@ -0,0 +1,196 @@
+/*
+ * (C) Copyright 2019 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.runtime.metrics.MetricsService;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+
+/**
+ * @since 11.1
+ */
+@RunWith(FeaturesRunner.class)
+@Features(OffHeapCacheFeature.class)
+public class TestOffHeapCacheService {
+
+    @Inject
+    @Named(CacheFeature.DEFAULT_TEST_CACHE_NAME)
+    Cache defaultCache;
+
+    @Test
+    public void getOffHeapCache() {
+        OffHeapCacheImpl cache = CacheFeature.unwrapImpl(OffHeapCacheImpl.class, defaultCache);
+        assertNotNull(cache);
+        // the feature has put a value
+        assertEquals(1, cache.getSize());
+        assertTrue(cache.getSizeInBytes() > 0);
+    }
+
+    @Test
+    public void valueIsACopy() {
+        ArrayList<String> list = new ArrayList<>();
+        list.add("foo");
+        defaultCache.put("list", list);
+        list.add("bar");
+        @SuppressWarnings("unchecked")
+        List<String> cached = (List<String>) defaultCache.get("list");
+        assertEquals(1, cached.size());
+    }
+
+    @Test
+    public void maxBytesExceeded() {
+        OffHeapCacheImpl cache = CacheFeature.unwrapImpl(OffHeapCacheImpl.class, defaultCache);
+        // a value bigger than the cache is never stored
+        defaultCache.put("big", StringUtils.repeat('x', 2048));
+        assertNull(defaultCache.get("big"));
+        // fill the cache with values of about 200 bytes, older values are evicted
+        for (int i = 0; i < 20; i++) {
+            defaultCache.put("key" + i, StringUtils.repeat('x', 200));
+        }
+        assertTrue(cache.getSizeInBytes() <= 1024);
+        assertTrue(cache.getEvictionCount() > 0);
+        assertNotNull(defaultCache.get("key19"));
+        assertNull(defaultCache.get("key0"));
+    }
+
+    @Test
+    public void frequentEntriesAreKept() {
+        OffHeapCacheImpl cache = CacheFeature.unwrapImpl(OffHeapCacheImpl.class, defaultCache);
+        defaultCache.invalidateAll();
+        for (int i = 0; i < 4; i++) {
+            defaultCache.put("hot" + i, StringUtils.repeat('x', 200));
+        }
+        for (int n = 0; n < 5; n++) {
+            for (int i = 0; i < 4; i++) {
+                assertNotNull(defaultCache.get("hot" + i));
+            }
+        }
+        // a one-hit entry doesn't replace frequently read entries
+        defaultCache.put("cold", StringUtils.repeat('x', 200));
+        assertFalse(defaultCache.hasEntry("cold"));
+        assertTrue(cache.getRejectionCount() > 0);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(defaultCache.hasEntry("hot" + i));
+        }
+    }
+
+    @Test
+    public void rejectedEntryEvictsNothing() {
+        OffHeapCacheImpl cache = CacheFeature.unwrapImpl(OffHeapCacheImpl.class, defaultCache);
+        defaultCache.invalidateAll();
+        // one cold entry that could be evicted, then frequently read entries filling the rest of the cache
+        defaultCache.put("lru", StringUtils.repeat('x', 200));
+        for (int i = 0; i < 3; i++) {
+            defaultCache.put("hot" + i, StringUtils.repeat('x', 200));
+        }
+        for (int n = 0; n < 5; n++) {
+            for (int i = 0; i < 3; i++) {
+                assertNotNull(defaultCache.get("hot" + i));
+            }
+        }
+        long size = cache.getSize();
+        long bytes = cache.getSizeInBytes();
+        long evictions = cache.getEvictionCount();
+        // the candidate needs more than the cold entry, it is rejected and the cold entry must not be evicted
+        defaultCache.put("cold", StringUtils.repeat('x', 400));
+        assertFalse(defaultCache.hasEntry("cold"));
+        assertTrue(defaultCache.hasEntry("lru"));
+        assertEquals(size, cache.getSize());
+        assertEquals(bytes, cache.getSizeInBytes());
+        assertEquals(evictions, cache.getEvictionCount());
+    }
+
+    @Test
+    public void invalidateAllReleasesBytes() {
+        OffHeapCacheImpl cache = CacheFeature.unwrapImpl(OffHeapCacheImpl.class, defaultCache);
+        defaultCache.put("key2", "val2");
+        defaultCache.invalidateAll();
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getSizeInBytes());
+    }
+
+    @Test
+    public void blocksAreReused() throws Exception {
+        OffHeapCacheImpl cache = CacheFeature.unwrapImpl(OffHeapCacheImpl.class, defaultCache);
+        defaultCache.invalidateAll();
+        int nbThreads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < nbThreads; t++) {
+            String prefix = "thread" + t + "-";
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    String key = prefix + (i % 10);
+                    String value = key + StringUtils.repeat('x', i % 300);
+                    defaultCache.put(key, value);
+                    Serializable cached = defaultCache.get(key);
+                    // the value may have been evicted by another thread but never overwritten
+                    if (cached != null) {
+                        assertEquals(value, cached);
+                    }
+                    if (i % 7 == 0) {
+                        defaultCache.invalidate(key);
+                    }
+                }
+            }));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        assertTrue(cache.getSizeInBytes() <= 1024);
+        defaultCache.invalidateAll();
+        assertEquals(0, cache.getSizeInBytes());
+        // all the blocks are free again
+        defaultCache.put("key", StringUtils.repeat('x', 900));
+        assertNotNull(defaultCache.get("key"));
+    }
+
+    @Test
+    public void hasSizeMetrics() {
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        assertTrue(registry.getGauges().containsKey("nuxeo.cache.default-test-cache.bytes"));
+        assertTrue(registry.getGauges().containsKey("nuxeo.cache.default-test-cache.eviction-counter"));
+    }
+
+}
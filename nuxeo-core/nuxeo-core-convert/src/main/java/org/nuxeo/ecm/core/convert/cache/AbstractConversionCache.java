@@ -0,0 +1,89 @@
+/*
+ * (C) Copyright 2019 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.convert.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
+
+/**
+ * Base class for a {@link ConversionCache}, making sure that concurrent calls for the same key on this node only do
+ * the conversion once.
+ *
+ * @since 11.1
+ */
+public abstract class AbstractConversionCache implements ConversionCache {
+
+    /** Conversions in progress on this node, completed once their result is cached. */
+    protected final ConcurrentMap<String, CompletableFuture<Void>> inFlightConversions = new ConcurrentHashMap<>();
+
+    @Override
+    public BlobHolder getOrConvert(String key, Supplier<BlobHolder> conversion) {
+        BlobHolder result = get(key);
+        if (result != null) {
+            return result;
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        CompletableFuture<Void> inFlight = inFlightConversions.putIfAbsent(key, future);
+        if (inFlight != null) {
+            // the same conversion is in progress in another thread, wait for it and use its cached result
+            inFlight.join();
+            result = get(key);
+            if (result != null) {
+                return result;
+            }
+            // the other conversion failed or its result could not be cached
+            return conversion.get();
+        }
+        try {
+            // check again, the same conversion may just have completed
+            result = get(key);
+            if (result != null) {
+                return result;
+            }
+            return convertAndPut(key, conversion);
+        } finally {
+            inFlightConversions.remove(key, future);
+            future.complete(null);
+        }
+    }
+
+    /**
+     * Gets the cached result of a conversion.
+     *
+     * @param key the cache key
+     * @return the conversion result, or {@code null} if not cached
+     */
+    protected abstract BlobHolder get(String key);
+
+    /**
+     * Does a conversion and caches its result.
+     * <p>
+     * Called by at most one thread at a time for a given key on this node.
+     *
+     * @param key the cache key
+     * @param conversion the conversion
+     * @return the conversion result
+     */
+    protected abstract BlobHolder convertAndPut(String key, Supplier<BlobHolder> conversion);
+
+}
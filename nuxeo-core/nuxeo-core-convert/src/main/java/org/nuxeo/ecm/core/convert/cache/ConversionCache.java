@@ -0,0 +1,67 @@
+/*
+ * (C) Copyright 2019 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.convert.cache;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
+import org.nuxeo.ecm.core.convert.api.ConversionService;
+
+/**
+ * Cache for the results of the {@link ConversionService}.
+ * <p>
+ * The cache implementation is configured on the {@code configuration} extension point of the conversion service,
+ * along with its properties.
+ *
+ * @since 11.1
+ */
+public interface ConversionCache {
+
+    /**
+     * Initializes this cache.
+     *
+     * @param properties the cache properties
+     */
+    void initialize(Map<String, String> properties);
+
+    /**
+     * Gets the cached result of a conversion, or does the conversion and caches its result.
+     * <p>
+     * Concurrent calls for the same key only do the conversion once, as far as the implementation allows.
+     *
+     * @param key the cache key, as computed by {@link CacheKeyGenerator}
+     * @param conversion the conversion to do if its result is not cached
+     * @return the conversion result
+     */
+    BlobHolder getOrConvert(String key, Supplier<BlobHolder> conversion);
+
+    /**
+     * Evicts the least recently used entries if the cache is bigger than its maximum size.
+     *
+     * @return {@code true} if entries were evicted
+     */
+    boolean gcIfNeeded();
+
+    /**
+     * Closes this cache.
+     */
+    void close();
+
+}
@@ -42,7 +42,10 @@ public class GCTask implements Runnable {
     public void run() {
         log.debug("starting GC thread");
         while (GCEnabled) {
-            ConversionCacheGCManager.gcIfNeeded();
+            ConversionCache conversionCache = ConversionServiceImpl.getConversionCache();
+            if (conversionCache != null) {
+                conversionCache.gcIfNeeded();
+            }
             try {
                 long gcInterval = ConversionServiceImpl.getGCIntervalInMinutes();
 
@@ -0,0 +1,478 @@
+/*
+ * (C) Copyright 2019 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.convert.cache;
+
+import static org.apache.commons.lang3.StringUtils.defaultIfBlank;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
+import org.nuxeo.ecm.core.api.blobholder.SimpleBlobHolder;
+import org.nuxeo.ecm.core.blob.BlobInfo;
+import org.nuxeo.ecm.core.blob.BlobManager;
+import org.nuxeo.ecm.core.blob.BlobManagerComponent;
+import org.nuxeo.ecm.core.blob.BlobProvider;
+import org.nuxeo.ecm.core.blob.binary.BinaryGarbageCollector;
+import org.nuxeo.ecm.core.blob.binary.BinaryManager;
+import org.nuxeo.ecm.core.convert.service.ConversionServiceImpl;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.kv.KeyValueService;
+import org.nuxeo.runtime.kv.KeyValueStore;
+import org.nuxeo.runtime.kv.KeyValueStoreProvider;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * {@link ConversionCache} shared by all the nodes of a cluster, storing the conversion results using a Blob Provider
+ * and indexing them in a Key/Value store.
+ * <p>
+ * Entries are addressed by a digest of the cache key. While a node does a conversion it holds a lock on the entry, and
+ * other nodes needing the same conversion wait for its result instead of doing the conversion themselves.
+ * <p>
+ * When the total size of the cached blobs exceeds the configured {@code diskCacheSize}, the least recently used entries
+ * are evicted, and the blobs not referenced anymore are then garbage collected from the blob provider.
+ * <p>
+ * This cache is configured with the following properties:
+ * <ul>
+ * <li><em>keyValueStore</em>: the name of the key/value store to use. The default is "convert".
+ * <li><em>blobProvider</em>: the name of the blob provider to use, which must be transient. The default is
+ * "transient_convert".
+ * <li><em>defaultBlobProvider</em>: if the configured or defaulted blob provider doesn't exist, a namespaced copy of
+ * this one will be used instead. The default is "default".
+ * <li><em>lockTTL</em>: the maximum time in seconds a node waits for a conversion done by another node. The default is
+ * 300.
+ * </ul>
+ * <p>
+ * The storage format is the following:
+ *
+ * <pre>
+ *   __size__:      storage size; the total size of the cached blobs, recomputed after each eviction
+ *
+ *   __gclock__:    present while a node is evicting entries, holds a token unique to the lock owner
+ *
+ *   digest.entry:  {"blobs": [{"key": key in blob provider for first blob,
+ *                              "mimetype": MIME Type,
+ *                              "encoding": encoding,
+ *                              "filename": filename,
+ *                              "length": length,
+ *                              "digest": digest},
+ *                             {...} same for second blob,
+ *                             ...],
+ *                   "size": storage size of the blobs,
+ *                   "time": time in milliseconds taken by the conversion}
+ *   digest.access: last access time in milliseconds
+ *   digest.lock:   present while a node is doing the conversion, holds a token unique to the lock owner
+ * </pre>
+ *
+ * @since 11.1
+ */
+public class KeyValueBlobConversionCache extends AbstractConversionCache {
+
+    private static final Logger log = LogManager.getLogger(KeyValueBlobConversionCache.class);
+
+    public static final String CONFIG_KEY_VALUE_STORE = "keyValueStore";
+
+    public static final String CONFIG_KEY_VALUE_STORE_DEFAULT = "convert";
+
+    public static final String CONFIG_BLOB_PROVIDER = "blobProvider";
+
+    public static final String CONFIG_BLOB_PROVIDER_DEFAULT = BlobManagerComponent.TRANSIENT_ID_PREFIX + "_convert";
+
+    public static final String CONFIG_DEFAULT_BLOB_PROVIDER = "defaultBlobProvider";
+
+    public static final String CONFIG_DEFAULT_BLOB_PROVIDER_DEFAULT = "default";
+
+    public static final String CONFIG_LOCK_TTL = "lockTTL";
+
+    public static final int CONFIG_LOCK_TTL_DEFAULT = 300; // 5 min
+
+    public static final String SEP = ".";
+
+    public static final String STORAGE_SIZE = "__size__";
+
+    public static final String GC_LOCK = "__gclock__";
+
+    public static final String DOT_ENTRY = SEP + "entry";
+
+    public static final String DOT_ACCESS = SEP + "access";
+
+    public static final String DOT_LOCK = SEP + "lock";
+
+    public static final String BLOBS = "blobs";
+
+    public static final String SIZE = "size";
+
+    public static final String TIME = "time";
+
+    public static final String KEY = "key";
+
+    public static final String MIMETYPE = "mimetype";
+
+    public static final String ENCODING = "encoding";
+
+    public static final String FILENAME = "filename";
+
+    public static final String LENGTH = "length";
+
+    public static final String DIGEST = "digest";
+
+    protected static final long LOCK_POLL_MAX_SLEEP = 1000; // ms
+
+    protected String keyValueStoreName;
+
+    protected String blobProviderId;
+
+    protected String defaultBlobProviderId;
+
+    protected int lockTTL;
+
+    protected ObjectMapper mapper;
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    protected Counter hitCount;
+
+    protected Counter missCount;
+
+    protected Counter evictionCount;
+
+    /** Total time in milliseconds saved by using cached results instead of doing the conversions again. */
+    protected Counter timeSaved;
+
+    @Override
+    public void initialize(Map<String, String> properties) {
+        keyValueStoreName = defaultIfBlank(properties.get(CONFIG_KEY_VALUE_STORE), CONFIG_KEY_VALUE_STORE_DEFAULT);
+        blobProviderId = defaultIfBlank(properties.get(CONFIG_BLOB_PROVIDER), CONFIG_BLOB_PROVIDER_DEFAULT);
+        defaultBlobProviderId = defaultIfBlank(properties.get(CONFIG_DEFAULT_BLOB_PROVIDER),
+                CONFIG_DEFAULT_BLOB_PROVIDER_DEFAULT);
+        String lockTTLStr = properties.get(CONFIG_LOCK_TTL);
+        lockTTL = lockTTLStr == null ? CONFIG_LOCK_TTL_DEFAULT : Integer.parseInt(lockTTLStr);
+        mapper = new ObjectMapper();
+        hitCount = registry.counter(metricName("hit"));
+        missCount = registry.counter(metricName("miss"));
+        evictionCount = registry.counter(metricName("eviction"));
+        timeSaved = registry.counter(metricName("time-saved"));
+    }
+
+    protected String metricName(String name) {
+        return MetricRegistry.name("nuxeo", "conversions", "cache", name);
+    }
+
+    protected KeyValueStore getKeyValueStore() {
+        return Framework.getService(KeyValueService.class).getKeyValueStore(keyValueStoreName);
+    }
+
+    protected BlobProvider getBlobProvider() {
+        BlobProvider blobProvider = Framework.getService(BlobManager.class)
+                                             .getBlobProviderWithNamespace(blobProviderId, defaultBlobProviderId);
+        if (blobProvider == null) {
+            throw new NuxeoException("No blob provider with id: " + blobProviderId);
+        }
+        if (!blobProvider.isTransient()) {
+            throw new NuxeoException("Blob provider: " + blobProviderId
+                    + " used for the conversion cache must be configured as transient");
+        }
+        return blobProvider;
+    }
+
+    /** The entries are addressed by a digest of the cache key, which may be long. */
+    protected String getEntryId(String key) {
+        return DigestUtils.sha256Hex(key);
+    }
+
+    @Override
+    protected BlobHolder get(String key) {
+        String id = getEntryId(key);
+        KeyValueStore kvs = getKeyValueStore();
+        Map<String, Object> entry = jsonToMap(kvs.getString(id + DOT_ENTRY));
+        if (entry == null) {
+            return null;
+        }
+        List<Blob> blobs = readBlobs(entry);
+        if (blobs == null) {
+            return null;
+        }
+        kvs.put(id + DOT_ACCESS, Long.valueOf(System.currentTimeMillis()));
+        hitCount.inc();
+        timeSaved.inc(getLong(entry, TIME));
+        return new SimpleBlobHolder(blobs);
+    }
+
+    @Override
+    protected BlobHolder convertAndPut(String key, Supplier<BlobHolder> conversion) {
+        String id = getEntryId(key);
+        KeyValueStore kvs = getKeyValueStore();
+        String lockKey = id + DOT_LOCK;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(lockTTL);
+        long sleep = 10; // ms
+        // the lock may expire and be taken by another node, only release it if we still own it
+        String lockToken = UUID.randomUUID().toString();
+        while (!kvs.compareAndSet(lockKey, null, lockToken, lockTTL)) {
+            // the same conversion is in progress on another node, wait for its result
+            if (System.nanoTime() > deadline) {
+                log.debug("Timed out waiting for conversion: {} on another node", key);
+                missCount.inc();
+                return conversion.get();
+            }
+            try {
+                Thread.sleep(sleep);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new NuxeoException(e);
+            }
+            sleep = Math.min(sleep * 2, LOCK_POLL_MAX_SLEEP);
+            BlobHolder result = get(key);
+            if (result != null) {
+                return result;
+            }
+        }
+        try {
+            // check again, the other node may have released the lock just after caching its result
+            BlobHolder result = get(key);
+            if (result != null) {
+                return result;
+            }
+            missCount.inc();
+            long start = System.currentTimeMillis();
+            result = conversion.get();
+            long time = System.currentTimeMillis() - start;
+            if (result != null) {
+                put(id, result, time, kvs);
+            }
+            return result;
+        } finally {
+            kvs.compareAndSet(lockKey, lockToken, null);
+        }
+    }
+
+    protected void put(String id, BlobHolder result, long time, KeyValueStore kvs) {
+        List<Blob> blobs = result.getBlobs();
+        if (blobs == null || blobs.isEmpty()) {
+            return;
+        }
+        BlobProvider bp = getBlobProvider();
+        long totalSize = 0;
+        List<Map<String, String>> blobMaps = new ArrayList<>(blobs.size());
+        for (Blob blob : blobs) {
+            long size = blob.getLength();
+            if (size >= 0) {
+                totalSize += size;
+            }
+            String blobKey;
+            try {
+                blobKey = bp.writeBlob(blob);
+            } catch (IOException e) {
+                log.warn("Cannot cache conversion result", e);
+                return;
+            }
+            Map<String, String> blobMap = new HashMap<>();
+            blobMap.put(KEY, blobKey);
+            blobMap.put(MIMETYPE, blob.getMimeType());
+            blobMap.put(ENCODING, blob.getEncoding());
+            blobMap.put(FILENAME, blob.getFilename());
+            blobMap.put(LENGTH, String.valueOf(size));
+            blobMap.put(DIGEST, blob.getDigest());
+            blobMaps.add(blobMap);
+        }
+        Map<String, Object> entry = new HashMap<>();
+        entry.put(BLOBS, blobMaps);
+        entry.put(SIZE, Long.valueOf(totalSize));
+        entry.put(TIME, Long.valueOf(time));
+        kvs.put(id + DOT_ACCESS, Long.valueOf(System.currentTimeMillis()));
+        // the entry is written last, its presence marks the entry existence
+        kvs.put(id + DOT_ENTRY, toJson(entry));
+        kvs.addAndGet(STORAGE_SIZE, totalSize);
+    }
+
+    /**
+     * Reads the blobs of an entry.
+     *
+     * @return the blobs, or {@code null} if some of them were removed from the blob provider
+     */
+    protected List<Blob> readBlobs(Map<String, Object> entry) {
+        BlobProvider bp = getBlobProvider();
+        List<Blob> blobs = new ArrayList<>();
+        for (Map<String, String> blobMap : getBlobMaps(entry)) {
+            BlobInfo blobInfo = new BlobInfo();
+            blobInfo.key = blobMap.get(KEY);
+            blobInfo.mimeType = blobMap.get(MIMETYPE);
+            blobInfo.encoding = blobMap.get(ENCODING);
+            blobInfo.filename = blobMap.get(FILENAME);
+            String lengthStr = blobMap.get(LENGTH);
+            blobInfo.length = lengthStr == null ? null : Long.valueOf(lengthStr);
+            blobInfo.digest = blobMap.get(DIGEST);
+            try {
+                blobs.add(bp.readBlob(blobInfo));
+            } catch (IOException e) {
+                // the blob was removed from the blob provider, maybe by a concurrent eviction
+                log.debug("Failed to read blob: {} in blob provider: {} for the conversion cache", blobInfo.key,
+                        blobProviderId);
+                return null;
+            }
+        }
+        return blobs;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected List<Map<String, String>> getBlobMaps(Map<String, Object> entry) {
+        List<Map<String, String>> blobMaps = (List<Map<String, String>>) entry.get(BLOBS);
+        return blobMaps == null ? Collections.emptyList() : blobMaps;
+    }
+
+    @Override
+    public boolean gcIfNeeded() {
+        KeyValueStore kvs = getKeyValueStore();
+        Long sizeL = kvs.getLong(STORAGE_SIZE);
+        long size = sizeL == null ? 0 : sizeL.longValue();
+        long limit = ConversionServiceImpl.getMaxCacheSizeInKB() * 1024L;
+        if (limit >= 0 && size <= limit) {
+            return false;
+        }
+        // only one node evicts entries at a given time
+        String lockToken = UUID.randomUUID().toString();
+        if (!kvs.compareAndSet(GC_LOCK, null, lockToken, lockTTL)) {
+            return false;
+        }
+        try {
+            // mainly for testing : negative limit means cleanup everything
+            long delta = limit < 0 ? size : size - limit;
+            log.debug("Evicting {} bytes from the conversion cache", delta);
+            evict(delta, kvs);
+            collectBlobs(kvs);
+        } finally {
+            kvs.compareAndSet(GC_LOCK, lockToken, null);
+        }
+        return true;
+    }
+
+    protected List<String> getEntryIds(KeyValueStore kvs) {
+        int len = DOT_ENTRY.length();
+        return ((KeyValueStoreProvider) kvs).keyStream()
+                                            .filter(key -> key.endsWith(DOT_ENTRY))
+                                            .map(key -> key.substring(0, key.length() - len))
+                                            .collect(Collectors.toList());
+    }
+
+    /**
+     * Removes the least recently used entries until at least the given size has been freed.
+     */
+    protected void evict(long delta, KeyValueStore kvs) {
+        List<String> ids = getEntryIds(kvs);
+        Map<String, Long> accessTimes = kvs.getLongs(
+                ids.stream().map(id -> id + DOT_ACCESS).collect(Collectors.toList()));
+        ids.sort(Comparator.comparing(id -> accessTimes.getOrDefault(id + DOT_ACCESS, Long.valueOf(0))));
+        long freed = 0;
+        for (String id : ids) {
+            if (freed >= delta) {
+                break;
+            }
+            Map<String, Object> entry = jsonToMap(kvs.getString(id + DOT_ENTRY));
+            if (entry == null) {
+                continue;
+            }
+            kvs.put(id + DOT_ENTRY, (String) null);
+            kvs.put(id + DOT_ACCESS, (String) null);
+            freed += getLong(entry, SIZE);
+            evictionCount.inc();
+        }
+    }
+
+    /**
+     * Garbage collects the blobs not referenced anymore by an entry, and recomputes the exact storage size.
+     */
+    protected void collectBlobs(KeyValueStore kvs) {
+        List<Map<String, Object>> entries = new ArrayList<>();
+        for (String id : getEntryIds(kvs)) {
+            Map<String, Object> entry = jsonToMap(kvs.getString(id + DOT_ENTRY));
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        BinaryManager binaryManager = getBlobProvider().getBinaryManager();
+        if (binaryManager != null) {
+            BinaryGarbageCollector gc = binaryManager.getGarbageCollector();
+            boolean delete = false;
+            gc.start();
+            try {
+                entries.stream()
+                       .map(this::getBlobMaps)
+                       .flatMap(List::stream)
+                       .map(blobMap -> blobMap.get(KEY))
+                       .forEach(gc::mark);
+                delete = true;
+            } finally {
+                // don't delete if there's an exception, but still stop the GC
+                gc.stop(delete);
+            }
+        }
+        long size = entries.stream().mapToLong(entry -> getLong(entry, SIZE)).sum();
+        kvs.put(STORAGE_SIZE, Long.valueOf(size));
+    }
+
+    @Override
+    public void close() {
+        // nothing to do, the cache is shared with other nodes
+    }
+
+    protected static long getLong(Map<String, Object> map, String key) {
+        Object value = map.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    protected String toJson(Map<String, Object> map) {
+        try {
+            return mapper.writeValueAsString(map);
+        } catch (IOException e) {
+            throw new NuxeoException(e);
+        }
+    }
+
+    protected Map<String, Object> jsonToMap(String json) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            return mapper.readValue(json, new TypeReference<Map<String, Object>>() {
+            });
+        } catch (IOException e) {
+            throw new NuxeoException(e);
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * (C) Copyright 2019 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.convert.cache;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
+
+/**
+ * Default {@link ConversionCache}, storing the results in the local caching directory through the
+ * {@link ConversionCacheHolder}, and evicting them with the {@link ConversionCacheGCManager}.
+ *
+ * @since 11.1
+ */
+public class LocalConversionCache extends AbstractConversionCache {
+
+    @Override
+    public void initialize(Map<String, String> properties) {
+        // nothing to do
+    }
+
+    @Override
+    protected BlobHolder get(String key) {
+        BlobHolder result = ConversionCacheHolder.getFromCache(key);
+        if (result != null && result.getBlobs() != null && result.getBlobs().size() == 1) {
+            // we need to reset the filename if result is a single file from the cache because the name is just a hash
+            result.getBlob().setFilename(null);
+        }
+        return result;
+    }
+
+    @Override
+    protected BlobHolder convertAndPut(String key, Supplier<BlobHolder> conversion) {
+        BlobHolder result = conversion.get();
+        if (result != null) {
+            ConversionCacheHolder.addToCache(key, result);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean gcIfNeeded() {
+        return ConversionCacheGCManager.gcIfNeeded();
+    }
+
+    @Override
+    public void close() {
+        ConversionCacheHolder.deleteCache();
+    }
+
+}
@@ -23,12 +23,17 @@ package org.nuxeo.ecm.core.convert.extension;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.commons.io.FileUtils;
 import org.nuxeo.common.Environment;
 import org.nuxeo.common.xmap.annotation.XNode;
+import org.nuxeo.common.xmap.annotation.XNodeMap;
 import org.nuxeo.common.xmap.annotation.XObject;
 import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.convert.cache.ConversionCache;
+import org.nuxeo.ecm.core.convert.cache.LocalConversionCache;
 
 /**
  * XMap Descriptor for the {@link org.nuxeo.ecm.core.convert.api.ConversionService} configuration.
@@ -46,6 +51,9 @@ public class GlobalConfigDescriptor implements Serializable {
 
     public static final String DEFAULT_CACHING_DIRECTORY = "convertcache";
 
+    /** @since 11.1 */
+    public static final Class<? extends ConversionCache> DEFAULT_CACHE_CLASS = LocalConversionCache.class;
+
     @XNode("enableCache")
     protected Boolean enableCache;
 
@@ -100,6 +108,24 @@ public class GlobalConfigDescriptor implements Serializable {
         return diskCacheSize == null ? DEFAULT_DISK_CACHE_IN_KB : diskCacheSize.intValue();
     }
 
+    /** @since 11.1 */
+    @XNode("cache@class")
+    protected Class<? extends ConversionCache> cacheClass;
+
+    /** @since 11.1 */
+    @XNodeMap(value = "cache/property", key = "@name", type = HashMap.class, componentType = String.class)
+    protected Map<String, String> cacheProperties = new HashMap<>();
+
+    /** @since 11.1 */
+    public Class<? extends ConversionCache> getCacheClass() {
+        return cacheClass == null ? DEFAULT_CACHE_CLASS : cacheClass;
+    }
+
+    /** @since 11.1 */
+    public Map<String, String> getCacheProperties() {
+        return cacheProperties;
+    }
+
     public void update(GlobalConfigDescriptor other) {
         if (other.enableCache != null) {
             enableCache = other.enableCache;
@@ -113,6 +139,12 @@ public class GlobalConfigDescriptor implements Serializable {
         if (other.cachingDirectory != null) {
             cachingDirectory = other.cachingDirectory;
         }
+        if (other.cacheClass != null) {
+            cacheClass = other.cacheClass;
+        }
+        if (other.cacheProperties != null) {
+            cacheProperties.putAll(other.cacheProperties);
+        }
     }
 
 }
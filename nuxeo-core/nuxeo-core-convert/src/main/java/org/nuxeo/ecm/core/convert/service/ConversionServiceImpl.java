@@ -30,6 +30,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -51,7 +52,7 @@ import org.nuxeo.ecm.core.convert.api.ConverterCheckResult;
 import org.nuxeo.ecm.core.convert.api.ConverterNotAvailable;
 import org.nuxeo.ecm.core.convert.api.ConverterNotRegistered;
 import org.nuxeo.ecm.core.convert.cache.CacheKeyGenerator;
-import org.nuxeo.ecm.core.convert.cache.ConversionCacheHolder;
+import org.nuxeo.ecm.core.convert.cache.ConversionCache;
 import org.nuxeo.ecm.core.convert.cache.GCTask;
 import org.nuxeo.ecm.core.convert.extension.ChainedConverter;
 import org.nuxeo.ecm.core.convert.extension.Converter;
@@ -98,6 +99,9 @@ public class ConversionServiceImpl extends DefaultComponent implements Conversio
 
     protected GCTask gcTask;
 
+    /** @since 11.1 */
+    protected ConversionCache conversionCache;
+
     @Override
     public void activate(ComponentContext context) {
         converterDescriptors.clear();
@@ -108,9 +112,6 @@ public class ConversionServiceImpl extends DefaultComponent implements Conversio
 
     @Override
     public void deactivate(ComponentContext context) {
-        if (config.isCacheEnabled()) {
-            ConversionCacheHolder.deleteCache();
-        }
         self = null;
         converterDescriptors.clear();
         translationHelper.clear();
@@ -188,6 +189,15 @@ public class ConversionServiceImpl extends DefaultComponent implements Conversio
         return self.config.getCachingDirectory();
     }
 
+    /**
+     * Gets the cache of the conversion results.
+     *
+     * @since 11.1
+     */
+    public static ConversionCache getConversionCache() {
+        return self.conversionCache;
+    }
+
     /* Service API */
 
     @Override
@@ -329,20 +339,16 @@ public class ConversionServiceImpl extends DefaultComponent implements Conversio
             return blobHolder;
         }
 
-        String cacheKey = CacheKeyGenerator.computeKey(converterName, blobHolder, parameters);
-
-        BlobHolder result = ConversionCacheHolder.getFromCache(cacheKey);
-
-        if (result == null) {
-            Converter converter = desc.getConverterInstance();
-            result = converter.convert(blobHolder, parameters);
+        Converter converter = desc.getConverterInstance();
+        Map<String, Serializable> params = parameters;
+        Supplier<BlobHolder> conversion = () -> converter.convert(blobHolder, params);
 
-            if (config.isCacheEnabled()) {
-                ConversionCacheHolder.addToCache(cacheKey, result);
-            }
-        } else if (result.getBlobs() != null && result.getBlobs().size() == 1) {
-            // we need to reset the filename if result is a single file from the cache because the name is just a hash
-            result.getBlob().setFilename(null);
+        BlobHolder result;
+        if (config.isCacheEnabled() && conversionCache != null) {
+            String cacheKey = CacheKeyGenerator.computeKey(converterName, blobHolder, parameters);
+            result = conversionCache.getOrConvert(cacheKey, conversion);
+        } else {
+            result = conversion.get();
         }
 
         if (result != null) {
@@ -544,12 +550,39 @@ public class ConversionServiceImpl extends DefaultComponent implements Conversio
 
     @Override
     public void start(ComponentContext context) {
+        startCache();
         startGC();
     }
 
     @Override
     public void stop(ComponentContext context) {
         endGC();
+        endCache();
+    }
+
+    /**
+     * @since 11.1
+     */
+    protected void startCache() {
+        try {
+            conversionCache = config.getCacheClass().getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+        conversionCache.initialize(config.getCacheProperties());
+    }
+
+    /**
+     * @since 11.1
+     */
+    protected void endCache() {
+        if (conversionCache == null) {
+            return;
+        }
+        if (config.isCacheEnabled()) {
+            conversionCache.close();
+        }
+        conversionCache = null;
     }
 
     protected void startGC() {
@@ -0,0 +1,69 @@
+/*
+ * (C) Copyright 2019 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.convert.tests;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
+import org.nuxeo.ecm.core.api.blobholder.SimpleBlobHolder;
+import org.nuxeo.ecm.core.convert.api.ConversionException;
+import org.nuxeo.ecm.core.convert.extension.Converter;
+import org.nuxeo.ecm.core.convert.extension.ConverterDescriptor;
+
+/**
+ * Slow converter counting its conversions.
+ *
+ * @since 11.1
+ */
+public class CountingConverter implements Converter {
+
+    public static final AtomicInteger COUNT = new AtomicInteger();
+
+    /** Called at the start of each conversion, if set. */
+    public static volatile Runnable onConvert;
+
+    @Override
+    public BlobHolder convert(BlobHolder blobHolder, Map<String, Serializable> parameters) throws ConversionException {
+        COUNT.incrementAndGet();
+        Runnable hook = onConvert;
+        if (hook != null) {
+            hook.run();
+        }
+        try {
+            Thread.sleep(200);
+            String text = "converted " + blobHolder.getBlob().getString();
+            return new SimpleBlobHolder(Blobs.createBlob(text));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConversionException(e);
+        } catch (IOException e) {
+            throw new ConversionException(e);
+        }
+    }
+
+    @Override
+    public void init(ConverterDescriptor descriptor) {
+        // NOP
+    }
+
+}
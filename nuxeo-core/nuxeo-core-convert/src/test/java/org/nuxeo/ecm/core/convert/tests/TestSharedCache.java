@@ -0,0 +1,166 @@
+/*
+ * (C) Copyright 2019 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.convert.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.inject.Inject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.blobholder.BlobHolder;
+import org.nuxeo.ecm.core.api.blobholder.SimpleBlobHolder;
+import org.nuxeo.ecm.core.convert.api.ConversionService;
+import org.nuxeo.ecm.core.convert.cache.ConversionCache;
+import org.nuxeo.ecm.core.convert.cache.KeyValueBlobConversionCache;
+import org.nuxeo.ecm.core.convert.service.ConversionServiceImpl;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.kv.KeyValueService;
+import org.nuxeo.runtime.kv.KeyValueStore;
+import org.nuxeo.runtime.kv.KeyValueStoreProvider;
+import org.nuxeo.runtime.metrics.MetricsService;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+
+/**
+ * @since 11.1
+ */
+@RunWith(FeaturesRunner.class)
+@Features(ConvertFeature.class)
+@Deploy("org.nuxeo.runtime.kv")
+@Deploy("org.nuxeo.ecm.core.convert:OSGI-INF/convert-service-config-shared.xml")
+public class TestSharedCache {
+
+    @Inject
+    protected ConversionService cs;
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    protected int maxSize;
+
+    @Before
+    public void before() {
+        CountingConverter.COUNT.set(0);
+        // don't let the GC thread evict entries during the test
+        ((ConversionServiceImpl) cs).endGC();
+        maxSize = ConversionServiceImpl.getMaxCacheSizeInKB();
+        ConversionServiceImpl.setMaxCacheSizeInKB(1024);
+    }
+
+    @After
+    public void after() {
+        CountingConverter.onConvert = null;
+        ConversionServiceImpl.setMaxCacheSizeInKB(maxSize);
+    }
+
+    protected long getCount(String name) {
+        return registry.counter(MetricRegistry.name("nuxeo", "conversions", "cache", name)).getCount();
+    }
+
+    protected static BlobHolder getBlobHolder(String text) {
+        return new SimpleBlobHolder(Blobs.createBlob(text));
+    }
+
+    @Test
+    public void testSharedCache() throws Exception {
+        ConversionCache conversionCache = ConversionServiceImpl.getConversionCache();
+        assertTrue(conversionCache instanceof KeyValueBlobConversionCache);
+        long hits = getCount("hit");
+        long misses = getCount("miss");
+
+        BlobHolder result = cs.convert("counting", getBlobHolder("foo"), null);
+        assertEquals("converted foo", result.getBlob().getString());
+        assertEquals(1, CountingConverter.COUNT.get());
+        assertEquals(0, getCount("hit") - hits);
+        assertEquals(1, getCount("miss") - misses);
+
+        // second conversion comes from the cache
+        result = cs.convert("counting", getBlobHolder("foo"), null);
+        assertEquals("converted foo", result.getBlob().getString());
+        assertEquals(1, CountingConverter.COUNT.get());
+        assertEquals(1, getCount("hit") - hits);
+        assertEquals(1, getCount("miss") - misses);
+
+        // cache is not bigger than its max size
+        assertFalse(conversionCache.gcIfNeeded());
+
+        // negative max size evicts everything
+        ConversionServiceImpl.setMaxCacheSizeInKB(-1);
+        assertTrue(conversionCache.gcIfNeeded());
+        ConversionServiceImpl.setMaxCacheSizeInKB(1024);
+        result = cs.convert("counting", getBlobHolder("foo"), null);
+        assertEquals("converted foo", result.getBlob().getString());
+        assertEquals(2, CountingConverter.COUNT.get());
+    }
+
+    @Test
+    public void testConcurrentConversions() throws Exception {
+        int nbThreads = 5;
+        ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+        try {
+            List<Future<BlobHolder>> futures = new ArrayList<>();
+            for (int i = 0; i < nbThreads; i++) {
+                futures.add(executor.submit(() -> cs.convert("counting", getBlobHolder("bar"), null)));
+            }
+            for (Future<BlobHolder> future : futures) {
+                assertEquals("converted bar", future.get().getBlob().getString());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // the conversion was done only once
+        assertEquals(1, CountingConverter.COUNT.get());
+    }
+
+    @Test
+    public void testLockTakenOverIsNotReleased() throws Exception {
+        KeyValueStore kvs = Framework.getService(KeyValueService.class).getKeyValueStore("convert");
+        // simulate the expiration of the lock during the conversion, and its acquisition by another node
+        List<String> lockKeys = new ArrayList<>();
+        CountingConverter.onConvert = () -> {
+            ((KeyValueStoreProvider) kvs).keyStream()
+                                         .filter(key -> key.endsWith(KeyValueBlobConversionCache.DOT_LOCK))
+                                         .collect(Collectors.toCollection(() -> lockKeys));
+            lockKeys.forEach(key -> kvs.put(key, "other"));
+        };
+        BlobHolder result = cs.convert("counting", getBlobHolder("baz"), null);
+        assertEquals("converted baz", result.getBlob().getString());
+        assertEquals(1, lockKeys.size());
+        // the lock of the other node is still there
+        assertEquals("other", kvs.getString(lockKeys.get(0)));
+        kvs.put(lockKeys.get(0), (String) null);
+    }
+
+}
@@ -27,8 +27,11 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -221,17 +224,62 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
             throw new IllegalStateException("work queue " + config.id + " already have an executor");
         }
         NuxeoBlockingQueue queue = queuing.init(config);
-        ThreadFactory threadFactory = new NamedThreadFactory(THREAD_PREFIX + config.id + "-");
+        String prefix = THREAD_PREFIX + config.id + "-";
         int maxPoolSize = config.getMaxThreads();
-        WorkThreadPoolExecutor executor = new WorkThreadPoolExecutor(maxPoolSize, maxPoolSize, 0, TimeUnit.SECONDS,
-                queue, threadFactory);
-        // prestart all core threads so that direct additions to the queue
-        // (from another Nuxeo instance) can be seen
-        executor.prestartAllCoreThreads();
+        WorkThreadPoolExecutor executor;
+        if (config.isVirtualExecutionMode()) {
+            VirtualWorkThreadPoolExecutor virtualExecutor = new VirtualWorkThreadPoolExecutor(maxPoolSize, queue,
+                    newPerWorkThreadFactory(config, prefix), prefix);
+            // start the dispatcher so that direct additions to the queue (from another Nuxeo instance) can be seen
+            virtualExecutor.startDispatcher();
+            executor = virtualExecutor;
+        } else {
+            executor = new WorkThreadPoolExecutor(maxPoolSize, maxPoolSize, 0, TimeUnit.SECONDS, queue,
+                    new NamedThreadFactory(prefix));
+            // prestart all core threads so that direct additions to the queue
+            // (from another Nuxeo instance) can be seen
+            executor.prestartAllCoreThreads();
+        }
         executors.put(config.id, executor);
         log.info("Initialized work queue {}, {}", config.id, config);
     }
 
+    /**
+     * Creates the factory of the threads running one work each for a queue in virtual execution mode.
+     * <p>
+     * Virtual threads are used when the JVM supports them, otherwise each work runs in a new platform thread, still
+     * bounded by the maximum number of threads of the queue.
+     *
+     * @since 11.1
+     */
+    protected ThreadFactory newPerWorkThreadFactory(WorkQueueDescriptor config, String prefix) {
+        ThreadFactory virtualThreadFactory = newVirtualThreadFactory(prefix);
+        if (virtualThreadFactory == null) {
+            log.warn("Virtual threads are not available in this JVM, work queue {} will run each work on a new platform"
+                    + " thread", config.id);
+        }
+        return new NamedThreadFactory(prefix, virtualThreadFactory);
+    }
+
+    /**
+     * Creates a factory of virtual threads, or returns {@code null} if the JVM doesn't support them.
+     * <p>
+     * Reflection is used because virtual threads are not part of the Java version we compile against.
+     *
+     * @since 11.1
+     */
+    protected static ThreadFactory newVirtualThreadFactory(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            // not supported or preview not enabled
+            return null;
+        }
+    }
+
     void activateQueue(WorkQueueDescriptor config) {
         if (ALL_QUEUES.equals(config.id)) {
             throw new IllegalArgumentException("cannot activate all queues");
@@ -262,9 +310,18 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
         queueMetrics.putGauge(() -> getMetrics(queueId).running, "running");
         queueMetrics.putGauge(() -> getMetrics(queueId).completed, "completed");
         queueMetrics.putGauge(() -> getMetrics(queueId).canceled, "canceled");
+        queueMetrics.putGauge(() -> getExecutionModeMetric(queueId), "executionMode");
         registry.registerAll(queueMetrics);
     }
 
+    /**
+     * Returns 1 if the queue runs in virtual execution mode (one thread per work), 0 if it runs on a pool of threads, to
+     * tell apart the metrics of both execution modes.
+     */
+    protected int getExecutionModeMetric(String queueId) {
+        return executors.get(queueId) instanceof VirtualWorkThreadPoolExecutor ? 1 : 0;
+    }
+
     void deactivateQueueMetrics(String queueId) {
         String queueMetricsName = MetricRegistry.name("nuxeo", "works", "total", queueId);
         registry.removeMatching((name, metric) -> name.startsWith(queueMetricsName));
@@ -566,7 +623,7 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
     }
 
     /**
-     * Creates non-daemon threads at normal priority.
+     * Creates non-daemon threads at normal priority, or virtual threads if a virtual thread factory is passed.
      */
     private static class NamedThreadFactory implements ThreadFactory {
 
@@ -576,14 +633,27 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
 
         private final String prefix;
 
+        private final ThreadFactory virtualThreadFactory;
+
         public NamedThreadFactory(String prefix) {
+            this(prefix, null);
+        }
+
+        public NamedThreadFactory(String prefix, ThreadFactory virtualThreadFactory) {
             SecurityManager sm = System.getSecurityManager();
             group = sm == null ? Thread.currentThread().getThreadGroup() : sm.getThreadGroup();
             this.prefix = prefix;
+            this.virtualThreadFactory = virtualThreadFactory;
         }
 
         @Override
         public Thread newThread(Runnable r) {
+            if (virtualThreadFactory != null) {
+                // virtual threads are named by their factory and are always daemon with normal priority
+                Thread thread = virtualThreadFactory.newThread(r);
+                thread.setUncaughtExceptionHandler(this::handleUncaughtException);
+                return thread;
+            }
             String name = prefix + threadNumber.incrementAndGet();
             Thread thread = new Thread(group, r, name);
             // do not set daemon
@@ -640,6 +710,9 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
 
         protected final Timer workTimer;
 
+        // Time spent by works between their scheduling and their start, @since 11.1
+        protected final Timer waitTimer;
+
         protected WorkThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
                 NuxeoBlockingQueue queue, ThreadFactory threadFactory) {
             super(corePoolSize, maximumPoolSize, keepAliveTime, unit, queue, threadFactory);
@@ -650,6 +723,7 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
             runningCount = registry.counter(MetricRegistry.name("nuxeo", "works", queueId, "running"));
             completedCount = registry.counter(MetricRegistry.name("nuxeo", "works", queueId, "completed"));
             workTimer = registry.timer(MetricRegistry.name("nuxeo", "works", queueId, "total"));
+            waitTimer = registry.timer(MetricRegistry.name("nuxeo", "works", queueId, "wait"));
         }
 
         public int getScheduledOrRunningSize() {
@@ -698,6 +772,10 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
             queuing.workRunning(queueId, work);
             running.add(work);
             runningCount.inc();
+            long schedulingTime = work.getSchedulingTime();
+            if (schedulingTime > 0) {
+                waitTimer.update(System.currentTimeMillis() - schedulingTime, TimeUnit.MILLISECONDS);
+            }
         }
 
         @Override
@@ -762,6 +840,121 @@ public class WorkManagerImpl extends DefaultComponent implements WorkManager {
 
     }
 
+    /**
+     * A {@link WorkThreadPoolExecutor} running each work in a new thread instead of a pool of threads. The threads are
+     * virtual when the JVM supports them, see {@link #newPerWorkThreadFactory}.
+     * <p>
+     * A dispatcher thread takes the works from the queue and starts a new thread for each of them, a semaphore
+     * bounds the number of works running concurrently to the maximum number of threads of the queue. The pool of the
+     * underlying {@link ThreadPoolExecutor} has no threads, it is only used for its lifecycle.
+     *
+     * @since 11.1
+     */
+    protected class VirtualWorkThreadPoolExecutor extends WorkThreadPoolExecutor {
+
+        protected final int maxConcurrency;
+
+        protected final Semaphore permits;
+
+        /** The threads currently running a work, to interrupt them on {@link #shutdownNow}. */
+        protected final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+        protected final Thread dispatcher;
+
+        protected VirtualWorkThreadPoolExecutor(int maxConcurrency, NuxeoBlockingQueue queue,
+                ThreadFactory perWorkThreadFactory, String prefix) {
+            super(0, 1, 0, TimeUnit.SECONDS, queue, perWorkThreadFactory);
+            this.maxConcurrency = maxConcurrency;
+            permits = new Semaphore(maxConcurrency);
+            dispatcher = new Thread(this::dispatch, prefix + "dispatcher");
+            dispatcher.setDaemon(true);
+        }
+
+        public void startDispatcher() {
+            dispatcher.start();
+        }
+
+        protected void dispatch() {
+            try {
+                while (!isShutdown()) {
+                    permits.acquire();
+                    Runnable r;
+                    try {
+                        r = getQueue().take();
+                    } catch (InterruptedException e) {
+                        permits.release();
+                        throw e;
+                    }
+                    if (r == null) {
+                        permits.release();
+                        continue;
+                    }
+                    try {
+                        getThreadFactory().newThread(() -> runWork(r)).start();
+                    } catch (RuntimeException | Error e) { // NOSONAR
+                        permits.release();
+                        throw e;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Runs a work in the current per-work thread, with the same callbacks as the pooled threads.
+         */
+        protected void runWork(Runnable r) {
+            Thread thread = Thread.currentThread();
+            threads.add(thread);
+            try {
+                beforeExecute(thread, r);
+                Throwable thrown = null;
+                try {
+                    r.run();
+                } catch (RuntimeException | Error e) { // NOSONAR
+                    thrown = e;
+                    throw e;
+                } finally {
+                    afterExecute(r, thrown);
+                }
+            } finally {
+                threads.remove(thread);
+                permits.release();
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            super.shutdown();
+            dispatcher.interrupt();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            List<Runnable> drained = super.shutdownNow();
+            dispatcher.interrupt();
+            threads.forEach(Thread::interrupt);
+            return drained;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            dispatcher.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            if (dispatcher.isAlive()) {
+                return false;
+            }
+            // all the permits are available once the running works are done
+            if (!permits.tryAcquire(maxConcurrency, deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+            permits.release(maxConcurrency);
+            return super.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+    }
+
     @Override
     public void schedule(Work work) {
         schedule(work, Scheduling.ENQUEUE, false);
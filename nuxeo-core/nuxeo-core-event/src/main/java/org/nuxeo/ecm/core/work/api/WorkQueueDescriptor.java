@@ -43,6 +43,23 @@ public class WorkQueueDescriptor implements Descriptor {
 
     public static final int DEFAULT_CAPACITY = -1;
 
+    /**
+     * Execution mode where works run on platform threads.
+     *
+     * @since 11.1
+     */
+    public static final String EXECUTION_MODE_PLATFORM = "platform";
+
+    /**
+     * Execution mode where each work runs on a new thread, bounded by the maximum number of threads of the queue. The
+     * threads are virtual if the JVM supports them, otherwise they are platform threads.
+     *
+     * @since 11.1
+     */
+    public static final String EXECUTION_MODE_VIRTUAL = "virtual";
+
+    public static final String DEFAULT_EXECUTION_MODE = EXECUTION_MODE_PLATFORM;
+
     @XNode("@id")
     public String id;
 
@@ -97,6 +114,31 @@ public class WorkQueueDescriptor implements Descriptor {
         return capacity == null ? DEFAULT_CAPACITY : capacity.intValue();
     }
 
+    /**
+     * The execution mode of the works of this queue, {@value #EXECUTION_MODE_PLATFORM} or
+     * {@value #EXECUTION_MODE_VIRTUAL}.
+     * <p>
+     * In both modes {@link #getMaxThreads} is the maximum number of works running concurrently for this queue. As
+     * virtual threads are cheap when blocked, a queue of IO-bound works can use a much higher limit in virtual mode.
+     *
+     * @since 11.1
+     */
+    @XNode("executionMode")
+    public String executionMode;
+
+    public String getExecutionMode() {
+        return executionMode == null ? DEFAULT_EXECUTION_MODE : executionMode;
+    }
+
+    /**
+     * Whether the works of this queue should run on virtual threads.
+     *
+     * @since 11.1
+     */
+    public boolean isVirtualExecutionMode() {
+        return EXECUTION_MODE_VIRTUAL.equals(getExecutionMode());
+    }
+
     @Override
     public Descriptor merge(Descriptor o) {
         WorkQueueDescriptor other = (WorkQueueDescriptor) o;
@@ -107,6 +149,7 @@ public class WorkQueueDescriptor implements Descriptor {
         merged.capacity = other.capacity != null ? other.capacity : capacity;
         merged.processing = other.processing != null ? other.processing : processing;
         merged.maxThreads = other.maxThreads != null ? other.maxThreads : maxThreads;
+        merged.executionMode = other.executionMode != null ? other.executionMode : executionMode;
         merged.categories = new HashSet<>(categories);
         merged.categories.addAll(other.categories);
         return merged;
@@ -125,6 +168,8 @@ public class WorkQueueDescriptor implements Descriptor {
         sb.append(isProcessingEnabled());
         sb.append(" maxThreads=");
         sb.append(getMaxThreads());
+        sb.append(" executionMode=");
+        sb.append(getExecutionMode());
         sb.append(" capacity=");
         sb.append(getCapacity());
         sb.append(")");
@@ -0,0 +1,75 @@
+/*
+ * (C) Copyright 2019 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.work;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.work.api.WorkQueueDescriptor;
+import org.nuxeo.runtime.test.runner.Deploy;
+
+/**
+ * Runs the in-memory WorkManager tests with the test queue in virtual execution mode. On a JVM without virtual threads
+ * the works run on a new platform thread each, through the same executor.
+ *
+ * @since 11.1
+ */
+@Deploy("org.nuxeo.ecm.core.event.test:test-workmanager-queue-virtual.xml")
+public class TestInMemoryVirtualWorkManager extends TestInMemoryWorkManager {
+
+    @Test
+    public void testVirtualExecutionMode() throws Exception {
+        WorkQueueDescriptor qd = service.getWorkQueueDescriptor(QUEUE);
+        assertEquals(WorkQueueDescriptor.EXECUTION_MODE_VIRTUAL, qd.getExecutionMode());
+        assertTrue(qd.isVirtualExecutionMode());
+        assertEquals(2, qd.getMaxThreads());
+        WorkManagerImpl workManager = (WorkManagerImpl) service;
+        assertTrue(workManager.getExecutor(QUEUE) instanceof WorkManagerImpl.VirtualWorkThreadPoolExecutor);
+        assertEquals(1, workManager.getExecutionModeMetric(QUEUE));
+
+        for (int i = 0; i < 10; i++) {
+            service.schedule(new SleepWork(10));
+        }
+        assertTrue(service.awaitCompletion(QUEUE, 10, TimeUnit.SECONDS));
+        tracker.assertDiff(0, 0, 10, 0);
+    }
+
+    @Test
+    public void testVirtualConcurrencyIsBounded() throws Exception {
+        for (int i = 0; i < 6; i++) {
+            service.schedule(new SleepWork(getDurationMillis()));
+        }
+        long maxRunning = 0;
+        long end = System.currentTimeMillis() + 10_000;
+        while (service.getMetrics(QUEUE).getRunning().longValue() > 0
+                || service.getMetrics(QUEUE).getScheduled().longValue() > 0) {
+            maxRunning = Math.max(maxRunning, service.getMetrics(QUEUE).getRunning().longValue());
+            assertTrue("works did not complete", System.currentTimeMillis() < end);
+            Thread.sleep(10);
+        }
+        // maxThreads of the queue
+        assertTrue(String.valueOf(maxRunning), maxRunning <= 2);
+        assertTrue(service.awaitCompletion(QUEUE, 10, TimeUnit.SECONDS));
+        tracker.assertDiff(0, 0, 6, 0);
+    }
+
+}
@@ -19,6 +19,9 @@
 package org.nuxeo.ecm.core.io.download;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -38,6 +41,13 @@ public class DownloadHelper {
 
     public static final String INLINE = "inline";
 
+    /**
+     * Maximum number of ranges accepted in a multiple byte ranges request.
+     *
+     * @since 11.1
+     */
+    public static final int MAX_RANGES = 20;
+
     // tomcat catalina
     private static final String CLIENT_ABORT_EXCEPTION = "ClientAbortException";
 
@@ -56,17 +66,77 @@ public class DownloadHelper {
      * @return the byte range, or {@code null} if it couldn't be parsed.
      */
     public static ByteRange parseRange(String range, long length) {
-        try {
-            // TODO does no support multiple ranges
-            if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+        // multiple ranges are parsed by parseRanges
+        if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+            return null;
+        }
+        return parseRangeSpec(range.substring(6), length);
+    }
+
+    /**
+     * Parses a byte range that may contain several ranges.
+     *
+     * @param range the byte range as a string
+     * @param length the file length
+     * @return the byte ranges, or {@code null} if they couldn't be parsed or if there are more than {@link #MAX_RANGES}
+     * @see #coalesceRanges
+     * @since 11.1
+     */
+    public static List<ByteRange> parseRanges(String range, long length) {
+        if (!range.startsWith("bytes=")) {
+            return null;
+        }
+        String[] specs = range.substring(6).split(",");
+        if (specs.length > MAX_RANGES) {
+            return null;
+        }
+        List<ByteRange> byteRanges = new ArrayList<>(specs.length);
+        for (String spec : specs) {
+            ByteRange byteRange = parseRangeSpec(spec, length);
+            if (byteRange == null) {
                 return null;
             }
-            int i = range.indexOf('-', 6);
+            byteRanges.add(byteRange);
+        }
+        return coalesceRanges(byteRanges);
+    }
+
+    /**
+     * Coalesces the overlapping or adjacent byte ranges, so that no byte is sent twice (RFC 7233, section 4.1).
+     * <p>
+     * If some ranges are coalesced, the resulting ranges are in ascending order. Otherwise the ranges are returned in
+     * the requested order.
+     *
+     * @since 11.1
+     */
+    protected static List<ByteRange> coalesceRanges(List<ByteRange> byteRanges) {
+        List<ByteRange> sorted = new ArrayList<>(byteRanges);
+        sorted.sort(Comparator.comparingLong(ByteRange::getStart));
+        List<ByteRange> coalesced = new ArrayList<>(sorted.size());
+        ByteRange current = sorted.get(0);
+        for (ByteRange byteRange : sorted.subList(1, sorted.size())) {
+            if (byteRange.getStart() <= current.getEnd() + 1) {
+                current = new ByteRange(current.getStart(), Math.max(current.getEnd(), byteRange.getEnd()));
+            } else {
+                coalesced.add(current);
+                current = byteRange;
+            }
+        }
+        coalesced.add(current);
+        return coalesced.size() == byteRanges.size() ? byteRanges : coalesced;
+    }
+
+    /**
+     * Parses a single byte range spec, without the {@code bytes=} prefix.
+     */
+    protected static ByteRange parseRangeSpec(String spec, long length) {
+        try {
+            int i = spec.indexOf('-');
             if (i < 0) {
                 return null;
             }
-            String start = range.substring(6, i).trim();
-            String end = range.substring(i + 1).trim();
+            String start = spec.substring(0, i).trim();
+            String end = spec.substring(i + 1).trim();
             long rangeStart = 0;
             long rangeEnd = length - 1;
             if (start.isEmpty()) {
@@ -19,6 +19,7 @@
  */
 package org.nuxeo.ecm.core.io.download;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -27,12 +28,17 @@ import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.regex.Pattern;
@@ -71,6 +77,8 @@ import org.nuxeo.ecm.core.api.model.PropertyNotFoundException;
 import org.nuxeo.ecm.core.blob.BlobManager;
 import org.nuxeo.ecm.core.blob.BlobManager.UsageHint;
 import org.nuxeo.ecm.core.blob.BlobProvider;
+import org.nuxeo.ecm.core.blob.ManagedBlob;
+import org.nuxeo.ecm.core.blob.binary.BinaryManager;
 import org.nuxeo.ecm.core.blob.binary.DefaultBinaryManager;
 import org.nuxeo.ecm.core.event.Event;
 import org.nuxeo.ecm.core.event.EventContext;
@@ -81,10 +89,14 @@ import org.nuxeo.ecm.core.io.NginxConstants;
 import org.nuxeo.ecm.core.transientstore.api.TransientStore;
 import org.nuxeo.ecm.core.transientstore.api.TransientStoreService;
 import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
 import org.nuxeo.runtime.model.ComponentContext;
 import org.nuxeo.runtime.model.DefaultComponent;
 import org.nuxeo.runtime.transaction.TransactionHelper;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+
 /**
  * This service allows the download of blobs to a HTTP response.
  *
@@ -100,6 +112,21 @@ public class DownloadServiceImpl extends DefaultComponent implements DownloadSer
 
     protected static final int DOWNLOAD_BUFFER_SIZE = 1024 * 512;
 
+    /**
+     * Request attributes through which Tomcat sends a file using sendfile.
+     *
+     * @since 11.1
+     */
+    protected static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+
+    protected static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+
+    protected static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+
+    protected static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    protected static final String MULTIPART_BYTERANGES = "multipart/byteranges";
+
     private static final String NUXEO_VIRTUAL_HOST = "nuxeo-virtual-host";
 
     private static final String VH_PARAM = "nuxeo.virtual.host";
@@ -118,6 +145,8 @@ public class DownloadServiceImpl extends DefaultComponent implements DownloadSer
 
     protected RedirectResolver redirectResolver;
 
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
     @Override
     public void start(ComponentContext context) {
         super.start(context);
@@ -444,7 +473,7 @@ public class DownloadServiceImpl extends DefaultComponent implements DownloadSer
         }
         final Blob fblob = blob;
         downloadBlob(request, response, doc, xpath, blob, filename, reason, extendedInfos, inline,
-                byteRange -> transferBlobWithByteRange(fblob, byteRange, response));
+                byteRange -> transferBlobWithByteRange(fblob, byteRange, request, response));
     }
 
     @Override
@@ -452,6 +481,7 @@ public class DownloadServiceImpl extends DefaultComponent implements DownloadSer
             Blob blob, String filename, String reason, Map<String, Serializable> extendedInfos, Boolean inline,
             Consumer<ByteRange> blobTransferer) throws IOException {
         Objects.requireNonNull(blob);
+        long startTime = System.nanoTime();
         // check reason and rendition from request attributes
         String requestReason = (String) request.getAttribute(REQUEST_ATTR_DOWNLOAD_REASON);
         if (requestReason != null) {
@@ -538,24 +568,38 @@ public class DownloadServiceImpl extends DefaultComponent implements DownloadSer
             long length = blob.getLength();
             response.setHeader("Accept-Ranges", "bytes");
             String range = request.getHeader("Range");
-            ByteRange byteRange;
+            List<ByteRange> byteRanges;
+            ByteRange byteRange = null;
             if (StringUtils.isBlank(range)) {
-                byteRange = null;
+                byteRanges = null;
             } else {
-                byteRange = DownloadHelper.parseRange(range, length);
-                if (byteRange == null) {
+                byteRanges = DownloadHelper.parseRanges(range, length);
+                if (byteRanges == null) {
                     log.error("Invalid byte range received: {}", range);
-                } else {
+                } else if (byteRanges.size() == 1) {
+                    byteRange = byteRanges.get(0);
                     response.setHeader("Content-Range",
                             "bytes " + byteRange.getStart() + "-" + byteRange.getEnd() + "/" + length);
                     response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                    byteRanges = null;
+                } else {
+                    response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
                 }
             }
-            long contentLength = byteRange == null ? length : byteRange.getLength();
+            MultipartByteRanges multipart = null;
+            long contentLength;
+            if (byteRanges != null) {
+                multipart = new MultipartByteRanges(byteRanges, blob.getMimeType(), length);
+                response.setContentType(MULTIPART_BYTERANGES + "; boundary=" + multipart.boundary);
+                contentLength = multipart.getContentLength();
+            } else {
+                contentLength = byteRange == null ? length : byteRange.getLength();
+            }
             response.setContentLengthLong(contentLength);
 
             // log the download but not if it's a random byte range
-            if (byteRange == null || byteRange.getStart() == 0) {
+            ByteRange firstRange = byteRanges == null ? byteRange : byteRanges.get(0);
+            if (firstRange == null || firstRange.getStart() == 0) {
                 logDownload(doc, xpath, filename, reason, extendedInfos);
             }
 
@@ -581,7 +625,15 @@ public class DownloadServiceImpl extends DefaultComponent implements DownloadSer
             }
 
             // execute the final download
-            blobTransferer.accept(byteRange);
+            String metricReason = StringUtils.defaultIfBlank(reason, "download");
+            registry.timer(MetricRegistry.name("nuxeo", "download", metricReason, "time-to-first-byte"))
+                    .update(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+            if (multipart == null) {
+                blobTransferer.accept(byteRange);
+            } else {
+                multipart.transfer(response.getOutputStream(), blobTransferer);
+            }
+            registry.meter(MetricRegistry.name("nuxeo", "download", metricReason, "bytes")).mark(contentLength);
         } catch (UncheckedIOException e) {
             DownloadHelper.handleClientDisconnect(e.getCause());
         } catch (IOException ioe) {
@@ -589,6 +641,55 @@ public class DownloadServiceImpl extends DefaultComponent implements DownloadSer
         }
     }
 
+    /**
+     * Transfers a blob to the response, letting the container send its file directly if possible.
+     *
+     * @since 11.1
+     */
+    protected void transferBlobWithByteRange(Blob blob, ByteRange byteRange, HttpServletRequest request,
+            HttpServletResponse response) {
+        if (!sendFile(blob, byteRange, request, response)) {
+            transferBlobWithByteRange(blob, byteRange, response);
+        }
+    }
+
+    /**
+     * Asks the container to send the blob file using sendfile, if it supports it.
+     * <p>
+     * Only the files of local unencrypted binary managers are sent this way, as the file must still exist when the
+     * container sends it after the end of the request processing. The files of a binary manager cache may be evicted
+     * in the meantime.
+     *
+     * @return {@code true} if the file will be sent by the container
+     * @since 11.1
+     */
+    protected boolean sendFile(Blob blob, ByteRange byteRange, HttpServletRequest request,
+            HttpServletResponse response) {
+        if (!Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR)) || !(blob instanceof ManagedBlob)) {
+            return false;
+        }
+        String contentType = response.getContentType();
+        if (contentType != null && contentType.startsWith(MULTIPART_BYTERANGES)) {
+            // the parts of a multipart response are written to the output stream
+            return false;
+        }
+        BlobProvider blobProvider = Framework.getService(BlobManager.class).getBlobProvider(blob);
+        BinaryManager binaryManager = blobProvider == null ? null : blobProvider.getBinaryManager();
+        if (!(binaryManager instanceof DefaultBinaryManager)) {
+            return false;
+        }
+        File file = blob.getFile();
+        if (file == null) {
+            return false;
+        }
+        long start = byteRange == null ? 0 : byteRange.getStart();
+        long end = byteRange == null ? file.length() : byteRange.getEnd() + 1; // exclusive
+        request.setAttribute(SENDFILE_FILENAME_ATTR, file.getAbsolutePath());
+        request.setAttribute(SENDFILE_START_ATTR, Long.valueOf(start));
+        request.setAttribute(SENDFILE_END_ATTR, Long.valueOf(end));
+        return true;
+    }
+
     protected void transferBlobWithByteRange(Blob blob, ByteRange byteRange, HttpServletResponse response) {
         transferBlobWithByteRange(blob, byteRange, () -> {
             try {
@@ -604,8 +705,19 @@ public class DownloadServiceImpl extends DefaultComponent implements DownloadSer
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * When the blob is backed by a file, the file content is transferred through its channel, which avoids copying it
+     * through heap buffers and skipping the beginning of the file for a byte range.
+     */
     @Override
     public void transferBlobWithByteRange(Blob blob, ByteRange byteRange, Supplier<OutputStream> outputStreamSupplier) {
+        File file = blob.getFile();
+        if (file != null) {
+            transferFileWithByteRange(file, byteRange, outputStreamSupplier);
+            return;
+        }
         try (InputStream in = blob.getStream()) {
             @SuppressWarnings("resource")
             OutputStream out = outputStreamSupplier.get(); // not ours to close
@@ -621,6 +733,100 @@ public class DownloadServiceImpl extends DefaultComponent implements DownloadSer
         }
     }
 
+    /**
+     * Transfers a file, or a range of it, through its channel.
+     *
+     * @since 11.1
+     */
+    protected void transferFileWithByteRange(File file, ByteRange byteRange,
+            Supplier<OutputStream> outputStreamSupplier) {
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            @SuppressWarnings("resource")
+            OutputStream out = outputStreamSupplier.get(); // not ours to close
+            BufferingServletOutputStream.stopBuffering(out);
+            long position = byteRange == null ? 0 : byteRange.getStart();
+            long count = byteRange == null ? channel.size() : byteRange.getLength();
+            @SuppressWarnings("resource")
+            WritableByteChannel target = Channels.newChannel(out); // closing it would close the output stream
+            while (count > 0) {
+                long n = channel.transferTo(position, count, target);
+                if (n <= 0) {
+                    // end of file reached before the end of the range
+                    break;
+                }
+                position += n;
+                count -= n;
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The parts of a {@code multipart/byteranges} response.
+     *
+     * @since 11.1
+     */
+    protected static class MultipartByteRanges {
+
+        protected final List<ByteRange> byteRanges;
+
+        protected final String boundary;
+
+        protected final String contentType;
+
+        protected final long length;
+
+        protected MultipartByteRanges(List<ByteRange> byteRanges, String contentType, long length) {
+            this.byteRanges = byteRanges;
+            this.contentType = contentType;
+            this.length = length;
+            boundary = UUID.randomUUID().toString().replace("-", "");
+        }
+
+        protected byte[] getPartHeader(ByteRange byteRange) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("\r\n--").append(boundary).append("\r\n");
+            if (StringUtils.isNotBlank(contentType)) {
+                sb.append("Content-Type: ").append(contentType).append("\r\n");
+            }
+            sb.append("Content-Range: bytes ")
+              .append(byteRange.getStart())
+              .append('-')
+              .append(byteRange.getEnd())
+              .append('/')
+              .append(length)
+              .append("\r\n\r\n");
+            return sb.toString().getBytes(StandardCharsets.US_ASCII);
+        }
+
+        protected byte[] getTrailer() {
+            return ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        }
+
+        protected long getContentLength() {
+            long contentLength = getTrailer().length;
+            for (ByteRange byteRange : byteRanges) {
+                contentLength += getPartHeader(byteRange).length + byteRange.getLength();
+            }
+            return contentLength;
+        }
+
+        /**
+         * Writes the parts, using the blob transferer for their content.
+         */
+        protected void transfer(OutputStream out, Consumer<ByteRange> blobTransferer) throws IOException {
+            BufferingServletOutputStream.stopBuffering(out);
+            for (ByteRange byteRange : byteRanges) {
+                out.write(getPartHeader(byteRange));
+                blobTransferer.accept(byteRange);
+            }
+            out.write(getTrailer());
+            out.flush();
+        }
+    }
+
     protected String fixXPath(String xpath) {
         // Hack for Flash Url wich doesn't support ':' char
         return xpath == null ? null : xpath.replace(';', ':');
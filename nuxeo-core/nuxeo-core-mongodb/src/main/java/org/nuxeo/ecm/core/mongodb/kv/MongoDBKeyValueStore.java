@@ -28,9 +28,11 @@ import static com.mongodb.client.model.Updates.unset;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import java.nio.charset.CharacterCodingException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
@@ -46,6 +48,7 @@ import org.bson.types.Binary;
 import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.kv.AbstractKeyValueStoreProvider;
+import org.nuxeo.runtime.kv.KeyValueBatch;
 import org.nuxeo.runtime.kv.KeyValueStoreDescriptor;
 import org.nuxeo.runtime.mongodb.MongoDBConnectionService;
 
@@ -55,10 +58,16 @@ import com.mongodb.MongoCommandException;
 import com.mongodb.MongoWriteException;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.DeleteOneModel;
 import com.mongodb.client.model.FindOneAndUpdateOptions;
 import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
 import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.UpdateOneModel;
 import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
 
@@ -357,6 +366,60 @@ public class MongoDBKeyValueStore extends AbstractKeyValueStoreProvider {
         }
     }
 
+    @Override
+    public List<Long> apply(KeyValueBatch batch) {
+        List<Long> results = new ArrayList<>(batch.size());
+        // consecutive writes are sent as a single ordered bulk write,
+        // an addAndGet needs its result so it flushes the pending writes
+        List<WriteModel<Document>> writes = new ArrayList<>();
+        for (KeyValueBatch.Operation op : batch.getOperations()) {
+            String key = op.getKey();
+            Bson filter = eq(ID_KEY, key);
+            switch (op.getType()) {
+            case PUT:
+                Object value = op.getValue();
+                if (value instanceof byte[]) {
+                    value = toStorage((byte[]) value);
+                }
+                if (value == null) {
+                    writes.add(new DeleteOneModel<>(filter));
+                } else {
+                    Document doc = new Document(VALUE_KEY, value);
+                    addTTL(doc, op.getTTL());
+                    writes.add(new ReplaceOneModel<>(filter, doc, new ReplaceOptions().upsert(true)));
+                }
+                break;
+            case DELETE:
+                writes.add(new DeleteOneModel<>(filter));
+                break;
+            case SET_TTL:
+                Bson update = op.getTTL() == 0 ? unset(TTL_KEY) : set(TTL_KEY, getDateFromTTL(op.getTTL()));
+                writes.add(new UpdateOneModel<>(filter, update));
+                break;
+            case ADD_AND_GET:
+                bulkWrite(writes);
+                results.add(Long.valueOf(addAndGet(key, op.getDelta())));
+                continue;
+            default:
+                throw new UnsupportedOperationException(op.getType().name());
+            }
+            results.add(null);
+        }
+        bulkWrite(writes);
+        return results;
+    }
+
+    protected void bulkWrite(List<WriteModel<Document>> writes) {
+        if (writes.isEmpty()) {
+            return;
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("MongoDB: BULKWRITE " + writes.size() + " operations");
+        }
+        coll.bulkWrite(writes, new BulkWriteOptions().ordered(true));
+        writes.clear();
+    }
+
     @Override
     public boolean setTTL(String key, long ttl) {
         Bson filter = eq(ID_KEY, key);
@@ -0,0 +1,255 @@
+/*
+ * (C) Copyright 2019 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.query.sql;
+
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import org.nuxeo.ecm.core.query.sql.model.DefaultQueryVisitor;
+import org.nuxeo.ecm.core.query.sql.model.Expression;
+import org.nuxeo.ecm.core.query.sql.model.FromClause;
+import org.nuxeo.ecm.core.query.sql.model.Function;
+import org.nuxeo.ecm.core.query.sql.model.Literal;
+import org.nuxeo.ecm.core.query.sql.model.LiteralList;
+import org.nuxeo.ecm.core.query.sql.model.MultiExpression;
+import org.nuxeo.ecm.core.query.sql.model.Operand;
+import org.nuxeo.ecm.core.query.sql.model.OperandList;
+import org.nuxeo.ecm.core.query.sql.model.Operator;
+import org.nuxeo.ecm.core.query.sql.model.OrderByClause;
+import org.nuxeo.ecm.core.query.sql.model.OrderByExpr;
+import org.nuxeo.ecm.core.query.sql.model.OrderByList;
+import org.nuxeo.ecm.core.query.sql.model.Predicate;
+import org.nuxeo.ecm.core.query.sql.model.Reference;
+import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
+import org.nuxeo.ecm.core.query.sql.model.SelectClause;
+import org.nuxeo.ecm.core.query.sql.model.StringLiteral;
+import org.nuxeo.ecm.core.query.sql.model.WhereClause;
+
+/**
+ * Writes a parsed {@link SQLQuery} back as an NXQL string that {@link SQLQueryParser} parses to the same query.
+ * <p>
+ * Nested expressions are always parenthesized, and string literals are escaped. GROUP BY and HAVING, which NXQL
+ * doesn't parse, are not written.
+ *
+ * @since 11.1
+ */
+public class NXQLQueryWriter extends DefaultQueryVisitor {
+
+    protected final StringBuilder buf = new StringBuilder();
+
+    /**
+     * Gets the NXQL string of a query.
+     */
+    public static String toNXQL(SQLQuery query) {
+        NXQLQueryWriter writer = new NXQLQueryWriter();
+        query.accept(writer);
+        return writer.buf.toString();
+    }
+
+    @Override
+    public void visitQuery(SQLQuery node) {
+        node.select.accept(this);
+        node.from.accept(this);
+        if (node.where != null) {
+            node.where.accept(this);
+        }
+        if (node.orderBy != null) {
+            node.orderBy.accept(this);
+        }
+        if (node.limit != 0) {
+            buf.append(" LIMIT ").append(node.limit);
+            if (node.offset != 0) {
+                buf.append(" OFFSET ").append(node.offset);
+            }
+        }
+    }
+
+    @Override
+    public void visitSelectClause(SelectClause node) {
+        buf.append("SELECT ");
+        if (node.distinct) {
+            buf.append("DISTINCT ");
+        }
+        if (node.elements.isEmpty()) {
+            buf.append('*');
+            return;
+        }
+        for (Iterator<Entry<String, Operand>> it = node.elements.entrySet().iterator(); it.hasNext();) {
+            Entry<String, Operand> es = it.next();
+            es.getValue().accept(this);
+            if (!es.getKey().equals(es.getValue().toString())) {
+                buf.append(" AS ").append(es.getKey());
+            }
+            if (it.hasNext()) {
+                buf.append(", ");
+            }
+        }
+    }
+
+    @Override
+    public void visitFromClause(FromClause node) {
+        buf.append(" FROM ");
+        if (node.type == FromClause.LOCATION) {
+            buf.append("LOCATION ");
+        }
+        for (Iterator<Entry<String, String>> it = node.elements.entrySet().iterator(); it.hasNext();) {
+            Entry<String, String> es = it.next();
+            buf.append(es.getValue());
+            if (!es.getKey().equals(es.getValue())) {
+                buf.append(" AS ").append(es.getKey());
+            }
+            if (it.hasNext()) {
+                buf.append(", ");
+            }
+        }
+    }
+
+    @Override
+    public void visitWhereClause(WhereClause node) {
+        buf.append(" WHERE ");
+        node.predicate.accept(this);
+    }
+
+    @Override
+    public void visitOrderByClause(OrderByClause node) {
+        buf.append(" ORDER BY ");
+        node.elements.accept(this);
+    }
+
+    @Override
+    public void visitOrderByList(OrderByList node) {
+        for (Iterator<OrderByExpr> it = node.iterator(); it.hasNext();) {
+            it.next().accept(this);
+            if (it.hasNext()) {
+                buf.append(", ");
+            }
+        }
+    }
+
+    @Override
+    public void visitOrderByExpr(OrderByExpr node) {
+        node.reference.accept(this);
+        if (node.isDescending) {
+            buf.append(" DESC");
+        }
+    }
+
+    @Override
+    public void visitExpression(Expression node) {
+        Operator op = node.operator;
+        if (node.rvalue == null) {
+            if (node.isSuffix()) {
+                // IS NULL, IS NOT NULL
+                node.lvalue.accept(this);
+                buf.append(' ').append(op);
+            } else {
+                // NOT
+                buf.append(op).append(' ');
+                visitNested(node.lvalue);
+            }
+        } else if (op == Operator.IN || op == Operator.NOTIN) {
+            node.lvalue.accept(this);
+            buf.append(' ').append(op).append(" (");
+            node.rvalue.accept(this);
+            buf.append(')');
+        } else if (op == Operator.BETWEEN || op == Operator.NOTBETWEEN) {
+            LiteralList range = (LiteralList) node.rvalue;
+            node.lvalue.accept(this);
+            buf.append(' ').append(op).append(' ');
+            range.get(0).accept(this);
+            buf.append(" AND ");
+            range.get(1).accept(this);
+        } else {
+            visitNested(node.lvalue);
+            buf.append(' ').append(op).append(' ');
+            visitNested(node.rvalue);
+        }
+    }
+
+    @Override
+    public void visitMultiExpression(MultiExpression node) {
+        if (node.predicates.isEmpty()) {
+            // an empty AND is always true, an empty OR always false
+            buf.append(node.operator == Operator.AND ? "1 = 1" : "1 = 0");
+            return;
+        }
+        for (Iterator<Predicate> it = node.predicates.iterator(); it.hasNext();) {
+            visitNested(it.next());
+            if (it.hasNext()) {
+                buf.append(' ').append(node.operator).append(' ');
+            }
+        }
+    }
+
+    /** Writes an operand, parenthesized if it's itself an expression. */
+    protected void visitNested(Operand operand) {
+        if (operand instanceof Expression) {
+            buf.append('(');
+            operand.accept(this);
+            buf.append(')');
+        } else {
+            operand.accept(this);
+        }
+    }
+
+    @Override
+    public void visitReference(Reference node) {
+        buf.append(node);
+    }
+
+    @Override
+    public void visitLiteralList(LiteralList node) {
+        for (Iterator<Literal> it = node.iterator(); it.hasNext();) {
+            it.next().accept(this);
+            if (it.hasNext()) {
+                buf.append(", ");
+            }
+        }
+    }
+
+    @Override
+    public void visitLiteral(Literal node) {
+        buf.append(node);
+    }
+
+    @Override
+    public void visitStringLiteral(StringLiteral node) {
+        buf.append(NXQL.escapeString(node.value));
+    }
+
+    @Override
+    public void visitFunction(Function node) {
+        buf.append(node.name).append('(');
+        if (node.args != null) {
+            node.args.accept(this);
+        }
+        buf.append(')');
+    }
+
+    @Override
+    public void visitOperandList(OperandList node) {
+        for (Iterator<Operand> it = node.iterator(); it.hasNext();) {
+            it.next().accept(this);
+            if (it.hasNext()) {
+                buf.append(", ");
+            }
+        }
+    }
+
+}
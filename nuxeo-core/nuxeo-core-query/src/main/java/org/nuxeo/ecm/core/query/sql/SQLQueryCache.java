@@ -0,0 +1,318 @@
+/*
+ * (C) Copyright 2019 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.query.sql;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.nuxeo.ecm.core.query.sql.model.DateLiteral;
+import org.nuxeo.ecm.core.query.sql.model.DoubleLiteral;
+import org.nuxeo.ecm.core.query.sql.model.IdentityQueryTransformer;
+import org.nuxeo.ecm.core.query.sql.model.IntegerLiteral;
+import org.nuxeo.ecm.core.query.sql.model.Literal;
+import org.nuxeo.ecm.core.query.sql.model.Reference;
+import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
+import org.nuxeo.ecm.core.query.sql.model.StringLiteral;
+import org.nuxeo.ecm.core.query.sql.parser.Scanner;
+import org.nuxeo.ecm.core.query.sql.parser.sym;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java_cup.runtime.Symbol;
+
+/**
+ * A cache of parsed NXQL queries, shared by all the callers of {@link SQLQueryParser#parse(String)}.
+ * <p>
+ * The cache is keyed by the shape of the query: its token stream where string and numeric literals are replaced by
+ * placeholders. On a cache hit, the cached query is copied with the literals of the new query substituted, so queries
+ * that only differ by their literal values are parsed once. If a query shape cannot be parameterized this way (for
+ * instance when a literal is used for a {@code LIMIT} or is negated), the query is cached by its full text instead.
+ * <p>
+ * A copy is returned for each call, as callers are free to modify the returned query.
+ * <p>
+ * The size of the cache is configured by the {@value #CACHE_SIZE_PROP} property, {@code 0} disables it.
+ *
+ * @since 11.1
+ */
+public class SQLQueryCache {
+
+    public static final String CACHE_SIZE_PROP = "nuxeo.query.parse.cache.size";
+
+    public static final int DEFAULT_CACHE_SIZE = 1000;
+
+    protected static final String METRICS_PREFIX = MetricRegistry.name("nuxeo", "query", "parse", "cache");
+
+    protected static volatile SQLQueryCache instance;
+
+    protected final Cache<String, Entry> cache;
+
+    protected final Counter hits;
+
+    protected final Counter misses;
+
+    /**
+     * A parsed query, and whether its literals can be substituted.
+     */
+    protected static class Entry {
+
+        protected final SQLQuery query;
+
+        protected final boolean parameterized;
+
+        protected Entry(SQLQuery query, boolean parameterized) {
+            this.query = query;
+            this.parameterized = parameterized;
+        }
+    }
+
+    /**
+     * Gets the shared cache, or {@code null} if caching is disabled.
+     */
+    public static SQLQueryCache getInstance() {
+        SQLQueryCache cache = instance;
+        if (cache == null) {
+            synchronized (SQLQueryCache.class) {
+                cache = instance;
+                if (cache == null) {
+                    instance = cache = new SQLQueryCache(getCacheSize());
+                }
+            }
+        }
+        return cache.cache == null ? null : cache;
+    }
+
+    /**
+     * Clears the shared cache.
+     */
+    public static void clear() {
+        SQLQueryCache cache = instance;
+        if (cache != null && cache.cache != null) {
+            cache.cache.invalidateAll();
+        }
+    }
+
+    protected static int getCacheSize() {
+        String size = Framework.isInitialized() ? Framework.getProperty(CACHE_SIZE_PROP)
+                : System.getProperty(CACHE_SIZE_PROP);
+        return size == null ? DEFAULT_CACHE_SIZE : Integer.parseInt(size.trim());
+    }
+
+    protected SQLQueryCache(int size) {
+        MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+        hits = registry.counter(MetricRegistry.name(METRICS_PREFIX, "hits"));
+        misses = registry.counter(MetricRegistry.name(METRICS_PREFIX, "misses"));
+        if (size <= 0) {
+            cache = null;
+            return;
+        }
+        cache = CacheBuilder.newBuilder().maximumSize(size).build();
+        String sizeName = MetricRegistry.name(METRICS_PREFIX, "size");
+        registry.remove(sizeName);
+        registry.register(sizeName, (Gauge<Long>) cache::size);
+    }
+
+    /**
+     * Parses a query, using the cache if possible.
+     */
+    public SQLQuery parse(String string) {
+        List<String> literals = new ArrayList<>();
+        String shape = getShape(string, literals);
+        if (shape == null) {
+            // lexical error, let the parser report it
+            return SQLQueryParser.parseNoCache(string);
+        }
+        Entry entry = cache.getIfPresent(shape);
+        if (entry != null && entry.parameterized) {
+            SQLQuery query = substitute(entry.query, literals);
+            if (query != null) {
+                hits.inc();
+                query.setQueryString(string);
+                return query;
+            }
+            // literal values are invalid for their type, let the parser report it
+            return SQLQueryParser.parseNoCache(string);
+        }
+        String fullKey = entry == null ? null : getFullKey(shape, literals);
+        if (fullKey != null) {
+            Entry fullEntry = cache.getIfPresent(fullKey);
+            if (fullEntry != null) {
+                hits.inc();
+                SQLQuery query = copy(fullEntry.query);
+                query.setQueryString(string);
+                return query;
+            }
+        }
+        misses.inc();
+        SQLQuery query = SQLQueryParser.parseNoCache(string);
+        if (entry == null) {
+            boolean parameterized = isParameterizable(query, literals);
+            cache.put(shape, new Entry(copy(query), parameterized));
+            if (!parameterized) {
+                cache.put(getFullKey(shape, literals), new Entry(copy(query), false));
+            }
+        } else {
+            cache.put(fullKey, new Entry(copy(query), false));
+        }
+        return query;
+    }
+
+    /**
+     * Gets the shape of a query, and collects its literals. Returns {@code null} if the query cannot be tokenized.
+     */
+    protected static String getShape(String string, List<String> literals) {
+        StringBuilder sb = new StringBuilder(string.length());
+        try {
+            Scanner scanner = new Scanner(new StringReader(string));
+            for (;;) {
+                Symbol symbol = scanner.next_token();
+                if (symbol.sym == sym.EOF) {
+                    break;
+                }
+                sb.append(symbol.sym);
+                if (symbol.sym == sym.STRING || symbol.sym == sym.INTEGER || symbol.sym == sym.DOUBLE) {
+                    literals.add(String.valueOf(symbol.value));
+                    sb.append('?');
+                } else if (symbol.value != null) {
+                    sb.append(':').append(symbol.value);
+                }
+                sb.append('\u0000');
+            }
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+        return sb.toString();
+    }
+
+    protected static String getFullKey(String shape, List<String> literals) {
+        StringBuilder sb = new StringBuilder(shape);
+        sb.append('\u0001');
+        for (String literal : literals) {
+            sb.append(literal).append('\u0000');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Checks that the literals of the parsed query are exactly the literal tokens of the query, in the same order, so
+     * that they can be substituted.
+     */
+    protected static boolean isParameterizable(SQLQuery query, List<String> literals) {
+        List<Literal> queryLiterals = new ArrayList<>();
+        new CopyTransformer(null, queryLiterals).transform(query);
+        if (queryLiterals.size() != literals.size()) {
+            return false;
+        }
+        for (int i = 0; i < literals.size(); i++) {
+            Literal literal = queryLiterals.get(i);
+            Literal substituted;
+            try {
+                substituted = newLiteral(literal, literals.get(i));
+            } catch (RuntimeException e) {
+                return false;
+            }
+            if (substituted == null || !substituted.equals(literal)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates a literal of the same type as the given one from a token value, or {@code null} if not possible.
+     */
+    protected static Literal newLiteral(Literal literal, String value) {
+        if (literal instanceof StringLiteral) {
+            return new StringLiteral(value);
+        } else if (literal instanceof IntegerLiteral) {
+            return new IntegerLiteral(value);
+        } else if (literal instanceof DoubleLiteral) {
+            return new DoubleLiteral(value);
+        } else if (literal instanceof DateLiteral) {
+            return new DateLiteral(value, ((DateLiteral) literal).onlyDate);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Copies a cached query substituting its literals, or returns {@code null} if a literal value is invalid.
+     */
+    protected static SQLQuery substitute(SQLQuery query, List<String> literals) {
+        try {
+            return new CopyTransformer(literals.iterator(), null).transform(query);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    protected static SQLQuery copy(SQLQuery query) {
+        return new CopyTransformer(null, null).transform(query);
+    }
+
+    /**
+     * Deep copy of a query, optionally substituting or collecting its literals.
+     */
+    protected static class CopyTransformer extends IdentityQueryTransformer {
+
+        protected final Iterator<String> substitutions;
+
+        protected final List<Literal> collected;
+
+        protected CopyTransformer(Iterator<String> substitutions, List<Literal> collected) {
+            this.substitutions = substitutions;
+            this.collected = collected;
+        }
+
+        @Override
+        public SQLQuery transform(SQLQuery node) {
+            SQLQuery query = super.transform(node);
+            query.setQueryString(node.getQueryString());
+            return query;
+        }
+
+        @Override
+        public Reference transform(Reference node) {
+            Reference ref = super.transform(node);
+            ref.originalName = node.originalName;
+            return ref;
+        }
+
+        @Override
+        public Literal transform(Literal node) {
+            if (collected != null) {
+                collected.add(node);
+            }
+            if (substitutions != null) {
+                return newLiteral(node, substitutions.next());
+            }
+            return node;
+        }
+    }
+
+}
@@ -48,7 +48,25 @@ public final class SQLQueryParser {
         }
     }
 
+    /**
+     * Parses a query string.
+     * <p>
+     * Parsed queries are cached by {@link SQLQueryCache}, and a new copy is returned for each call.
+     */
     public static SQLQuery parse(String string) throws QueryParseException {
+        SQLQueryCache cache = SQLQueryCache.getInstance();
+        if (cache != null) {
+            return cache.parse(string);
+        }
+        return parseNoCache(string);
+    }
+
+    /**
+     * Parses a query string without using the cache.
+     *
+     * @since 11.1
+     */
+    public static SQLQuery parseNoCache(String string) throws QueryParseException {
         SQLQuery query = parse(new StringReader(string));
         query.setQueryString(string);
         return query;
@@ -0,0 +1,69 @@
+/*
+ * (C) Copyright 2019 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.query.sql;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.query.sql.model.MultiExpression;
+import org.nuxeo.ecm.core.query.sql.model.Operator;
+import org.nuxeo.ecm.core.query.sql.model.Predicate;
+import org.nuxeo.ecm.core.query.sql.model.Reference;
+import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
+import org.nuxeo.ecm.core.query.sql.model.StringLiteral;
+
+public class TestNXQLQueryWriter {
+
+    protected static void assertRoundTrip(String query) {
+        SQLQuery sqlQuery = SQLQueryParser.parseNoCache(query);
+        String nxql = NXQLQueryWriter.toNXQL(sqlQuery);
+        assertEquals(query + " -> " + nxql, sqlQuery, SQLQueryParser.parseNoCache(nxql));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        for (String query : TestQueryParser2.GOOD_QUERIES) {
+            assertRoundTrip(query);
+        }
+        assertRoundTrip("SELECT * FROM Document WHERE ecm:isProxy = 0 ORDER BY dc:title DESC LIMIT 10 OFFSET 20");
+        assertRoundTrip("SELECT ecm:uuid AS id FROM Document WHERE ecm:mixinType IN ('Folderish', 'Orderable')");
+    }
+
+    @Test
+    public void testWrite() {
+        SQLQuery query = SQLQueryParser.parse("SELECT * FROM Document WHERE dc:title = 'a\\'b' AND ecm:isProxy = 0");
+        assertEquals("SELECT * FROM Document WHERE (dc:title = 'a\\'b') AND (ecm:isProxy = 0)",
+                NXQLQueryWriter.toNXQL(query));
+        String nxql = "SELECT ecm:uuid FROM Document WHERE ecm:path STARTSWITH '/' ORDER BY ecm:name DESC";
+        assertEquals(nxql, NXQLQueryWriter.toNXQL(SQLQueryParser.parse(nxql)));
+    }
+
+    @Test
+    public void testWriteMultiExpression() {
+        SQLQuery query = SQLQueryParser.parse("SELECT * FROM Document WHERE dc:title = 'foo' OR dc:title = 'bar'");
+        Predicate predicate = new MultiExpression(Operator.AND,
+                Arrays.asList(new Predicate(new Reference(NXQL.ECM_UUID), Operator.GTEQ, new StringLiteral("1")),
+                        query.where.predicate));
+        assertEquals("SELECT * FROM Document WHERE (ecm:uuid >= '1') AND ((dc:title = 'foo') OR (dc:title = 'bar'))",
+                NXQLQueryWriter.toNXQL(query.withPredicate(predicate)));
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * (C) Copyright 2019 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.query.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.ecm.core.query.QueryParseException;
+import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
+
+public class TestSQLQueryCache {
+
+    protected SQLQueryCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new SQLQueryCache(100);
+    }
+
+    protected void assertParsedSame(String string) {
+        SQLQuery expected = SQLQueryParser.parseNoCache(string);
+        SQLQuery actual = cache.parse(string);
+        assertEquals(expected, actual);
+        assertEquals(string, actual.getQueryString());
+    }
+
+    @Test
+    public void testSameShapeDifferentLiterals() {
+        String[] queries = { "SELECT * FROM Document WHERE dc:title = 'foo' AND ecm:parentId = 'abc'",
+                "SELECT * FROM Document WHERE dc:title = 'bar' AND ecm:parentId = 'def'",
+                "SELECT * FROM Document WHERE size > 3 AND rate < 1.5",
+                "SELECT * FROM Document WHERE size > 42 AND rate < 0.25",
+                "SELECT * FROM Document WHERE dc:modified > TIMESTAMP '2019-01-01T00:00:00.000Z'",
+                "SELECT * FROM Document WHERE dc:modified > TIMESTAMP '2019-02-03T04:05:06.000Z'",
+                "SELECT * FROM Document WHERE dc:issued = DATE '2019-01-01'",
+                "SELECT * FROM Document WHERE dc:issued = DATE '2019-02-03'",
+                "SELECT * FROM Document WHERE ecm:uuid IN ('a', 'b', 'c')",
+                "SELECT * FROM Document WHERE ecm:uuid IN ('d', 'e', 'f')", };
+        for (String query : queries) {
+            assertParsedSame(query);
+        }
+        // all hit the cache on a second pass
+        long hits = cache.hits.getCount();
+        for (String query : queries) {
+            assertParsedSame(query);
+        }
+        assertEquals(hits + queries.length, cache.hits.getCount());
+    }
+
+    @Test
+    public void testCopiesAreIndependent() {
+        String string = "SELECT * FROM Document WHERE dc:title = 'foo' ORDER BY dc:title";
+        SQLQuery query1 = cache.parse(string);
+        SQLQuery query2 = cache.parse(string);
+        assertNotSame(query1, query2);
+        assertEquals(query1, query2);
+        query1.orderBy.elements.clear();
+        query1.limit = 5;
+        assertNotEquals(query1, query2);
+        assertEquals(SQLQueryParser.parseNoCache(string), cache.parse(string));
+    }
+
+    @Test
+    public void testNotParameterizable() {
+        // literals that are not substitutable as such: LIMIT, OFFSET and negated numbers
+        assertParsedSame("SELECT * FROM Document LIMIT 10");
+        assertParsedSame("SELECT * FROM Document LIMIT 20");
+        assertParsedSame("SELECT * FROM Document LIMIT 10 OFFSET 5");
+        assertParsedSame("SELECT * FROM Document LIMIT 10 OFFSET 6");
+        assertParsedSame("SELECT * FROM Document WHERE size > -2");
+        assertParsedSame("SELECT * FROM Document WHERE size > -3");
+        assertParsedSame("SELECT * FROM Document LIMIT 20");
+        assertParsedSame("SELECT * FROM Document WHERE size > -2");
+    }
+
+    @Test
+    public void testInvalidQuery() {
+        for (String string : new String[] { "SELECT * FROM", "SELECT * FROM Document WHERE dc:title = 'foo",
+                "SELECT * FROM Document WHERE" }) {
+            for (int i = 0; i < 2; i++) {
+                try {
+                    cache.parse(string);
+                    fail("should fail: " + string);
+                } catch (QueryParseException e) {
+                    // ok
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidLiteralForCachedShape() {
+        cache.parse("SELECT * FROM Document WHERE dc:issued = DATE '2019-01-01'");
+        try {
+            cache.parse("SELECT * FROM Document WHERE dc:issued = DATE 'notadate'");
+            fail("should fail");
+        } catch (QueryParseException e) {
+            // ok
+        }
+    }
+
+}
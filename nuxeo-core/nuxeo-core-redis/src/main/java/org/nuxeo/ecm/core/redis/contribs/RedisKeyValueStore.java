@@ -23,6 +23,7 @@ import static org.apache.commons.lang3.StringUtils.isBlank;
 
 import java.io.IOException;
 import java.nio.charset.CharacterCodingException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -39,8 +40,11 @@ import org.nuxeo.ecm.core.redis.RedisAdmin;
 import org.nuxeo.ecm.core.redis.RedisExecutor;
 import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.kv.AbstractKeyValueStoreProvider;
+import org.nuxeo.runtime.kv.KeyValueBatch;
 import org.nuxeo.runtime.kv.KeyValueStoreDescriptor;
 
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.exceptions.JedisDataException;
 
 /**
@@ -279,4 +283,62 @@ public class RedisKeyValueStore extends AbstractKeyValueStoreProvider {
         return result.longValue();
     }
 
+    @Override
+    public List<Long> apply(KeyValueBatch batch) {
+        if (batch.isEmpty()) {
+            return new ArrayList<>();
+        }
+        RedisExecutor redisExecutor = Framework.getService(RedisExecutor.class);
+        return redisExecutor.execute(jedis -> {
+            // send all the commands in a single pipeline
+            // by operation index, null for operations without result
+            List<Response<Long>> responses = new ArrayList<>(batch.size());
+            Pipeline pipeline = jedis.pipelined();
+            for (KeyValueBatch.Operation op : batch.getOperations()) {
+                byte[] keyb = getBytes(namespace + op.getKey());
+                Response<Long> response = null;
+                switch (op.getType()) {
+                case PUT:
+                    byte[] value = valueToBytes(op.getValue());
+                    if (value == null) {
+                        pipeline.del(keyb);
+                    } else if (op.getTTL() == 0) {
+                        pipeline.set(keyb, value);
+                    } else {
+                        pipeline.setex(keyb, (int) op.getTTL(), value);
+                    }
+                    break;
+                case DELETE:
+                    pipeline.del(keyb);
+                    break;
+                case SET_TTL:
+                    if (op.getTTL() == 0) {
+                        pipeline.persist(keyb);
+                    } else {
+                        pipeline.expire(keyb, (int) op.getTTL());
+                    }
+                    break;
+                case ADD_AND_GET:
+                    response = pipeline.incrBy(keyb, op.getDelta());
+                    break;
+                default:
+                    throw new UnsupportedOperationException(op.getType().name());
+                }
+                responses.add(response);
+            }
+            pipeline.sync();
+            List<Long> results = new ArrayList<>(responses.size());
+            for (int i = 0; i < responses.size(); i++) {
+                Response<Long> response = responses.get(i);
+                try {
+                    results.add(response == null ? null : response.get());
+                } catch (JedisDataException e) {
+                    throw new NumberFormatException(
+                            "Value is not a Long for key: " + batch.getOperations().get(i).getKey());
+                }
+            }
+            return results;
+        });
+    }
+
 }
@@ -31,6 +31,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 import org.apache.commons.logging.Log;
@@ -47,6 +48,7 @@ import org.nuxeo.ecm.core.query.sql.model.OrderByClause;
 import org.nuxeo.ecm.core.storage.State;
 import org.nuxeo.ecm.core.storage.State.StateDiff;
 import org.nuxeo.ecm.core.storage.dbs.DBSTransactionState.ChangeTokenUpdater;
+import org.nuxeo.ecm.core.storage.dbs.DBSTransactionState.StateUpdate;
 import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.cluster.ClusterService;
 import org.nuxeo.runtime.metrics.MetricsService;
@@ -218,6 +220,15 @@ public class DBSCachingRepository implements DBSRepository {
         invalidate(id);
     }
 
+    @Override
+    public void updateStates(List<StateUpdate> updates) {
+        try {
+            repository.updateStates(updates);
+        } finally {
+            updates.forEach(update -> invalidate(update.id));
+        }
+    }
+
     @Override
     public void deleteStates(Set<String> ids) {
         repository.deleteStates(ids);
@@ -324,6 +335,12 @@ public class DBSCachingRepository implements DBSRepository {
         return repository.isChangeTokenEnabled();
     }
 
+    @Override
+    public boolean isReadStateSnapshot() {
+        // cached states are invalidated on update, never modified
+        return repository.isReadStateSnapshot();
+    }
+
     @Override
     public String getRootId() {
         return repository.getRootId();
@@ -359,6 +376,21 @@ public class DBSCachingRepository implements DBSRepository {
         return repository.getDescendants(id, keys, limit);
     }
 
+    @Override
+    public List<State> getDescendantsWithKey(String id, String key) {
+        return repository.getDescendantsWithKey(id, key);
+    }
+
+    @Override
+    public long updateDescendantsKeyValue(String id, Set<String> excludedIds, String key, Serializable value,
+            Consumer<List<String>> updatedIds) {
+        return repository.updateDescendantsKeyValue(id, excludedIds, key, value, ids -> {
+            // invalidate precisely the updated documents, locally and on other nodes
+            invalidateAll(ids);
+            updatedIds.accept(ids);
+        });
+    }
+
     @Override
     public boolean queryKeyValuePresence(String key, String value, Set<String> ignored) {
         return repository.queryKeyValuePresence(key, value, ignored);
@@ -385,6 +417,17 @@ public class DBSCachingRepository implements DBSRepository {
         return repository.scroll(scrollId);
     }
 
+    @Override
+    public ScrollResult<State> scrollStates(DBSExpressionEvaluator evaluator, int batchSize, int keepAliveSeconds) {
+        // don't go through the cache, a scroll is typically a full traversal that would evict everything
+        return repository.scrollStates(evaluator, batchSize, keepAliveSeconds);
+    }
+
+    @Override
+    public ScrollResult<State> scrollStates(String scrollId) {
+        return repository.scrollStates(scrollId);
+    }
+
     @Override
     public Lock getLock(String id) {
         return repository.getLock(id);
@@ -31,10 +31,12 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.function.Consumer;
 
 import org.apache.commons.lang3.StringUtils;
+import org.nuxeo.ecm.core.api.Blob;
 import org.nuxeo.ecm.core.api.DocumentNotFoundException;
 import org.nuxeo.ecm.core.api.LifeCycleException;
 import org.nuxeo.ecm.core.api.Lock;
@@ -407,7 +409,7 @@ public class DBSDocument extends BaseDocument<State> {
     @Override
     public Serializable getPropertyValue(String name) {
         DBSDocumentState docState = getStateOrTarget(name);
-        return docState.get(name);
+        return copyValue(docState.get(name));
     }
 
     // simple property only
@@ -419,6 +421,47 @@ public class DBSDocument extends BaseDocument<State> {
 
     // helpers for getValue / setValue
 
+    @Override
+    protected Object readValue(Object value) {
+        return copyValue((Serializable) value);
+    }
+
+    /**
+     * Copies the mutable parts of a value read from a document state, as the state may be shared with other sessions
+     * (see {@link DBSDocumentState#getStateForRead}).
+     *
+     * @since 11.1
+     */
+    protected static Serializable copyValue(Serializable value) {
+        if (value instanceof Calendar) {
+            return (Serializable) ((Calendar) value).clone();
+        } else if (value instanceof Object[]) {
+            Object[] array = ((Object[]) value).clone();
+            for (int i = 0; i < array.length; i++) {
+                if (array[i] instanceof Calendar) {
+                    array[i] = ((Calendar) array[i]).clone();
+                }
+            }
+            return array;
+        } else if (value instanceof State) {
+            State state = (State) value;
+            State copy = new State(state.size());
+            for (Entry<String, Serializable> en : state.entrySet()) {
+                copy.put(en.getKey(), copyValue(en.getValue()));
+            }
+            return copy;
+        } else if (value instanceof List) {
+            @SuppressWarnings("unchecked")
+            List<Serializable> list = (List<Serializable>) value;
+            ArrayList<Serializable> copy = new ArrayList<>(list.size());
+            for (Serializable v : list) {
+                copy.add(copyValue(v));
+            }
+            return copy;
+        }
+        return value;
+    }
+
     @Override
     protected State getChild(State state, String name, Type type) {
         return (State) state.get(name);
@@ -485,7 +528,7 @@ public class DBSDocument extends BaseDocument<State> {
     @Override
     public Object getValue(String xpath) throws PropertyException {
         DBSDocumentState docState = getStateOrTarget(xpath);
-        return getValueObject(docState.getState(), xpath);
+        return getValueObject(docState.getStateForRead(), xpath);
     }
 
     @Override
@@ -502,7 +545,26 @@ public class DBSDocument extends BaseDocument<State> {
             getTargetDocument().visitBlobs(blobVisitor);
             // fall through for proxy schemas
         }
-        visitBlobs(docState.getState(), blobVisitor, docState::markDirty);
+        // visit the state without copying it, the copy is only done by setValue when a blob is changed
+        visitBlobs(docState.getStateForRead(), accessor -> blobVisitor.accept(new BlobAccessor() {
+
+            @Override
+            public String getXPath() {
+                return accessor.getXPath();
+            }
+
+            @Override
+            public Blob getBlob() {
+                return accessor.getBlob();
+            }
+
+            @Override
+            public void setBlob(Blob blob) {
+                setValue(accessor.getXPath(), blob);
+            }
+        }), () -> {
+            throw new IllegalStateException("Cannot write to the read state");
+        });
     }
 
     @Override
@@ -632,7 +694,7 @@ public class DBSDocument extends BaseDocument<State> {
     @Override
     public Calendar getVersionCreationDate() {
         DBSDocumentState docState = getStateOrTarget();
-        return (Calendar) docState.get(KEY_VERSION_CREATED);
+        return (Calendar) copyValue(docState.get(KEY_VERSION_CREATED));
     }
 
     @Override
@@ -981,7 +1043,7 @@ public class DBSDocument extends BaseDocument<State> {
     @Override
     public void readDocumentPart(DocumentPart dp) throws PropertyException {
         DBSDocumentState docState = getStateOrTarget(dp.getType());
-        readComplexProperty(docState.getState(), (ComplexProperty) dp);
+        readComplexProperty(docState.getStateForRead(), (ComplexProperty) dp);
     }
 
     @Override
@@ -1130,7 +1192,7 @@ public class DBSDocument extends BaseDocument<State> {
         if (owner == null) {
             return null;
         }
-        Calendar created = (Calendar) docState.get(KEY_LOCK_CREATED);
+        Calendar created = (Calendar) copyValue(docState.get(KEY_LOCK_CREATED));
         return new Lock(owner, created);
     }
 
@@ -1139,7 +1201,7 @@ public class DBSDocument extends BaseDocument<State> {
         String owner = (String) docState.get(KEY_LOCK_OWNER);
         if (owner != null) {
             // return old lock
-            Calendar created = (Calendar) docState.get(KEY_LOCK_CREATED);
+            Calendar created = (Calendar) copyValue(docState.get(KEY_LOCK_CREATED));
             return new Lock(owner, created);
         }
         docState.put(KEY_LOCK_OWNER, lock.getOwner());
@@ -1154,7 +1216,7 @@ public class DBSDocument extends BaseDocument<State> {
             // no previous lock
             return null;
         }
-        Calendar oldCreated = (Calendar) docState.get(KEY_LOCK_CREATED);
+        Calendar oldCreated = (Calendar) copyValue(docState.get(KEY_LOCK_CREATED));
         if (!LockManager.canLockBeRemoved(oldOwner, owner)) {
             // existing mismatched lock, flag failure
             return new Lock(oldOwner, oldCreated, true);
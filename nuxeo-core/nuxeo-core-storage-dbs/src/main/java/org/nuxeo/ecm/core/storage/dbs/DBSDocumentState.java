@@ -39,6 +39,9 @@ import org.nuxeo.ecm.core.storage.State;
  * Implementation of a {@link Document} state for Document-Based Storage.
  * <p>
  * It wraps a {@link State}, together with a dirty flag.
+ * <p>
+ * A document state may be constructed on a shared base state, which is then only read until the first write, at which
+ * point a private copy is made (copy-on-write).
  *
  * @since 5.9.4
  */
@@ -46,10 +49,17 @@ public class DBSDocumentState {
 
     private static final String UNDEFINED_PARENT_ID = "_undefined_";
     /**
-     * The current state.
+     * The current state, or {@code null} if we're still reading from the shared {@link #baseState}.
      */
     protected State state;
 
+    /**
+     * When non-null, the shared base state, which must not be modified.
+     *
+     * @since 11.1
+     */
+    protected State baseState;
+
     /**
      * When non-null, the original state (otherwise the state hasn't been modified).
      */
@@ -71,7 +81,25 @@ public class DBSDocumentState {
      * Constructs a document state from the copy of an existing base state.
      */
     public DBSDocumentState(State base) {
-        state = StateHelper.deepCopy(base);
+        this(base, false);
+    }
+
+    /**
+     * Constructs a document state from an existing base state.
+     * <p>
+     * If the base state is shared, it is not copied: it must not be modified by anyone afterwards, and a private copy is
+     * only made when this document state is about to be changed.
+     *
+     * @param base the base state
+     * @param shared whether the base state can be shared instead of copied
+     * @since 11.1
+     */
+    public DBSDocumentState(State base, boolean shared) {
+        if (shared) {
+            baseState = base;
+        } else {
+            state = StateHelper.deepCopy(base);
+        }
         originalState = null;
     }
 
@@ -80,7 +108,14 @@ public class DBSDocumentState {
      */
     public void markDirty() {
         if (originalState == null) {
-            originalState = StateHelper.deepCopy(state);
+            if (state == null) {
+                // the shared base state is left untouched and can be used as the original state
+                originalState = baseState;
+                state = StateHelper.deepCopy(baseState);
+                baseState = null;
+            } else {
+                originalState = StateHelper.deepCopy(state);
+            }
         }
     }
 
@@ -93,6 +128,10 @@ public class DBSDocumentState {
 
     public void setNotDirty() {
         originalState = null;
+        if (state == null) {
+            // still reading from the shared base state, nothing changed
+            return;
+        }
         StateHelper.resetDeltas(state);
         // reset the change token delta even if delta processing is disabled in StateHelper.resetDeltas
         Serializable value = state.get(KEY_SYS_CHANGE_TOKEN);
@@ -104,11 +143,27 @@ public class DBSDocumentState {
     /**
      * Gets the state. If the caller changes the state, it must also call {@link #markDirty()} to inform this object
      * that the state is dirtied.
+     * <p>
+     * If the state is still shared, a private copy is made first. Callers that only read the state should use
+     * {@link #getStateForRead} instead.
      */
     public State getState() {
+        if (state == null) {
+            state = StateHelper.deepCopy(baseState);
+            baseState = null;
+        }
         return state;
     }
 
+    /**
+     * Gets the state, which must not be modified by the caller.
+     *
+     * @since 11.1
+     */
+    public State getStateForRead() {
+        return state == null ? baseState : state;
+    }
+
     /**
      * Gets a diff of what changed since this document state was read from database or saved.
      *
@@ -132,7 +187,7 @@ public class DBSDocumentState {
      * @since 7.4
      */
     public State getOriginalState() {
-        return originalState == null ? state : originalState;
+        return originalState == null ? getStateForRead() : originalState;
     }
 
     public Serializable get(String key) {
@@ -141,7 +196,7 @@ public class DBSDocumentState {
         } else if (KEY_PARENT_ID.equals(key)) {
             return getParentId();
         }
-        return state.get(key);
+        return getStateForRead().get(key);
     }
 
     public void put(String key, Serializable value) {
@@ -156,12 +211,12 @@ public class DBSDocumentState {
     }
 
     public boolean containsKey(String key) {
-        return state.get(key) != null;
+        return getStateForRead().get(key) != null;
     }
 
     public String getId() {
         if (id == null) {
-            id = (String) state.get(KEY_ID);
+            id = (String) getStateForRead().get(KEY_ID);
         }
         return id;
     }
@@ -169,7 +224,7 @@ public class DBSDocumentState {
     public String getParentId() {
         // use a marker because parentId can be null
         if (parentId == UNDEFINED_PARENT_ID) {
-            parentId = (String) state.get(KEY_PARENT_ID);
+            parentId = (String) getStateForRead().get(KEY_PARENT_ID);
         }
         return parentId;
     }
@@ -202,7 +257,7 @@ public class DBSDocumentState {
 
     @Override
     public String toString() {
-        return getClass().getSimpleName() + '(' + (isDirty() ? "dirty," : "") + state.toString() + ')';
+        return getClass().getSimpleName() + '(' + (isDirty() ? "dirty," : "") + getStateForRead().toString() + ')';
     }
 
 }
@@ -18,15 +18,27 @@
  */
 package org.nuxeo.ecm.core.storage.dbs;
 
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ANCESTOR_IDS;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ID;
+
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import org.nuxeo.ecm.core.api.ConcurrentUpdateException;
 import org.nuxeo.ecm.core.api.PartialList;
 import org.nuxeo.ecm.core.api.ScrollResult;
+import org.nuxeo.ecm.core.api.ScrollResultImpl;
 import org.nuxeo.ecm.core.blob.BlobManager;
 import org.nuxeo.ecm.core.model.LockManager;
 import org.nuxeo.ecm.core.model.Repository;
@@ -34,6 +46,7 @@ import org.nuxeo.ecm.core.query.sql.model.OrderByClause;
 import org.nuxeo.ecm.core.storage.State;
 import org.nuxeo.ecm.core.storage.State.StateDiff;
 import org.nuxeo.ecm.core.storage.dbs.DBSTransactionState.ChangeTokenUpdater;
+import org.nuxeo.ecm.core.storage.dbs.DBSTransactionState.StateUpdate;
 
 /**
  * Interface for a {@link Repository} for Document-Based Storage.
@@ -74,6 +87,18 @@ public interface DBSRepository extends Repository, LockManager {
      */
     boolean isChangeTokenEnabled();
 
+    /**
+     * Checks if the states returned by the read methods are snapshots that the repository never modifies afterwards.
+     * <p>
+     * In that case the sessions can share these states and only copy them when they are about to modify them.
+     *
+     * @return {@code true} if the returned states are never modified by the repository
+     * @since 11.1
+     */
+    default boolean isReadStateSnapshot() {
+        return false;
+    }
+
     /**
      * Gets the root id.
      *
@@ -144,6 +169,29 @@ public interface DBSRepository extends Repository, LockManager {
      */
     void updateState(String id, StateDiff diff, ChangeTokenUpdater changeTokenUpdater);
 
+    /**
+     * Updates several documents.
+     * <p>
+     * If some updates fail because of a change token mismatch or a missing document, the other updates are still
+     * applied, and a {@link ConcurrentUpdateException} mentioning all the failed document ids is thrown.
+     *
+     * @param updates the updates to make
+     * @since 11.1
+     */
+    default void updateStates(List<StateUpdate> updates) {
+        List<String> conflicts = new ArrayList<>();
+        for (StateUpdate update : updates) {
+            try {
+                updateState(update.id, update.diff, update.changeTokenUpdater);
+            } catch (ConcurrentUpdateException e) {
+                conflicts.add(update.id);
+            }
+        }
+        if (!conflicts.isEmpty()) {
+            throw new ConcurrentUpdateException(String.join(", ", conflicts));
+        }
+    }
+
     /**
      * Deletes a set of document.
      *
@@ -223,6 +271,58 @@ public interface DBSRepository extends Repository, LockManager {
         return getDescendants(id, keys);
     }
 
+    /**
+     * Gets the descendants of a given root document that have a non-null value for the given key.
+     *
+     * @param id the root document id
+     * @param key the key
+     * @return the {@link State}s of the matching descendants, with their ids and ancestor ids
+     * @since 11.1
+     */
+    default List<State> getDescendantsWithKey(String id, String key) {
+        // override for a more efficient implementation
+        try (Stream<State> states = getDescendants(id, new HashSet<>(Arrays.asList(KEY_ANCESTOR_IDS, key)))) {
+            return states.filter(state -> state.get(key) != null).collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Sets a value on the descendants of a given root document, skipping the excluded documents and their own
+     * descendants. Documents already having this value are not updated.
+     * <p>
+     * This is a direct update in the repository, no change token is checked or updated.
+     *
+     * @param id the root document id
+     * @param excludedIds the ids of the documents to skip, with their descendants
+     * @param key the key
+     * @param value the value to set
+     * @param updatedIds called with the ids of the updated documents, possibly several times
+     * @return the number of updated documents
+     * @since 11.1
+     */
+    default long updateDescendantsKeyValue(String id, Set<String> excludedIds, String key, Serializable value,
+            Consumer<List<String>> updatedIds) {
+        // override for a more efficient implementation
+        List<String> ids = new ArrayList<>();
+        try (Stream<State> states = getDescendants(id, new HashSet<>(Arrays.asList(KEY_ANCESTOR_IDS, key)))) {
+            states.filter(state -> !excludedIds.contains(state.get(KEY_ID)))
+                  .filter(state -> Arrays.stream((Object[]) state.get(KEY_ANCESTOR_IDS))
+                                         .noneMatch(excludedIds::contains))
+                  .filter(state -> !Objects.deepEquals(state.get(key), value))
+                  .forEach(state -> ids.add((String) state.get(KEY_ID)));
+        }
+        // we collect all ids first to avoid reentrancy to the repository
+        for (String docId : ids) {
+            StateDiff diff = new StateDiff();
+            diff.put(key, value);
+            updateState(docId, diff, null);
+        }
+        if (!ids.isEmpty()) {
+            updatedIds.accept(ids);
+        }
+        return ids.size();
+    }
+
     /**
      * Queries the repository to check if there are documents having key = value.
      *
@@ -275,6 +375,40 @@ public interface DBSRepository extends Repository, LockManager {
      */
     ScrollResult<String> scroll(String scrollId);
 
+    /**
+     * Executes the given query and returns the first batch of results containing the full states of the documents,
+     * next batch must be requested within the {@code keepAliveSeconds} delay.
+     * <p>
+     * The default implementation scrolls on ids and reads the states of each batch in bulk. Repositories able to
+     * iterate on full documents from their cursor should override it.
+     *
+     * @since 11.1
+     */
+    default ScrollResult<State> scrollStates(DBSExpressionEvaluator evaluator, int batchSize, int keepAliveSeconds) {
+        return readScrollStates(scroll(evaluator, batchSize, keepAliveSeconds));
+    }
+
+    /**
+     * Get the next batch of results containing the full states of the documents, the {@code scrollId} is part of the
+     * previous {@link ScrollResult} response.
+     *
+     * @since 11.1
+     */
+    default ScrollResult<State> scrollStates(String scrollId) {
+        return readScrollStates(scroll(scrollId));
+    }
+
+    /**
+     * Reads the states for a batch of scrolled ids.
+     *
+     * @since 11.1
+     */
+    default ScrollResult<State> readScrollStates(ScrollResult<String> scrollResult) {
+        List<String> ids = scrollResult.getResults();
+        List<State> states = ids.isEmpty() ? Collections.emptyList() : readStates(ids);
+        return new ScrollResultImpl<>(scrollResult.getScrollId(), states);
+    }
+
     /**
      * Called when created a transaction.
      *
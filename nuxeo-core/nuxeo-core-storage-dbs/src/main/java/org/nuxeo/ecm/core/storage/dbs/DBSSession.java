@@ -106,6 +106,7 @@ import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.ecm.core.api.NuxeoPrincipal;
 import org.nuxeo.ecm.core.api.PartialList;
 import org.nuxeo.ecm.core.api.ScrollResult;
+import org.nuxeo.ecm.core.api.ScrollResultImpl;
 import org.nuxeo.ecm.core.api.VersionModel;
 import org.nuxeo.ecm.core.api.repository.FulltextConfiguration;
 import org.nuxeo.ecm.core.api.security.ACE;
@@ -148,6 +149,7 @@ import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.metrics.MetricsService;
 import org.nuxeo.runtime.transaction.TransactionHelper;
 
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.SharedMetricRegistries;
 import com.codahale.metrics.Timer;
@@ -180,12 +182,26 @@ public class DBSSession implements Session<QueryFilter> {
 
     private final Timer queryTimer;
 
+    /**
+     * Number of documents updated by each save.
+     *
+     * @since 11.1
+     */
+    protected final Histogram updateBatchSizeHistogram;
+
     private static final String LOG_MIN_DURATION_KEY = "org.nuxeo.dbs.query.log_min_duration_ms";
 
     private long LOG_MIN_DURATION_NS = -1 * 1000000;
 
     protected boolean isLatestVersionDisabled = false;
 
+    /**
+     * The ids of the last batch read by each document scroll, evicted from the transient space at the next batch.
+     *
+     * @since 11.1
+     */
+    protected final Map<String, List<String>> scrollIds = new HashMap<>();
+
     public DBSSession(DBSRepository repository) {
         this.repository = repository;
         transaction = new DBSTransactionState(repository, this);
@@ -195,6 +211,8 @@ public class DBSSession implements Session<QueryFilter> {
 
         saveTimer = registry.timer(MetricRegistry.name("nuxeo", "repositories", repository.getName(), "saves"));
         queryTimer = registry.timer(MetricRegistry.name("nuxeo", "repositories", repository.getName(), "queries"));
+        updateBatchSizeHistogram = registry.histogram(
+                MetricRegistry.name("nuxeo", "repositories", repository.getName(), "updates", "batch"));
         LOG_MIN_DURATION_NS = Long.parseLong(Framework.getProperty(LOG_MIN_DURATION_KEY, "-1")) * 1000000;
         isLatestVersionDisabled = Framework.isBooleanPropertyTrue(DISABLED_ISLATESTVERSION_PROPERTY);
     }
@@ -233,10 +251,12 @@ public class DBSSession implements Session<QueryFilter> {
     }
 
     public void commit() {
+        scrollIds.clear();
         transaction.commit();
     }
 
     public void rollback() {
+        scrollIds.clear();
         transaction.rollback();
     }
 
@@ -399,6 +419,25 @@ public class DBSSession implements Session<QueryFilter> {
         throw new DocumentNotFoundException(id);
     }
 
+    @Override
+    public List<Document> getDocumentsByUUID(List<String> ids) {
+        return getDocuments(ids);
+    }
+
+    @Override
+    public List<Document> filterByReadAcls(List<Document> docs, Set<String> principals) {
+        // flush, like for queries, so that the read ACLs of modified documents are up to date
+        transaction.save();
+        List<Document> filtered = new ArrayList<>(docs.size());
+        for (Document doc : docs) {
+            String[] racl = (String[]) transaction.getStateForRead(doc.getUUID()).get(KEY_READ_ACL);
+            if (racl != null && Arrays.stream(racl).anyMatch(principals::contains)) {
+                filtered.add(doc);
+            }
+        }
+        return filtered;
+    }
+
     @Override
     public Document getRootDocument() {
         return getDocument(getRootId());
@@ -1243,6 +1282,11 @@ public class DBSSession implements Session<QueryFilter> {
         transaction.updateReadACLs(docIds);
     }
 
+    @Override
+    public void updateTreeReadACLs(Collection<String> docIds) {
+        transaction.updateTreeReadACLs(docIds);
+    }
+
     @Override
     public boolean isNegativeAclAllowed() {
         return false;
@@ -1782,31 +1826,76 @@ public class DBSSession implements Session<QueryFilter> {
 
     @Override
     public ScrollResult<String> scroll(String query, int batchSize, int keepAliveSeconds) {
-        SQLQuery sqlQuery = SQLQueryParser.parse(query);
-        SelectClause selectClause = sqlQuery.select;
-        selectClause.add(new Reference(NXQL.ECM_UUID));
-        sqlQuery = new DBSQueryOptimizer().optimize(sqlQuery);
-        DBSExpressionEvaluator evaluator = new DBSExpressionEvaluator(this, sqlQuery, null, fulltextSearchDisabled);
+        DBSExpressionEvaluator evaluator = getScrollEvaluator(query, null);
         return repository.scroll(evaluator, batchSize, keepAliveSeconds);
     }
 
     @Override
     public ScrollResult<String> scroll(String query, QueryFilter queryFilter, int batchSize, int keepAliveSeconds) {
+        DBSExpressionEvaluator evaluator = getScrollEvaluator(query, queryFilter);
+        return repository.scroll(evaluator, batchSize, keepAliveSeconds);
+    }
+
+    @Override
+    public ScrollResult<String> scroll(String scrollId) {
+        return repository.scroll(scrollId);
+    }
+
+    @Override
+    public ScrollResult<Document> scrollDocuments(String query, QueryFilter queryFilter, int batchSize,
+            int keepAliveSeconds) {
+        DBSExpressionEvaluator evaluator = getScrollEvaluator(query, queryFilter);
+        return readScrollDocuments(repository.scrollStates(evaluator, batchSize, keepAliveSeconds));
+    }
+
+    @Override
+    public ScrollResult<Document> scrollDocuments(String scrollId) {
+        return readScrollDocuments(repository.scrollStates(scrollId));
+    }
+
+    protected DBSExpressionEvaluator getScrollEvaluator(String query, QueryFilter queryFilter) {
         SQLQuery sqlQuery = SQLQueryParser.parse(query);
         SelectClause selectClause = sqlQuery.select;
         selectClause.add(new Reference(NXQL.ECM_UUID));
         sqlQuery = new DBSQueryOptimizer().optimize(sqlQuery);
+        if (queryFilter == null) {
+            return new DBSExpressionEvaluator(this, sqlQuery, null, fulltextSearchDisabled);
+        }
         for (SQLQuery.Transformer transformer : queryFilter.getQueryTransformers()) {
             sqlQuery = transformer.transform(queryFilter.getPrincipal(), sqlQuery);
         }
-        DBSExpressionEvaluator evaluator = new DBSExpressionEvaluator(this, sqlQuery, queryFilter.getPrincipals(),
-                fulltextSearchDisabled);
-        return repository.scroll(evaluator, batchSize, keepAliveSeconds);
+        return new DBSExpressionEvaluator(this, sqlQuery, queryFilter.getPrincipals(), fulltextSearchDisabled);
     }
 
-    @Override
-    public ScrollResult<String> scroll(String scrollId) {
-        return repository.scroll(scrollId);
+    /**
+     * Builds the documents of a scrolled batch.
+     * <p>
+     * To keep the memory bounded during a long scroll, the documents of a batch stay in the transient space only until
+     * the next batch is read: they are then evicted, unless they have been modified meanwhile. Documents that were
+     * already in the transient space before being scrolled are left there.
+     */
+    protected ScrollResult<Document> readScrollDocuments(ScrollResult<State> scrollResult) {
+        String scrollId = scrollResult.getScrollId();
+        List<String> previousIds = scrollIds.remove(scrollId);
+        if (previousIds != null) {
+            transaction.evictUnmodifiedStates(previousIds);
+        }
+        List<State> states = scrollResult.getResults();
+        List<String> newIds = new ArrayList<>(states.size());
+        List<DBSDocumentState> docStates = transaction.getStatesForUpdateFromRead(states, newIds);
+        List<Document> docs = new ArrayList<>(docStates.size());
+        for (DBSDocumentState docState : docStates) {
+            try {
+                docs.add(getDocument(docState));
+            } catch (DocumentNotFoundException e) {
+                // unknown type in db or null proxy target, ignore
+                continue;
+            }
+        }
+        if (!newIds.isEmpty()) {
+            scrollIds.put(scrollId, newIds);
+        }
+        return new ScrollResultImpl<>(scrollId, docs);
     }
 
     private String countUpToAsString(long countUpTo) {
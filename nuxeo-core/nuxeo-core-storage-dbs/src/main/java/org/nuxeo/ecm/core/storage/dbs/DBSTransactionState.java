@@ -22,6 +22,7 @@ import static java.lang.Boolean.FALSE;
 import static java.lang.Boolean.TRUE;
 import static org.nuxeo.ecm.core.api.security.SecurityConstants.BROWSE;
 import static org.nuxeo.ecm.core.api.security.SecurityConstants.EVERYONE;
+import static org.nuxeo.ecm.core.api.security.SecurityConstants.SYSTEM_USERNAME;
 import static org.nuxeo.ecm.core.api.security.SecurityConstants.UNSUPPORTED_ACL;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.INITIAL_CHANGE_TOKEN;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.INITIAL_SYS_CHANGE_TOKEN;
@@ -61,12 +62,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.core.BatchFinderWork;
 import org.nuxeo.ecm.core.BatchProcessorWork;
+import org.nuxeo.ecm.core.action.UpdateReadAclsAction;
 import org.nuxeo.ecm.core.api.ConcurrentUpdateException;
 import org.nuxeo.ecm.core.api.NuxeoPrincipal;
 import org.nuxeo.ecm.core.api.PartialList;
@@ -74,6 +77,8 @@ import org.nuxeo.ecm.core.api.SystemPrincipal;
 import org.nuxeo.ecm.core.api.model.DeltaLong;
 import org.nuxeo.ecm.core.api.repository.FulltextConfiguration;
 import org.nuxeo.ecm.core.api.repository.RepositoryManager;
+import org.nuxeo.ecm.core.bulk.BulkService;
+import org.nuxeo.ecm.core.bulk.message.BulkCommand;
 import org.nuxeo.ecm.core.query.QueryFilter;
 import org.nuxeo.ecm.core.query.sql.NXQL;
 import org.nuxeo.ecm.core.schema.SchemaManager;
@@ -120,6 +125,12 @@ public class DBSTransactionState {
 
     public static final String READ_ACL_ASYNC_THRESHOLD_DEFAULT = "500";
 
+    /** @since 11.1 */
+    public static final String READ_ACL_INCREMENTAL_ENABLED_PROPERTY = "nuxeo.core.readacl.incremental.enabled";
+
+    /** @since 11.1 */
+    public static final String READ_ACL_INCREMENTAL_ENABLED_DEFAULT = "true";
+
     protected final DBSRepository repository;
 
     protected final DBSSession session;
@@ -168,7 +179,8 @@ public class DBSTransactionState {
         if (transientStates.containsKey(id)) {
             throw new IllegalStateException("Already transient: " + id);
         }
-        DBSDocumentState docState = new DBSDocumentState(state); // copy
+        // share the state if it's a snapshot, it will be copied on write
+        DBSDocumentState docState = new DBSDocumentState(state, repository.isReadStateSnapshot());
         transientStates.put(id, docState);
         return docState;
     }
@@ -198,7 +210,7 @@ public class DBSTransactionState {
         // check transient state
         DBSDocumentState docState = transientStates.get(id);
         if (docState != null) {
-            return docState.getState();
+            return docState.getStateForRead();
         }
         // fetch from repository
         return repository.readState(id);
@@ -241,6 +253,46 @@ public class DBSTransactionState {
         return docStates;
     }
 
+    /**
+     * Returns states for states already read from the repository, and marks them transient, because they're about to
+     * be returned to user code (where they may be modified).
+     * <p>
+     * If a state is already transient, the transient one is returned, as it may hold changes not yet saved.
+     *
+     * @param newIds filled with the ids of the states that were not already transient
+     * @since 11.1
+     */
+    public List<DBSDocumentState> getStatesForUpdateFromRead(List<State> states, Collection<String> newIds) {
+        List<DBSDocumentState> docStates = new ArrayList<>(states.size());
+        for (State state : states) {
+            String id = (String) state.get(KEY_ID);
+            DBSDocumentState docState = transientStates.get(id);
+            if (docState == null) {
+                docState = newTransientState(state);
+                newIds.add(id);
+            }
+            docStates.add(docState);
+        }
+        return docStates;
+    }
+
+    /**
+     * Removes some states from the transient space if they hold no pending changes, to release the memory of documents
+     * that were only read.
+     * <p>
+     * A {@link DBSDocument} still referencing an evicted state must not be modified anymore.
+     *
+     * @since 11.1
+     */
+    public void evictUnmodifiedStates(Collection<String> ids) {
+        for (String id : ids) {
+            DBSDocumentState docState = transientStates.get(id);
+            if (docState != null && !docState.isDirty() && !transientCreated.contains(id)) {
+                transientStates.remove(id);
+            }
+        }
+    }
+
     // XXX TODO for update or for read?
     public DBSDocumentState getChildState(String parentId, String name) {
         // check transient state
@@ -396,7 +448,7 @@ public class DBSTransactionState {
      * The copy is automatically saved.
      */
     public DBSDocumentState copy(String id) {
-        DBSDocumentState copyState = new DBSDocumentState(getStateForRead(id));
+        DBSDocumentState copyState = new DBSDocumentState(getStateForRead(id)); // copy
         String copyId = repository.generateNewId();
         copyState.put(KEY_ID, copyId);
         copyState.put(KEY_PROXY_IDS, null); // no proxies to this new doc
@@ -482,13 +534,33 @@ public class DBSTransactionState {
                 updateDocumentReadAcls(childId);
             }
 
-            // asynchronous work to do the whole tree
-            nxql = String.format("SELECT ecm:uuid FROM Document WHERE ecm:ancestorId = '%s'", id);
-            Work work = new FindReadAclsWork(repository.getName(), nxql, null);
-            Framework.getService(WorkManager.class).schedule(work);
+            if (isReadAclsIncrementalEnabled()) {
+                // bulk action to do the whole tree, one region of documents inheriting the same ACLs at a time
+                nxql = String.format("SELECT * FROM Document WHERE ecm:uuid = '%s'"
+                        + " OR (ecm:ancestorId = '%s' AND ecm:acl/*/name IS NOT NULL)", id, id);
+                BulkCommand command = new BulkCommand.Builder(UpdateReadAclsAction.ACTION_NAME, nxql,
+                        SYSTEM_USERNAME).repository(repository.getName()).build();
+                Framework.getService(BulkService.class).submit(command);
+            } else {
+                // asynchronous work to do the whole tree
+                nxql = String.format("SELECT ecm:uuid FROM Document WHERE ecm:ancestorId = '%s'", id);
+                Work work = new FindReadAclsWork(repository.getName(), nxql, null);
+                Framework.getService(WorkManager.class).schedule(work);
+            }
         }
     }
 
+    /**
+     * Checks if Read ACLs of large trees are updated incrementally, one region of documents inheriting the same ACLs
+     * at a time, instead of one document at a time.
+     *
+     * @since 11.1
+     */
+    protected boolean isReadAclsIncrementalEnabled() {
+        return Boolean.parseBoolean(
+                Framework.getProperty(READ_ACL_INCREMENTAL_ENABLED_PROPERTY, READ_ACL_INCREMENTAL_ENABLED_DEFAULT));
+    }
+
     /**
      * Work to find the ids of documents for which Read ACLs must be recomputed, and launch the needed update works.
      *
@@ -565,12 +637,63 @@ public class DBSTransactionState {
         docIds.forEach(id -> updateDocumentReadAclsNoCache(id));
     }
 
+    /**
+     * Updates the Read ACLs on some documents and on the descendants inheriting their ACLs.
+     * <p>
+     * The Read ACL is computed once for each document, and set in bulk on its descendants, except those having their
+     * own ACP and their own descendants. This bypasses transient space and caches, like
+     * {@link #updateReadACLs(Collection)}.
+     *
+     * @since 11.1
+     */
+    public void updateTreeReadACLs(Collection<String> docIds) {
+        for (String id : docIds) {
+            State state = repository.readPartialState(id, READ_ACL_RECURSION_KEYS);
+            if (state == null) {
+                // deleted since
+                continue;
+            }
+            String[] racl = getReadACL(state);
+            if (!Arrays.equals(racl, (Object[]) state.get(KEY_READ_ACL))) {
+                StateDiff diff = new StateDiff();
+                diff.put(KEY_READ_ACL, racl);
+                repository.updateState(id, diff, null);
+            }
+            // descendants with their own ACP are processed separately, as they start their own region
+            Set<String> excludedIds = getRegionRootIds(id);
+            long count = repository.updateDescendantsKeyValue(id, excludedIds, KEY_READ_ACL, racl, ids -> {});
+            if (log.isDebugEnabled()) {
+                log.debug("Updated Read ACLs of " + count + " descendants of " + id);
+            }
+        }
+    }
+
+    /**
+     * Gets the descendants having their own ACP that have no ancestor with an ACP below the given document.
+     * <p>
+     * Excluding these documents with their subtrees is enough to exclude all the descendants having their own ACP.
+     *
+     * @since 11.1
+     */
+    protected Set<String> getRegionRootIds(String id) {
+        List<State> states = repository.getDescendantsWithKey(id, KEY_ACP);
+        Set<String> acpIds = states.stream().map(state -> (String) state.get(KEY_ID)).collect(Collectors.toSet());
+        Set<String> regionRootIds = new HashSet<>();
+        for (State state : states) {
+            Object[] ancestorIds = (Object[]) state.get(KEY_ANCESTOR_IDS);
+            if (Arrays.stream(ancestorIds).noneMatch(acpIds::contains)) {
+                regionRootIds.add((String) state.get(KEY_ID));
+            }
+        }
+        return regionRootIds;
+    }
+
     /**
      * Updates the Read ACLs on a document (not recursively)
      */
     protected void updateDocumentReadAcls(String id) {
         DBSDocumentState docState = getStateForUpdate(id);
-        docState.put(KEY_READ_ACL, getReadACL(docState.getState()));
+        docState.put(KEY_READ_ACL, getReadACL(docState.getStateForRead()));
     }
 
     /**
@@ -746,6 +869,8 @@ public class DBSTransactionState {
         if (!statesToCreate.isEmpty()) {
             repository.createStates(statesToCreate);
         }
+        List<StateUpdate> updates = new ArrayList<>();
+        List<DBSDocumentState> updatedDocStates = new ArrayList<>();
         for (DBSDocumentState docState : transientStates.values()) {
             String id = docState.getId();
             if (transientCreated.contains(id)) {
@@ -753,32 +878,37 @@ public class DBSTransactionState {
             }
             StateDiff diff = docState.getStateChange();
             if (diff != null) {
-                try {
-                    if (undoLog != null) {
-                        if (!undoLog.containsKey(id)) {
-                            undoLog.put(id, StateHelper.deepCopy(docState.getOriginalState()));
-                        }
-                        // else there's already a create or an update in the undo log so original info is enough
+                if (undoLog != null) {
+                    if (!undoLog.containsKey(id)) {
+                        undoLog.put(id, StateHelper.deepCopy(docState.getOriginalState()));
                     }
-                    ChangeTokenUpdater changeTokenUpdater;
-                    if (session.changeTokenEnabled) {
-                        // increment system change token
-                        Long base = (Long) docState.get(KEY_SYS_CHANGE_TOKEN);
-                        docState.put(KEY_SYS_CHANGE_TOKEN, DeltaLong.valueOf(base, 1));
-                        diff.put(KEY_SYS_CHANGE_TOKEN, DeltaLong.valueOf(base, 1));
-                        // update change token if applicable (user change)
-                        if (userChangeIds.contains(id)) {
-                            changeTokenUpdater = new ChangeTokenUpdater(docState);
-                        } else {
-                            changeTokenUpdater = null;
-                        }
+                    // else there's already a create or an update in the undo log so original info is enough
+                }
+                ChangeTokenUpdater changeTokenUpdater;
+                if (session.changeTokenEnabled) {
+                    // increment system change token
+                    Long base = (Long) docState.get(KEY_SYS_CHANGE_TOKEN);
+                    docState.put(KEY_SYS_CHANGE_TOKEN, DeltaLong.valueOf(base, 1));
+                    diff.put(KEY_SYS_CHANGE_TOKEN, DeltaLong.valueOf(base, 1));
+                    // update change token if applicable (user change)
+                    if (userChangeIds.contains(id)) {
+                        changeTokenUpdater = new ChangeTokenUpdater(docState);
                     } else {
                         changeTokenUpdater = null;
                     }
-                    repository.updateState(id, diff, changeTokenUpdater);
-                } finally {
-                    docState.setNotDirty();
+                } else {
+                    changeTokenUpdater = null;
                 }
+                updates.add(new StateUpdate(id, diff, changeTokenUpdater));
+                updatedDocStates.add(docState);
+            }
+        }
+        if (!updates.isEmpty()) {
+            session.updateBatchSizeHistogram.update(updates.size());
+            try {
+                repository.updateStates(updates);
+            } finally {
+                updatedDocStates.forEach(DBSDocumentState::setNotDirty);
             }
         }
         transientCreated.clear();
@@ -830,6 +960,32 @@ public class DBSTransactionState {
         }
     }
 
+    /**
+     * The update of a document: its id, the diff to apply, and how to update its change token.
+     *
+     * @since 11.1
+     */
+    public static class StateUpdate {
+
+        public final String id;
+
+        public final StateDiff diff;
+
+        /** May be {@code null}. */
+        public final ChangeTokenUpdater changeTokenUpdater;
+
+        public StateUpdate(String id, StateDiff diff, ChangeTokenUpdater changeTokenUpdater) {
+            this.id = id;
+            this.diff = diff;
+            this.changeTokenUpdater = changeTokenUpdater;
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "(" + id + "," + diff + ")";
+        }
+    }
+
     protected void applyUndoLog() {
         Set<String> deletes = new HashSet<>();
         for (Entry<String, State> es : undoLog.entrySet()) {
@@ -905,13 +1061,13 @@ public class DBSTransactionState {
         }
         SchemaManager schemaManager = Framework.getService(SchemaManager.class);
         // clear all proxy data
-        for (String key : proxy.getState().keyArray()) {
+        for (String key : proxy.getStateForRead().keyArray()) {
             if (!isProxySpecific(key, schemaManager)) {
                 proxy.put(key, null);
             }
         }
         // copy from target
-        for (Entry<String, Serializable> en : target.getState().entrySet()) {
+        for (Entry<String, Serializable> en : target.getStateForRead().entrySet()) {
             String key = en.getKey();
             if (!isProxySpecific(key, schemaManager)) {
                 proxy.put(key, StateHelper.deepCopy(en.getValue()));
@@ -1055,7 +1211,7 @@ public class DBSTransactionState {
     protected void findDirtyDocuments(Set<String> docsWithDirtyStrings, Set<String> docsWithDirtyBinaries) {
         for (DBSDocumentState docState : transientStates.values()) {
             State originalState = docState.getOriginalState();
-            State state = docState.getState();
+            State state = docState.getStateForRead();
             if (originalState == state) {
                 continue;
             }
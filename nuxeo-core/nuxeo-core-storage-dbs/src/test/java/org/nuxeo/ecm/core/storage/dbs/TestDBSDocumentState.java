@@ -0,0 +1,135 @@
+/*
+ * (C) Copyright 2019 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.dbs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_NAME;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.storage.State;
+import org.nuxeo.ecm.core.storage.State.StateDiff;
+
+public class TestDBSDocumentState {
+
+    protected static State newState() {
+        State sub = new State();
+        sub.put("color", "black");
+        State state = new State();
+        state.put(KEY_ID, "id1");
+        state.put(KEY_NAME, "doc");
+        state.put("sub", sub);
+        return state;
+    }
+
+    @Test
+    public void testSharedStateIsNotCopiedOnRead() {
+        State base = newState();
+        DBSDocumentState docState = new DBSDocumentState(base, true);
+        assertSame(base, docState.getStateForRead());
+        assertSame(base, docState.getOriginalState());
+        assertEquals("id1", docState.getId());
+        assertEquals("doc", docState.getName());
+        assertTrue(docState.containsKey("sub"));
+        assertFalse(docState.isDirty());
+        assertNull(docState.getStateChange());
+        docState.setNotDirty();
+        assertSame(base, docState.getStateForRead());
+    }
+
+    @Test
+    public void testSharedStateIsCopiedOnWrite() {
+        State base = newState();
+        DBSDocumentState docState = new DBSDocumentState(base, true);
+        docState.put(KEY_NAME, "newdoc");
+        assertTrue(docState.isDirty());
+        assertEquals("newdoc", docState.getName());
+        assertNotSame(base, docState.getStateForRead());
+        // the shared state is untouched and serves as original state
+        assertEquals("doc", base.get(KEY_NAME));
+        assertSame(base, docState.getOriginalState());
+        StateDiff diff = docState.getStateChange();
+        assertEquals("newdoc", diff.get(KEY_NAME));
+        assertEquals(1, diff.size());
+    }
+
+    @Test
+    public void testSharedStateIsCopiedOnDirectWrite() {
+        State base = newState();
+        DBSDocumentState docState = new DBSDocumentState(base, true);
+        docState.markDirty();
+        ((State) docState.getState().get("sub")).put("color", "white");
+        // the shared state is untouched
+        assertEquals("black", ((State) base.get("sub")).get("color"));
+        assertEquals("white", ((State) docState.getStateForRead().get("sub")).get("color"));
+        assertNotNull(docState.getStateChange());
+    }
+
+    @Test
+    public void testNonSharedStateIsCopied() {
+        State base = newState();
+        DBSDocumentState docState = new DBSDocumentState(base);
+        assertNotSame(base, docState.getStateForRead());
+        assertEquals(base, docState.getStateForRead());
+        docState.put(KEY_NAME, "newdoc");
+        assertEquals("doc", base.get(KEY_NAME));
+    }
+
+    @Test
+    public void testValuesReadFromSharedStateAreCopied() {
+        Calendar created = Calendar.getInstance();
+        long time = created.getTimeInMillis();
+        State sub = new State();
+        sub.put("date", created);
+        ArrayList<Serializable> list = new ArrayList<>();
+        list.add(sub);
+        State base = newState();
+        base.put("dates", new Calendar[] { created });
+        base.put("list", list);
+
+        // mutate everything read
+        Calendar date = (Calendar) DBSDocument.copyValue(created);
+        date.add(Calendar.DAY_OF_MONTH, 1);
+        Object[] dates = (Object[]) DBSDocument.copyValue(base.get("dates"));
+        ((Calendar) dates[0]).add(Calendar.DAY_OF_MONTH, 1);
+        dates[0] = null;
+        @SuppressWarnings("unchecked")
+        List<Serializable> readList = (List<Serializable>) DBSDocument.copyValue(base.get("list"));
+        ((Calendar) ((State) readList.get(0)).get("date")).add(Calendar.DAY_OF_MONTH, 1);
+        readList.clear();
+
+        // the shared state is untouched
+        assertEquals(time, created.getTimeInMillis());
+        assertSame(created, ((Object[]) base.get("dates"))[0]);
+        assertEquals(1, list.size());
+        assertSame(created, sub.get("date"));
+    }
+
+}
@@ -27,6 +27,9 @@ import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_LOCK_CREATED;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_LOCK_OWNER;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_NAME;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PARENT_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PROXY_TARGET_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PROXY_VERSION_SERIES_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_VERSION_SERIES_ID;
 
 import java.io.Serializable;
 import java.lang.reflect.Array;
@@ -35,6 +38,7 @@ import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -89,6 +93,21 @@ public class MemRepository extends DBSRepositoryBase {
 
     protected static final String NOSCROLL_ID = "noscroll";
 
+    /**
+     * The keys for which an index from value to document ids is maintained.
+     *
+     * @since 11.1
+     */
+    protected static final List<String> INDEXED_KEYS = Arrays.asList(KEY_PARENT_ID, KEY_VERSION_SERIES_ID,
+            KEY_PROXY_TARGET_ID, KEY_PROXY_VERSION_SERIES_ID);
+
+    /**
+     * The number of stripes used to serialize the writes and lock operations.
+     *
+     * @since 11.1
+     */
+    protected static final int LOCK_STRIPES = 64;
+
     // for debug
     private final AtomicLong temporaryIdCounter = new AtomicLong(0);
 
@@ -97,8 +116,39 @@ public class MemRepository extends DBSRepositoryBase {
      */
     protected Map<String, State> states;
 
+    /**
+     * Index of document ids by key and value, for the {@link #INDEXED_KEYS}.
+     *
+     * @since 11.1
+     */
+    protected Map<String, Map<Object, Set<String>>> keyValueIndex;
+
+    /**
+     * Index of document ids by parent id and name.
+     *
+     * @since 11.1
+     */
+    protected Map<List<String>, Set<String>> childIndex;
+
+    /**
+     * Index of document ids by ancestor id.
+     *
+     * @since 11.1
+     */
+    protected Map<Object, Set<String>> ancestorIndex;
+
+    /**
+     * The objects on which writes and lock operations synchronize, depending on the document id.
+     *
+     * @since 11.1
+     */
+    protected final Object[] lockStripes = new Object[LOCK_STRIPES];
+
     public MemRepository(ConnectionManager cm, MemRepositoryDescriptor descriptor) {
         super(cm, descriptor.name, descriptor);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            lockStripes[i] = new Object();
+        }
         initRepository();
     }
 
@@ -111,10 +161,19 @@ public class MemRepository extends DBSRepositoryBase {
     public void shutdown() {
         super.shutdown();
         states = null;
+        keyValueIndex = null;
+        childIndex = null;
+        ancestorIndex = null;
     }
 
     protected void initRepository() {
         states = new ConcurrentHashMap<>();
+        keyValueIndex = new ConcurrentHashMap<>();
+        for (String key : INDEXED_KEYS) {
+            keyValueIndex.put(key, new ConcurrentHashMap<>());
+        }
+        childIndex = new ConcurrentHashMap<>();
+        ancestorIndex = new ConcurrentHashMap<>();
         initRoot();
     }
 
@@ -171,12 +230,15 @@ public class MemRepository extends DBSRepositoryBase {
         if (log.isTraceEnabled()) {
             log.trace("Mem: CREATE " + id + ": " + state);
         }
-        if (states.containsKey(id)) {
-            throw new NuxeoException("Already exists: " + id);
-        }
         state = StateHelper.deepCopy(state, true); // thread-safe
         StateHelper.resetDeltas(state);
-        states.put(id, state);
+        synchronized (getLockStripe(id)) {
+            if (states.containsKey(id)) {
+                throw new NuxeoException("Already exists: " + id);
+            }
+            states.put(id, state);
+            updateIndexes(id, null, state);
+        }
     }
 
     @Override
@@ -184,12 +246,14 @@ public class MemRepository extends DBSRepositoryBase {
         if (log.isTraceEnabled()) {
             log.trace("Mem: UPDATE " + id + ": " + diff);
         }
-        State state = states.get(id);
-        if (state == null) {
-            throw new ConcurrentUpdateException("Missing: " + id);
-        }
-        synchronized (state) {
-            // synchronization needed for atomic change token
+        synchronized (getLockStripe(id)) {
+            // synchronization needed for atomic change token and consistent indexes,
+            // the state is read under the lock so that it cannot have been deleted meanwhile
+            State state = states.get(id);
+            if (state == null) {
+                throw new ConcurrentUpdateException("Missing: " + id);
+            }
+            State oldIndexed = getIndexedState(state);
             if (changeTokenUpdater != null) {
                 for (Entry<String, Serializable> en : changeTokenUpdater.getConditions().entrySet()) {
                     if (!Objects.equals(state.get(en.getKey()), en.getValue())) {
@@ -201,6 +265,7 @@ public class MemRepository extends DBSRepositoryBase {
                 }
             }
             applyDiff(state, diff);
+            updateIndexes(id, oldIndexed, state);
         }
     }
 
@@ -210,17 +275,146 @@ public class MemRepository extends DBSRepositoryBase {
             log.trace("Mem: REMOVE " + ids);
         }
         for (String id : ids) {
-            if (states.remove(id) == null) {
-                log.debug("Missing on remove: " + id);
+            synchronized (getLockStripe(id)) {
+                State state = states.remove(id);
+                if (state == null) {
+                    log.debug("Missing on remove: " + id);
+                    continue;
+                }
+                updateIndexes(id, state, null);
+            }
+        }
+    }
+
+    /**
+     * Gets a {@link State} holding only the indexed values of the given state.
+     *
+     * @since 11.1
+     */
+    protected static State getIndexedState(State state) {
+        State indexed = new State();
+        for (String key : INDEXED_KEYS) {
+            indexed.put(key, state.get(key));
+        }
+        indexed.put(KEY_NAME, state.get(KEY_NAME));
+        indexed.put(KEY_ANCESTOR_IDS, state.get(KEY_ANCESTOR_IDS));
+        return indexed;
+    }
+
+    /**
+     * Updates the indexes for a document whose indexed values change from {@code oldState} to {@code newState}.
+     * <p>
+     * The new values are indexed before the old ones are unindexed, so that a concurrent lookup never misses a value
+     * that didn't change. Lookups must check that the values of the returned documents actually match.
+     *
+     * @param id the document id
+     * @param oldState the old state, or {@code null} for a creation
+     * @param newState the new state, or {@code null} for a deletion
+     * @since 11.1
+     */
+    protected void updateIndexes(String id, State oldState, State newState) {
+        for (String key : INDEXED_KEYS) {
+            Map<Object, Set<String>> index = keyValueIndex.get(key);
+            Serializable oldValue = oldState == null ? null : oldState.get(key);
+            Serializable newValue = newState == null ? null : newState.get(key);
+            if (!Objects.equals(oldValue, newValue)) {
+                indexAdd(index, newValue, id);
+                indexRemove(index, oldValue, id);
+            }
+        }
+        List<String> oldChildKey = oldState == null ? null : getChildKey(oldState);
+        List<String> newChildKey = newState == null ? null : getChildKey(newState);
+        if (!Objects.equals(oldChildKey, newChildKey)) {
+            indexAdd(childIndex, newChildKey, id);
+            indexRemove(childIndex, oldChildKey, id);
+        }
+        Set<Object> oldAncestors = oldState == null ? Collections.emptySet() : getAncestorIds(oldState);
+        Set<Object> newAncestors = newState == null ? Collections.emptySet() : getAncestorIds(newState);
+        for (Object ancestorId : newAncestors) {
+            if (!oldAncestors.contains(ancestorId)) {
+                indexAdd(ancestorIndex, ancestorId, id);
+            }
+        }
+        for (Object ancestorId : oldAncestors) {
+            if (!newAncestors.contains(ancestorId)) {
+                indexRemove(ancestorIndex, ancestorId, id);
+            }
+        }
+    }
+
+    protected static <K> void indexAdd(Map<K, Set<String>> index, K key, String id) {
+        if (key == null) {
+            return;
+        }
+        index.compute(key, (k, ids) -> {
+            if (ids == null) {
+                ids = ConcurrentHashMap.newKeySet();
+            }
+            ids.add(id);
+            return ids;
+        });
+    }
+
+    protected static <K> void indexRemove(Map<K, Set<String>> index, K key, String id) {
+        if (key == null) {
+            return;
+        }
+        index.computeIfPresent(key, (k, ids) -> {
+            ids.remove(id);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    protected static <K> Set<String> indexGet(Map<K, Set<String>> index, K key) {
+        Set<String> ids = index.get(key);
+        return ids == null ? Collections.emptySet() : ids;
+    }
+
+    protected static List<String> getChildKey(State state) {
+        String parentId = (String) state.get(KEY_PARENT_ID);
+        String name = (String) state.get(KEY_NAME);
+        return parentId == null || name == null ? null : Arrays.asList(parentId, name);
+    }
+
+    protected static Set<Object> getAncestorIds(State state) {
+        Object[] array = (Object[]) state.get(KEY_ANCESTOR_IDS);
+        return array == null ? Collections.emptySet() : new HashSet<>(Arrays.asList(array));
+    }
+
+    /**
+     * Gets the states whose value for the given key may be equal to the given value, using an index if possible.
+     * <p>
+     * The caller must still check the value of the returned states.
+     *
+     * @since 11.1
+     */
+    protected Collection<State> getCandidateStates(String key, Object value) {
+        Map<Object, Set<String>> index = keyValueIndex.get(key);
+        if (index == null) {
+            return states.values();
+        }
+        return getStates(indexGet(index, value));
+    }
+
+    protected List<State> getStates(Set<String> ids) {
+        List<State> list = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            State state = states.get(id);
+            if (state != null) {
+                list.add(state);
             }
         }
+        return list;
     }
 
     @Override
     public State readChildState(String parentId, String name, Set<String> ignored) {
-        // TODO optimize by maintaining a parent/child index
-        for (State state : states.values()) {
-            if (ignored.contains(state.get(KEY_ID))) {
+        for (String id : indexGet(childIndex, Arrays.asList(parentId, name))) {
+            if (ignored.contains(id)) {
+                continue;
+            }
+            State state = states.get(id);
+            if (state == null) {
                 continue;
             }
             if (!parentId.equals(state.get(KEY_PARENT_ID))) {
@@ -245,7 +439,7 @@ public class MemRepository extends DBSRepositoryBase {
             log.trace("Mem: QUERY " + key + " = " + value);
         }
         List<State> list = new ArrayList<>();
-        for (State state : states.values()) {
+        for (State state : getCandidateStates(key, value)) {
             String id = (String) state.get(KEY_ID);
             if (ignored.contains(id)) {
                 continue;
@@ -267,7 +461,9 @@ public class MemRepository extends DBSRepositoryBase {
             log.trace("Mem: QUERY " + key1 + " = " + value1 + " AND " + key2 + " = " + value2);
         }
         List<State> list = new ArrayList<>();
-        for (State state : states.values()) {
+        Collection<State> candidates = keyValueIndex.containsKey(key1) ? getCandidateStates(key1, value1)
+                : getCandidateStates(key2, value2);
+        for (State state : candidates) {
             String id = (String) state.get(KEY_ID);
             if (ignored.contains(id)) {
                 continue;
@@ -293,9 +489,10 @@ public class MemRepository extends DBSRepositoryBase {
         if (log.isTraceEnabled()) {
             log.trace("Mem: QUERY " + KEY_ANCESTOR_IDS + " = " + rootId);
         }
-        Stream<State> stream = states.values() //
-                                     .stream()
-                                     .filter(state -> hasAncestor(state, rootId));
+        Stream<State> stream = indexGet(ancestorIndex, rootId).stream() //
+                                                              .map(states::get)
+                                                              .filter(state -> state != null
+                                                                      && hasAncestor(state, rootId));
         if (limit != 0) {
             stream = stream.limit(limit);
         }
@@ -312,7 +509,7 @@ public class MemRepository extends DBSRepositoryBase {
         if (log.isTraceEnabled()) {
             log.trace("Mem: QUERY " + key + " = " + value);
         }
-        for (State state : states.values()) {
+        for (State state : getCandidateStates(key, value)) {
             String id = (String) state.get(KEY_ID);
             if (ignored.contains(id)) {
                 continue;
@@ -509,9 +706,14 @@ public class MemRepository extends DBSRepositoryBase {
         }
     }
 
-    /* synchronized */
     @Override
-    public synchronized Lock getLock(String id) {
+    public Lock getLock(String id) {
+        synchronized (getLockStripe(id)) {
+            return getLockInternal(id);
+        }
+    }
+
+    protected Lock getLockInternal(String id) {
         State state = states.get(id);
         if (state == null) {
             // document not found
@@ -525,9 +727,14 @@ public class MemRepository extends DBSRepositoryBase {
         return new Lock(owner, created);
     }
 
-    /* synchronized */
     @Override
-    public synchronized Lock setLock(String id, Lock lock) {
+    public Lock setLock(String id, Lock lock) {
+        synchronized (getLockStripe(id)) {
+            return setLockInternal(id, lock);
+        }
+    }
+
+    protected Lock setLockInternal(String id, Lock lock) {
         State state = states.get(id);
         if (state == null) {
             // document not found
@@ -544,9 +751,14 @@ public class MemRepository extends DBSRepositoryBase {
         return null;
     }
 
-    /* synchronized */
     @Override
-    public synchronized Lock removeLock(String id, String owner) {
+    public Lock removeLock(String id, String owner) {
+        synchronized (getLockStripe(id)) {
+            return removeLockInternal(id, owner);
+        }
+    }
+
+    protected Lock removeLockInternal(String id, String owner) {
         State state = states.get(id);
         if (state == null) {
             // document not found
@@ -569,6 +781,15 @@ public class MemRepository extends DBSRepositoryBase {
         return new Lock(oldOwner, oldCreated);
     }
 
+    /**
+     * Gets the object on which to synchronize the writes and lock operations for the given document.
+     *
+     * @since 11.1
+     */
+    protected Object getLockStripe(String id) {
+        return lockStripes[(id.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES];
+    }
+
     @Override
     public void closeLockManager() {
     }
@@ -304,8 +304,11 @@ public class GridFSBinaryManager extends AbstractBinaryManager implements BlobPr
                     Updates.set(String.format("%s.%s", METADATA_PROPERTY_METADATA, msKey), TRUE),
                     new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER));
             if (dbFile != null) {
-                status.numBinaries += 1;
-                status.sizeBinaries += dbFile.getLong(METADATA_PROPERTY_LENGTH);
+                // repositories may be marked in parallel
+                synchronized (status) {
+                    status.numBinaries += 1;
+                    status.sizeBinaries += dbFile.getLong(METADATA_PROPERTY_LENGTH);
+                }
             }
         }
 
@@ -19,6 +19,8 @@
 package org.nuxeo.ecm.core.storage.mongodb;
 
 import static org.nuxeo.ecm.core.storage.State.NOP;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_READ_ACL;
+import static org.nuxeo.ecm.core.storage.mongodb.MongoDBReadAclDictionary.KEY_READ_ACL_ID;
 import static org.nuxeo.ecm.core.storage.mongodb.MongoDBRepository.MONGODB_EACH;
 import static org.nuxeo.ecm.core.storage.mongodb.MongoDBRepository.MONGODB_ID;
 import static org.nuxeo.ecm.core.storage.mongodb.MongoDBRepository.MONGODB_INC;
@@ -57,6 +59,13 @@ public class MongoDBConverter {
     /** The key to use in memory to map the database native "_id". */
     protected final String idKey;
 
+    /**
+     * The dictionary used to store Read ACLs as ids, or {@code null}.
+     *
+     * @since 11.1
+     */
+    protected final MongoDBReadAclDictionary readAclDictionary;
+
     /**
      * Constructor for a converter that does not map the MongoDB native "_id".
      *
@@ -72,7 +81,20 @@ public class MongoDBConverter {
      * @param idKey the key to use to map the native "_id" in memory, if not {@code null}
      */
     public MongoDBConverter(String idKey) {
+        this(idKey, null);
+    }
+
+    /**
+     * Constructor for a converter that also knows to optionally translate the native MongoDB "_id" into a custom id,
+     * and to optionally store Read ACLs as ids in a dictionary.
+     *
+     * @param idKey the key to use to map the native "_id" in memory, if not {@code null}
+     * @param readAclDictionary the dictionary used to store Read ACLs, if not {@code null}
+     * @since 11.1
+     */
+    public MongoDBConverter(String idKey, MongoDBReadAclDictionary readAclDictionary) {
         this.idKey = idKey;
+        this.readAclDictionary = readAclDictionary;
     }
 
     /**
@@ -86,6 +108,9 @@ public class MongoDBConverter {
     }
 
     public String keyToBson(String key) {
+        if (readAclDictionary != null && KEY_READ_ACL.equals(key)) {
+            return KEY_READ_ACL_ID;
+        }
         if (idKey == null) {
             return key;
         } else {
@@ -93,6 +118,18 @@ public class MongoDBConverter {
         }
     }
 
+    /**
+     * Converts a value to bson, knowing the key under which it's stored.
+     *
+     * @since 11.1
+     */
+    public Object valueToBson(String key, Object value) {
+        if (readAclDictionary != null && KEY_READ_ACL.equals(key) && value != null) {
+            return readAclDictionary.getId((Object[]) value);
+        }
+        return valueToBson(value);
+    }
+
     public Object valueToBson(Object value) {
         if (value instanceof State) {
             return stateToBson((State) value);
@@ -110,7 +147,7 @@ public class MongoDBConverter {
     public Document stateToBson(State state) {
         Document doc = new Document();
         for (Entry<String, Serializable> en : state.entrySet()) {
-            Object val = valueToBson(en.getValue());
+            Object val = valueToBson(en.getKey(), en.getValue());
             if (val != null) {
                 doc.put(keyToBson(en.getKey()), val);
             }
@@ -127,6 +164,9 @@ public class MongoDBConverter {
     }
 
     public String bsonToKey(String key) {
+        if (readAclDictionary != null && KEY_READ_ACL_ID.equals(key)) {
+            return KEY_READ_ACL;
+        }
         if (idKey == null) {
             return key;
         } else {
@@ -144,11 +184,23 @@ public class MongoDBConverter {
                 // skip native id if it's not mapped to something
                 continue;
             }
-            state.put(bsonToKey(key), bsonToValue(doc.get(key)));
+            state.put(bsonToKey(key), bsonToValue(key, doc.get(key)));
         }
         return state;
     }
 
+    /**
+     * Converts a bson value, knowing the key under which it's stored.
+     *
+     * @since 11.1
+     */
+    public Serializable bsonToValue(String key, Object value) {
+        if (readAclDictionary != null && KEY_READ_ACL_ID.equals(key) && value != null) {
+            return readAclDictionary.getReadAcl((Long) value);
+        }
+        return bsonToValue(value);
+    }
+
     public Serializable bsonToValue(Object value) {
         if (value instanceof List) {
             @SuppressWarnings("unchecked")
@@ -312,9 +364,9 @@ public class MongoDBConverter {
                 // for null values, beyond the space saving,
                 // it's important to unset the field instead of setting the value to null
                 // because $inc does not work on nulls but works on non-existent fields
-                unset.put(name, ONE);
+                unset.put(keyToBson(name), ONE);
             } else {
-                set.put(name, valueToBson(value));
+                set.put(keyToBson(name), valueToBson(name, value));
             }
         }
 
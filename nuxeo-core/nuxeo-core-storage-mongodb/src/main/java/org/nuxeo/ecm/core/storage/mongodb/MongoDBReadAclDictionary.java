@@ -0,0 +1,325 @@
+/*
+ * (C) Copyright 2019 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.mongodb;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_READ_ACL;
+import static org.nuxeo.ecm.core.storage.mongodb.MongoDBRepository.MONGODB_ID;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.pubsub.PubSubService;
+import org.nuxeo.runtime.services.config.ConfigurationService;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Updates;
+
+/**
+ * Dictionary of the distinct Read ACLs of a MongoDB repository.
+ * <p>
+ * Each distinct Read ACL is stored once in a dedicated collection with a numeric id, and documents only store this id
+ * in {@value #KEY_READ_ACL_ID} instead of the full array of principals. The security filter of queries then only
+ * needs the ids of the Read ACLs containing one of the principals of the user, which are cached per set of principals.
+ * <p>
+ * The ids are never reused and a given id always maps to the same Read ACL, so the mapping between ids and Read ACLs is
+ * cached without invalidation. The cached allowed ids are invalidated when a new Read ACL is added to the dictionary,
+ * on this node directly and on other cluster nodes through the {@link PubSubService}. As a fallback for lost or late
+ * invalidation messages, they also expire after {@value #ALLOWED_IDS_TTL_PROPERTY} (one minute by default).
+ *
+ * @since 11.1
+ */
+public class MongoDBReadAclDictionary {
+
+    private static final Logger log = LogManager.getLogger(MongoDBReadAclDictionary.class);
+
+    /** The key used in the documents to store the Read ACL id. */
+    public static final String KEY_READ_ACL_ID = "ecm:raclId";
+
+    /** The suffix of the collection holding the dictionary. */
+    public static final String COLLECTION_SUFFIX = ".racl";
+
+    protected static final String COUNTER_NAME = "ecm:raclId";
+
+    protected static final String COUNTER_FIELD = "seq";
+
+    /** The digest of the Read ACL, unique. */
+    protected static final String DIGEST_FIELD = "digest";
+
+    /** The principals of the Read ACL. */
+    protected static final String READ_ACL_FIELD = "racl";
+
+    protected static final String PUBSUB_TOPIC_PREFIX = "mongodb-racl:";
+
+    protected static final int CACHE_SIZE = 10_000;
+
+    /** The duration after which the cached allowed ids are recomputed even without invalidation. */
+    public static final String ALLOWED_IDS_TTL_PROPERTY = "nuxeo.mongodb.readAclDictionary.allowedIds.ttl";
+
+    public static final Duration ALLOWED_IDS_TTL_DEFAULT = Duration.ofMinutes(1);
+
+    protected final MongoCollection<Document> coll;
+
+    protected final MongoCollection<Document> countersColl;
+
+    protected final String topic;
+
+    protected final BiConsumer<String, byte[]> subscriber = (topic, message) -> invalidateAllowedIds();
+
+    /** Read ACL ids by Read ACL digest. */
+    protected final Cache<String, Long> ids = CacheBuilder.newBuilder().maximumSize(CACHE_SIZE).build();
+
+    /** Read ACLs by id. */
+    protected final Cache<Long, String[]> readAcls = CacheBuilder.newBuilder().maximumSize(CACHE_SIZE).build();
+
+    /** Allowed Read ACL ids by principals. */
+    protected final Cache<String, AllowedIds> allowedIds;
+
+    /** Incremented each time the cached allowed ids become invalid. */
+    protected final AtomicLong generation = new AtomicLong();
+
+    /**
+     * The Read ACL ids allowed for a set of principals, and the generation at which they were computed.
+     */
+    protected static class AllowedIds {
+
+        protected final long generation;
+
+        protected final List<Long> ids;
+
+        protected AllowedIds(long generation, List<Long> ids) {
+            this.generation = generation;
+            this.ids = ids;
+        }
+    }
+
+    public MongoDBReadAclDictionary(MongoDatabase database, String repositoryName,
+            MongoCollection<Document> countersColl) {
+        this(database, repositoryName, countersColl, getAllowedIdsTTL());
+    }
+
+    /**
+     * @param allowedIdsTTL the duration after which the cached allowed ids are recomputed
+     */
+    public MongoDBReadAclDictionary(MongoDatabase database, String repositoryName,
+            MongoCollection<Document> countersColl, Duration allowedIdsTTL) {
+        allowedIds = CacheBuilder.newBuilder()
+                                 .maximumSize(CACHE_SIZE)
+                                 .expireAfterWrite(allowedIdsTTL.toMillis(), TimeUnit.MILLISECONDS)
+                                 .build();
+        coll = database.getCollection(repositoryName + COLLECTION_SUFFIX);
+        this.countersColl = countersColl;
+        topic = PUBSUB_TOPIC_PREFIX + repositoryName;
+        PubSubService pubSubService = Framework.getService(PubSubService.class);
+        if (pubSubService != null) {
+            pubSubService.registerSubscriber(topic, subscriber);
+        }
+    }
+
+    protected static Duration getAllowedIdsTTL() {
+        ConfigurationService configurationService = Framework.getService(ConfigurationService.class);
+        if (configurationService == null) {
+            return ALLOWED_IDS_TTL_DEFAULT;
+        }
+        return configurationService.getDuration(ALLOWED_IDS_TTL_PROPERTY, ALLOWED_IDS_TTL_DEFAULT);
+    }
+
+    /**
+     * Checks that the documents of a repository collection don't already store their Read ACLs as arrays of
+     * principals, as these documents would be filtered out of all the queries once the dictionary is used.
+     *
+     * @param repositoryColl the repository collection
+     * @throws NuxeoException if a document has an inline Read ACL
+     */
+    public void checkNoInlineReadAcls(MongoCollection<Document> repositoryColl) {
+        Document doc = repositoryColl.find(Filters.exists(KEY_READ_ACL))
+                                     .projection(Projections.include(MONGODB_ID))
+                                     .first();
+        if (doc != null) {
+            throw new NuxeoException("Cannot enable the Read ACL dictionary on " + repositoryColl.getNamespace()
+                    + ": it already contains documents with inline Read ACLs in " + KEY_READ_ACL);
+        }
+    }
+
+    /**
+     * Creates the indexes of the dictionary collection.
+     */
+    public void initCollection() {
+        coll.createIndex(Indexes.ascending(DIGEST_FIELD), new IndexOptions().unique(true));
+        coll.createIndex(Indexes.ascending(READ_ACL_FIELD));
+    }
+
+    public void close() {
+        PubSubService pubSubService = Framework.getService(PubSubService.class);
+        if (pubSubService != null) {
+            pubSubService.unregisterSubscriber(topic, subscriber);
+        }
+    }
+
+    /**
+     * Gets the id of a Read ACL, adding it to the dictionary if needed.
+     *
+     * @param racl the Read ACL, a sorted array of principals
+     * @return the Read ACL id
+     */
+    public Long getId(Object[] racl) {
+        String digest = digest(racl);
+        Long id = ids.getIfPresent(digest);
+        if (id == null) {
+            id = findOrCreate(digest, racl);
+            ids.put(digest, id);
+        }
+        return id;
+    }
+
+    protected Long findOrCreate(String digest, Object[] racl) {
+        Document doc = coll.find(Filters.eq(DIGEST_FIELD, digest)).first();
+        if (doc != null) {
+            return doc.getLong(MONGODB_ID);
+        }
+        Long id = getNextId();
+        doc = new Document(MONGODB_ID, id).append(DIGEST_FIELD, digest)
+                                          .append(READ_ACL_FIELD, Arrays.asList(racl));
+        try {
+            log.trace("MongoDB: CREATE Read ACL {}: {}", id, doc);
+            coll.insertOne(doc);
+        } catch (MongoWriteException e) {
+            if (ErrorCategory.fromErrorCode(e.getCode()) != ErrorCategory.DUPLICATE_KEY) {
+                throw e;
+            }
+            // concurrently created, the allocated id is lost
+            doc = coll.find(Filters.eq(DIGEST_FIELD, digest)).first();
+            if (doc == null) {
+                throw new NuxeoException("Cannot create Read ACL: " + Arrays.toString(racl), e);
+            }
+            return doc.getLong(MONGODB_ID);
+        }
+        // new Read ACL, the cached allowed ids may miss it, here and on other nodes
+        invalidateAllowedIds();
+        PubSubService pubSubService = Framework.getService(PubSubService.class);
+        if (pubSubService != null) {
+            pubSubService.publish(topic, new byte[0]);
+        }
+        return id;
+    }
+
+    protected Long getNextId() {
+        Bson filter = Filters.eq(MONGODB_ID, COUNTER_NAME);
+        Bson update = Updates.inc(COUNTER_FIELD, Long.valueOf(1));
+        Document counter = countersColl.findOneAndUpdate(filter, update,
+                new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.AFTER));
+        return counter.getLong(COUNTER_FIELD);
+    }
+
+    /**
+     * Gets the Read ACL for an id.
+     *
+     * @param id the Read ACL id
+     * @return the Read ACL, a sorted array of principals
+     */
+    public String[] getReadAcl(Long id) {
+        String[] racl = readAcls.getIfPresent(id);
+        if (racl == null) {
+            Document doc = coll.find(Filters.eq(MONGODB_ID, id)).first();
+            if (doc == null) {
+                throw new NuxeoException("Unknown Read ACL id: " + id);
+            }
+            @SuppressWarnings("unchecked")
+            List<String> list = (List<String>) doc.get(READ_ACL_FIELD);
+            racl = list.toArray(new String[list.size()]);
+            readAcls.put(id, racl);
+        }
+        return racl;
+    }
+
+    /**
+     * Gets the ids of the Read ACLs allowing at least one of the given principals.
+     *
+     * @param principals the principals
+     * @return the Read ACL ids
+     */
+    public List<Long> getAllowedIds(Set<String> principals) {
+        String key = String.join("\u0000", new TreeSet<>(principals));
+        AllowedIds allowed = allowedIds.getIfPresent(key);
+        long gen = generation.get();
+        if (allowed == null || allowed.generation != gen) {
+            List<Long> list = new ArrayList<>();
+            Bson filter = Filters.in(READ_ACL_FIELD, principals);
+            log.trace("MongoDB: QUERY Read ACLs {}", filter);
+            try (MongoCursor<Document> cursor = coll.find(filter)
+                                                    .projection(Projections.include(MONGODB_ID))
+                                                    .iterator()) {
+                cursor.forEachRemaining(doc -> list.add(doc.getLong(MONGODB_ID)));
+            }
+            allowed = new AllowedIds(gen, list);
+            allowedIds.put(key, allowed);
+        }
+        return allowed.ids;
+    }
+
+    /**
+     * Invalidates the cached allowed ids.
+     */
+    public void invalidateAllowedIds() {
+        generation.incrementAndGet();
+    }
+
+    protected static String digest(Object[] racl) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new NuxeoException(e);
+        }
+        for (Object principal : racl) {
+            digest.update(((String) principal).getBytes(UTF_8));
+            digest.update((byte) 0);
+        }
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+}
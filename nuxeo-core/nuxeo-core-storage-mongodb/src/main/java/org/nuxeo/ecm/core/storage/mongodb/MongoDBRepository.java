@@ -24,6 +24,7 @@ import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ACL;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ACP;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ANCESTOR_IDS;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_BLOB_DATA;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_CHANGE_TOKEN;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_FULLTEXT_BINARY;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_FULLTEXT_JOBID;
 import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_FULLTEXT_SIMPLE;
@@ -46,12 +47,16 @@ import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.Spliterators;
 import java.util.UUID;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -82,6 +87,7 @@ import org.nuxeo.ecm.core.storage.dbs.DBSExpressionEvaluator;
 import org.nuxeo.ecm.core.storage.dbs.DBSRepositoryBase;
 import org.nuxeo.ecm.core.storage.dbs.DBSStateFlattener;
 import org.nuxeo.ecm.core.storage.dbs.DBSTransactionState.ChangeTokenUpdater;
+import org.nuxeo.ecm.core.storage.dbs.DBSTransactionState.StateUpdate;
 import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.mongodb.MongoDBConnectionService;
 
@@ -92,6 +98,8 @@ import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.MongoIterable;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.BulkWriteOptions;
 import com.mongodb.client.model.CountOptions;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.FindOneAndUpdateOptions;
@@ -99,6 +107,7 @@ import com.mongodb.client.model.IndexOptions;
 import com.mongodb.client.model.Indexes;
 import com.mongodb.client.model.Projections;
 import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.UpdateOneModel;
 import com.mongodb.client.model.Updates;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
@@ -149,6 +158,13 @@ public class MongoDBRepository extends DBSRepositoryBase {
 
     protected static final String COUNTER_FIELD = "seq";
 
+    /**
+     * Number of documents updated at once by {@link #updateDescendantsKeyValue}.
+     *
+     * @since 11.1
+     */
+    protected static final int UPDATE_DESCENDANTS_BATCH_SIZE = 1000;
+
     protected final MongoCollection<Document> coll;
 
     protected final MongoCollection<Document> countersColl;
@@ -170,8 +186,22 @@ public class MongoDBRepository extends DBSRepositoryBase {
 
     protected final MongoDBConverter converter;
 
+    /**
+     * The dictionary used to store Read ACLs, or {@code null} if Read ACLs are stored directly in the documents.
+     *
+     * @since 11.1
+     */
+    protected final MongoDBReadAclDictionary readAclDictionary;
+
     protected final CursorService<MongoCursor<Document>, Document, String> cursorService;
 
+    /**
+     * The cursors of the scrolls returning full states.
+     *
+     * @since 11.1
+     */
+    protected final CursorService<MongoCursor<Document>, Document, State> statesCursorService;
+
     public MongoDBRepository(ConnectionManager cm, MongoDBRepositoryDescriptor descriptor) {
         super(cm, descriptor.name, descriptor);
         MongoDBConnectionService mongoService = Framework.getService(MongoDBConnectionService.class);
@@ -190,8 +220,15 @@ public class MongoDBRepository extends DBSRepositoryBase {
             sequenceBlockSize = sbs == null ? 1 : sbs.longValue();
             sequenceLeft = 0;
         }
-        converter = new MongoDBConverter(useCustomId ? null : KEY_ID);
+        if (Boolean.TRUE.equals(descriptor.readAclDictionary)) {
+            readAclDictionary = new MongoDBReadAclDictionary(database, descriptor.name, countersColl);
+            readAclDictionary.checkNoInlineReadAcls(coll);
+        } else {
+            readAclDictionary = null;
+        }
+        converter = new MongoDBConverter(useCustomId ? null : KEY_ID, readAclDictionary);
         cursorService = new CursorService<>(ob -> (String) ob.get(converter.keyToBson(KEY_ID)));
+        statesCursorService = new CursorService<>(converter::bsonToState);
         initRepository();
     }
 
@@ -204,6 +241,10 @@ public class MongoDBRepository extends DBSRepositoryBase {
     public void shutdown() {
         super.shutdown();
         cursorService.clear();
+        statesCursorService.clear();
+        if (readAclDictionary != null) {
+            readAclDictionary.close();
+        }
     }
 
     protected void initRepository() {
@@ -221,7 +262,10 @@ public class MongoDBRepository extends DBSRepositoryBase {
         coll.createIndex(Indexes.ascending(KEY_VERSION_SERIES_ID));
         coll.createIndex(Indexes.ascending(KEY_PROXY_TARGET_ID));
         coll.createIndex(Indexes.ascending(KEY_PROXY_VERSION_SERIES_ID));
-        coll.createIndex(Indexes.ascending(KEY_READ_ACL));
+        coll.createIndex(Indexes.ascending(converter.keyToBson(KEY_READ_ACL)));
+        if (readAclDictionary != null) {
+            readAclDictionary.initCollection();
+        }
         coll.createIndex(Indexes.ascending(KEY_PARENT_ID, KEY_NAME));
         // often used in user-generated queries
         coll.createIndex(Indexes.ascending(KEY_PRIMARY_TYPE));
@@ -309,6 +353,12 @@ public class MongoDBRepository extends DBSRepositoryBase {
         coll.insertMany(docs);
     }
 
+    @Override
+    public boolean isReadStateSnapshot() {
+        // states are freshly converted from BSON on each read
+        return true;
+    }
+
     @Override
     public State readState(String id) {
         return findOne(Filters.eq(idKey, id));
@@ -328,28 +378,15 @@ public class MongoDBRepository extends DBSRepositoryBase {
 
     @Override
     public void updateState(String id, StateDiff diff, ChangeTokenUpdater changeTokenUpdater) {
-        List<Document> updates = converter.diffToBson(diff);
+        updateState(id, converter.diffToBson(diff), changeTokenUpdater);
+    }
+
+    protected void updateState(String id, List<Document> updates, ChangeTokenUpdater changeTokenUpdater) {
         for (Document update : updates) {
-            Document filter = new Document(idKey, id);
-            if (changeTokenUpdater == null) {
-                log.trace("MongoDB: UPDATE {}: {}", id, update);
-            } else {
-                // assume bson is identical to dbs internals
-                // condition works even if value is null
-                Map<String, Serializable> conditions = changeTokenUpdater.getConditions();
-                Map<String, Serializable> tokenUpdates = changeTokenUpdater.getUpdates();
-                if (update.containsKey(MONGODB_SET)) {
-                    ((Document) update.get(MONGODB_SET)).putAll(tokenUpdates);
-                } else {
-                    Document set = new Document();
-                    set.putAll(tokenUpdates);
-                    update.put(MONGODB_SET, set);
-                }
-                log.trace("MongoDB: UPDATE {}: IF {} THEN {}", id, conditions, update);
-                filter.putAll(conditions);
-            }
+            Document filter = getUpdateFilter(id, update, changeTokenUpdater);
             UpdateResult w = coll.updateMany(filter, update);
-            if (w.getModifiedCount() != 1) {
+            // matched rather than modified, an update may leave the document unchanged
+            if (w.getMatchedCount() != 1) {
                 log.trace("MongoDB:    -> CONCURRENT UPDATE: {}", id);
                 throw new ConcurrentUpdateException(id);
             }
@@ -358,6 +395,111 @@ public class MongoDBRepository extends DBSRepositoryBase {
         }
     }
 
+    /**
+     * Gets the filter for an update of a document, adding the change token conditions and updates if needed.
+     *
+     * @since 11.1
+     */
+    protected Document getUpdateFilter(String id, Document update, ChangeTokenUpdater changeTokenUpdater) {
+        Document filter = new Document(idKey, id);
+        if (changeTokenUpdater == null) {
+            log.trace("MongoDB: UPDATE {}: {}", id, update);
+        } else {
+            // assume bson is identical to dbs internals
+            // condition works even if value is null
+            Map<String, Serializable> conditions = changeTokenUpdater.getConditions();
+            Map<String, Serializable> tokenUpdates = changeTokenUpdater.getUpdates();
+            if (update.containsKey(MONGODB_SET)) {
+                ((Document) update.get(MONGODB_SET)).putAll(tokenUpdates);
+            } else {
+                Document set = new Document();
+                set.putAll(tokenUpdates);
+                update.put(MONGODB_SET, set);
+            }
+            log.trace("MongoDB: UPDATE {}: IF {} THEN {}", id, conditions, update);
+            filter.putAll(conditions);
+        }
+        return filter;
+    }
+
+    /**
+     * Updates several documents using a single unordered bulk write.
+     * <p>
+     * Documents whose diff needs several successive MongoDB updates are updated separately, as their updates must be
+     * applied in order.
+     * <p>
+     * Like for a single update, a document is in conflict when no document matches its id and change token, the matched
+     * count is used rather than the modified count as an update may leave the document unchanged.
+     *
+     * @since 11.1
+     */
+    @Override
+    public void updateStates(List<StateUpdate> stateUpdates) {
+        List<UpdateOneModel<Document>> models = new ArrayList<>(stateUpdates.size());
+        List<StateUpdate> bulkStateUpdates = new ArrayList<>(stateUpdates.size());
+        List<String> conflicts = new ArrayList<>();
+        for (StateUpdate stateUpdate : stateUpdates) {
+            List<Document> updates = converter.diffToBson(stateUpdate.diff);
+            if (updates.size() == 1) {
+                Document update = updates.get(0);
+                Document filter = getUpdateFilter(stateUpdate.id, update, stateUpdate.changeTokenUpdater);
+                models.add(new UpdateOneModel<>(filter, update));
+                bulkStateUpdates.add(stateUpdate);
+            } else {
+                try {
+                    updateState(stateUpdate.id, updates, stateUpdate.changeTokenUpdater);
+                } catch (ConcurrentUpdateException e) {
+                    conflicts.add(stateUpdate.id);
+                }
+            }
+        }
+        if (models.size() == 1) {
+            UpdateOneModel<Document> model = models.get(0);
+            if (coll.updateOne(model.getFilter(), model.getUpdate()).getMatchedCount() != 1) {
+                conflicts.add(bulkStateUpdates.get(0).id);
+            }
+        } else if (!models.isEmpty()) {
+            log.trace("MongoDB: BULK UPDATE {} documents", models::size);
+            BulkWriteResult result = coll.bulkWrite(models, new BulkWriteOptions().ordered(false));
+            if (result.getMatchedCount() != models.size()) {
+                conflicts.addAll(getUpdateConflicts(bulkStateUpdates));
+            }
+        }
+        if (!conflicts.isEmpty()) {
+            log.trace("MongoDB:    -> CONCURRENT UPDATE: {}", conflicts);
+            throw new ConcurrentUpdateException(String.join(", ", conflicts));
+        }
+    }
+
+    /**
+     * Finds which of the updates of a bulk write did not match their document: missing documents, or documents whose
+     * change token is not the one written by the update.
+     *
+     * @since 11.1
+     */
+    protected List<String> getUpdateConflicts(List<StateUpdate> stateUpdates) {
+        List<String> ids = stateUpdates.stream().map(stateUpdate -> stateUpdate.id).collect(Collectors.toList());
+        Document fields = new Document(idKey, ONE);
+        fields.put(KEY_CHANGE_TOKEN, ONE);
+        Map<String, Serializable> tokens = new HashMap<>();
+        try (Stream<State> stream = stream(Filters.in(idKey, ids), fields)) {
+            stream.forEach(state -> tokens.put((String) state.get(KEY_ID), state.get(KEY_CHANGE_TOKEN)));
+        }
+        List<String> conflicts = new ArrayList<>();
+        for (StateUpdate stateUpdate : stateUpdates) {
+            if (!tokens.containsKey(stateUpdate.id)) {
+                conflicts.add(stateUpdate.id);
+            } else if (stateUpdate.changeTokenUpdater != null) {
+                // after the update, the conditions hold the new change token
+                Serializable expected = stateUpdate.changeTokenUpdater.getConditions().get(KEY_CHANGE_TOKEN);
+                if (!Objects.equals(expected, tokens.get(stateUpdate.id))) {
+                    conflicts.add(stateUpdate.id);
+                }
+            }
+        }
+        return conflicts;
+    }
+
     @Override
     public void deleteStates(Set<String> ids) {
         Bson filter = Filters.in(idKey, ids);
@@ -448,6 +590,64 @@ public class MongoDBRepository extends DBSRepositoryBase {
         return stream(filter, fields, limit);
     }
 
+    @Override
+    public List<State> getDescendantsWithKey(String rootId, String key) {
+        Bson filter = Filters.and(Filters.eq(KEY_ANCESTOR_IDS, rootId), Filters.ne(converter.keyToBson(key), null));
+        Document fields = new Document();
+        if (useCustomId) {
+            fields.put(MONGODB_ID, ZERO);
+        }
+        fields.put(idKey, ONE);
+        fields.put(KEY_ANCESTOR_IDS, ONE);
+        try (Stream<State> stream = stream(filter, fields)) {
+            return stream.collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The ids of the documents to update are read first and the documents are updated by batches of
+     * {@link #UPDATE_DESCENDANTS_BATCH_SIZE}, so that the updated documents are known.
+     */
+    @Override
+    public long updateDescendantsKeyValue(String rootId, Set<String> excludedIds, String key, Serializable value,
+            Consumer<List<String>> updatedIds) {
+        String bsonKey = converter.keyToBson(key);
+        Object bsonValue = converter.valueToBson(key, value);
+        List<Bson> filters = new ArrayList<>(4);
+        filters.add(Filters.eq(KEY_ANCESTOR_IDS, rootId));
+        if (!excludedIds.isEmpty()) {
+            // skip the excluded documents and their whole subtrees
+            filters.add(Filters.nin(idKey, excludedIds));
+            filters.add(Filters.nin(KEY_ANCESTOR_IDS, excludedIds));
+        }
+        // don't rewrite documents already up to date
+        filters.add(Filters.ne(bsonKey, bsonValue));
+        Document fields = new Document();
+        if (useCustomId) {
+            fields.put(MONGODB_ID, ZERO);
+        }
+        fields.put(idKey, ONE);
+        Bson update = Updates.set(bsonKey, bsonValue);
+        long count = 0;
+        List<String> ids = new ArrayList<>(UPDATE_DESCENDANTS_BATCH_SIZE);
+        try (Stream<State> stream = stream(Filters.and(filters), fields)) {
+            Iterator<State> it = stream.iterator();
+            while (it.hasNext()) {
+                ids.add((String) it.next().get(KEY_ID));
+                if (ids.size() == UPDATE_DESCENDANTS_BATCH_SIZE || !it.hasNext()) {
+                    Bson filter = Filters.and(Filters.in(idKey, ids), Filters.ne(bsonKey, bsonValue));
+                    log.trace("MongoDB: UPDATE MANY {}: {}", filter, update);
+                    count += coll.updateMany(filter, update).getModifiedCount();
+                    updatedIds.accept(ids);
+                    ids = new ArrayList<>(UPDATE_DESCENDANTS_BATCH_SIZE);
+                }
+            }
+        }
+        return count;
+    }
+
     @Override
     public boolean queryKeyValuePresence(String key, String value, Set<String> ignored) {
         Document filter = new Document(converter.keyToBson(key), value);
@@ -632,10 +832,42 @@ public class MongoDBRepository extends DBSRepositoryBase {
         return cursorService.scroll(scrollId);
     }
 
+    @SuppressWarnings("resource") // cursor is being registered, must not be closed
+    @Override
+    public ScrollResult<State> scrollStates(DBSExpressionEvaluator evaluator, int batchSize, int keepAliveSeconds) {
+        statesCursorService.checkForTimedOutScroll();
+        MongoDBRepositoryQueryBuilder builder = new MongoDBRepositoryQueryBuilder(this, evaluator.getExpression(),
+                evaluator.getSelectClause(), null, evaluator.pathResolver, evaluator.fulltextSearchDisabled);
+        builder.walk();
+        if (builder.hasFulltext && isFulltextSearchDisabled()) {
+            throw new QueryParseException("Fulltext search disabled by configuration");
+        }
+        Document filter = builder.getQuery();
+        addPrincipals(filter, evaluator.principals);
+        logQuery(filter, null);
+
+        // no projection, the full documents are returned by the cursor
+        MongoCursor<Document> cursor = coll.find(filter).batchSize(batchSize).iterator();
+        String scrollId = statesCursorService.registerCursor(cursor, batchSize, keepAliveSeconds);
+        return scrollStates(scrollId);
+    }
+
+    @Override
+    public ScrollResult<State> scrollStates(String scrollId) {
+        return statesCursorService.scroll(scrollId);
+    }
+
     protected void addPrincipals(Document query, Set<String> principals) {
-        if (principals != null) {
+        if (principals == null) {
+            return;
+        }
+        if (readAclDictionary == null) {
             Document inPrincipals = new Document(QueryOperators.IN, new ArrayList<>(principals));
             query.put(DBSDocument.KEY_READ_ACL, inPrincipals);
+        } else {
+            // filter on the ids of the Read ACLs allowing one of the principals
+            Document inReadAclIds = new Document(QueryOperators.IN, readAclDictionary.getAllowedIds(principals));
+            query.put(converter.keyToBson(DBSDocument.KEY_READ_ACL), inReadAclIds);
         }
     }
 
@@ -55,6 +55,16 @@ public class MongoDBRepositoryDescriptor extends DBSRepositoryDescriptor {
     @XNode("sequenceBlockSize")
     public Integer sequenceBlockSize;
 
+    /**
+     * Whether distinct Read ACLs are stored once in a dictionary collection, documents only referencing them by id.
+     * <p>
+     * This must be configured when the repository is created, and {@code ecm:racl} cannot be used in queries.
+     *
+     * @since 11.1
+     */
+    @XNode("readAclDictionary")
+    public Boolean readAclDictionary;
+
     @Override
     public MongoDBRepositoryDescriptor clone() {
         return (MongoDBRepositoryDescriptor) super.clone();
@@ -74,6 +84,9 @@ public class MongoDBRepositoryDescriptor extends DBSRepositoryDescriptor {
         if (other.sequenceBlockSize != null) {
             sequenceBlockSize = other.sequenceBlockSize;
         }
+        if (other.readAclDictionary != null) {
+            readAclDictionary = other.readAclDictionary;
+        }
     }
 
 }
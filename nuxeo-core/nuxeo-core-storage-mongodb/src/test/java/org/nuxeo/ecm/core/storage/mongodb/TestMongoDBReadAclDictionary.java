@@ -0,0 +1,222 @@
+/*
+ * (C) Copyright 2019 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.mongodb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_READ_ACL;
+import static org.nuxeo.ecm.core.storage.mongodb.MongoDBReadAclDictionary.KEY_READ_ACL_ID;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.inject.Inject;
+
+import org.bson.Document;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.storage.State;
+import org.nuxeo.runtime.mongodb.MongoDBConnectionService;
+import org.nuxeo.runtime.mongodb.MongoDBFeature;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+
+/**
+ * Tests the {@link MongoDBReadAclDictionary}.
+ *
+ * @since 11.1
+ */
+@RunWith(FeaturesRunner.class)
+@Features(MongoDBFeature.class)
+public class TestMongoDBReadAclDictionary {
+
+    protected static final String REPOSITORY_NAME = "testracl";
+
+    @Inject
+    protected MongoDBConnectionService mongoDBConnectionService;
+
+    protected MongoDatabase database;
+
+    protected MongoCollection<Document> coll;
+
+    protected MongoCollection<Document> countersColl;
+
+    protected List<MongoDBReadAclDictionary> dictionaries = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        database = mongoDBConnectionService.getDatabase("default");
+        coll = database.getCollection(REPOSITORY_NAME);
+        countersColl = database.getCollection(REPOSITORY_NAME + ".counters");
+        coll.drop();
+        countersColl.drop();
+        database.getCollection(REPOSITORY_NAME + MongoDBReadAclDictionary.COLLECTION_SUFFIX).drop();
+    }
+
+    @After
+    public void tearDown() {
+        dictionaries.forEach(MongoDBReadAclDictionary::close);
+    }
+
+    /** A new dictionary, with empty caches, like on another node. */
+    protected MongoDBReadAclDictionary newDictionary(Duration allowedIdsTTL) {
+        MongoDBReadAclDictionary dictionary = new MongoDBReadAclDictionary(database, REPOSITORY_NAME, countersColl,
+                allowedIdsTTL);
+        dictionary.initCollection();
+        dictionaries.add(dictionary);
+        return dictionary;
+    }
+
+    protected MongoDBReadAclDictionary newDictionary() {
+        return newDictionary(Duration.ofMinutes(1));
+    }
+
+    protected void insertDoc(MongoDBConverter converter, String id, String... racl) {
+        State state = new State();
+        state.put(KEY_ID, id);
+        state.put(KEY_READ_ACL, racl);
+        coll.insertOne(converter.stateToBson(state));
+    }
+
+    /** Queries the documents with the same security filter as the repository. */
+    protected List<String> queryAllowed(MongoDBReadAclDictionary dictionary, String... principals) {
+        List<String> ids = new ArrayList<>();
+        List<Long> allowedIds = dictionary.getAllowedIds(Set.of(principals));
+        try (MongoCursor<Document> cursor = coll.find(Filters.in(KEY_READ_ACL_ID, allowedIds)).iterator()) {
+            cursor.forEachRemaining(doc -> ids.add(doc.getString(KEY_ID)));
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    @Test
+    public void testReadAclRoundTrip() {
+        MongoDBReadAclDictionary dictionary = newDictionary();
+        String[] racl = { "Administrator", "bob", "members" };
+        Long id = dictionary.getId(racl);
+        assertEquals(id, dictionary.getId(racl.clone()));
+        assertArrayEquals(racl, dictionary.getReadAcl(id));
+        assertNotEquals(id, dictionary.getId(new String[] { "Administrator" }));
+
+        // from another node, without cache
+        MongoDBReadAclDictionary other = newDictionary();
+        assertArrayEquals(racl, other.getReadAcl(id));
+        assertEquals(id, other.getId(racl));
+
+        // through the converter, documents only store the id
+        MongoDBConverter converter = new MongoDBConverter(null, dictionary);
+        State state = new State();
+        state.put(KEY_ID, "doc1");
+        state.put(KEY_READ_ACL, racl);
+        Document bson = converter.stateToBson(state);
+        assertEquals(id, bson.get(KEY_READ_ACL_ID));
+        assertFalse(bson.containsKey(KEY_READ_ACL));
+        State read = new MongoDBConverter(null, other).bsonToState(bson);
+        assertArrayEquals(racl, (Object[]) read.get(KEY_READ_ACL));
+        assertEquals("doc1", read.get(KEY_ID));
+    }
+
+    @Test
+    public void testSecurityFilter() {
+        MongoDBReadAclDictionary dictionary = newDictionary();
+        MongoDBConverter converter = new MongoDBConverter(null, dictionary);
+        insertDoc(converter, "doc1", "bob");
+        insertDoc(converter, "doc2", "alice");
+        insertDoc(converter, "doc3", "alice", "bob");
+        insertDoc(converter, "doc4", "members");
+
+        assertEquals(List.of("doc1", "doc3"), queryAllowed(dictionary, "bob", "Everyone"));
+        assertEquals(List.of("doc2", "doc3", "doc4"), queryAllowed(dictionary, "alice", "members", "Everyone"));
+        assertEquals(List.of(), queryAllowed(dictionary, "carol", "Everyone"));
+    }
+
+    @Test
+    public void testNewReadAclIsVisible() {
+        MongoDBReadAclDictionary dictionary = newDictionary();
+        MongoDBConverter converter = new MongoDBConverter(null, dictionary);
+        insertDoc(converter, "doc1", "bob");
+        assertEquals(List.of("doc1"), queryAllowed(dictionary, "bob"));
+
+        // a new Read ACL invalidates the cached allowed ids
+        long generation = dictionary.generation.get();
+        insertDoc(converter, "doc2", "bob", "carol");
+        assertTrue(dictionary.generation.get() > generation);
+        assertEquals(List.of("doc1", "doc2"), queryAllowed(dictionary, "bob"));
+
+        // reusing an existing Read ACL doesn't
+        generation = dictionary.generation.get();
+        insertDoc(converter, "doc3", "bob");
+        assertEquals(generation, dictionary.generation.get());
+        assertEquals(List.of("doc1", "doc2", "doc3"), queryAllowed(dictionary, "bob"));
+        // nor does finding in the collection a Read ACL created by another node
+        MongoDBReadAclDictionary other = newDictionary();
+        generation = other.generation.get();
+        other.getId(new String[] { "bob", "carol" });
+        assertEquals(generation, other.generation.get());
+    }
+
+    @Test
+    public void testNewReadAclIsVisibleAfterTTL() throws Exception {
+        MongoDBReadAclDictionary dictionary = newDictionary();
+        // another node that doesn't receive invalidations
+        MongoDBReadAclDictionary other = newDictionary(Duration.ofMillis(100));
+        MongoDBConverter converter = new MongoDBConverter(null, dictionary);
+        insertDoc(converter, "doc1", "bob");
+        assertEquals(List.of("doc1"), queryAllowed(other, "bob"));
+
+        insertDoc(converter, "doc2", "bob", "carol");
+        // the other node sees it once its cached allowed ids have expired
+        Thread.sleep(200);
+        assertEquals(List.of("doc1", "doc2"), queryAllowed(other, "bob"));
+    }
+
+    @Test
+    public void testInlineReadAclsAreRejected() {
+        MongoDBReadAclDictionary dictionary = newDictionary();
+        dictionary.checkNoInlineReadAcls(coll);
+        insertDoc(new MongoDBConverter(null, dictionary), "doc1", "bob");
+        dictionary.checkNoInlineReadAcls(coll);
+
+        // a document written without the dictionary
+        insertDoc(new MongoDBConverter(), "doc2", "bob");
+        try {
+            dictionary.checkNoInlineReadAcls(coll);
+            fail("should fail on inline Read ACLs");
+        } catch (NuxeoException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(KEY_READ_ACL));
+        }
+    }
+
+}
@@ -295,6 +295,24 @@ public class Model {
 
     public static final String ACLR_USER_MAP_ACL_ID = "acl_id";
 
+    /** @since 11.1 */
+    public static final String COPY_ID_MAP_TABLE_NAME = "copy_id_map";
+
+    /** @since 11.1 */
+    public static final String COPY_ID_MAP_COPY_ID = "copy_id";
+
+    /** @since 11.1 */
+    public static final String COPY_ID_MAP_OLD_ID = "old_id";
+
+    /** @since 11.1 */
+    public static final String COPY_ID_MAP_NEW_ID = "new_id";
+
+    /** @since 11.1 */
+    public static final String COPY_ID_MAP_NEW_PARENT_ID = "new_parent_id";
+
+    /** @since 11.1 */
+    public static final String COPY_ID_MAP_DEPTH = "depth";
+
     /** Specified in ext. point to use CLOBs. */
     public static final String FIELD_TYPE_LARGETEXT = "largetext";
 
@@ -0,0 +1,58 @@
+/*
+ * (C) Copyright 2019 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.util.Map;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+
+/**
+ * A {@link SoftRefCachingMapper} backed by a second-level {@link PersistentRowCache}, shared by all the sessions of
+ * the repository and persisted across restarts.
+ * <p>
+ * To use it, configure the repository with:
+ *
+ * <pre>
+ * &lt;cachingMapper class="org.nuxeo.ecm.core.storage.sql.PersistentCachingMapper"&gt;
+ *   &lt;property name="persistentCacheMaxSize"&gt;536870912&lt;/property&gt;
+ * &lt;/cachingMapper&gt;
+ * </pre>
+ * <p>
+ * The {@link PersistentRowCache} is owned by the repository, which sets it before initialization.
+ *
+ * @since 11.1
+ */
+public class PersistentCachingMapper extends SoftRefCachingMapper {
+
+    protected PersistentRowCache persistentRowCache;
+
+    public void setPersistentRowCache(PersistentRowCache persistentRowCache) {
+        this.persistentRowCache = persistentRowCache;
+    }
+
+    @Override
+    protected RowMapper newRowMapper(String repositoryName, Model model, Mapper mapper,
+            InvalidationsPropagator cachePropagator, Map<String, String> properties) {
+        if (persistentRowCache == null) {
+            throw new NuxeoException("No persistent row cache for repository: " + repositoryName);
+        }
+        return new PersistentCachingRowMapper(persistentRowCache, model, mapper);
+    }
+
+}
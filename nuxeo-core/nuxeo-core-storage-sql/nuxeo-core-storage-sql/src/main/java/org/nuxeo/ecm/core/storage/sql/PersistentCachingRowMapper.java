@@ -0,0 +1,265 @@
+/*
+ * (C) Copyright 2019 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.transaction.xa.XAException;
+import javax.transaction.xa.Xid;
+
+/**
+ * A {@link RowMapper} that uses a {@link PersistentRowCache} shared by all the sessions of the repository, and
+ * delegates to an underlying {@link RowMapper} for the rows not in the cache.
+ * <p>
+ * The rows written by the current transaction are removed from the shared cache, and are not put back in it until the
+ * transaction ends, as other sessions must not see uncommitted data.
+ *
+ * @since 11.1
+ */
+public class PersistentCachingRowMapper implements RowMapper {
+
+    protected final PersistentRowCache cache;
+
+    protected final Model model;
+
+    /**
+     * The {@link RowMapper} to which operations that cannot be processed from the cache are delegated.
+     */
+    protected final RowMapper rowMapper;
+
+    /**
+     * The rows written by the current transaction.
+     */
+    protected final Set<RowId> written = new HashSet<>();
+
+    public PersistentCachingRowMapper(PersistentRowCache cache, Model model, RowMapper rowMapper) {
+        this.cache = cache;
+        this.model = model;
+        this.rowMapper = rowMapper;
+    }
+
+    protected boolean isWritten(RowId rowId) {
+        return !written.isEmpty() && written.contains(rowId);
+    }
+
+    protected void cachePut(Row row, long stamp) {
+        if (!isWritten(row)) {
+            cache.put(row, stamp);
+        }
+    }
+
+    protected void cachePutAbsent(RowId rowId, long stamp) {
+        if (!isWritten(rowId)) {
+            cache.putAbsent(rowId, stamp);
+        }
+    }
+
+    protected void cacheRemove(RowId rowId) {
+        RowId key = new RowId(rowId);
+        written.add(key);
+        cache.remove(key);
+    }
+
+    @Override
+    public Serializable generateNewId() {
+        return rowMapper.generateNewId();
+    }
+
+    /*
+     * ----- Invalidations / Cache Management -----
+     */
+
+    @Override
+    public Invalidations receiveInvalidations() {
+        // invalidations from the underlying mapper (cluster) are propagated to the cache queue
+        Invalidations invalidations = rowMapper.receiveInvalidations();
+        cache.processInvalidations();
+        return invalidations;
+    }
+
+    @Override
+    public void sendInvalidations(Invalidations invalidations) {
+        // called after commit
+        written.clear();
+        rowMapper.sendInvalidations(invalidations);
+        cache.logInvalidations(invalidations);
+    }
+
+    @Override
+    public void clearCache() {
+        // the shared cache only holds committed data, it doesn't need to be cleared
+        rowMapper.clearCache();
+    }
+
+    @Override
+    public long getCacheSize() {
+        return rowMapper.getCacheSize();
+    }
+
+    @Override
+    public void rollback(Xid xid) throws XAException {
+        try {
+            rowMapper.rollback(xid);
+        } finally {
+            written.clear();
+        }
+    }
+
+    /*
+     * ----- Batch -----
+     */
+
+    @Override
+    public List<? extends RowId> read(Collection<RowId> rowIds, boolean cacheOnly) {
+        List<RowId> res = new ArrayList<>(rowIds.size());
+        List<RowId> todo = new ArrayList<>();
+        for (RowId rowId : rowIds) {
+            RowId row = isWritten(rowId) ? null : cache.get(rowId);
+            if (row != null) {
+                res.add(row);
+            } else if (cacheOnly) {
+                res.add(new RowId(rowId));
+            } else {
+                todo.add(rowId);
+            }
+        }
+        if (!todo.isEmpty()) {
+            long stamp = cache.processInvalidations();
+            List<? extends RowId> fetched = rowMapper.read(todo, false);
+            for (RowId rowId : fetched) {
+                if (rowId instanceof Row) {
+                    cachePut((Row) rowId, stamp);
+                } else {
+                    cachePutAbsent(rowId, stamp);
+                }
+            }
+            res.addAll(fetched);
+        }
+        return res;
+    }
+
+    @Override
+    public void write(RowBatch batch) {
+        for (Row row : batch.creates) {
+            cacheRemove(row);
+        }
+        for (RowUpdate rowu : batch.updates) {
+            cacheRemove(rowu.row);
+        }
+        for (RowId rowId : batch.deletes) {
+            cacheRemove(rowId);
+        }
+        for (RowId rowId : batch.deletesDependent) {
+            cacheRemove(rowId);
+        }
+        rowMapper.write(batch);
+    }
+
+    /*
+     * ----- Read -----
+     */
+
+    @Override
+    public Row readSimpleRow(RowId rowId) {
+        RowId row = isWritten(rowId) ? null : cache.get(rowId);
+        if (row == null) {
+            long stamp = cache.processInvalidations();
+            Row r = rowMapper.readSimpleRow(rowId);
+            if (r == null) {
+                cachePutAbsent(rowId, stamp);
+            } else {
+                cachePut(r, stamp);
+            }
+            return r;
+        }
+        return row instanceof Row ? (Row) row : null;
+    }
+
+    @Override
+    public Map<String, String> getBinaryFulltext(RowId rowId) {
+        return rowMapper.getBinaryFulltext(rowId);
+    }
+
+    @Override
+    public Serializable[] readCollectionRowArray(RowId rowId) {
+        RowId row = isWritten(rowId) ? null : cache.get(rowId);
+        if (row instanceof Row) {
+            return ((Row) row).values;
+        }
+        long stamp = cache.processInvalidations();
+        Serializable[] array = rowMapper.readCollectionRowArray(rowId);
+        cachePut(new Row(rowId.tableName, rowId.id, array), stamp);
+        return array;
+    }
+
+    @Override
+    public List<Row> readSelectionRows(SelectionType selType, Serializable selId, Serializable filter,
+            Serializable criterion, boolean limitToOne) {
+        long stamp = cache.processInvalidations();
+        List<Row> rows = rowMapper.readSelectionRows(selType, selId, filter, criterion, limitToOne);
+        for (Row row : rows) {
+            cachePut(row, stamp);
+        }
+        return rows;
+    }
+
+    @Override
+    public Set<Serializable> readSelectionsIds(SelectionType selType, List<Serializable> values) {
+        return rowMapper.readSelectionsIds(selType, values);
+    }
+
+    /*
+     * ----- Copy -----
+     */
+
+    @Override
+    public CopyResult copy(IdWithTypes source, Serializable destParentId, String destName, Row overwriteRow) {
+        CopyResult result = rowMapper.copy(source, destParentId, destName, overwriteRow);
+        Invalidations invalidations = result.invalidations;
+        if (invalidations.modified != null) {
+            invalidations.modified.forEach(this::cacheRemove);
+        }
+        if (invalidations.deleted != null) {
+            invalidations.deleted.forEach(this::cacheRemove);
+        }
+        return result;
+    }
+
+    @Override
+    public List<NodeInfo> getDescendantsInfo(Serializable rootId) {
+        return rowMapper.getDescendantsInfo(rootId);
+    }
+
+    @Override
+    public void remove(Serializable rootId, List<NodeInfo> nodeInfos) {
+        for (NodeInfo info : nodeInfos) {
+            for (String fragmentName : model.getTypeFragments(new IdWithTypes(info.id, info.primaryType, null))) {
+                cacheRemove(new RowId(fragmentName, info.id));
+            }
+        }
+        rowMapper.remove(rootId, nodeInfos);
+    }
+
+}
@@ -0,0 +1,887 @@
+/*
+ * (C) Copyright 2019 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.common.Environment;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.cluster.ClusterService;
+import org.nuxeo.runtime.kv.KeyValueService;
+import org.nuxeo.runtime.kv.KeyValueStore;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+
+/**
+ * A disk-backed cache of {@link Row}s, shared by all the sessions of a repository, and persisted across restarts.
+ * <p>
+ * The rows are appended to a memory-mapped file, an in-memory index gives the position of the latest record for each
+ * {@link RowId}. When the file is full, it is compacted to keep only the live records.
+ * <p>
+ * The cache only holds committed data: it is invalidated by the invalidations propagated to all the mappers of the
+ * repository (including the ones received from other cluster nodes), and the rows written by a transaction are never
+ * put in the cache before the transaction ends.
+ * <p>
+ * When clustering is enabled, the invalidations sent to other cluster nodes are also appended to a log stored in a
+ * {@link KeyValueStore}, numbered with a sequence. The invalidations are logged by the committing thread, so that a
+ * crash cannot lose them; the invalidations of transactions committing while the log is being written are logged
+ * together. The cache periodically applies the logged invalidations it hasn't applied yet, so that it knows the last
+ * sequence number whose invalidations it contains (the high-water mark). The high-water mark is saved with the cache
+ * when the repository is closed, and at restart the invalidations logged since then are replayed on the cache. If they
+ * are not all available anymore, the cache is cleared.
+ * <p>
+ * The file header holds a hash of the repository model, the cache is cleared at startup if the model has changed.
+ * <p>
+ * The cache is owned by the repository, see {@link RepositoryImpl#getPersistentRowCache}.
+ *
+ * @since 11.1
+ */
+public class PersistentRowCache {
+
+    private static final Log log = LogFactory.getLog(PersistentRowCache.class);
+
+    /** Directory where the cache file is stored, default {@code <data>/vcs/<repository>/rowcache}. */
+    public static final String DIRECTORY_PROP = "persistentCacheDirectory";
+
+    /** Maximum size of the cache file, in bytes. */
+    public static final String MAX_SIZE_PROP = "persistentCacheMaxSize";
+
+    public static final int DEFAULT_MAX_SIZE = 512 * 1024 * 1024; // 512 MB
+
+    /** Name of the Key/Value store holding the cluster invalidations log. */
+    public static final String KEY_VALUE_STORE_PROP = "persistentCacheKeyValueStore";
+
+    public static final String DEFAULT_KEY_VALUE_STORE = "default";
+
+    /** TTL of the cluster invalidations log entries, in seconds. */
+    public static final String INVALIDATIONS_TTL_PROP = "persistentCacheInvalidationsTTL";
+
+    public static final long DEFAULT_INVALIDATIONS_TTL = 24 * 3600; // 1 day
+
+    /** Maximum number of logged invalidations to replay at startup, above which the cache is cleared instead. */
+    public static final String MAX_REPLAY_PROP = "persistentCacheMaxReplay";
+
+    public static final long DEFAULT_MAX_REPLAY = 100_000;
+
+    /** Interval between two reads of the log, and retries of failed writes to the log, in milliseconds. */
+    protected static final long LOG_INTERVAL = 1000;
+
+    /** Maximum number of logged invalidations read at once. */
+    protected static final int LOG_READ_BATCH = 1000;
+
+    protected static final String FILE_NAME = "rows.dat";
+
+    protected static final int MAGIC = 0x4e585243; // NXRC
+
+    protected static final int VERSION = 2;
+
+    // magic, version, clean, high-water mark, end position, model hash
+    protected static final int HEADER_SIZE = 4 + 4 + 1 + 8 + 4 + 8;
+
+    protected static final int CLEAN_OFFSET = 8;
+
+    protected static final int MODEL_HASH_OFFSET = CLEAN_OFFSET + 13;
+
+    protected static final byte KIND_PRESENT = 1;
+
+    protected static final byte KIND_ABSENT = 2;
+
+    protected static final byte KIND_REMOVED = 3;
+
+    protected static final byte ID_STRING = 'S';
+
+    protected static final byte ID_LONG = 'L';
+
+    protected final String repositoryName;
+
+    protected final Path file;
+
+    protected final int maxSize;
+
+    /** The hash of the repository model, see {@link #getModelHash}. */
+    protected final long modelHash;
+
+    /** The propagator from which we receive invalidations. */
+    protected final InvalidationsPropagator propagator;
+
+    protected final InvalidationsQueue queue;
+
+    /** The cluster invalidations log, or {@code null} if clustering is disabled. */
+    protected final KeyValueStore keyValueStore;
+
+    protected final String seqKey;
+
+    protected final String invalidationKeyPrefix;
+
+    protected final long invalidationsTTL;
+
+    protected final long maxReplay;
+
+    /** Writes and reads the log periodically, or {@code null} if clustering is disabled. */
+    protected final ScheduledExecutorService logExecutor;
+
+    /** The invalidations not yet written to the log, guarded by {@link #logLock}. */
+    protected Invalidations logPending;
+
+    protected final Object logLock = new Object();
+
+    /** Serializes the writes to the log. */
+    protected final Object logWriteLock = new Object();
+
+    /** The last sequence number of the log whose invalidations have been applied to the cache. */
+    protected long appliedSeq;
+
+    /** A sequence number found missing when reading the log, which may not have been written yet. */
+    protected long missingSeq = -1;
+
+    protected FileChannel channel;
+
+    protected MappedByteBuffer buffer;
+
+    /** Position of the latest record for each row id. */
+    protected final Map<RowId, Integer> index = new HashMap<>();
+
+    /** End position of the records. */
+    protected int end;
+
+    /** Incremented each time invalidations are processed, to detect concurrent invalidations. */
+    protected long stamp;
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    protected final Counter hitCount;
+
+    protected final Counter missCount;
+
+    protected final String sizeGaugeName;
+
+    /**
+     * Opens a persistent row cache for a repository, configured from the caching mapper properties.
+     */
+    public static PersistentRowCache create(String repositoryName, Model model, InvalidationsPropagator propagator,
+            Map<String, String> properties) {
+        String dir = properties.get(DIRECTORY_PROP);
+        Path path = dir == null
+                ? Environment.getDefault().getData().toPath().resolve("vcs").resolve(repositoryName).resolve("rowcache")
+                : Paths.get(dir);
+        int maxSize = (int) Math.min(getLong(properties, MAX_SIZE_PROP, DEFAULT_MAX_SIZE), Integer.MAX_VALUE);
+        KeyValueStore keyValueStore;
+        if (Framework.getService(ClusterService.class).isEnabled()) {
+            String storeName = properties.getOrDefault(KEY_VALUE_STORE_PROP, DEFAULT_KEY_VALUE_STORE);
+            keyValueStore = Framework.getService(KeyValueService.class).getKeyValueStore(storeName);
+        } else {
+            keyValueStore = null;
+        }
+        long invalidationsTTL = getLong(properties, INVALIDATIONS_TTL_PROP, DEFAULT_INVALIDATIONS_TTL);
+        long maxReplay = getLong(properties, MAX_REPLAY_PROP, DEFAULT_MAX_REPLAY);
+        return new PersistentRowCache(repositoryName, getModelHash(model), propagator, path, maxSize, keyValueStore,
+                invalidationsTTL, maxReplay);
+    }
+
+    /**
+     * Computes a hash of the fragments and columns of the model, which determine how the cached rows are read.
+     */
+    public static long getModelHash(Model model) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(model.idType).append('\n');
+        for (String fragmentName : new TreeSet<>(model.getFragmentNames())) {
+            sb.append(fragmentName).append('\n');
+            Map<String, ColumnType> keysType = new TreeMap<>(model.getFragmentKeysType(fragmentName));
+            keysType.forEach((key, type) -> sb.append(key).append(' ').append(type).append('\n'));
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(sb.toString().getBytes(UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new NuxeoException(e);
+        }
+    }
+
+    /**
+     * Opens a persistent row cache.
+     *
+     * @param repositoryName the repository name
+     * @param modelHash the hash of the repository model, see {@link #getModelHash}
+     * @param propagator the propagator of the repository invalidations
+     * @param dir the directory of the cache file
+     * @param maxSize the maximum size of the cache file
+     * @param keyValueStore the store of the cluster invalidations log, or {@code null} if clustering is disabled
+     * @param invalidationsTTL the TTL of the cluster invalidations log entries, in seconds
+     * @param maxReplay the maximum number of logged invalidations to replay when opening
+     */
+    public PersistentRowCache(String repositoryName, long modelHash, InvalidationsPropagator propagator, Path dir,
+            int maxSize, KeyValueStore keyValueStore, long invalidationsTTL, long maxReplay) {
+        this.repositoryName = repositoryName;
+        this.modelHash = modelHash;
+        this.propagator = propagator;
+        file = dir.resolve(FILE_NAME);
+        this.maxSize = maxSize;
+        this.keyValueStore = keyValueStore;
+        this.invalidationsTTL = invalidationsTTL;
+        this.maxReplay = maxReplay;
+        seqKey = "vcs:" + repositoryName + ":invalseq";
+        invalidationKeyPrefix = "vcs:" + repositoryName + ":inval:";
+        hitCount = registry.counter(
+                MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches", "persistent", "hits"));
+        missCount = registry.counter(
+                MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches", "persistent", "misses"));
+        sizeGaugeName = MetricRegistry.name("nuxeo", "repositories", repositoryName, "caches", "persistent", "size");
+        registry.remove(sizeGaugeName);
+        registry.register(sizeGaugeName, (Gauge<Integer>) this::getSize);
+        queue = new InvalidationsQueue("persistent-cache-" + repositoryName);
+        open();
+        propagator.addQueue(queue);
+        if (keyValueStore == null) {
+            logExecutor = null;
+        } else {
+            logExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "Nuxeo-PersistentRowCache-" + repositoryName);
+                thread.setDaemon(true);
+                return thread;
+            });
+            logExecutor.scheduleWithFixedDelay(this::syncLog, LOG_INTERVAL, LOG_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    protected static long getLong(Map<String, String> properties, String key, long def) {
+        String value = properties.get(key);
+        return value == null ? def : Long.parseLong(value.trim());
+    }
+
+    /*
+     * ----- Open / Close -----
+     */
+
+    protected synchronized void open() {
+        try {
+            Files.createDirectories(file.getParent());
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            buffer = channel.map(MapMode.READ_WRITE, 0, maxSize);
+        } catch (IOException e) {
+            throw new NuxeoException("Cannot open persistent row cache: " + file, e);
+        }
+        long highWaterMark = -1;
+        boolean clean = buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION && buffer.get(CLEAN_OFFSET) == 1;
+        if (clean && buffer.getLong(MODEL_HASH_OFFSET) != modelHash) {
+            log.info("Repository model changed since persistent row cache was saved: " + file);
+        } else if (clean) {
+            highWaterMark = buffer.getLong(CLEAN_OFFSET + 1);
+            int savedEnd = buffer.getInt(CLEAN_OFFSET + 9);
+            try {
+                if (savedEnd < HEADER_SIZE || savedEnd > maxSize) {
+                    throw new NuxeoException("Invalid end position: " + savedEnd);
+                }
+                loadIndex(savedEnd);
+            } catch (NuxeoException e) {
+                log.warn("Cannot load persistent row cache: " + file, e);
+                highWaterMark = -1;
+            }
+        }
+        if (highWaterMark < 0) {
+            log.info("Starting with an empty persistent row cache for repository: " + repositoryName);
+            resetAndSkipLog();
+        } else if (!replayInvalidations(highWaterMark)) {
+            log.info("Clearing persistent row cache for repository: " + repositoryName
+                    + ", invalidations logged while it was closed are not available");
+            resetAndSkipLog();
+        } else {
+            log.info("Loaded persistent row cache for repository: " + repositoryName + " with " + index.size()
+                    + " rows");
+        }
+        // mark as in use, so that a crash leaves the file as not reusable
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.put(CLEAN_OFFSET, (byte) 0);
+        buffer.putLong(MODEL_HASH_OFFSET, modelHash);
+        buffer.force();
+    }
+
+    /**
+     * Rebuilds the index by scanning the records.
+     */
+    protected void loadIndex(int savedEnd) {
+        int pos = HEADER_SIZE;
+        while (pos < savedEnd) {
+            int length = buffer.getInt(pos);
+            byte kind = buffer.get(pos + 4);
+            RowId rowId = readKey(pos);
+            if (kind == KIND_REMOVED) {
+                index.remove(rowId);
+            } else {
+                index.put(rowId, Integer.valueOf(pos));
+            }
+            pos += 4 + length;
+        }
+        end = pos;
+    }
+
+    /**
+     * Clears the cache, which then doesn't need the invalidations logged so far.
+     */
+    protected void resetAndSkipLog() {
+        reset();
+        appliedSeq = keyValueStore == null ? 0 : getCurrentSeq();
+    }
+
+    /**
+     * Replays the invalidations logged since the given high-water mark.
+     *
+     * @return {@code false} if the invalidations are not all available
+     */
+    protected boolean replayInvalidations(long highWaterMark) {
+        if (keyValueStore == null) {
+            // no clustering, we were the only writer
+            return true;
+        }
+        long current = getCurrentSeq();
+        if (current < highWaterMark || current - highWaterMark > maxReplay) {
+            return false;
+        }
+        appliedSeq = highWaterMark;
+        boolean complete = applyLoggedInvalidations(current, true);
+        if (complete && log.isDebugEnabled()) {
+            log.debug("Replayed " + (current - highWaterMark)
+                    + " logged invalidations on persistent row cache for repository: " + repositoryName);
+        }
+        return complete;
+    }
+
+    /**
+     * Applies the logged invalidations following {@link #appliedSeq} up to the given sequence number, in order.
+     * <p>
+     * When not strict, a missing sequence number stops the reading, as it may just not be written yet. If it is still
+     * missing the next time, it is skipped: the invalidations received from the cluster still apply to the cache.
+     *
+     * @param current the last sequence number to apply
+     * @param strict whether a missing sequence number fails the whole operation
+     * @return {@code false} if the invalidations are not all available
+     */
+    protected boolean applyLoggedInvalidations(long current, boolean strict) {
+        while (appliedSeq < current) {
+            long start = appliedSeq + 1;
+            long stop = Math.min(current, start + LOG_READ_BATCH - 1);
+            List<String> keys = new ArrayList<>();
+            for (long seq = start; seq <= stop; seq++) {
+                keys.add(invalidationKeyPrefix + seq);
+            }
+            Map<String, byte[]> values = keyValueStore.get(keys);
+            for (long seq = start; seq <= stop; seq++) {
+                byte[] bytes = values.get(invalidationKeyPrefix + seq);
+                if (bytes == null) {
+                    if (strict) {
+                        // expired
+                        return false;
+                    }
+                    if (seq != missingSeq) {
+                        missingSeq = seq;
+                        return true;
+                    }
+                    log.warn("Skipping missing logged invalidations: " + seq + " for repository: " + repositoryName);
+                } else {
+                    Invalidations invalidations;
+                    try {
+                        invalidations = Invalidations.deserialize(new ByteArrayInputStream(bytes));
+                    } catch (IOException e) {
+                        log.warn("Cannot deserialize logged invalidations: " + seq, e);
+                        return false;
+                    }
+                    if (invalidations.all) {
+                        reset();
+                    } else {
+                        applyInvalidations(invalidations);
+                    }
+                }
+                appliedSeq = seq;
+            }
+        }
+        return true;
+    }
+
+    protected long getCurrentSeq() {
+        Long seq = keyValueStore.getLong(seqKey);
+        return seq == null ? 0 : seq.longValue();
+    }
+
+    /**
+     * Closes the cache, saving it for the next startup.
+     */
+    public void close() {
+        if (logExecutor != null) {
+            logExecutor.shutdownNow();
+            try {
+                logExecutor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writeLog();
+        }
+        doClose();
+    }
+
+    protected synchronized void doClose() {
+        propagator.removeQueue(queue);
+        registry.remove(sizeGaugeName);
+        if (buffer == null) {
+            return;
+        }
+        try {
+            processInvalidations();
+            long highWaterMark = 0;
+            if (keyValueStore != null) {
+                applyLoggedInvalidations(getCurrentSeq(), false);
+                highWaterMark = appliedSeq;
+            }
+            buffer.putLong(CLEAN_OFFSET + 1, highWaterMark);
+            buffer.putInt(CLEAN_OFFSET + 9, end);
+            buffer.force();
+            buffer.put(CLEAN_OFFSET, (byte) 1);
+            buffer.force();
+        } finally {
+            buffer = null;
+            index.clear();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.error("Cannot close persistent row cache: " + file, e);
+            }
+        }
+    }
+
+    /*
+     * ----- Invalidations -----
+     */
+
+    /**
+     * Processes the invalidations received since the last call, and returns a stamp to pass to the next
+     * {@link #put}/{@link #putAbsent} done with data read from the database.
+     */
+    public synchronized long processInvalidations() {
+        Invalidations invalidations = queue.getInvalidations();
+        if (!invalidations.isEmpty()) {
+            if (invalidations.all) {
+                reset();
+            } else {
+                applyInvalidations(invalidations);
+            }
+            stamp++;
+        }
+        return stamp;
+    }
+
+    protected void applyInvalidations(Invalidations invalidations) {
+        if (invalidations.modified != null) {
+            invalidations.modified.forEach(this::remove);
+        }
+        if (invalidations.deleted != null) {
+            invalidations.deleted.forEach(this::remove);
+        }
+    }
+
+    /**
+     * Logs invalidations sent to other cluster nodes, so that nodes that are down can replay them on restart.
+     * <p>
+     * The invalidations are written to the log before returning, together with the ones of the transactions committed
+     * while the previous write was in progress, see {@link #writeLog}. If the write fails, it is retried periodically.
+     */
+    public void logInvalidations(Invalidations invalidations) {
+        if (keyValueStore == null || invalidations == null || invalidations.isEmpty()) {
+            return;
+        }
+        synchronized (logLock) {
+            if (logPending == null) {
+                logPending = new Invalidations();
+            }
+            logPending.add(invalidations);
+        }
+        try {
+            writeLog();
+        } catch (RuntimeException e) {
+            log.error("Cannot write the invalidations log of persistent row cache for repository: " + repositoryName
+                    + ", will retry", e);
+        }
+    }
+
+    /**
+     * Writes the accumulated invalidations to the log, under a single sequence number.
+     * <p>
+     * When this returns normally, all the invalidations accumulated before the call have been written, possibly by a
+     * concurrent call. If the write fails, the invalidations are kept for the next call.
+     */
+    protected void writeLog() {
+        synchronized (logWriteLock) {
+            Invalidations invalidations;
+            synchronized (logLock) {
+                invalidations = logPending;
+                logPending = null;
+            }
+            if (invalidations == null) {
+                return;
+            }
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                invalidations.serialize(out);
+                long seq = keyValueStore.addAndGet(seqKey, 1);
+                keyValueStore.put(invalidationKeyPrefix + seq, out.toByteArray(), invalidationsTTL);
+            } catch (IOException | RuntimeException e) {
+                synchronized (logLock) {
+                    if (logPending != null) {
+                        invalidations.add(logPending);
+                    }
+                    logPending = invalidations;
+                }
+                throw e instanceof IOException ? new NuxeoException(e) : (RuntimeException) e;
+            }
+        }
+    }
+
+    /**
+     * Applies the invalidations logged by all the cluster nodes since the last call.
+     */
+    protected synchronized void readLog() {
+        if (buffer != null) {
+            applyLoggedInvalidations(getCurrentSeq(), false);
+        }
+    }
+
+    /**
+     * Periodic task retrying the failed writes of our invalidations to the log and applying the ones logged by all the
+     * cluster nodes.
+     */
+    protected void syncLog() {
+        try {
+            writeLog();
+            readLog();
+        } catch (RuntimeException e) {
+            log.error("Cannot synchronize the invalidations log of persistent row cache for repository: "
+                    + repositoryName, e);
+        }
+    }
+
+    /*
+     * ----- Cache -----
+     */
+
+    /**
+     * Gets a row from the cache.
+     *
+     * @return a {@link Row} if the row is present, a {@link RowId} if the row is known to be absent, or {@code null} if
+     *         the row is not in the cache
+     */
+    public RowId get(RowId rowId) {
+        byte[] bytes;
+        byte kind;
+        synchronized (this) {
+            Integer pos = buffer == null ? null : index.get(rowId);
+            if (pos == null) {
+                missCount.inc();
+                return null;
+            }
+            int p = pos.intValue();
+            int length = buffer.getInt(p);
+            kind = buffer.get(p + 4);
+            bytes = new byte[length - 1];
+            ByteBuffer buf = buffer.duplicate();
+            buf.position(p + 5);
+            buf.get(bytes);
+        }
+        hitCount.inc();
+        if (kind == KIND_ABSENT) {
+            return new RowId(rowId);
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            readKey(in);
+            try (ObjectInputStream oin = new ObjectInputStream(in)) {
+                return (Row) oin.readObject();
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            log.warn("Cannot read row from persistent cache: " + rowId, e);
+            remove(rowId);
+            return null;
+        }
+    }
+
+    /**
+     * Puts a row read from the database in the cache, unless invalidations were processed since the given stamp was
+     * obtained, as the row may then be stale.
+     */
+    public void put(Row row, long stamp) {
+        byte[] record = toRecord(KIND_PRESENT, row, row);
+        if (record != null) {
+            synchronized (this) {
+                if (processInvalidations() == stamp) {
+                    append(row, record);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records in the cache a row known to be absent from the database, unless invalidations were processed since the
+     * given stamp was obtained.
+     */
+    public void putAbsent(RowId rowId, long stamp) {
+        byte[] record = toRecord(KIND_ABSENT, rowId, null);
+        if (record != null) {
+            synchronized (this) {
+                if (processInvalidations() == stamp) {
+                    append(rowId, record);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes a row from the cache.
+     */
+    public synchronized void remove(RowId rowId) {
+        if (buffer != null && index.containsKey(rowId)) {
+            byte[] record = toRecord(KIND_REMOVED, rowId, null);
+            append(rowId, record);
+        }
+    }
+
+    /**
+     * Removes rows from the cache.
+     */
+    public synchronized void removeAll(Collection<? extends RowId> rowIds) {
+        rowIds.forEach(this::remove);
+    }
+
+    /**
+     * Clears the cache.
+     */
+    public synchronized void clear() {
+        if (buffer != null) {
+            reset();
+        }
+    }
+
+    public synchronized int getSize() {
+        return index.size();
+    }
+
+    protected void reset() {
+        index.clear();
+        end = HEADER_SIZE;
+    }
+
+    protected void append(RowId rowId, byte[] record) {
+        if (buffer == null) {
+            return;
+        }
+        if (end + record.length > maxSize) {
+            compact();
+            if (end + record.length > maxSize) {
+                return;
+            }
+        }
+        buffer.position(end);
+        buffer.put(record);
+        if (record[4] == KIND_REMOVED) {
+            index.remove(rowId);
+        } else {
+            index.put(new RowId(rowId), Integer.valueOf(end));
+        }
+        end += record.length;
+    }
+
+    /**
+     * Rewrites the live records at the beginning of the file. If they occupy more than half of the file, the cache is
+     * cleared instead.
+     */
+    protected void compact() {
+        long live = 0;
+        for (Integer pos : index.values()) {
+            live += 4 + buffer.getInt(pos.intValue());
+        }
+        if (live > (maxSize - HEADER_SIZE) / 2) {
+            log.debug("Persistent row cache full, clearing it");
+            reset();
+            return;
+        }
+        log.debug("Compacting persistent row cache");
+        Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer outBuffer = out.map(MapMode.READ_WRITE, 0, maxSize);
+            outBuffer.putInt(0, MAGIC);
+            outBuffer.putInt(4, VERSION);
+            outBuffer.put(CLEAN_OFFSET, (byte) 0);
+            outBuffer.putLong(MODEL_HASH_OFFSET, modelHash);
+            int pos = HEADER_SIZE;
+            for (Entry<RowId, Integer> en : index.entrySet()) {
+                int p = en.getValue().intValue();
+                int length = 4 + buffer.getInt(p);
+                ByteBuffer record = buffer.duplicate();
+                record.position(p);
+                record.limit(p + length);
+                outBuffer.position(pos);
+                outBuffer.put(record);
+                en.setValue(Integer.valueOf(pos));
+                pos += length;
+            }
+            outBuffer.force();
+            channel.close();
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            buffer = channel.map(MapMode.READ_WRITE, 0, maxSize);
+            end = pos;
+        } catch (IOException e) {
+            log.error("Cannot compact persistent row cache, clearing it", e);
+            reset();
+        }
+    }
+
+    /*
+     * ----- Serialization -----
+     */
+
+    /**
+     * Serializes a record: length, kind, key, and for a present row the row itself.
+     *
+     * @return the record, or {@code null} if the row id cannot be serialized as a key
+     */
+    protected static byte[] toRecord(byte kind, RowId rowId, Row row) {
+        if (!(rowId.id instanceof String) && !(rowId.id instanceof Long)) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0); // placeholder for length
+            out.writeByte(kind);
+            writeKey(out, rowId);
+            if (row != null) {
+                try (ObjectOutputStream oout = new ObjectOutputStream(out)) {
+                    oout.writeObject(row);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Cannot serialize row for persistent cache: " + rowId, e);
+            return null;
+        }
+        byte[] record = bytes.toByteArray();
+        ByteBuffer.wrap(record).putInt(0, record.length - 4);
+        return record;
+    }
+
+    protected static void writeKey(DataOutputStream out, RowId rowId) throws IOException {
+        out.writeUTF(rowId.tableName);
+        if (rowId.id instanceof String) {
+            out.writeByte(ID_STRING);
+            out.writeUTF((String) rowId.id);
+        } else {
+            out.writeByte(ID_LONG);
+            out.writeLong(((Long) rowId.id).longValue());
+        }
+    }
+
+    protected RowId readKey(int pos) {
+        int length = buffer.getInt(pos);
+        if (length <= 1 || pos + 4 + length > maxSize) {
+            throw new NuxeoException("Corrupted persistent row cache: " + file + " at position: " + pos);
+        }
+        ByteBuffer buf = buffer.duplicate();
+        buf.position(pos + 5);
+        buf.limit(pos + 4 + length);
+        try {
+            return readKey(new DataInputStream(new ByteBufferInputStream(buf)));
+        } catch (IOException e) {
+            throw new NuxeoException("Corrupted persistent row cache: " + file + " at position: " + pos, e);
+        }
+    }
+
+    protected static RowId readKey(DataInputStream in) throws IOException {
+        String tableName = in.readUTF();
+        Serializable id;
+        if (in.readByte() == ID_STRING) {
+            id = in.readUTF();
+        } else {
+            id = Long.valueOf(in.readLong());
+        }
+        return new RowId(tableName, id);
+    }
+
+    /**
+     * Input stream reading from a {@link ByteBuffer}, used to only read the key of a record.
+     */
+    protected static class ByteBufferInputStream extends InputStream {
+
+        protected final ByteBuffer buf;
+
+        public ByteBufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buf.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buf.remaining());
+            buf.get(b, off, len);
+            return len;
+        }
+    }
+
+}
@@ -84,6 +84,13 @@ public class RepositoryImpl implements Repository {
 
     protected ClusterInvalidator clusterInvalidator;
 
+    /**
+     * The second-level row cache shared by the sessions, opened on first use.
+     *
+     * @since 11.1
+     */
+    protected PersistentRowCache persistentRowCache;
+
     public boolean requiresClusterSQL;
 
     private Model model;
@@ -162,6 +169,9 @@ public class RepositoryImpl implements Repository {
                 return mapper;
             }
             CachingMapper cachingMapper = cachingMapperClass.getDeclaredConstructor().newInstance();
+            if (cachingMapper instanceof PersistentCachingMapper) {
+                ((PersistentCachingMapper) cachingMapper).setPersistentRowCache(getPersistentRowCache());
+            }
             cachingMapper.initialize(getName(), model, mapper, invalidationsPropagator,
                     repositoryDescriptor.cachingMapperProperties);
             return cachingMapper;
@@ -198,6 +208,19 @@ public class RepositoryImpl implements Repository {
         return invalidationsPropagator;
     }
 
+    /**
+     * Gets the second-level row cache shared by the sessions of this repository, opening it if needed.
+     *
+     * @since 11.1
+     */
+    public synchronized PersistentRowCache getPersistentRowCache() {
+        if (persistentRowCache == null) {
+            persistentRowCache = PersistentRowCache.create(getName(), model, invalidationsPropagator,
+                    repositoryDescriptor.cachingMapperProperties);
+        }
+        return persistentRowCache;
+    }
+
     public boolean isChangeTokenEnabled() {
         return repositoryDescriptor.isChangeTokenEnabled();
     }
@@ -382,6 +405,10 @@ public class RepositoryImpl implements Repository {
     @Override
     public synchronized void close() {
         closeAllSessions();
+        if (persistentRowCache != null) {
+            persistentRowCache.close();
+            persistentRowCache = null;
+        }
         model = null;
         backend.shutdown();
 
@@ -48,10 +48,21 @@ public class SoftRefCachingMapper extends SoftRefCachingRowMapper implements Cac
     @Override
     public void initialize(String repositoryName, Model model, Mapper mapper, InvalidationsPropagator cachePropagator,
             Map<String, String> properties) {
-        super.initialize(repositoryName, model, mapper, cachePropagator, properties);
+        RowMapper rowMapper = newRowMapper(repositoryName, model, mapper, cachePropagator, properties);
+        super.initialize(repositoryName, model, rowMapper, cachePropagator, properties);
         this.mapper = mapper;
     }
 
+    /**
+     * Creates the {@link RowMapper} to which the row operations that cannot be processed from the cache are delegated.
+     *
+     * @since 11.1
+     */
+    protected RowMapper newRowMapper(String repositoryName, Model model, Mapper mapper,
+            InvalidationsPropagator cachePropagator, Map<String, String> properties) {
+        return mapper;
+    }
+
     @Override
     public ScrollResult scroll(String query, int batchSize, int keepAliveSeconds) {
         return mapper.scroll(query, batchSize, keepAliveSeconds);
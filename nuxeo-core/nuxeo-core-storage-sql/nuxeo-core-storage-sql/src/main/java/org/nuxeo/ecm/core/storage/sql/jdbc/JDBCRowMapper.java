@@ -52,6 +52,7 @@ import org.nuxeo.ecm.core.api.ConcurrentUpdateException;
 import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.ecm.core.api.model.Delta;
 import org.nuxeo.ecm.core.storage.sql.ClusterInvalidator;
+import org.nuxeo.ecm.core.storage.sql.ColumnType;
 import org.nuxeo.ecm.core.storage.sql.Invalidations;
 import org.nuxeo.ecm.core.storage.sql.InvalidationsPropagator;
 import org.nuxeo.ecm.core.storage.sql.Model;
@@ -81,6 +82,14 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
     /** Property to determine whether collection appends delete all then re-insert, or are optimized for append. */
     public static final String COLLECTION_DELETE_BEFORE_APPEND_PROP = "org.nuxeo.vcs.list-delete-before-append";
 
+    /**
+     * Property to disable set-based copies of hierarchies on databases supporting them, and use a node by node copy
+     * instead.
+     *
+     * @since 11.1
+     */
+    public static final String COPY_SET_BASED_PROP = "org.nuxeo.vcs.copy.set-based";
+
     /**
      * Cluster invalidator, or {@code null} if this mapper does not participate in invalidation propagation (cluster
      * invalidator, lock manager).
@@ -91,6 +100,8 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
 
     private final boolean collectionDeleteBeforeAppend;
 
+    private final boolean copySetBased;
+
     private final CollectionIO aclCollectionIO;
 
     private final CollectionIO scalarCollectionIO;
@@ -104,6 +115,7 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         collectionDeleteBeforeAppend = configurationService.isBooleanTrue(COLLECTION_DELETE_BEFORE_APPEND_PROP);
         aclCollectionIO = new ACLCollectionIO(collectionDeleteBeforeAppend);
         scalarCollectionIO = new ScalarCollectionIO(collectionDeleteBeforeAppend);
+        copySetBased = dialect.supportsSetBasedCopy() && !configurationService.isBooleanFalse(COPY_SET_BASED_PROP);
     }
 
     @Override
@@ -961,11 +973,14 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
     public CopyResult copy(IdWithTypes source, Serializable destParentId, String destName, Row overwriteRow) {
         // assert !model.separateMainTable; // other case not implemented
         Invalidations invalidations = new Invalidations();
+        Map<Serializable, Serializable> idMap = new LinkedHashMap<>();
+        Serializable overwriteId = overwriteRow == null ? null : overwriteRow.id;
+        // a copy onto an existing node (restore) only concerns a few complex properties
+        boolean setBased = copySetBased && overwriteId == null;
+        boolean copied = false;
         try {
-            Map<Serializable, Serializable> idMap = new LinkedHashMap<>();
             Map<Serializable, IdWithTypes> idToTypes = new HashMap<>();
             // copy the hierarchy fragments recursively
-            Serializable overwriteId = overwriteRow == null ? null : overwriteRow.id;
             if (overwriteId != null) {
                 // overwrite hier root with explicit values
                 String tableName = Model.HIER_TABLE_NAME;
@@ -976,8 +991,13 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
             }
             // create the new hierarchy by copy
             boolean resetVersion = destParentId != null;
-            Serializable newRootId = copyHierRecursive(source, destParentId, destName, overwriteId, resetVersion, idMap,
-                    idToTypes);
+            Serializable newRootId;
+            if (setBased) {
+                newRootId = copyHierSetBased(source, destParentId, destName, resetVersion, idMap, idToTypes);
+            } else {
+                newRootId = copyHierRecursive(source, destParentId, destName, overwriteId, resetVersion, idMap,
+                        idToTypes);
+            }
             // invalidate children
             Serializable invalParentId = overwriteId == null ? destParentId : overwriteId;
             if (invalParentId != null) { // null for a new version
@@ -1002,6 +1022,10 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
                         proxyIds.add(idMap.get(id)); // copied ids
                     }
                 }
+                if (setBased) {
+                    copyRowsSetBased(tableName, newRootId);
+                    continue;
+                }
                 Boolean invalidation = copyRows(tableName, ids, idMap, overwriteId);
                 if (invalidation != null) {
                     // overwrote something
@@ -1014,9 +1038,23 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
                     }
                 }
             }
+            copied = true;
             return new CopyResult(newRootId, invalidations, proxyIds);
         } catch (SQLException e) {
             throw new NuxeoException("Could not copy: " + source.id.toString(), e);
+        } finally {
+            // the copy_id_map rows are keyed by the new root id, also remove them if the copy failed midway
+            Serializable copyId = idMap.get(source.id);
+            if (setBased && copyId != null) {
+                try {
+                    deleteCopyIdMap(copyId);
+                } catch (SQLException e) {
+                    if (copied) {
+                        throw new NuxeoException("Could not copy: " + source.id.toString(), e); // NOSONAR
+                    }
+                    // keep the original failure, the connection may be unusable after it
+                }
+            }
         }
     }
 
@@ -1083,6 +1121,192 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         return newId;
     }
 
+    /**
+     * Copies hierarchy from id to parentId, with all its descendants, using set-based statements.
+     * <p>
+     * The descendant documents are collected through {@link #getDescendantsInfo}, and their complex properties level
+     * by level. The correspondence between original and copied ids is stored in the {@code copy_id_map} table, keyed
+     * by the new root id, and the hierarchy rows are then copied with one statement per depth, so that triggers
+     * computing ancestors always find the parent rows.
+     * <p>
+     * {@code idMap} and {@code idToTypes} are filled like for {@link #copyHierRecursive}.
+     *
+     * @return the new root id
+     * @since 11.1
+     */
+    protected Serializable copyHierSetBased(IdWithTypes source, Serializable parentId, String name,
+            boolean resetVersion, Map<Serializable, Serializable> idMap, Map<Serializable, IdWithTypes> idToTypes)
+            throws SQLException {
+        // the root is copied with its explicit name
+        Serializable newRootId = copyHier(source.id, parentId, name, resetVersion, idMap);
+        Map<Serializable, Integer> depths = new HashMap<>();
+        depths.put(source.id, Integer.valueOf(0));
+        insertCopyIdMap(newRootId, Collections.singletonList(Pair.of(source.id, null)), parentId, idMap, depths);
+        // descendant documents, none when creating a version
+        boolean onlyComplex = parentId == null;
+        if (!onlyComplex) {
+            List<Pair<Serializable, Serializable>> nodes = new ArrayList<>();
+            for (NodeInfo info : getDescendantsInfo(source.id)) {
+                nodes.add(Pair.of(info.id, info.parentId));
+            }
+            insertCopyIdMap(newRootId, nodes, parentId, idMap, depths);
+        }
+        // complex properties, level by level
+        for (;;) {
+            List<Pair<Serializable, Serializable>> nodes = getCopyIdMapComplexChildren(newRootId);
+            nodes.removeIf(node -> idMap.containsKey(node.getLeft()));
+            if (nodes.isEmpty()) {
+                break;
+            }
+            insertCopyIdMap(newRootId, nodes, parentId, idMap, depths);
+        }
+        // copy the hierarchy rows, parents first
+        int maxDepth = depths.values().stream().mapToInt(Integer::intValue).max().getAsInt();
+        SQLInfoSelect copy = sqlInfo.getCopyHierSetBased(resetVersion);
+        try (PreparedStatement ps = connection.prepareStatement(copy.sql)) {
+            for (int depth = 1; depth <= maxDepth; depth++) {
+                List<Serializable> debugValues = null;
+                if (logger.isLogEnabled()) {
+                    debugValues = new ArrayList<>(6);
+                }
+                int i = 1;
+                for (Column column : copy.whatColumns) {
+                    column.setToPreparedStatement(ps, i++, null);
+                    if (debugValues != null) {
+                        debugValues.add(null);
+                    }
+                }
+                dialect.setId(ps, i++, newRootId);
+                ps.setInt(i, depth);
+                if (debugValues != null) {
+                    debugValues.add(newRootId);
+                    debugValues.add(Integer.valueOf(depth));
+                    logger.logSQL(copy.sql, debugValues);
+                }
+                int count = ps.executeUpdate();
+                countExecute();
+                logger.logCount(count);
+            }
+        }
+        // collect the types, to know the fragments to copy
+        String sql = sqlInfo.getSelectCopyIdMapTypesSql();
+        if (logger.isLogEnabled()) {
+            logger.logSQL(sql, Collections.singletonList(newRootId));
+        }
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            dialect.setId(ps, 1, newRootId);
+            try (ResultSet rs = ps.executeQuery()) {
+                countExecute();
+                while (rs.next()) {
+                    IdWithTypes idWithTypes = getIdWithTypes(rs, sqlInfo.getSelectChildrenIdsAndTypesWhatColumns());
+                    idToTypes.put(idWithTypes.id, idWithTypes);
+                }
+            }
+        }
+        return newRootId;
+    }
+
+    /**
+     * Assigns new ids to the given nodes (id and parent id pairs) and inserts them in the {@code copy_id_map} table.
+     * The parents of the nodes must already have a depth, or be part of the nodes.
+     *
+     * @since 11.1
+     */
+    protected void insertCopyIdMap(Serializable copyId, List<Pair<Serializable, Serializable>> nodes,
+            Serializable rootParentId, Map<Serializable, Serializable> idMap, Map<Serializable, Integer> depths)
+            throws SQLException {
+        Map<Serializable, Serializable> parents = new HashMap<>();
+        for (Pair<Serializable, Serializable> node : nodes) {
+            parents.put(node.getLeft(), node.getRight());
+            // the root was already copied
+            idMap.computeIfAbsent(node.getLeft(), k -> generateNewId());
+        }
+        String sql = sqlInfo.getInsertCopyIdMapSql();
+        boolean batched = supportsBatchUpdates && nodes.size() > 1;
+        String loggedSql = batched ? sql + " -- BATCHED" : sql;
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            int batch = 0;
+            for (Iterator<Pair<Serializable, Serializable>> it = nodes.iterator(); it.hasNext();) {
+                Serializable id = it.next().getLeft();
+                Serializable newId = idMap.get(id);
+                Serializable parentId = parents.get(id);
+                Serializable newParentId = parentId == null ? rootParentId : idMap.get(parentId);
+                Integer depth = Integer.valueOf(getCopyDepth(id, parents, depths));
+                if (logger.isLogEnabled()) {
+                    logger.logSQL(loggedSql, Arrays.asList(copyId, id, newId, newParentId, depth));
+                }
+                dialect.setId(ps, 1, copyId);
+                dialect.setId(ps, 2, id);
+                dialect.setId(ps, 3, newId);
+                if (newParentId == null) {
+                    // new version
+                    ps.setNull(4, dialect.getJDBCTypeAndString(ColumnType.NODEID).jdbcType);
+                } else {
+                    dialect.setId(ps, 4, newParentId);
+                }
+                ps.setInt(5, depth.intValue());
+                if (batched) {
+                    ps.addBatch();
+                    batch++;
+                    if (batch % UPDATE_BATCH_SIZE == 0 || !it.hasNext()) {
+                        ps.executeBatch();
+                        countExecute();
+                    }
+                } else {
+                    ps.execute();
+                    countExecute();
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the depth of a node relative to the root of a copy, computing it from its parent if needed.
+     */
+    protected int getCopyDepth(Serializable id, Map<Serializable, Serializable> parents,
+            Map<Serializable, Integer> depths) {
+        Integer depth = depths.get(id);
+        if (depth == null) {
+            Serializable parentId = parents.get(id);
+            if (parentId == null) {
+                throw new NuxeoException("Cannot find parent of: " + id);
+            }
+            depth = Integer.valueOf(getCopyDepth(parentId, parents, depths) + 1);
+            depths.put(id, depth);
+        }
+        return depth.intValue();
+    }
+
+    /**
+     * Gets the complex properties (id and parent id pairs) whose parents are in the {@code copy_id_map} table.
+     *
+     * @since 11.1
+     */
+    protected List<Pair<Serializable, Serializable>> getCopyIdMapComplexChildren(Serializable copyId)
+            throws SQLException {
+        List<Pair<Serializable, Serializable>> children = new ArrayList<>();
+        String sql = sqlInfo.getSelectCopyIdMapComplexChildrenSql();
+        if (logger.isLogEnabled()) {
+            logger.logSQL(sql, Collections.singletonList(copyId));
+        }
+        List<Column> columns = sqlInfo.getSelectCopyIdMapComplexChildrenWhatColumns();
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            dialect.setId(ps, 1, copyId);
+            try (ResultSet rs = ps.executeQuery()) {
+                countExecute();
+                while (rs.next()) {
+                    Serializable id = columns.get(0).getFromResultSet(rs, 1);
+                    Serializable parentId = columns.get(1).getFromResultSet(rs, 2);
+                    children.add(Pair.of(id, parentId));
+                }
+            }
+        }
+        if (logger.isLogEnabled()) {
+            logger.log("  -> " + children.size() + " complex properties");
+        }
+        return children;
+    }
+
     /**
      * Copies hierarchy from id to a new child of parentId.
      * <p>
@@ -1167,24 +1391,10 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
             try (ResultSet rs = ps.executeQuery()) {
                 countExecute();
                 while (rs.next()) {
-                    Serializable childId = null;
-                    String childPrimaryType = null;
-                    String[] childMixinTypes = null;
-                    int i = 1;
-                    for (Column column : columns) {
-                        String key = column.getKey();
-                        Serializable value = column.getFromResultSet(rs, i++);
-                        if (key.equals(Model.MAIN_KEY)) {
-                            childId = value;
-                        } else if (key.equals(Model.MAIN_PRIMARY_TYPE_KEY)) {
-                            childPrimaryType = (String) value;
-                        } else if (key.equals(Model.MAIN_MIXIN_TYPES_KEY)) {
-                            childMixinTypes = (String[]) value;
-                        }
-                    }
-                    children.add(new IdWithTypes(childId, childPrimaryType, childMixinTypes));
+                    IdWithTypes child = getIdWithTypes(rs, columns);
+                    children.add(child);
                     if (debugValues != null) {
-                        debugValues.add(childId + "/" + childPrimaryType + "/" + Arrays.toString(childMixinTypes));
+                        debugValues.add(child.id + "/" + child.primaryType + "/" + Arrays.toString(child.mixinTypes));
                     }
                 }
             }
@@ -1195,6 +1405,25 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         }
     }
 
+    protected IdWithTypes getIdWithTypes(ResultSet rs, List<Column> columns) throws SQLException {
+        Serializable id = null;
+        String primaryType = null;
+        String[] mixinTypes = null;
+        int i = 1;
+        for (Column column : columns) {
+            String key = column.getKey();
+            Serializable value = column.getFromResultSet(rs, i++);
+            if (key.equals(Model.MAIN_KEY)) {
+                id = value;
+            } else if (key.equals(Model.MAIN_PRIMARY_TYPE_KEY)) {
+                primaryType = (String) value;
+            } else if (key.equals(Model.MAIN_MIXIN_TYPES_KEY)) {
+                mixinTypes = (String[]) value;
+            }
+        }
+        return new IdWithTypes(id, primaryType, mixinTypes);
+    }
+
     /**
      * Copy the rows from tableName with given ids into new ones with new ids given by idMap.
      * <p>
@@ -1243,6 +1472,41 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         }
     }
 
+    /**
+     * Copies all the rows from tableName whose ids are in the {@code copy_id_map} table into new ones.
+     *
+     * @since 11.1
+     */
+    protected void copyRowsSetBased(String tableName, Serializable copyId) throws SQLException {
+        String sql = sqlInfo.getCopySetBasedSql(tableName);
+        if (logger.isLogEnabled()) {
+            logger.logSQL(sql, Collections.singletonList(copyId));
+        }
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            dialect.setId(ps, 1, copyId);
+            int count = ps.executeUpdate();
+            countExecute();
+            logger.logCount(count);
+        }
+    }
+
+    /**
+     * Deletes the rows of a set-based copy from the {@code copy_id_map} table.
+     *
+     * @since 11.1
+     */
+    protected void deleteCopyIdMap(Serializable copyId) throws SQLException {
+        String sql = sqlInfo.getDeleteCopyIdMapSql();
+        if (logger.isLogEnabled()) {
+            logger.logSQL(sql, Collections.singletonList(copyId));
+        }
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            dialect.setId(ps, 1, copyId);
+            ps.executeUpdate();
+            countExecute();
+        }
+    }
+
     @Override
     public void remove(Serializable rootId, List<NodeInfo> nodeInfos) {
         if (sqlInfo.softDeleteEnabled) {
@@ -108,6 +108,18 @@ public class SQLInfo {
 
     private final Map<String, Column> copyIdColumnMap;
 
+    private final Map<String, String> copySetBasedSqlMap;
+
+    private String insertCopyIdMapSql;
+
+    private String deleteCopyIdMapSql;
+
+    private String selectCopyIdMapComplexChildrenSql;
+
+    private List<Column> selectCopyIdMapComplexChildrenWhatColumns;
+
+    private String selectCopyIdMapTypesSql;
+
     protected final Map<String, SQLInfoSelect> selectFragmentById;
 
     protected String createClusterNodeSql;
@@ -165,6 +177,7 @@ public class SQLInfo {
 
         copySqlMap = new HashMap<>();
         copyIdColumnMap = new HashMap<>();
+        copySetBasedSqlMap = new HashMap<>();
 
         getBinariesSql = new ArrayList<>(1);
         getBinariesColumns = new ArrayList<>(1);
@@ -635,6 +648,121 @@ public class SQLInfo {
         return copyIdColumnMap.get(tableName);
     }
 
+    // ----- set-based copy -----
+
+    /**
+     * Gets the SQL copying all the rows of a fragment table whose ids are in the id map of a set-based copy. The only
+     * parameter is the copy id.
+     *
+     * @since 11.1
+     */
+    public String getCopySetBasedSql(String tableName) {
+        return copySetBasedSqlMap.get(tableName);
+    }
+
+    /**
+     * Gets the SQL copying the hierarchy rows at a given depth of the id map of a set-based copy.
+     * <p>
+     * The parameters are the {@code whatColumns} (always set to {@code null}), then the copy id and the depth.
+     *
+     * @since 11.1
+     */
+    public SQLInfoSelect getCopyHierSetBased(boolean resetVersion) {
+        Table table = database.getTable(Model.HIER_TABLE_NAME);
+        Collection<Column> columns = table.getColumns();
+        List<String> selectWhats = new ArrayList<>(columns.size());
+        List<Column> selectWhatColumns = new ArrayList<>(4);
+        Insert insert = new Insert(table);
+        for (Column column : columns) {
+            if (column.isIdentity()) {
+                // identity column is never copied
+                continue;
+            }
+            insert.addColumn(column);
+            String key = column.getKey();
+            if (key.equals(Model.MAIN_KEY)) {
+                selectWhats.add(getCopyIdMapColumn(Model.COPY_ID_MAP_NEW_ID));
+            } else if (key.equals(Model.HIER_PARENT_KEY)) {
+                selectWhats.add(getCopyIdMapColumn(Model.COPY_ID_MAP_NEW_PARENT_ID));
+            } else if (key.equals(Model.MAIN_BASE_VERSION_KEY) //
+                    || key.equals(Model.MAIN_CHECKED_IN_KEY) //
+                    || (key.equals(Model.MAIN_MINOR_VERSION_KEY) && resetVersion) //
+                    || (key.equals(Model.MAIN_MAJOR_VERSION_KEY) && resetVersion)) {
+                // explicit value set
+                selectWhats.add("?");
+                selectWhatColumns.add(column);
+            } else {
+                // otherwise copy value
+                selectWhats.add(column.getFullQuotedName());
+            }
+        }
+        Select select = new Select(null);
+        select.setWhat(String.join(", ", selectWhats));
+        select.setFrom(getCopyIdMapJoin(table));
+        select.setWhere(getCopyIdMapColumn(Model.COPY_ID_MAP_COPY_ID) + " = ? AND "
+                + getCopyIdMapColumn(Model.COPY_ID_MAP_DEPTH) + " = ?");
+        insert.setValues(select.getStatement());
+        String sql = insert.getStatement();
+        return new SQLInfoSelect(sql, selectWhatColumns, Collections.singletonList(table.getColumn(Model.MAIN_KEY)),
+                null);
+    }
+
+    /**
+     * Gets the SQL inserting a row in the id map of a set-based copy. The parameters are the copy id, old id, new id,
+     * new parent id and depth.
+     *
+     * @since 11.1
+     */
+    public String getInsertCopyIdMapSql() {
+        return insertCopyIdMapSql;
+    }
+
+    /**
+     * Gets the SQL deleting the id map of a set-based copy. The only parameter is the copy id.
+     *
+     * @since 11.1
+     */
+    public String getDeleteCopyIdMapSql() {
+        return deleteCopyIdMapSql;
+    }
+
+    /**
+     * Gets the SQL selecting the id and parent id of the complex properties whose parent is in the id map of a
+     * set-based copy. The only parameter is the copy id.
+     *
+     * @since 11.1
+     */
+    public String getSelectCopyIdMapComplexChildrenSql() {
+        return selectCopyIdMapComplexChildrenSql;
+    }
+
+    /**
+     * @since 11.1
+     */
+    public List<Column> getSelectCopyIdMapComplexChildrenWhatColumns() {
+        return selectCopyIdMapComplexChildrenWhatColumns;
+    }
+
+    /**
+     * Gets the SQL selecting the ids and types of the nodes in the id map of a set-based copy, with the same columns
+     * as {@link #getSelectChildrenIdsAndTypesWhatColumns}. The only parameter is the copy id.
+     *
+     * @since 11.1
+     */
+    public String getSelectCopyIdMapTypesSql() {
+        return selectCopyIdMapTypesSql;
+    }
+
+    protected String getCopyIdMapColumn(String name) {
+        return Model.COPY_ID_MAP_TABLE_NAME + '.' + name;
+    }
+
+    protected String getCopyIdMapJoin(Table table) {
+        return table.getQuotedName() + " JOIN " + Model.COPY_ID_MAP_TABLE_NAME + " ON "
+                + table.getColumn(Model.MAIN_KEY).getFullQuotedName() + " = "
+                + getCopyIdMapColumn(Model.COPY_ID_MAP_OLD_ID);
+    }
+
     // ----- prepare everything -----
 
     /**
@@ -684,6 +812,10 @@ public class SQLInfo {
 
         initSelectDescendantsSQL();
 
+        if (dialect.supportsSetBasedCopy()) {
+            initCopyIdMapSQL();
+        }
+
         /*
          * fulltext
          */
@@ -816,6 +948,44 @@ public class SQLInfo {
         selectDescendantsInfoWhatColumns = whatCols;
     }
 
+    /**
+     * Creates the SQL for the id map used by set-based copies. The {@code copy_id_map} table itself is created by the
+     * dialect-specific SQL statements.
+     */
+    protected void initCopyIdMapSQL() {
+        Table hierTable = database.getTable(Model.HIER_TABLE_NAME);
+        Column mainColumn = hierTable.getColumn(Model.MAIN_KEY);
+        String copyIdWhere = getCopyIdMapColumn(Model.COPY_ID_MAP_COPY_ID) + " = ?";
+
+        insertCopyIdMapSql = "INSERT INTO " + Model.COPY_ID_MAP_TABLE_NAME + " ("
+                + String.join(", ", Model.COPY_ID_MAP_COPY_ID, Model.COPY_ID_MAP_OLD_ID, Model.COPY_ID_MAP_NEW_ID,
+                        Model.COPY_ID_MAP_NEW_PARENT_ID, Model.COPY_ID_MAP_DEPTH)
+                + ") VALUES (?, ?, ?, ?, ?)";
+
+        deleteCopyIdMapSql = "DELETE FROM " + Model.COPY_ID_MAP_TABLE_NAME + " WHERE " + copyIdWhere;
+
+        // complex properties children of the mapped nodes
+        Column parentColumn = hierTable.getColumn(Model.HIER_PARENT_KEY);
+        Select select = new Select(null);
+        select.setWhat(mainColumn.getFullQuotedName() + ", " + parentColumn.getFullQuotedName());
+        select.setFrom(hierTable.getQuotedName() + " JOIN " + Model.COPY_ID_MAP_TABLE_NAME + " ON "
+                + parentColumn.getFullQuotedName() + " = " + getCopyIdMapColumn(Model.COPY_ID_MAP_OLD_ID));
+        select.setWhere(copyIdWhere + " AND "
+                + hierTable.getColumn(Model.HIER_CHILD_ISPROPERTY_KEY).getFullQuotedName() + " = "
+                + dialect.toBooleanValueString(true));
+        selectCopyIdMapComplexChildrenSql = select.getStatement();
+        selectCopyIdMapComplexChildrenWhatColumns = Arrays.asList(mainColumn, parentColumn);
+
+        // types of the mapped nodes
+        select = new Select(null);
+        select.setWhat(selectChildrenIdsAndTypesWhatColumns.stream()
+                                                           .map(Column::getFullQuotedName)
+                                                           .collect(Collectors.joining(", ")));
+        select.setFrom(getCopyIdMapJoin(hierTable));
+        select.setWhere(copyIdWhere);
+        selectCopyIdMapTypesSql = select.getStatement();
+    }
+
     /**
      * Creates the SQL for the table holding ancestors information.
      * <p>
@@ -1068,6 +1238,37 @@ public class SQLInfo {
             insert.setValues(select.getStatement());
             copySqlMap.put(tableName, insert.getStatement());
             copyIdColumnMap.put(tableName, copyIdColumn);
+            if (dialect.supportsSetBasedCopy()) {
+                postProcessCopySetBased();
+            }
+        }
+
+        // set-based copy of a fragment
+        // INSERT INTO foo (id, x, y) SELECT copy_id_map.new_id, foo.x, foo.y
+        // FROM foo JOIN copy_id_map ON foo.id = copy_id_map.old_id WHERE copy_id_map.copy_id = ?
+        protected void postProcessCopySetBased() {
+            Collection<Column> columns = table.getColumns();
+            List<String> selectWhats = new ArrayList<>(columns.size());
+            Column copyIdColumn = table.getColumn(Model.MAIN_KEY);
+            Insert insert = new Insert(table);
+            for (Column column : columns) {
+                if (column.isIdentity()) {
+                    // identity column is never copied
+                    continue;
+                }
+                insert.addColumn(column);
+                if (column == copyIdColumn) {
+                    selectWhats.add(getCopyIdMapColumn(Model.COPY_ID_MAP_NEW_ID));
+                } else {
+                    selectWhats.add(column.getFullQuotedName());
+                }
+            }
+            Select select = new Select(null);
+            select.setWhat(String.join(", ", selectWhats));
+            select.setFrom(getCopyIdMapJoin(table));
+            select.setWhere(getCopyIdMapColumn(Model.COPY_ID_MAP_COPY_ID) + " = ?");
+            insert.setValues(select.getStatement());
+            copySetBasedSqlMap.put(tableName, insert.getStatement());
         }
 
     }
@@ -879,6 +879,16 @@ public abstract class Dialect {
         return false;
     }
 
+    /**
+     * Checks if the dialect supports set-based copies of a hierarchy, using the {@code copy_id_map} table to hold the
+     * correspondence between original and copied ids.
+     *
+     * @since 11.1
+     */
+    public boolean supportsSetBasedCopy() {
+        return false;
+    }
+
     /**
      * Gets the expression to use to check tree membership.
      *
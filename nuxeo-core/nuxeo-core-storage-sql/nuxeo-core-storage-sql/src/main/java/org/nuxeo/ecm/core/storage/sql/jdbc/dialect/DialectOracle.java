@@ -635,6 +635,11 @@ public class DialectOracle extends Dialect {
         return pathOptimizationsEnabled;
     }
 
+    @Override
+    public boolean supportsSetBasedCopy() {
+        return true;
+    }
+
     @Override
     public String getInTreeSql(String idColumnName, String id) {
         String idParam;
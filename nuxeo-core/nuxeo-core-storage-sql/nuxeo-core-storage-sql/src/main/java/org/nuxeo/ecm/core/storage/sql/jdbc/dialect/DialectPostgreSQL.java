@@ -849,6 +849,11 @@ public class DialectPostgreSQL extends Dialect {
         return pathOptimizationsEnabled;
     }
 
+    @Override
+    public boolean supportsSetBasedCopy() {
+        return true;
+    }
+
     @Override
     public String getInTreeSql(String idColumnName, String id) {
         String cast;
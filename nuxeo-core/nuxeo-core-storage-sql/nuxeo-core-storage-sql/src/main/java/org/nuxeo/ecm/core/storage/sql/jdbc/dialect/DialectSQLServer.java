@@ -513,6 +513,11 @@ public class DialectSQLServer extends Dialect {
         return pathOptimizationsEnabled;
     }
 
+    @Override
+    public boolean supportsSetBasedCopy() {
+        return true;
+    }
+
     @Override
     public String getInTreeSql(String idColumnName, String id) {
         String idParam;
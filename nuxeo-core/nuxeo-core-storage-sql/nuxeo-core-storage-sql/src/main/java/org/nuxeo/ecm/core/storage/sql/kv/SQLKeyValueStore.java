@@ -57,6 +57,7 @@ import org.nuxeo.ecm.core.storage.sql.jdbc.dialect.DialectSQLServer;
 import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.datasource.ConnectionHelper;
 import org.nuxeo.runtime.kv.AbstractKeyValueStoreProvider;
+import org.nuxeo.runtime.kv.KeyValueBatch;
 import org.nuxeo.runtime.kv.KeyValueStoreDescriptor;
 import org.nuxeo.runtime.transaction.TransactionHelper;
 
@@ -108,6 +109,9 @@ public class SQLKeyValueStore extends AbstractKeyValueStoreProvider {
     // maximum number of retries in case of concurrency
     protected static final int MAX_RETRY = 5;
 
+    // maximum number of keys in a single IN list (Oracle refuses more than 1000)
+    protected static final int MAX_KEYS_IN = 1000;
+
     protected JDBCLogger logger;
 
     protected String dataSourceName;
@@ -678,38 +682,48 @@ public class SQLKeyValueStore extends AbstractKeyValueStoreProvider {
         if (keys.isEmpty()) {
             return;
         }
+        List<String> keyList = new ArrayList<>(keys);
         runWithConnection((Connection connection) -> {
-            String sql = String.format(getMultiSQL, nParams(keys.size()));
-            logger.logSQL(sql, keys);
-            try (PreparedStatement ps = connection.prepareStatement(sql)) {
-                int i = 1;
-                for (String key : keys) {
-                    keyCol.setToPreparedStatement(ps, i++, key);
-                }
-                try (ResultSet rs = ps.executeQuery()) {
-                    while (rs.next()) {
-                        String key = (String) keyCol.getFromResultSet(rs, 1);
-                        Long longVal = (Long) longCol.getFromResultSet(rs, 2);
-                        String string = (String) stringCol.getFromResultSet(rs, 3);
-                        byte[] bytes = (byte[]) bytesCol.getFromResultSet(rs, 4);
-                        if (logger.isLogEnabled()) {
-                            logger.logResultSet(rs, Arrays.asList(keyCol, longCol, stringCol, bytesCol));
-                        }
-                        Object value;
-                        if (string != null) {
-                            value = string;
-                        } else if (longVal != null) {
-                            value = longVal;
-                        } else {
-                            value = bytes;
-                        }
-                        if (value != null) {
-                            consumer.accept(key, value);
-                        }
+            // one query per chunk of keys, to stay within the IN list limits of the database
+            for (int start = 0; start < keyList.size(); start += MAX_KEYS_IN) {
+                List<String> chunk = keyList.subList(start, Math.min(start + MAX_KEYS_IN, keyList.size()));
+                getObjects(connection, chunk, consumer);
+            }
+        });
+    }
+
+    protected void getObjects(Connection connection, List<String> keys, BiConsumer<String, Object> consumer)
+            throws SQLException {
+        String sql = String.format(getMultiSQL, nParams(keys.size()));
+        logger.logSQL(sql, keys);
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            int i = 1;
+            for (String key : keys) {
+                keyCol.setToPreparedStatement(ps, i++, key);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String key = (String) keyCol.getFromResultSet(rs, 1);
+                    Long longVal = (Long) longCol.getFromResultSet(rs, 2);
+                    String string = (String) stringCol.getFromResultSet(rs, 3);
+                    byte[] bytes = (byte[]) bytesCol.getFromResultSet(rs, 4);
+                    if (logger.isLogEnabled()) {
+                        logger.logResultSet(rs, Arrays.asList(keyCol, longCol, stringCol, bytesCol));
+                    }
+                    Object value;
+                    if (string != null) {
+                        value = string;
+                    } else if (longVal != null) {
+                        value = longVal;
+                    } else {
+                        value = bytes;
+                    }
+                    if (value != null) {
+                        consumer.accept(key, value);
                     }
                 }
             }
-        });
+        }
     }
 
     protected String nParams(int n) {
@@ -762,54 +776,162 @@ public class SQLKeyValueStore extends AbstractKeyValueStoreProvider {
     }
 
     protected void put(String key, Object value, long ttl) {
+        runWithConnection((Connection connection) -> put(connection, key, value, ttl));
+    }
+
+    protected void put(Connection connection, String key, Object value, long ttl) throws SQLException {
+        if (value == null) {
+            // delete
+            try (PreparedStatement ps = connection.prepareStatement(deleteSQL)) {
+                setToPreparedStatement(deleteSQL, ps, keyCol, key);
+                ps.execute();
+            }
+        } else {
+            // upsert (update or insert)
+            Long longValue = value instanceof Long ? (Long) value : null;
+            String stringValue = value instanceof String ? (String) value : null;
+            byte[] bytesValue = value instanceof byte[] ? (byte[]) value : null;
+            Long ttlValue = ttlToStorage(ttl);
+            List<Column> psColumns = new ArrayList<>();
+            List<Serializable> psValues = new ArrayList<>();
+            String sql = dialect.getUpsertSql(Arrays.asList(keyCol, longCol, stringCol, bytesCol, ttlCol),
+                    Arrays.asList(key, longValue, stringValue, bytesValue, ttlValue), psColumns, psValues);
+            for (int retry = 0; retry < MAX_RETRY; retry++) {
+                try {
+                    try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                        setToPreparedStatement(sql, ps, psColumns, psValues);
+                        ps.execute();
+                    }
+                    return;
+                } catch (SQLException e) {
+                    if (!dialect.isConcurrentUpdateException(e)) {
+                        throw e;
+                    }
+                    // Oracle MERGE can throw DUP_VAL_ON_INDEX (ORA-0001) or NO_DATA_FOUND (ORA-01403)
+                    // in that case retry a few times
+                }
+                sleepBeforeRetry();
+            }
+            throw new ConcurrentUpdateException("Failed to do atomic put for key: " + key);
+        }
+    }
+
+    @Override
+    public List<Long> apply(KeyValueBatch batch) {
+        List<Long> results = new ArrayList<>(batch.size());
+        if (batch.isEmpty()) {
+            return results;
+        }
         runWithConnection((Connection connection) -> {
-            if (value == null) {
-                // delete
-                try (PreparedStatement ps = connection.prepareStatement(deleteSQL)) {
-                    setToPreparedStatement(deleteSQL, ps, keyCol, key);
-                    ps.execute();
+            // consecutive operations using the same SQL are sent as a single JDBC batch
+            List<KeyValueBatch.Operation> pending = new ArrayList<>();
+            PreparedStatement ps = null;
+            String psSQL = null;
+            try {
+                for (KeyValueBatch.Operation op : batch.getOperations()) {
+                    if (op.getType() == KeyValueBatch.Type.ADD_AND_GET) {
+                        executeBatch(connection, ps, pending);
+                        results.add(Long.valueOf(addAndGet(connection, op.getKey(), op.getDelta())));
+                        continue;
+                    }
+                    results.add(null);
+                    List<Column> psColumns = new ArrayList<>();
+                    List<Serializable> psValues = new ArrayList<>();
+                    String sql = getBatchSQL(op, psColumns, psValues);
+                    if (!sql.equals(psSQL)) {
+                        executeBatch(connection, ps, pending);
+                        if (ps != null) {
+                            ps.close();
+                        }
+                        ps = connection.prepareStatement(sql);
+                        psSQL = sql;
+                    }
+                    setToPreparedStatement(sql, ps, psColumns, psValues);
+                    ps.addBatch();
+                    pending.add(op);
                 }
-            } else {
-                // upsert (update or insert)
+                executeBatch(connection, ps, pending);
+            } finally {
+                if (ps != null) {
+                    ps.close();
+                }
+            }
+        });
+        return results;
+    }
+
+    /**
+     * Computes the SQL and parameters for a batched operation (other than an addAndGet).
+     */
+    protected String getBatchSQL(KeyValueBatch.Operation op, List<Column> psColumns, List<Serializable> psValues) {
+        String key = op.getKey();
+        Object value = op.getType() == KeyValueBatch.Type.PUT ? toStorage(op.getValue()) : null;
+        switch (op.getType()) {
+        case SET_TTL:
+            psColumns.addAll(Arrays.asList(ttlCol, keyCol));
+            psValues.addAll(Arrays.asList(ttlToStorage(op.getTTL()), key));
+            return setTTLSQL;
+        case PUT:
+            if (value != null) {
                 Long longValue = value instanceof Long ? (Long) value : null;
                 String stringValue = value instanceof String ? (String) value : null;
                 byte[] bytesValue = value instanceof byte[] ? (byte[]) value : null;
-                Long ttlValue = ttlToStorage(ttl);
-                List<Column> psColumns = new ArrayList<>();
-                List<Serializable> psValues = new ArrayList<>();
-                String sql = dialect.getUpsertSql(Arrays.asList(keyCol, longCol, stringCol, bytesCol, ttlCol),
-                        Arrays.asList(key, longValue, stringValue, bytesValue, ttlValue), psColumns, psValues);
-                for (int retry = 0; retry < MAX_RETRY; retry++) {
-                    try {
-                        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-                            setToPreparedStatement(sql, ps, psColumns, psValues);
-                            ps.execute();
-                        }
-                        return;
-                    } catch (SQLException e) {
-                        if (!dialect.isConcurrentUpdateException(e)) {
-                            throw e;
-                        }
-                        // Oracle MERGE can throw DUP_VAL_ON_INDEX (ORA-0001) or NO_DATA_FOUND (ORA-01403)
-                        // in that case retry a few times
-                    }
-                    sleepBeforeRetry();
+                return dialect.getUpsertSql(Arrays.asList(keyCol, longCol, stringCol, bytesCol, ttlCol),
+                        Arrays.asList(key, longValue, stringValue, bytesValue, ttlToStorage(op.getTTL())), psColumns,
+                        psValues);
+            }
+            // else delete
+        case DELETE: // NOSONAR
+            psColumns.add(keyCol);
+            psValues.add(key);
+            return deleteSQL;
+        default:
+            throw new UnsupportedOperationException(op.getType().name());
+        }
+    }
+
+    /**
+     * Executes the pending JDBC batch. If a concurrent update makes it fail, the pending operations are replayed one
+     * by one with the usual retries, which is fine as they're idempotent.
+     */
+    protected void executeBatch(Connection connection, PreparedStatement ps, List<KeyValueBatch.Operation> pending)
+            throws SQLException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        try {
+            int[] counts = ps.executeBatch();
+            if (logger.isLogEnabled()) {
+                logger.log("  -> batch of " + counts.length);
+            }
+        } catch (SQLException e) {
+            if (!dialect.isConcurrentUpdateException(e)) {
+                throw e;
+            }
+            for (KeyValueBatch.Operation op : pending) {
+                if (op.getType() == KeyValueBatch.Type.SET_TTL) {
+                    setTTL(connection, op.getKey(), op.getTTL());
+                } else {
+                    Object value = op.getType() == KeyValueBatch.Type.PUT ? toStorage(op.getValue()) : null;
+                    put(connection, op.getKey(), value, op.getTTL());
                 }
-                throw new ConcurrentUpdateException("Failed to do atomic put for key: " + key);
             }
-        });
+        }
+        pending.clear();
     }
 
     @Override
     public boolean setTTL(String key, long ttl) {
-        return runWithConnection((Connection connection) -> {
-            try (PreparedStatement ps = connection.prepareStatement(setTTLSQL)) {
-                setToPreparedStatement(setTTLSQL, ps, ttlCol, ttlToStorage(ttl), keyCol, key);
-                int count = ps.executeUpdate();
-                boolean set = count == 1;
-                return set;
-            }
-        }).booleanValue();
+        return runWithConnection((Connection connection) -> setTTL(connection, key, ttl)).booleanValue();
+    }
+
+    protected Boolean setTTL(Connection connection, String key, long ttl) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(setTTLSQL)) {
+            setToPreparedStatement(setTTLSQL, ps, ttlCol, ttlToStorage(ttl), keyCol, key);
+            int count = ps.executeUpdate();
+            boolean set = count == 1;
+            return Boolean.valueOf(set);
+        }
     }
 
     @Override
@@ -910,122 +1032,124 @@ public class SQLKeyValueStore extends AbstractKeyValueStoreProvider {
 
     @Override
     public long addAndGet(String key, long delta) throws NumberFormatException { // NOSONAR
-        return runWithConnection((Connection connection) -> {
-            for (int retry = 0; retry < MAX_RETRY; retry++) {
-                String updateReturningSql;
-                boolean useReturnResultSet = false;
-                if (dialect instanceof DialectPostgreSQL) {
-                    updateReturningSql = updateReturningPostgreSQLSql;
-                } else if (dialect instanceof DialectOracle) {
-                    updateReturningSql = updateReturningOracleSql;
-                    useReturnResultSet = true;
-                } else if (dialect instanceof DialectSQLServer) {
-                    updateReturningSql = updateReturningSQLServerSql;
-                } else {
-                    updateReturningSql = null;
-                }
-                if (updateReturningSql != null) {
-                    List<Column> psColumns = Arrays.asList(longCol, keyCol);
-                    List<Serializable> psValues = Arrays.asList(Long.valueOf(delta), key);
-                    try (PreparedStatement ps = connection.prepareStatement(updateReturningSql)) {
-                        setToPreparedStatement(updateReturningSql, ps, psColumns, psValues);
-                        if (useReturnResultSet) {
-                            dialect.registerReturnParameter(ps, 3, longCol.getJdbcType());
-                        }
-                        boolean hasResultSet;
+        return runWithConnection((Connection connection) -> addAndGet(connection, key, delta)).longValue();
+    }
+
+    protected Long addAndGet(Connection connection, String key, long delta) throws SQLException {
+        for (int retry = 0; retry < MAX_RETRY; retry++) {
+            String updateReturningSql;
+            boolean useReturnResultSet = false;
+            if (dialect instanceof DialectPostgreSQL) {
+                updateReturningSql = updateReturningPostgreSQLSql;
+            } else if (dialect instanceof DialectOracle) {
+                updateReturningSql = updateReturningOracleSql;
+                useReturnResultSet = true;
+            } else if (dialect instanceof DialectSQLServer) {
+                updateReturningSql = updateReturningSQLServerSql;
+            } else {
+                updateReturningSql = null;
+            }
+            if (updateReturningSql != null) {
+                List<Column> psColumns = Arrays.asList(longCol, keyCol);
+                List<Serializable> psValues = Arrays.asList(Long.valueOf(delta), key);
+                try (PreparedStatement ps = connection.prepareStatement(updateReturningSql)) {
+                    setToPreparedStatement(updateReturningSql, ps, psColumns, psValues);
+                    if (useReturnResultSet) {
+                        dialect.registerReturnParameter(ps, 3, longCol.getJdbcType());
+                    }
+                    boolean hasResultSet;
+                    if (useReturnResultSet) {
+                        int count = ps.executeUpdate();
+                        hasResultSet = count > 0;
+                    } else {
+                        hasResultSet = true;
+                    }
+                    if (hasResultSet) {
+                        ResultSet rs;
                         if (useReturnResultSet) {
-                            int count = ps.executeUpdate();
-                            hasResultSet = count > 0;
+                            rs = dialect.getReturnResultSet(ps);
                         } else {
-                            hasResultSet = true;
+                            rs = ps.executeQuery();
                         }
-                        if (hasResultSet) {
-                            ResultSet rs;
-                            if (useReturnResultSet) {
-                                rs = dialect.getReturnResultSet(ps);
-                            } else {
-                                rs = ps.executeQuery();
-                            }
-                            try {
-                                if (rs.next()) {
-                                    Long longValue = (Long) longCol.getFromResultSet(rs, 1);
-                                    // We may get NULL here, because if the value is an empty string
-                                    // a normal database would not match any row, but Oracle treats
-                                    // "" as NULL and we end up trying to increment the long field
-                                    // which is also NULL.
-                                    if (longValue == null) {
-                                        throw new NumberFormatException("Value is not a Long for key: " + key);
-                                    }
-                                    return longValue;
+                        try {
+                            if (rs.next()) {
+                                Long longValue = (Long) longCol.getFromResultSet(rs, 1);
+                                // We may get NULL here, because if the value is an empty string
+                                // a normal database would not match any row, but Oracle treats
+                                // "" as NULL and we end up trying to increment the long field
+                                // which is also NULL.
+                                if (longValue == null) {
+                                    throw new NumberFormatException("Value is not a Long for key: " + key);
                                 }
-                            } finally {
-                                rs.close();
+                                return longValue;
                             }
+                        } finally {
+                            rs.close();
                         }
                     }
                 }
-                // the dialect doesn't support UPDATE RETURNING, or
-                // there was no row for this key, or
-                // the row didn't contain a long
-                // -> retry using a full transaction doing check + insert
-                // start transaction
-                connection.setAutoCommit(false);
-                try {
-                    // check value
-                    Long currentLong;
-                    try (PreparedStatement ps = connection.prepareStatement(getLongSQL)) {
-                        setToPreparedStatement(getLongSQL, ps, keyCol, key);
-                        try (ResultSet rs = ps.executeQuery()) {
-                            if (rs.next()) {
-                                currentLong = (Long) longCol.getFromResultSet(rs, 1);
-                                if (logger.isLogEnabled()) {
-                                    logger.logResultSet(rs, Arrays.asList(longCol));
-                                }
-                                if (currentLong == null) {
-                                    throw new NumberFormatException("Value is not a Long for key: " + key);
-                                }
-                            } else {
-                                currentLong = null;
+            }
+            // the dialect doesn't support UPDATE RETURNING, or
+            // there was no row for this key, or
+            // the row didn't contain a long
+            // -> retry using a full transaction doing check + insert
+            // start transaction
+            connection.setAutoCommit(false);
+            try {
+                // check value
+                Long currentLong;
+                try (PreparedStatement ps = connection.prepareStatement(getLongSQL)) {
+                    setToPreparedStatement(getLongSQL, ps, keyCol, key);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.next()) {
+                            currentLong = (Long) longCol.getFromResultSet(rs, 1);
+                            if (logger.isLogEnabled()) {
+                                logger.logResultSet(rs, Arrays.asList(longCol));
                             }
+                            if (currentLong == null) {
+                                throw new NumberFormatException("Value is not a Long for key: " + key);
+                            }
+                        } else {
+                            currentLong = null;
                         }
                     }
-                    if (currentLong == null) {
-                        // try insert
-                        try (PreparedStatement ps = connection.prepareStatement(insertLongSQL)) {
-                            setToPreparedStatement(insertLongSQL, ps, keyCol, key, longCol, Long.valueOf(delta));
-                            try {
-                                ps.executeUpdate();
-                                return delta;
-                            } catch (SQLException e) {
-                                if (!dialect.isConcurrentUpdateException(e)) {
-                                    throw e;
-                                }
-                                // if concurrent update, retry
+                }
+                if (currentLong == null) {
+                    // try insert
+                    try (PreparedStatement ps = connection.prepareStatement(insertLongSQL)) {
+                        setToPreparedStatement(insertLongSQL, ps, keyCol, key, longCol, Long.valueOf(delta));
+                        try {
+                            ps.executeUpdate();
+                            return delta;
+                        } catch (SQLException e) {
+                            if (!dialect.isConcurrentUpdateException(e)) {
+                                throw e;
                             }
+                            // if concurrent update, retry
                         }
-                    } else {
-                        // update existing value
-                        Long newLong = Long.valueOf(currentLong.longValue() + delta);
-                        try (PreparedStatement ps = connection.prepareStatement(updateLongSQL)) {
-                            setToPreparedStatement(updateLongSQL, ps, longCol, newLong, keyCol, key, longCol,
-                                    currentLong);
-                            int count = ps.executeUpdate();
-                            if (count == 1) {
-                                return newLong;
-                            }
-                            // else the value changed...
-                            // concurrent update, retry
+                    }
+                } else {
+                    // update existing value
+                    Long newLong = Long.valueOf(currentLong.longValue() + delta);
+                    try (PreparedStatement ps = connection.prepareStatement(updateLongSQL)) {
+                        setToPreparedStatement(updateLongSQL, ps, longCol, newLong, keyCol, key, longCol,
+                                currentLong);
+                        int count = ps.executeUpdate();
+                        if (count == 1) {
+                            return newLong;
                         }
+                        // else the value changed...
+                        // concurrent update, retry
                     }
-                } finally {
-                    connection.commit();
-                    connection.setAutoCommit(true);
                 }
-                // concurrent update on insert or update, retry a few times
-                sleepBeforeRetry();
+            } finally {
+                connection.commit();
+                connection.setAutoCommit(true);
             }
-            throw new ConcurrentUpdateException("Failed to do atomic addAndGet for key: " + key);
-        }).longValue();
+            // concurrent update on insert or update, retry a few times
+            sleepBeforeRetry();
+        }
+        throw new ConcurrentUpdateException("Failed to do atomic addAndGet for key: " + key);
     }
 
     protected void sleepBeforeRetry() {
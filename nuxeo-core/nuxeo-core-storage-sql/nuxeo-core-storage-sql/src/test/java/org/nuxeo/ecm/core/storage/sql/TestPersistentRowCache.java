@@ -0,0 +1,331 @@
+/*
+ * (C) Copyright 2019 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.runtime.kv.KeyValueStore;
+import org.nuxeo.runtime.kv.MemKeyValueStore;
+
+public class TestPersistentRowCache {
+
+    protected static final int MAX_SIZE = 1024 * 1024;
+
+    protected static final RowId ROW1 = new RowId("hierarchy", "id1");
+
+    protected static final RowId ROW2 = new RowId("hierarchy", "id2");
+
+    protected static final RowId ROW3 = new RowId("dublincore", "id1");
+
+    protected static final long MODEL_HASH = 123;
+
+    protected Path dir;
+
+    protected InvalidationsPropagator propagator;
+
+    protected KeyValueStore keyValueStore;
+
+    protected PersistentRowCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("rowcache-");
+        propagator = new InvalidationsPropagator();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (cache != null) {
+            cache.close();
+        }
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    protected PersistentRowCache open(Path dir, int maxSize) {
+        return new PersistentRowCache("test", MODEL_HASH, propagator, dir, maxSize, keyValueStore, 3600, 1000);
+    }
+
+    protected void reopen() {
+        cache.close();
+        cache = open(dir, MAX_SIZE);
+    }
+
+    protected static Row newRow(RowId rowId, String title) {
+        Row row = new Row(rowId.tableName, rowId.id);
+        row.put("title", title);
+        return row;
+    }
+
+    protected static Invalidations modified(RowId rowId) {
+        Invalidations invalidations = new Invalidations();
+        invalidations.addModified(rowId);
+        return invalidations;
+    }
+
+    protected static void assertRow(String title, RowId row) {
+        assertTrue(String.valueOf(row), row instanceof Row);
+        assertEquals(title, ((Row) row).get("title"));
+    }
+
+    protected static void assertAbsent(RowId row) {
+        assertTrue(String.valueOf(row), row != null && !(row instanceof Row));
+    }
+
+    @Test
+    public void testPutGetRemove() {
+        cache = open(dir, MAX_SIZE);
+        long stamp = cache.processInvalidations();
+        assertNull(cache.get(ROW1));
+        cache.put(newRow(ROW1, "foo"), stamp);
+        cache.putAbsent(ROW2, stamp);
+        assertRow("foo", cache.get(ROW1));
+        assertAbsent(cache.get(ROW2));
+        assertNull(cache.get(ROW3));
+        assertEquals(2, cache.getSize());
+
+        // collection row
+        Row coll = new Row(ROW3.tableName, ROW3.id, new Serializable[] { "a", "b" });
+        cache.put(coll, stamp);
+        assertArrayEquals(new Serializable[] { "a", "b" }, ((Row) cache.get(ROW3)).values);
+
+        cache.remove(ROW1);
+        assertNull(cache.get(ROW1));
+        assertEquals(2, cache.getSize());
+        cache.clear();
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testInvalidations() {
+        cache = open(dir, MAX_SIZE);
+        long stamp = cache.processInvalidations();
+        cache.put(newRow(ROW1, "foo"), stamp);
+        cache.put(newRow(ROW2, "bar"), stamp);
+
+        propagator.propagateInvalidations(modified(ROW1), null);
+        long newStamp = cache.processInvalidations();
+        assertNull(cache.get(ROW1));
+        assertRow("bar", cache.get(ROW2));
+
+        // a row read before the invalidations may be stale and is not cached
+        cache.put(newRow(ROW1, "stale"), stamp);
+        assertNull(cache.get(ROW1));
+        cache.put(newRow(ROW1, "fresh"), newStamp);
+        assertRow("fresh", cache.get(ROW1));
+
+        propagator.propagateInvalidations(new Invalidations(true), null);
+        cache.processInvalidations();
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testPersistence() {
+        cache = open(dir, MAX_SIZE);
+        long stamp = cache.processInvalidations();
+        cache.put(newRow(ROW1, "foo"), stamp);
+        cache.put(newRow(ROW2, "bar"), stamp);
+        cache.put(newRow(ROW1, "gee"), stamp);
+        cache.putAbsent(ROW3, stamp);
+        cache.remove(ROW2);
+
+        reopen();
+        assertEquals(2, cache.getSize());
+        assertRow("gee", cache.get(ROW1));
+        assertNull(cache.get(ROW2));
+        assertAbsent(cache.get(ROW3));
+    }
+
+    @Test
+    public void testNotClosedIsCleared() {
+        cache = open(dir, MAX_SIZE);
+        cache.put(newRow(ROW1, "foo"), cache.processInvalidations());
+        // simulate a crash: open again without closing
+        PersistentRowCache other = open(dir, MAX_SIZE);
+        try {
+            assertEquals(0, other.getSize());
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void testModelChangeClearsCache() {
+        cache = open(dir, MAX_SIZE);
+        cache.put(newRow(ROW1, "foo"), cache.processInvalidations());
+        cache.close();
+
+        cache = new PersistentRowCache("test", MODEL_HASH + 1, propagator, dir, MAX_SIZE, null, 3600, 1000);
+        assertEquals(0, cache.getSize());
+        assertNull(cache.get(ROW1));
+    }
+
+    @Test
+    public void testReplayClusterInvalidations() throws IOException {
+        keyValueStore = new MemKeyValueStore();
+        cache = open(dir, MAX_SIZE);
+        long stamp = cache.processInvalidations();
+        cache.put(newRow(ROW1, "foo"), stamp);
+        cache.put(newRow(ROW2, "bar"), stamp);
+        cache.logInvalidations(modified(ROW3));
+        cache.close();
+
+        // another node logs invalidations while we're down
+        Path otherDir = Files.createTempDirectory("rowcache-");
+        try {
+            PersistentRowCache other = new PersistentRowCache("test", MODEL_HASH, new InvalidationsPropagator(),
+                    otherDir, MAX_SIZE, keyValueStore, 3600, 1000);
+            other.logInvalidations(modified(ROW1));
+            other.close();
+        } finally {
+            FileUtils.deleteDirectory(otherDir.toFile());
+        }
+
+        cache = open(dir, MAX_SIZE);
+        assertNull(cache.get(ROW1));
+        assertRow("bar", cache.get(ROW2));
+    }
+
+    @Test
+    public void testMissingClusterInvalidationsClearsCache() {
+        keyValueStore = new MemKeyValueStore();
+        cache = open(dir, MAX_SIZE);
+        cache.put(newRow(ROW1, "foo"), cache.processInvalidations());
+        cache.close();
+
+        // an invalidation logged while we're down has expired
+        cache.logInvalidations(modified(ROW2));
+        keyValueStore.put("vcs:test:inval:1", (byte[]) null);
+
+        cache = open(dir, MAX_SIZE);
+        assertEquals(0, cache.getSize());
+        assertFalse(cache.get(ROW1) instanceof Row);
+    }
+
+    @Test
+    public void testInvalidationsAreLoggedAtCommit() throws IOException {
+        keyValueStore = new MemKeyValueStore();
+        cache = open(dir, MAX_SIZE);
+        cache.logInvalidations(modified(ROW1));
+        assertEquals(Long.valueOf(1), keyValueStore.getLong("vcs:test:invalseq"));
+        assertEquals(Collections.singleton(ROW1), getLogged(1).modified);
+
+        // invalidations accumulated during a concurrent write are logged together
+        cache.logPending = modified(ROW2);
+        cache.logInvalidations(modified(ROW3));
+        assertEquals(Long.valueOf(2), keyValueStore.getLong("vcs:test:invalseq"));
+        assertEquals(new HashSet<>(Arrays.asList(ROW2, ROW3)), getLogged(2).modified);
+
+        // nothing more to write
+        cache.writeLog();
+        assertEquals(Long.valueOf(2), keyValueStore.getLong("vcs:test:invalseq"));
+    }
+
+    @Test
+    public void testFailedLogWriteIsRetried() throws IOException {
+        AtomicBoolean fail = new AtomicBoolean(true);
+        keyValueStore = new MemKeyValueStore() {
+            @Override
+            public long addAndGet(String key, long delta) {
+                if (fail.get()) {
+                    throw new NuxeoException("unavailable");
+                }
+                return super.addAndGet(key, delta);
+            }
+        };
+        cache = open(dir, MAX_SIZE);
+        cache.logInvalidations(modified(ROW1));
+        assertNull(keyValueStore.getLong("vcs:test:invalseq"));
+
+        fail.set(false);
+        cache.syncLog();
+        assertEquals(Long.valueOf(1), keyValueStore.getLong("vcs:test:invalseq"));
+        assertEquals(Collections.singleton(ROW1), getLogged(1).modified);
+    }
+
+    protected Invalidations getLogged(long seq) throws IOException {
+        return Invalidations.deserialize(new ByteArrayInputStream(keyValueStore.get("vcs:test:inval:" + seq)));
+    }
+
+    @Test
+    public void testLoggedInvalidationsNotReceivedAreApplied() throws IOException {
+        keyValueStore = new MemKeyValueStore();
+        cache = open(dir, MAX_SIZE);
+        long stamp = cache.processInvalidations();
+        cache.put(newRow(ROW1, "foo"), stamp);
+        cache.put(newRow(ROW2, "bar"), stamp);
+
+        // another node logs invalidations, which we haven't received through the cluster invalidator
+        Path otherDir = Files.createTempDirectory("rowcache-");
+        try {
+            PersistentRowCache other = new PersistentRowCache("test", MODEL_HASH, new InvalidationsPropagator(),
+                    otherDir, MAX_SIZE, keyValueStore, 3600, 1000);
+            other.logInvalidations(modified(ROW1));
+            other.close();
+        } finally {
+            FileUtils.deleteDirectory(otherDir.toFile());
+        }
+        cache.readLog();
+        assertNull(cache.get(ROW1));
+        assertRow("bar", cache.get(ROW2));
+        assertEquals(1, cache.appliedSeq);
+
+        // the saved high-water mark is the last sequence applied
+        cache.put(newRow(ROW1, "foo"), cache.processInvalidations());
+        reopen();
+        assertRow("foo", cache.get(ROW1));
+        assertEquals(1, cache.appliedSeq);
+    }
+
+    @Test
+    public void testCompaction() {
+        cache = open(dir, 64 * 1024);
+        long stamp = cache.processInvalidations();
+        for (int i = 0; i < 1000; i++) {
+            cache.put(newRow(ROW1, "foo" + i), stamp);
+            cache.put(newRow(ROW2, "bar" + i), stamp);
+        }
+        assertEquals(2, cache.getSize());
+        assertRow("foo999", cache.get(ROW1));
+        assertRow("bar999", cache.get(ROW2));
+
+        reopen();
+        assertRow("foo999", cache.get(ROW1));
+        assertRow("bar999", cache.get(ROW2));
+    }
+
+}
@@ -453,7 +453,7 @@ public abstract class BaseDocument<T extends StateAccessor> implements Document
         name = internalName(name);
         if (type.isSimpleType()) {
             // scalar
-            return state.getSingle(name);
+            return readValue(state.getSingle(name));
         } else if (type.isComplexType()) {
             // complex property
             T childState = getChild(state, name, type);
@@ -466,7 +466,7 @@ public abstract class BaseDocument<T extends StateAccessor> implements Document
             Type fieldType = ((ListType) type).getFieldType();
             if (fieldType.isSimpleType()) {
                 // array
-                return state.getArray(name);
+                return readValue(state.getArray(name));
             } else {
                 // complex list
                 List<T> childStates = getChildAsList(state, name);
@@ -480,6 +480,18 @@ public abstract class BaseDocument<T extends StateAccessor> implements Document
         }
     }
 
+    /**
+     * Prepares a scalar or array value read from a state to be returned to the caller.
+     * <p>
+     * The default implementation returns the value itself. Implementations whose states may be shared between sessions
+     * return a copy of the mutable values.
+     *
+     * @since 11.1
+     */
+    protected Object readValue(Object value) {
+        return value;
+    }
+
     protected Object getValueComplex(T state, ComplexType complexType) throws PropertyException {
         if (TypeConstants.isContentType(complexType)) {
             return getValueBlob(state);
@@ -691,7 +703,7 @@ public abstract class BaseDocument<T extends StateAccessor> implements Document
             Type type = property.getType();
             if (type.isSimpleType()) {
                 // simple property
-                Object value = state.getSingle(name);
+                Object value = readValue(state.getSingle(name));
                 property.init((Serializable) value);
             } else if (type.isComplexType()) {
                 // complex property
@@ -702,7 +714,7 @@ public abstract class BaseDocument<T extends StateAccessor> implements Document
                 ListType listType = (ListType) type;
                 if (listType.getFieldType().isSimpleType()) {
                     // array
-                    Object[] array = state.getArray(name);
+                    Object[] array = (Object[]) readValue(state.getArray(name));
                     array = typedArray(listType.getFieldType(), array);
                     property.init(array);
                 } else {
@@ -981,6 +981,59 @@ public class TestSQLRepositoryAPI {
         }
     }
 
+    @Test
+    public void testGetDocumentsByIds() {
+        DocumentModel doc1 = session.createDocumentModel("/", "doc1", "File");
+        doc1.setPropertyValue("dc:title", "title1");
+        doc1 = session.createDocument(doc1);
+        DocumentModel doc2 = session.createDocumentModel("/", "doc2", "File");
+        doc2 = session.createDocument(doc2);
+        DocumentModel doc3 = session.createDocumentModel("/", "doc3", "File");
+        doc3 = session.createDocument(doc3);
+
+        // set ACP on root
+        ACP acp = new ACPImpl();
+        ACL acl = new ACLImpl();
+        acl.add(new ACE("Administrator", "Everything", true));
+        acl.add(new ACE("bob", "Everything", true));
+        acp.addACL(acl);
+        session.getRootDocument().setACP(acp, true);
+
+        // set ACP on doc2 to block bob
+        acp = new ACPImpl();
+        acl = new ACLImpl();
+        acl.add(new ACE("Administrator", "Everything", true));
+        acl.add(ACE.BLOCK);
+        acp.addACL(acl);
+        doc2.setACP(acp, true);
+        session.save();
+        nextTransaction();
+
+        // order is preserved, missing ids are skipped
+        List<String> ids = Arrays.asList(doc3.getId(), doc1.getId(), "nosuchid", doc2.getId());
+        DocumentModelList docs = session.getDocumentsByIds(ids, null);
+        assertEquals(Arrays.asList("doc3", "doc1", "doc2"),
+                docs.stream().map(DocumentModel::getName).collect(Collectors.toList()));
+        assertEquals("title1", docs.get(1).getTitle());
+
+        // projection of schemas
+        docs = session.getDocumentsByIds(Collections.singletonList(doc1.getId()), new String[] { "dublincore" });
+        assertEquals(1, docs.size());
+        DocumentModelImpl docImpl = (DocumentModelImpl) docs.get(0);
+        assertTrue(docImpl.isSchemaLoaded("dublincore"));
+        assertFalse(docImpl.isSchemaLoaded("file"));
+        assertEquals("title1", docs.get(0).getTitle());
+        // other schemas are loaded lazily
+        assertNull(docs.get(0).getPropertyValue("file:content"));
+
+        // bob doesn't see doc2
+        try (CloseableCoreSession bobSession = openSessionAs("bob")) {
+            docs = bobSession.getDocumentsByIds(ids, null);
+            assertEquals(Arrays.asList("doc3", "doc1"),
+                    docs.stream().map(DocumentModel::getName).collect(Collectors.toList()));
+        }
+    }
+
     /**
      * Test for NXP-741: Search based getChildren.
      */
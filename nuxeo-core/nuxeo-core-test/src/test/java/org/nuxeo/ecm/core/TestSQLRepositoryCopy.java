@@ -0,0 +1,226 @@
+/*
+ * (C) Copyright 2019 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.DocumentModelList;
+import org.nuxeo.ecm.core.api.DocumentRef;
+import org.nuxeo.ecm.core.api.PathRef;
+import org.nuxeo.ecm.core.api.VersioningOption;
+import org.nuxeo.ecm.core.api.security.ACE;
+import org.nuxeo.ecm.core.api.security.ACL;
+import org.nuxeo.ecm.core.api.security.ACP;
+import org.nuxeo.ecm.core.api.security.SecurityConstants;
+import org.nuxeo.ecm.core.api.security.impl.ACLImpl;
+import org.nuxeo.ecm.core.api.security.impl.ACPImpl;
+import org.nuxeo.ecm.core.test.CoreFeature;
+import org.nuxeo.ecm.core.test.annotations.Granularity;
+import org.nuxeo.ecm.core.test.annotations.RepositoryConfig;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+/**
+ * Copy of a tree of documents with complex properties.
+ * <p>
+ * On databases supporting it the copy is set-based, {@link TestSQLRepositoryCopyRecursive} runs the same tests with
+ * the node by node copy, so the logged copy times can be compared. The size of the tree can be increased using the
+ * {@value #FOLDERS_PROP} and {@value #DOCS_PROP} system properties.
+ *
+ * @since 11.1
+ */
+@RunWith(FeaturesRunner.class)
+@Features(CoreFeature.class)
+@RepositoryConfig(cleanup = Granularity.METHOD)
+@Deploy("org.nuxeo.ecm.core.test.tests:OSGI-INF/test-repo-core-types-contrib.xml")
+public class TestSQLRepositoryCopy {
+
+    private static final Logger log = LogManager.getLogger(TestSQLRepositoryCopy.class);
+
+    protected static final String FOLDERS_PROP = "nuxeo.test.copy.folders";
+
+    protected static final String DOCS_PROP = "nuxeo.test.copy.docs";
+
+    @Inject
+    protected CoreFeature coreFeature;
+
+    @Inject
+    protected CoreSession session;
+
+    @Before
+    public void setUp() {
+        assumeTrue(coreFeature.getStorageConfiguration().isVCS());
+    }
+
+    protected static Map<String, Serializable> newAttachedFile(String name, int nbVignettes) {
+        ArrayList<Map<String, Serializable>> vignettes = new ArrayList<>();
+        for (int i = 0; i < nbVignettes; i++) {
+            HashMap<String, Serializable> vignette = new HashMap<>();
+            vignette.put("width", Long.valueOf(i));
+            vignette.put("label", name + "-" + i);
+            vignettes.add(vignette);
+        }
+        Map<String, Serializable> attachedFile = new HashMap<>();
+        attachedFile.put("name", name);
+        attachedFile.put("vignettes", vignettes);
+        return attachedFile;
+    }
+
+    protected DocumentModel createComplexDoc(String parentPath, String name) {
+        DocumentModel doc = session.createDocumentModel(parentPath, name, "ComplexDoc");
+        doc.setPropertyValue("dc:title", name);
+        doc.setPropertyValue("cmpf:attachedFile", (Serializable) newAttachedFile(name, 2));
+        return session.createDocument(doc);
+    }
+
+    protected void setLocalACL(DocumentRef ref, String username) {
+        ACL acl = new ACLImpl();
+        acl.add(new ACE(username, SecurityConstants.READ, true));
+        ACP acp = new ACPImpl();
+        acp.addACL(acl);
+        session.setACP(ref, acp, true);
+    }
+
+    /**
+     * Creates a tree of folders, each holding documents and a subfolder holding documents. Each folder has a local
+     * ACL, and its subfolder holds a proxy to a version of the first document of the folder.
+     *
+     * @return the paths of the created documents, relative to the root of the tree
+     */
+    protected List<String> createTree(String path, int nbFolders, int nbDocs) {
+        List<String> paths = new ArrayList<>();
+        int slash = path.lastIndexOf('/');
+        session.createDocument(session.createDocumentModel(path.substring(0, slash + 1), path.substring(slash + 1),
+                "Folder"));
+        for (int i = 0; i < nbFolders; i++) {
+            String folderPath = "/folder" + i;
+            DocumentModel folder = session.createDocument(
+                    session.createDocumentModel(path, "folder" + i, "Folder"));
+            setLocalACL(folder.getRef(), "user" + i);
+            DocumentModel sub = session.createDocument(
+                    session.createDocumentModel(path + folderPath, "sub", "Folder"));
+            paths.add(folderPath);
+            paths.add(folderPath + "/sub");
+            for (int j = 0; j < nbDocs; j++) {
+                DocumentModel doc = createComplexDoc(path + folderPath, "doc" + j);
+                createComplexDoc(path + folderPath + "/sub", "doc" + j);
+                paths.add(folderPath + "/doc" + j);
+                paths.add(folderPath + "/sub/doc" + j);
+                if (j == 0) {
+                    DocumentRef verRef = session.checkIn(doc.getRef(), VersioningOption.MAJOR, null);
+                    DocumentModel proxy = session.createProxy(verRef, sub.getRef());
+                    paths.add(folderPath + "/sub/" + proxy.getName());
+                }
+            }
+        }
+        session.save();
+        return paths;
+    }
+
+    @Test
+    public void testCopyTree() {
+        int nbFolders = Integer.getInteger(FOLDERS_PROP, 5).intValue();
+        int nbDocs = Integer.getInteger(DOCS_PROP, 10).intValue();
+        List<String> paths = createTree("/tree", nbFolders, nbDocs);
+        coreFeature.waitForAsyncCompletion();
+
+        long t0 = System.nanoTime();
+        DocumentModel copy = session.copy(new PathRef("/tree"), session.getRootDocument().getRef(), "copy");
+        session.save();
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+        log.info("Copied {} documents in {} ms ({})", paths.size() + 1, elapsed, getClass().getSimpleName());
+        coreFeature.waitForAsyncCompletion();
+
+        assertEquals("copy", copy.getName());
+        DocumentModelList docs = session.query("SELECT * FROM Document WHERE ecm:path STARTSWITH '/copy'");
+        assertEquals(paths.size(), docs.size());
+        for (String path : paths) {
+            DocumentModel original = session.getDocument(new PathRef("/tree" + path));
+            DocumentModel copied = session.getDocument(new PathRef("/copy" + path));
+            assertNotEquals(original.getId(), copied.getId());
+            assertEquals(original.getType(), copied.getType());
+            assertEquals(original.getTitle(), copied.getTitle());
+            if ("ComplexDoc".equals(original.getType())) {
+                assertEquals(original.getPropertyValue("cmpf:attachedFile"),
+                        copied.getPropertyValue("cmpf:attachedFile"));
+            }
+            assertEquals(path, original.getACP().getACL(ACL.LOCAL_ACL), copied.getACP().getACL(ACL.LOCAL_ACL));
+            assertEquals(path, original.isProxy(), copied.isProxy());
+            if (original.isProxy()) {
+                // the copied proxy points to the same version
+                assertEquals(path, original.getSourceId(), copied.getSourceId());
+            }
+        }
+        DocumentModel copiedFolder = session.getDocument(new PathRef("/copy/folder0"));
+        assertNotNull(copiedFolder.getACP().getACL(ACL.LOCAL_ACL));
+        assertTrue(copiedFolder.getACP().getAccess("user0", SecurityConstants.READ).toBoolean());
+        if (nbDocs > 0) {
+            DocumentModelList proxies = session.query(
+                    "SELECT * FROM Document WHERE ecm:isProxy = 1 AND ecm:path STARTSWITH '/copy'");
+            assertEquals(nbFolders, proxies.size());
+        }
+        // copies are independent
+        DocumentModel doc = session.getDocument(new PathRef("/copy/folder0/doc0"));
+        doc.setPropertyValue("cmpf:attachedFile", (Serializable) newAttachedFile("changed", 3));
+        session.saveDocument(doc);
+        session.save();
+        DocumentModel original = session.getDocument(new PathRef("/tree/folder0/doc0"));
+        assertEquals(newAttachedFile("doc0", 2), original.getPropertyValue("cmpf:attachedFile"));
+    }
+
+    @Test
+    public void testCheckInCopiesComplexProperties() {
+        session.createDocument(session.createDocumentModel("/", "folder", "Folder"));
+        DocumentModel doc = createComplexDoc("/folder", "doc");
+        session.save();
+
+        DocumentRef verRef = session.checkIn(doc.getRef(), VersioningOption.MAJOR, null);
+        session.save();
+        DocumentModel ver = session.getDocument(verRef);
+        assertEquals(newAttachedFile("doc", 2), ver.getPropertyValue("cmpf:attachedFile"));
+        assertEquals("doc", ver.getTitle());
+
+        // copy of the checked in document
+        DocumentModel copy = session.copy(doc.getRef(), new PathRef("/folder"), "copy");
+        assertEquals(newAttachedFile("doc", 2), copy.getPropertyValue("cmpf:attachedFile"));
+        assertEquals(0, session.getVersionsRefs(copy.getRef()).size());
+    }
+
+}
@@ -3599,6 +3599,71 @@ public class TestSQLRepositoryQuery {
         assertFalse(ret.hasResults());
     }
 
+    @Test
+    public void testScrollDocumentsApi() {
+        final int nbDocs = 127;
+        final int batchSize = 13;
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < nbDocs; i++) {
+            DocumentModel doc = session.createDocumentModel("/", "doc" + i, "File");
+            doc.setPropertyValue("dc:title", "title" + i);
+            doc = session.createDocument(doc);
+            expected.add(doc.getId());
+        }
+        session.save();
+
+        ScrollResult<DocumentModel> ret = session.scrollDocuments("SELECT * FROM File", batchSize, 10);
+        Set<String> ids = new HashSet<>();
+        while (ret.hasResults()) {
+            List<DocumentModel> docs = ret.getResults();
+            assertTrue(docs.size() <= batchSize);
+            for (DocumentModel doc : docs) {
+                assertEquals("title" + doc.getName().substring("doc".length()), doc.getTitle());
+                ids.add(doc.getId());
+            }
+            ret = session.scrollDocuments(ret.getScrollId());
+        }
+        assertEquals(expected, ids);
+    }
+
+    @Test
+    public void testScrollDocumentsWithUpdates() {
+        final int nbDocs = 50;
+        final int batchSize = 7;
+        for (int i = 0; i < nbDocs; i++) {
+            DocumentModel doc = session.createDocumentModel("/", "doc" + i, "File");
+            doc.setPropertyValue("dc:title", "title" + i);
+            session.createDocument(doc);
+        }
+        session.save();
+        nextTransaction();
+
+        // update the documents while scrolling, the documents of a batch are released at the next batch
+        DocumentModel pending = null;
+        ScrollResult<DocumentModel> ret = session.scrollDocuments("SELECT * FROM File", batchSize, 10);
+        while (ret.hasResults()) {
+            if (pending != null) {
+                // modified but not saved before the next batch was read
+                session.saveDocument(pending);
+            }
+            List<DocumentModel> docs = ret.getResults();
+            for (DocumentModel doc : docs) {
+                doc.setPropertyValue("dc:title", "updated");
+            }
+            pending = docs.get(docs.size() - 1);
+            docs.subList(0, docs.size() - 1).forEach(session::saveDocument);
+            ret = session.scrollDocuments(ret.getScrollId());
+        }
+        session.saveDocument(pending);
+        session.save();
+        nextTransaction();
+
+        DocumentModelList docs = session.query("SELECT * FROM File WHERE dc:title <> 'updated'");
+        assertEquals(0, docs.size());
+        docs = session.query("SELECT * FROM File WHERE dc:title = 'updated'");
+        assertEquals(nbDocs, docs.size());
+    }
+
     @Test
     @LogCaptureFeature.FilterOn(logLevel = "WARN")
     public void testScrollApiEmtpy() throws Exception {
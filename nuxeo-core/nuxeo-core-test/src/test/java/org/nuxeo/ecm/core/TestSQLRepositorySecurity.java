@@ -860,11 +860,29 @@ public class TestSQLRepositorySecurity {
         }
     }
 
+    @Test
+    public void testReadAclOnLargeTreeNotIncremental() {
+        String enabledProp = "nuxeo.core.readacl.async.enabled";
+        String thresholdProp = "nuxeo.core.readacl.async.threshold";
+        String incrementalProp = "nuxeo.core.readacl.incremental.enabled";
+        Framework.getProperties().put(enabledProp, "true");
+        Framework.getProperties().put(thresholdProp, "10");
+        Framework.getProperties().put(incrementalProp, "false");
+        try {
+            doTestReadAclOnLargeTree();
+        } finally {
+            Framework.getProperties().remove(enabledProp);
+            Framework.getProperties().remove(thresholdProp);
+            Framework.getProperties().remove(incrementalProp);
+        }
+    }
+
     protected void doTestReadAclOnLargeTree() {
         DocumentModel rootFolder = session.createDocumentModel("/", "folder", "Folder");
         rootFolder = session.createDocument(rootFolder);
         String firstUser = "mickey";
         String secondUser = "minnie";
+        String thirdUser = "goofy";
 
         // set ACL for first user on root folder
         ACP acp = new ACPImpl();
@@ -882,14 +900,22 @@ public class TestSQLRepositorySecurity {
                         "File");
                 doc = session.createDocument(doc);
             }
+            if (level == nbLevels / 2) {
+                // set ACL for third user on a folder in the middle of the tree
+                ACP subAcp = new ACPImpl();
+                subAcp.addACE(ACL.LOCAL_ACL, new ACE(thirdUser, READ, true));
+                folder.setACP(subAcp, true);
+            }
             parent = folder;
         }
         session.save();
         int nbDocs = 1 + nbLevels * (nbPerLevel + 1);
+        int nbSubDocs = (nbLevels - nbLevels / 2) * (nbPerLevel + 1);
 
         // check that only first user has access to everything, but not second user
         assertEquals(nbDocs, numberOfReadableDocuments(firstUser));
         assertEquals(0, numberOfReadableDocuments(secondUser));
+        assertEquals(nbSubDocs, numberOfReadableDocuments(thirdUser));
 
         // set ACL for user on root folder
         acp.addACE(ACL.LOCAL_ACL, new ACE(secondUser, READ, true));
@@ -897,13 +923,13 @@ public class TestSQLRepositorySecurity {
         session.save();
 
         // wait for asynchronous stuff to finish
-        TransactionHelper.commitOrRollbackTransaction();
-        TransactionHelper.startTransaction();
-        eventService.waitForAsyncCompletion();
+        coreFeature.waitForAsyncCompletion();
 
         // check that both users now have access to everything
         assertEquals(nbDocs, numberOfReadableDocuments(firstUser));
         assertEquals(nbDocs, numberOfReadableDocuments(secondUser));
+        // check that the third user still only has access to the subtree
+        assertEquals(nbSubDocs, numberOfReadableDocuments(thirdUser));
     }
 
     protected int numberOfReadableDocuments(String username) {
@@ -102,6 +102,53 @@ public class TestBulkProcessor {
         }
     }
 
+    @Test
+    public void testScrollSlices() throws InterruptedException {
+        final int nbDocs = 50;
+        final int nbSlices = 4;
+        for (int i = 0; i < nbDocs; i++) {
+            DocumentModel doc = session.createDocumentModel("/", "doc" + i, "File");
+            session.createDocument(doc);
+        }
+        TransactionHelper.commitOrRollbackTransaction();
+        TransactionHelper.startTransaction();
+
+        String nxql = "SELECT * FROM File WHERE ecm:isVersion = 0";
+        String commandId = service.submit(
+                new BulkCommand.Builder("setProperties", nxql, session.getPrincipal().getName()).repository(
+                        session.getRepositoryName()).scrollSlices(nbSlices).param("dc:description", "sliced").build());
+        assertTrue("Bulk action didn't finish", service.await(Duration.ofSeconds(60)));
+
+        BulkStatus status = service.getStatus(commandId);
+        assertEquals(COMPLETED, status.getState());
+        assertEquals(nbSlices, status.getScrollSlices());
+        assertEquals(nbSlices, status.getScrolledSlices());
+        assertEquals(nbDocs, status.getTotal());
+        assertEquals(nbDocs, status.getProcessed());
+        assertFalse(status.hasError());
+        assertNotNull(status.getScrollEndTime());
+
+        TransactionHelper.commitOrRollbackTransaction();
+        TransactionHelper.startTransaction();
+        nxql = "SELECT * FROM File WHERE dc:description = 'sliced'";
+        assertEquals(nbDocs, session.query(nxql).size());
+    }
+
+    @Test
+    public void testScrollSlicesEmpty() throws InterruptedException {
+        String nxql = "SELECT * FROM Document WHERE ecm:parentId = 'nonExistentId'";
+        String commandId = service.submit(
+                new BulkCommand.Builder("setProperties", nxql, session.getPrincipal().getName()).repository(
+                        session.getRepositoryName()).scrollSlices(3).build());
+        assertTrue("Bulk action didn't finish", service.await(Duration.ofSeconds(10)));
+
+        BulkStatus status = service.getStatus(commandId);
+        assertEquals(COMPLETED, status.getState());
+        assertEquals(3, status.getScrolledSlices());
+        assertEquals(0, status.getTotal());
+        assertFalse(status.hasError());
+    }
+
     @Test
     public void testInvalidQuery() throws InterruptedException {
         // null query
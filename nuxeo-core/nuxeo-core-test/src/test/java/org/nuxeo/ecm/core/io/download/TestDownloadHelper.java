@@ -21,6 +21,8 @@ package org.nuxeo.ecm.core.io.download;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 
+import java.util.List;
+
 import org.junit.Test;
 import org.nuxeo.ecm.core.io.download.DownloadService.ByteRange;
 
@@ -89,4 +91,44 @@ public class TestDownloadHelper {
         assertNull(DownloadHelper.parseRange("bytes=foo-bar", 12345));
     }
 
+    @Test
+    public void testParseMultipleByteRanges() throws Exception {
+        List<ByteRange> byteRanges = DownloadHelper.parseRanges("bytes=200-299, 0-99, -50", 12345);
+        assertEquals(3, byteRanges.size());
+        // requested order is kept
+        assertEquals(200, byteRanges.get(0).getStart());
+        assertEquals(299, byteRanges.get(0).getEnd());
+        assertEquals(0, byteRanges.get(1).getStart());
+        assertEquals(99, byteRanges.get(1).getEnd());
+        assertEquals(12295, byteRanges.get(2).getStart());
+        assertEquals(12344, byteRanges.get(2).getEnd());
+    }
+
+    @Test
+    public void testParseOverlappingByteRanges() throws Exception {
+        // overlapping and adjacent ranges are coalesced, in ascending order
+        List<ByteRange> byteRanges = DownloadHelper.parseRanges("bytes=200-, 0-99, -50, 100-149", 12345);
+        assertEquals(2, byteRanges.size());
+        assertEquals(0, byteRanges.get(0).getStart());
+        assertEquals(149, byteRanges.get(0).getEnd());
+        assertEquals(200, byteRanges.get(1).getStart());
+        assertEquals(12344, byteRanges.get(1).getEnd());
+
+        byteRanges = DownloadHelper.parseRanges("bytes=0-4, 2-8, 1-1", 12345);
+        assertEquals(1, byteRanges.size());
+        assertEquals(0, byteRanges.get(0).getStart());
+        assertEquals(8, byteRanges.get(0).getEnd());
+    }
+
+    @Test
+    public void testParseUnsupportedMultipleByteRanges() throws Exception {
+        assertNull(DownloadHelper.parseRanges("bytes=0-99,foo", 12345));
+        assertNull(DownloadHelper.parseRanges("0-99,200-299", 12345));
+        StringBuilder sb = new StringBuilder("bytes=0-0");
+        for (int i = 1; i <= DownloadHelper.MAX_RANGES; i++) {
+            sb.append(',').append(i).append('-').append(i);
+        }
+        assertNull(DownloadHelper.parseRanges(sb.toString(), 12345));
+    }
+
 }
@@ -27,6 +27,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
 import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doThrow;
@@ -140,6 +141,71 @@ public class TestDownloadService {
         assertEquals(blobValue, out.toString(encoding));
     }
 
+    @Test
+    public void testMultipleByteRangesDownload() throws Exception {
+        // blob to download
+        Blob blob = Blobs.createBlob("Hello World", "text/plain");
+        blob.setDigest("12345");
+
+        // prepare mocks
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getHeader("Range")).thenReturn("bytes=0-4,6-10");
+
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        ServletOutputStream sos = new DummyServletOutputStream() {
+            @Override
+            public void write(int b) {
+                out.write(b);
+            }
+        };
+        when(response.getOutputStream()).thenReturn(sos);
+
+        // send download request
+        downloadService.downloadBlob(request, response, null, null, blob, null, null);
+
+        // check the multipart response
+        verify(response).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        verify(response).setContentType(startsWith("multipart/byteranges; boundary="));
+        verify(response).setContentLengthLong(out.size());
+        String body = out.toString("UTF-8");
+        assertTrue(body, body.contains("Content-Range: bytes 0-4/11\r\n\r\nHello\r\n--"));
+        assertTrue(body, body.contains("Content-Range: bytes 6-10/11\r\n\r\nWorld\r\n--"));
+        assertTrue(body, body.endsWith("--\r\n"));
+    }
+
+    @Test
+    public void testOverlappingByteRangesDownload() throws Exception {
+        // blob to download
+        Blob blob = Blobs.createBlob("Hello World", "text/plain");
+        blob.setDigest("12345");
+
+        // prepare mocks
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getHeader("Range")).thenReturn("bytes=6-10,0-4,3-5");
+
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        ServletOutputStream sos = new DummyServletOutputStream() {
+            @Override
+            public void write(int b) {
+                out.write(b);
+            }
+        };
+        when(response.getOutputStream()).thenReturn(sos);
+
+        // send download request
+        downloadService.downloadBlob(request, response, null, null, blob, null, null);
+
+        // the ranges are coalesced into a single range response
+        verify(response).setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        verify(response).setHeader("Content-Range", "bytes 0-10/11");
+        verify(response).setContentLengthLong(11);
+        assertEquals("Hello World", out.toString("UTF-8"));
+    }
+
     @Test
     public void testETagHeaderNone() throws Exception {
         doTestETagHeader(null);
@@ -0,0 +1,132 @@
+/*
+ * (C) Copyright 2019 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.dbs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_CHANGE_TOKEN;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.ConcurrentUpdateException;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.repository.RepositoryService;
+import org.nuxeo.ecm.core.storage.State;
+import org.nuxeo.ecm.core.storage.State.StateDiff;
+import org.nuxeo.ecm.core.storage.dbs.DBSTransactionState.ChangeTokenUpdater;
+import org.nuxeo.ecm.core.storage.dbs.DBSTransactionState.StateUpdate;
+import org.nuxeo.ecm.core.test.CoreFeature;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+/**
+ * Tests the batched {@link DBSRepository#updateStates} and its conflict reporting.
+ *
+ * @since 11.1
+ */
+@RunWith(FeaturesRunner.class)
+@Features(CoreFeature.class)
+public class TestDBSUpdateStates {
+
+    @Inject
+    protected CoreFeature coreFeature;
+
+    @Inject
+    protected CoreSession session;
+
+    @Inject
+    protected RepositoryService repositoryService;
+
+    protected DBSRepository repository;
+
+    @Before
+    public void setUp() {
+        assumeTrue("DBS only", coreFeature.getStorageConfiguration().isDBS());
+        repository = (DBSRepository) repositoryService.getRepository(session.getRepositoryName());
+    }
+
+    protected String createDoc(String name) {
+        DocumentModel doc = session.createDocumentModel("/", name, "File");
+        doc.setPropertyValue("dc:title", "initial");
+        return session.createDocument(doc).getId();
+    }
+
+    protected static StateDiff titleDiff(String title) {
+        StateDiff diff = new StateDiff();
+        diff.put("dc:title", title);
+        return diff;
+    }
+
+    protected ChangeTokenUpdater changeTokenUpdater(Serializable token) {
+        State state = new State();
+        state.put(KEY_CHANGE_TOKEN, token);
+        return new ChangeTokenUpdater(new DBSDocumentState(state));
+    }
+
+    protected String getTitle(String id) {
+        return (String) repository.readState(id).get("dc:title");
+    }
+
+    @Test
+    public void testUpdateStatesReportsEveryConflict() {
+        String ok1 = createDoc("ok1");
+        String ok2 = createDoc("ok2");
+        String stale1 = createDoc("stale1");
+        String stale2 = createDoc("stale2");
+        session.save();
+        Serializable token = repository.readState(ok1).get(KEY_CHANGE_TOKEN);
+        String missing = "nosuchdoc";
+
+        List<StateUpdate> updates = new ArrayList<>();
+        updates.add(new StateUpdate(ok1, titleDiff("updated"), changeTokenUpdater(token)));
+        updates.add(new StateUpdate(stale1, titleDiff("updated"), changeTokenUpdater(123456789L)));
+        updates.add(new StateUpdate(missing, titleDiff("updated"), null));
+        updates.add(new StateUpdate(ok2, titleDiff("updated"), null));
+        updates.add(new StateUpdate(stale2, titleDiff("updated"), changeTokenUpdater(123456789L)));
+        try {
+            repository.updateStates(updates);
+            fail("should throw ConcurrentUpdateException");
+        } catch (ConcurrentUpdateException e) {
+            String message = e.getMessage();
+            assertTrue(message, message.contains(stale1));
+            assertTrue(message, message.contains(stale2));
+            assertTrue(message, message.contains(missing));
+            assertFalse(message, message.contains(ok1));
+            assertFalse(message, message.contains(ok2));
+        }
+
+        // the non-conflicting updates have been applied
+        assertEquals("updated", getTitle(ok1));
+        assertEquals("updated", getTitle(ok2));
+        assertEquals("initial", getTitle(stale1));
+        assertEquals("initial", getTitle(stale2));
+    }
+
+}
@@ -0,0 +1,228 @@
+/*
+ * (C) Copyright 2019 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.mem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ANCESTOR_IDS;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_NAME;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PARENT_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_VERSION_SERIES_ID;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.inject.Inject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.ConcurrentUpdateException;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.model.Repository;
+import org.nuxeo.ecm.core.repository.RepositoryService;
+import org.nuxeo.ecm.core.storage.State;
+import org.nuxeo.ecm.core.storage.State.StateDiff;
+import org.nuxeo.ecm.core.test.CoreFeature;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+/**
+ * Tests the indexes maintained by the {@link MemRepository}.
+ *
+ * @since 11.1
+ */
+@RunWith(FeaturesRunner.class)
+@Features(CoreFeature.class)
+public class TestMemRepositoryIndexes {
+
+    protected static final Set<String> NONE = Collections.emptySet();
+
+    @Inject
+    protected CoreFeature coreFeature;
+
+    @Inject
+    protected CoreSession session;
+
+    @Inject
+    protected RepositoryService repositoryService;
+
+    protected MemRepository repository;
+
+    protected final Set<String> created = new HashSet<>();
+
+    @Before
+    public void setUp() {
+        assumeTrue("Only for the in-memory repository", coreFeature.getStorageConfiguration().isDBSMem());
+        Repository repo = repositoryService.getRepository(session.getRepositoryName());
+        assumeTrue("In-memory repository is wrapped", repo instanceof MemRepository);
+        repository = (MemRepository) repo;
+    }
+
+    @After
+    public void tearDown() {
+        if (repository != null) {
+            repository.deleteStates(created);
+        }
+    }
+
+    protected void create(String id, String parentId, String name, String... ancestorIds) {
+        State state = new State();
+        state.put(KEY_ID, id);
+        state.put(KEY_PARENT_ID, parentId);
+        state.put(KEY_NAME, name);
+        state.put(KEY_ANCESTOR_IDS, ancestorIds);
+        state.put(KEY_VERSION_SERIES_ID, "series-" + parentId);
+        repository.createState(state);
+        created.add(id);
+    }
+
+    protected static StateDiff diff(String key, Object value) {
+        StateDiff diff = new StateDiff();
+        diff.put(key, (Serializable) value);
+        return diff;
+    }
+
+    protected List<String> ids(List<State> states) {
+        return states.stream().map(state -> (String) state.get(KEY_ID)).sorted().collect(Collectors.toList());
+    }
+
+    protected List<String> descendants(String id) {
+        return repository.getDescendants(id, null)
+                         .map(state -> (String) state.get(KEY_ID))
+                         .sorted()
+                         .collect(Collectors.toList());
+    }
+
+    /** Checks that no index references the given ids anymore. */
+    protected void assertNotIndexed(Set<String> ids) {
+        for (Map<Object, Set<String>> index : repository.keyValueIndex.values()) {
+            index.values().forEach(set -> assertTrue(String.valueOf(set), Collections.disjoint(set, ids)));
+        }
+        repository.childIndex.values().forEach(set -> assertTrue(String.valueOf(set), Collections.disjoint(set, ids)));
+        repository.ancestorIndex.values()
+                                .forEach(set -> assertTrue(String.valueOf(set), Collections.disjoint(set, ids)));
+    }
+
+    @Test
+    public void testIndexes() {
+        create("idx-p", "idx-root", "p", "idx-root");
+        create("idx-c1", "idx-p", "c1", "idx-root", "idx-p");
+        create("idx-c2", "idx-p", "c2", "idx-root", "idx-p");
+
+        // parent + name
+        assertEquals("idx-c1", repository.readChildState("idx-p", "c1", NONE).get(KEY_ID));
+        assertNull(repository.readChildState("idx-p", "c1", Collections.singleton("idx-c1")));
+        assertNull(repository.readChildState("idx-p", "nosuch", NONE));
+        // key/value
+        assertEquals(List.of("idx-c1", "idx-c2"), ids(repository.queryKeyValue(KEY_PARENT_ID, "idx-p", NONE)));
+        assertEquals(List.of("idx-c1", "idx-c2"),
+                ids(repository.queryKeyValue(KEY_VERSION_SERIES_ID, "series-idx-p", NONE)));
+        // ancestor
+        assertEquals(List.of("idx-c1", "idx-c2", "idx-p"), descendants("idx-root"));
+        assertEquals(List.of("idx-c1", "idx-c2"), descendants("idx-p"));
+
+        // rename
+        repository.updateState("idx-c1", diff(KEY_NAME, "renamed"), null);
+        assertNull(repository.readChildState("idx-p", "c1", NONE));
+        assertEquals("idx-c1", repository.readChildState("idx-p", "renamed", NONE).get(KEY_ID));
+
+        // move c2 under c1
+        StateDiff move = diff(KEY_PARENT_ID, "idx-c1");
+        move.put(KEY_ANCESTOR_IDS, new Object[] { "idx-root", "idx-p", "idx-c1" });
+        repository.updateState("idx-c2", move, null);
+        assertNull(repository.readChildState("idx-p", "c2", NONE));
+        assertNotNull(repository.readChildState("idx-c1", "c2", NONE));
+        assertEquals(List.of("idx-c1"), ids(repository.queryKeyValue(KEY_PARENT_ID, "idx-p", NONE)));
+        assertEquals(List.of("idx-c2"), ids(repository.queryKeyValue(KEY_PARENT_ID, "idx-c1", NONE)));
+        assertEquals(List.of("idx-c2"), descendants("idx-c1"));
+
+        // delete
+        repository.deleteStates(new HashSet<>(List.of("idx-c1", "idx-c2")));
+        assertNull(repository.readChildState("idx-p", "renamed", NONE));
+        assertTrue(repository.queryKeyValue(KEY_PARENT_ID, "idx-c1", NONE).isEmpty());
+        assertEquals(List.of("idx-p"), descendants("idx-root"));
+        assertNotIndexed(Set.of("idx-c1", "idx-c2"));
+    }
+
+    @Test
+    public void testConcurrentUpdateAndDelete() throws Exception {
+        int n = 500;
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            String id = "conc-" + i;
+            create(id, "conc-parent", "doc" + i, "conc-root", "conc-parent");
+            ids.add(id);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            Future<?> updater = executor.submit(() -> {
+                start.await();
+                for (String id : ids) {
+                    StateDiff move = diff(KEY_PARENT_ID, "conc-other");
+                    move.put(KEY_NAME, "moved-" + id);
+                    move.put(KEY_ANCESTOR_IDS, new Object[] { "conc-root", "conc-other" });
+                    move.put(KEY_VERSION_SERIES_ID, "series-conc-other");
+                    try {
+                        repository.updateState(id, move, null);
+                    } catch (ConcurrentUpdateException e) {
+                        // already deleted
+                    }
+                }
+                return null;
+            });
+            Future<?> deleter = executor.submit(() -> {
+                start.await();
+                for (String id : ids) {
+                    repository.deleteStates(Collections.singleton(id));
+                }
+                return null;
+            });
+            start.countDown();
+            updater.get(1, TimeUnit.MINUTES);
+            deleter.get(1, TimeUnit.MINUTES);
+        } finally {
+            executor.shutdownNow();
+        }
+        for (String id : ids) {
+            assertNull(repository.readState(id));
+        }
+        assertFalse(repository.getDescendants("conc-root", null).findAny().isPresent());
+        assertNotIndexed(new HashSet<>(ids));
+    }
+
+}
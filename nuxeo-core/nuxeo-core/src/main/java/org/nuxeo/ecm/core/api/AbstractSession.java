@@ -51,9 +51,11 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -747,6 +749,8 @@ public abstract class AbstractSession implements CoreSession, Serializable {
         docModels.forEach(this::importDocument);
     }
 
+    protected static final String SELECT_BROWSABLE_IDS_IN = "SELECT ecm:uuid FROM Document, Relation WHERE ecm:uuid IN ";
+
     protected static final PathRef EMPTY_PATH = new PathRef("");
 
     protected void importDocument(DocumentModel docModel) {
@@ -936,6 +940,53 @@ public abstract class AbstractSession implements CoreSession, Serializable {
         return new DocumentModelListImpl(docs);
     }
 
+    @Override
+    public DocumentModelList getDocumentsByIds(List<String> ids, String[] schemas) {
+        List<Document> docs = getSession().getDocumentsByUUID(ids);
+        if (!isAdministrator() && !docs.isEmpty()) {
+            docs = filterBrowsable(docs);
+        }
+        DocumentModelList docModels = new DocumentModelListImpl(docs.size());
+        for (Document doc : docs) {
+            docModels.add(DocumentModelFactory.createDocumentModel(doc, getSessionId(), schemas));
+        }
+        return docModels;
+    }
+
+    /**
+     * Keeps the documents that can be browsed, like a query would.
+     * <p>
+     * The whole batch is checked at once against the read ACLs: in memory if the session can do it, otherwise with a
+     * single secured query on the ids. Only when security policies cannot be expressed in queries is the permission of
+     * each document checked.
+     *
+     * @since 11.1
+     */
+    protected List<Document> filterBrowsable(List<Document> docs) {
+        SecurityService securityService = getSecurityService();
+        if (!securityService.arePoliciesExpressibleInQuery(getRepositoryName())) {
+            return docs.stream().filter(doc -> hasPermission(doc, BROWSE)).collect(Collectors.toList());
+        }
+        Collection<Transformer> transformers = getPoliciesQueryTransformers(NXQL.NXQL);
+        if (transformers.isEmpty()) {
+            Set<String> principals = new HashSet<>(Arrays.asList(getPrincipalsToCheck()));
+            List<Document> filtered = getSession().filterByReadAcls(docs, principals);
+            if (filtered != null) {
+                return filtered;
+            }
+        }
+        String query = docs.stream()
+                           .map(doc -> NXQL.escapeString(doc.getUUID()))
+                           .collect(Collectors.joining(", ", SELECT_BROWSABLE_IDS_IN + "(", ")"));
+        Set<String> browsable = new HashSet<>();
+        try (IterableQueryResult result = queryAndFetch(query, NXQL.NXQL, true)) {
+            for (Map<String, Serializable> map : result) {
+                browsable.add((String) map.get(NXQL.ECM_UUID));
+            }
+        }
+        return docs.stream().filter(doc -> browsable.contains(doc.getUUID())).collect(Collectors.toList());
+    }
+
     @Override
     public DocumentModelList getFiles(DocumentRef parent) {
         Document doc = resolveReference(parent);
@@ -1298,6 +1349,34 @@ public abstract class AbstractSession implements CoreSession, Serializable {
         return getSession().scroll(scrollId);
     }
 
+    @Override
+    public ScrollResult<DocumentModel> scrollDocuments(String query, int batchSize, int keepAliveSeconds) {
+        QueryFilter queryFilter = null;
+        if (!isAdministrator()) {
+            SecurityService securityService = getSecurityService();
+            NuxeoPrincipal principal = getPrincipal();
+            String[] principals = getPrincipalsToCheck();
+            String[] permissions = securityService.getPermissionsToCheck(BROWSE);
+            Collection<Transformer> transformers = getPoliciesQueryTransformers(NXQL.NXQL);
+            queryFilter = new QueryFilter(principal, principals, permissions, null, transformers, 0, 0);
+        }
+        return readModels(getSession().scrollDocuments(query, queryFilter, batchSize, keepAliveSeconds));
+    }
+
+    @Override
+    public ScrollResult<DocumentModel> scrollDocuments(String scrollId) {
+        return readModels(getSession().scrollDocuments(scrollId));
+    }
+
+    protected ScrollResult<DocumentModel> readModels(ScrollResult<Document> scrollResult) {
+        List<Document> docs = scrollResult.getResults();
+        List<DocumentModel> docModels = new ArrayList<>(docs.size());
+        for (Document doc : docs) {
+            docModels.add(readModel(doc));
+        }
+        return new ScrollResultImpl<>(scrollResult.getScrollId(), docModels);
+    }
+
     @Override
     public void removeChildren(DocumentRef docRef) {
         // TODO: check req permissions with td
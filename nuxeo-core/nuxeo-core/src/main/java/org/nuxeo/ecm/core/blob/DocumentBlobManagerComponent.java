@@ -20,10 +20,17 @@ package org.nuxeo.ecm.core.blob;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -42,6 +49,7 @@ import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.model.ComponentContext;
 import org.nuxeo.runtime.model.ComponentInstance;
 import org.nuxeo.runtime.model.DefaultComponent;
+import org.nuxeo.runtime.services.config.ConfigurationService;
 
 /**
  * Implementation of the service managing {@link Blob}s associated to a {@link Document} or a repository.
@@ -54,6 +62,15 @@ public class DocumentBlobManagerComponent extends DefaultComponent implements Do
 
     protected static final String XP = "configuration";
 
+    /**
+     * Maximum number of repositories marked in parallel during binaries garbage collection.
+     *
+     * @since 11.1
+     */
+    public static final String GC_MARK_THREADS_PROPERTY = "nuxeo.binarymanager.gc.mark.threads";
+
+    public static final int DEFAULT_GC_MARK_THREADS = 4;
+
     protected static BlobDispatcher DEFAULT_BLOB_DISPATCHER = new DefaultBlobDispatcher();
 
     protected Deque<BlobDispatcherDescriptor> blobDispatcherDescriptorsRegistry = new LinkedList<>();
@@ -247,10 +264,7 @@ public class DocumentBlobManagerComponent extends DefaultComponent implements Do
         // in all repositories, mark referenced binaries
         // the marking itself will call back into the appropriate gc's mark method
         RepositoryService repositoryService = Framework.getService(RepositoryService.class);
-        for (String repositoryName : repositoryService.getRepositoryNames()) {
-            Repository repository = repositoryService.getRepository(repositoryName);
-            repository.markReferencedBinaries();
-        }
+        markReferencedBinaries(repositoryService, repositoryService.getRepositoryNames());
         // stop gc
         BinaryManagerStatus globalStatus = new BinaryManagerStatus();
         for (BinaryGarbageCollector gc : gcs) {
@@ -265,6 +279,56 @@ public class DocumentBlobManagerComponent extends DefaultComponent implements Do
         return globalStatus;
     }
 
+    /**
+     * Marks the binaries referenced by the given repositories, in parallel.
+     *
+     * @since 11.1
+     */
+    protected void markReferencedBinaries(RepositoryService repositoryService, List<String> repositoryNames) {
+        if (repositoryNames.isEmpty()) {
+            return;
+        }
+        int threads = Framework.getService(ConfigurationService.class)
+                               .getInteger(GC_MARK_THREADS_PROPERTY, DEFAULT_GC_MARK_THREADS);
+        threads = Math.max(1, Math.min(threads, repositoryNames.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new GCThreadFactory());
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (String repositoryName : repositoryNames) {
+                futures.add(executor.submit(() -> {
+                    Repository repository = repositoryService.getRepository(repositoryName);
+                    repository.markReferencedBinaries();
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NuxeoException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new NuxeoException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    protected static class GCThreadFactory implements ThreadFactory {
+
+        protected final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Nuxeo-BinaryGC-Mark-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
     @Override
     public void markReferencedBinary(String key, String repositoryName) {
         BlobProvider blobProvider = getBlobProvider(key, repositoryName);
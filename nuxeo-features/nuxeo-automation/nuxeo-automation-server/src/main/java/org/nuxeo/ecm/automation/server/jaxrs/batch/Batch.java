@@ -221,6 +221,31 @@ public class Batch {
         return fileEntryKey;
     }
 
+    /**
+     * Adds a chunk with the given {@code chunkIndex} to the batch file with the given {@code index}, writing it
+     * directly at the given offset of the file.
+     * <p>
+     * The chunks of such a file can be added concurrently and in any order, but only on the node that created it.
+     *
+     * @return The key of the {@link BatchFileEntry}.
+     * @since 11.1
+     */
+    public String addChunk(String index, InputStream is, long chunkOffset, int chunkCount, int chunkIndex,
+            String fileName, String mimeType, long fileSize) throws IOException {
+        String fileEntryKey = key + "_" + index;
+        BatchFileEntry fileEntry = getFileEntry(index);
+        if (fileEntry == null) {
+            fileEntry = new BatchFileEntry(transientStore, fileEntryKey, chunkCount, fileName, mimeType, fileSize,
+                    true);
+            transientStore.putParameters(fileEntryKey, fileEntry.getParams());
+            transientStore.putParameter(key, index, fileEntryKey);
+            // another node may have concurrently created the entry, its owner is the one stored
+            fileEntry = new BatchFileEntry(transientStore, fileEntryKey, transientStore.getParameters(fileEntryKey));
+        }
+        fileEntry.addChunk(chunkIndex, is, chunkOffset);
+        return fileEntryKey;
+    }
+
     /**
      * @since 7.4
      */
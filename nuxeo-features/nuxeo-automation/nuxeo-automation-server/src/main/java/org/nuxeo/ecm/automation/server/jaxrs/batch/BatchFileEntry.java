@@ -24,13 +24,27 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -40,13 +54,23 @@ import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.core.api.Blob;
 import org.nuxeo.ecm.core.api.Blobs;
 import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.common.Environment;
 import org.nuxeo.ecm.core.transientstore.api.TransientStore;
 import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.cluster.ClusterService;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 /**
  * Represents a batch file backed by the {@link TransientStore}.
  * <p>
  * The file can be chunked or not. If it is chunked it references its chunks as {@link TransientStore} entry keys.
+ * <p>
+ * Since 11.1 a chunked file can also be direct: its chunks are not stored in the {@link TransientStore} but written at
+ * their offset in a file pre-allocated to the final size, so that they can be uploaded concurrently and in any order
+ * without having to be concatenated afterwards. The file is local to the node that created the entry, which is recorded
+ * in the entry: chunks uploaded to, and blob requests made on, another node are rejected.
  *
  * @since 7.4
  * @see Batch
@@ -55,6 +79,53 @@ public class BatchFileEntry {
 
     protected static final Log log = LogFactory.getLog(BatchFileEntry.class);
 
+    /** @since 11.1 */
+    public static final String DIRECT_PARAM_NAME = "direct";
+
+    /** @since 11.1 */
+    public static final String NODE_ID_PARAM_NAME = "nodeId";
+
+    protected static final String TMP_CHUNKED_FILE_PATH_PARAM_NAME = "tmpChunkedFilePath";
+
+    protected static final String DIGEST_ALGORITHM = "MD5";
+
+    protected static final int DIGEST_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The digests of the contiguous chunks already written at the beginning of direct files, by file entry key.
+     * <p>
+     * This is a local optimization: if the digest is not available the file is digested when the blob is requested.
+     *
+     * @since 11.1
+     */
+    protected static final Cache<String, PrefixDigest> PREFIX_DIGESTS = CacheBuilder.newBuilder()
+                                                                                  .expireAfterAccess(1, TimeUnit.HOURS)
+                                                                                  .build();
+
+    /**
+     * The digest of the beginning of a file.
+     *
+     * @since 11.1
+     */
+    protected static class PrefixDigest {
+
+        protected final MessageDigest messageDigest;
+
+        /** The number of bytes digested. */
+        protected long length;
+
+        /** The final digest, once the whole file has been digested. */
+        protected String digest;
+
+        protected PrefixDigest() {
+            try {
+                messageDigest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            } catch (NoSuchAlgorithmException e) {
+                throw new NuxeoException(e);
+            }
+        }
+    }
+
     protected TransientStore transientStore;
 
     protected String key;
@@ -98,6 +169,25 @@ public class BatchFileEntry {
         this.params = params;
     }
 
+    /**
+     * Returns a direct file entry, whose chunks are written at their offset in a file pre-allocated to the given file
+     * size.
+     *
+     * @since 11.1
+     */
+    public BatchFileEntry(TransientStore transientStore, String key, int chunkCount, String fileName, String mimeType,
+            long fileSize, boolean direct) {
+        this(transientStore, key, chunkCount, fileName, mimeType, fileSize);
+        if (direct) {
+            if (fileSize < 0) {
+                throw new NuxeoException(String.format("Cannot create direct file entry %s without file size", key));
+            }
+            params.put(DIRECT_PARAM_NAME, String.valueOf(true));
+            params.put(TMP_CHUNKED_FILE_PATH_PARAM_NAME, getDirectFilePath(key).toString());
+            params.put(NODE_ID_PARAM_NAME, getCurrentNodeId());
+        }
+    }
+
     protected BatchFileEntry(TransientStore transientStore, String key, boolean chunked) {
         this(transientStore, key, new HashMap<>());
         params.put(Batch.CHUNKED_PARAM_NAME, String.valueOf(chunked));
@@ -115,6 +205,51 @@ public class BatchFileEntry {
         return Boolean.parseBoolean((String) params.get(Batch.CHUNKED_PARAM_NAME));
     }
 
+    /**
+     * Returns {@code true} if the chunks of this file entry are written directly in the final file.
+     *
+     * @since 11.1
+     */
+    public boolean isDirect() {
+        return Boolean.parseBoolean((String) params.get(DIRECT_PARAM_NAME));
+    }
+
+    /**
+     * Gets the path of the file of a direct file entry. It only depends on the file entry key, so that concurrent
+     * uploads of the first chunks agree on it.
+     */
+    protected static Path getDirectFilePath(String key) {
+        Environment env = Environment.getDefault();
+        File tmpDir = env != null ? env.getTemp()
+                : new File(System.getProperty("nuxeo.tmp.dir", System.getProperty("java.io.tmpdir")));
+        return Paths.get(tmpDir.getPath(), "nxbatch-" + key.replaceAll("[^-_a-zA-Z0-9]", "_") + ".tmp");
+    }
+
+    /**
+     * Gets the id of the node owning the file of a direct file entry.
+     *
+     * @since 11.1
+     */
+    public String getNodeId() {
+        return (String) params.get(NODE_ID_PARAM_NAME);
+    }
+
+    protected static String getCurrentNodeId() {
+        return Framework.getService(ClusterService.class).getNodeId();
+    }
+
+    /**
+     * Checks that the file of a direct file entry is local to the current node, as it's only written and read there.
+     */
+    protected void checkDirectNode(String action) {
+        String nodeId = getNodeId();
+        String currentNodeId = getCurrentNodeId();
+        if (!currentNodeId.equals(nodeId)) {
+            throw new NuxeoException(String.format("Cannot %s file entry %s on node %s as its file is on node %s",
+                    action, key, currentNodeId, nodeId), HttpServletResponse.SC_CONFLICT);
+        }
+    }
+
     public String getFileName() {
         if (isChunked()) {
             return (String) params.get("fileName");
@@ -190,6 +325,10 @@ public class BatchFileEntry {
             throw new NuxeoException(
                     String.format("Cannot get chunk entry keys of file entry %s as it is not chunked", key));
         }
+        if (isDirect()) {
+            // chunks are not stored in the transient store
+            return Collections.emptyList();
+        }
         return getChunks().values();
     }
 
@@ -197,12 +336,31 @@ public class BatchFileEntry {
         return getChunks().size() == getChunkCount();
     }
 
+    /**
+     * Gets the indexes of the chunks not yet uploaded, so that an interrupted upload can be resumed.
+     *
+     * @since 11.1
+     */
+    public List<Integer> getMissingChunkIndexes() {
+        Map<Integer, String> chunks = getChunks();
+        List<Integer> missingChunkIndexes = new ArrayList<>();
+        for (int index = 0; index < getChunkCount(); index++) {
+            if (!chunks.containsKey(index)) {
+                missingChunkIndexes.add(index);
+            }
+        }
+        return missingChunkIndexes;
+    }
+
     public Blob getBlob() {
         if (isChunked()) {
             // First check if blob chunks have already been read and concatenated
             if (chunkedBlob != null) {
                 return chunkedBlob;
             }
+            if (isDirect()) {
+                return getDirectBlob();
+            }
             File tmpChunkedFile = null;
             try {
                 Map<Integer, String> chunks = getChunks();
@@ -226,7 +384,7 @@ public class BatchFileEntry {
                     }
                 }
                 // Store tmpChunkedFile as a parameter for later deletion
-                transientStore.putParameter(key, "tmpChunkedFilePath", tmpChunkedFile.getAbsolutePath());
+                transientStore.putParameter(key, TMP_CHUNKED_FILE_PATH_PARAM_NAME, tmpChunkedFile.getAbsolutePath());
                 chunkedBlob.setMimeType(getMimeType());
                 chunkedBlob.setFilename(getFileName());
                 return chunkedBlob;
@@ -242,6 +400,103 @@ public class BatchFileEntry {
         }
     }
 
+    protected Blob getDirectBlob() {
+        checkDirectNode("get blob of");
+        int uploadedChunkCount = getChunks().size();
+        int chunkCount = getChunkCount();
+        if (uploadedChunkCount != chunkCount) {
+            log.warn(String.format(
+                    "Cannot get blob for file entry %s as there are only %d uploaded chunks out of %d.", key,
+                    uploadedChunkCount, chunkCount));
+            return null;
+        }
+        String nodeId = getNodeId();
+        for (Map.Entry<Integer, String> es : getChunks().entrySet()) {
+            String[] parts = es.getValue().split(":");
+            if (parts.length > 2 && !parts[2].equals(nodeId)) {
+                throw new NuxeoException(
+                        String.format("Cannot get blob for file entry %s as its chunk %d was written on node %s", key,
+                                es.getKey(), parts[2]),
+                        HttpServletResponse.SC_CONFLICT);
+            }
+        }
+        File file = new File((String) params.get(TMP_CHUNKED_FILE_PATH_PARAM_NAME));
+        try {
+            chunkedBlob = Blobs.createBlob(file, getMimeType(), null, getFileName());
+            chunkedBlob.setDigest(getDirectDigest(file));
+        } catch (IOException e) {
+            chunkedBlob = null;
+            throw new NuxeoException(e);
+        }
+        return chunkedBlob;
+    }
+
+    /**
+     * Gets the digest of a complete direct file, digesting the part that hasn't been digested while the chunks were
+     * written.
+     */
+    protected String getDirectDigest(File file) throws IOException {
+        PrefixDigest prefixDigest = advancePrefixDigest(file.toPath());
+        if (prefixDigest.digest == null) {
+            // chunks don't cover the whole file
+            throw new NuxeoException(String.format("Chunks of file entry %s don't cover its file size", key));
+        }
+        PREFIX_DIGESTS.invalidate(key);
+        return prefixDigest.digest;
+    }
+
+    /**
+     * Digests the chunks that are contiguous with the already digested beginning of a direct file.
+     */
+    protected PrefixDigest advancePrefixDigest(Path path) throws IOException {
+        PrefixDigest prefixDigest;
+        try {
+            prefixDigest = PREFIX_DIGESTS.get(key, PrefixDigest::new);
+        } catch (ExecutionException e) {
+            throw new NuxeoException(e);
+        }
+        // chunk lengths by offset
+        Map<Long, Long> chunkLengths = new TreeMap<>();
+        for (String chunk : getChunks().values()) {
+            String[] parts = chunk.split(":");
+            chunkLengths.put(Long.valueOf(parts[0]), Long.valueOf(parts[1]));
+        }
+        long fileSize = getFileSize();
+        synchronized (prefixDigest) {
+            Long length;
+            while (prefixDigest.digest == null && (length = chunkLengths.get(prefixDigest.length)) != null) {
+                digest(path, prefixDigest.length, length.longValue(), prefixDigest.messageDigest);
+                prefixDigest.length += length.longValue();
+                if (prefixDigest.length == fileSize) {
+                    prefixDigest.digest = Hex.encodeHexString(prefixDigest.messageDigest.digest());
+                }
+            }
+        }
+        return prefixDigest;
+    }
+
+    protected static void digest(Path path, long position, long length, MessageDigest messageDigest)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(DIGEST_BUFFER_SIZE);
+            long remaining = length;
+            while (remaining > 0) {
+                buffer.clear();
+                if (remaining < buffer.capacity()) {
+                    buffer.limit((int) remaining);
+                }
+                int n = channel.read(buffer, position);
+                if (n < 0) {
+                    throw new IOException("Unexpected end of file: " + path);
+                }
+                buffer.flip();
+                messageDigest.update(buffer);
+                position += n;
+                remaining -= n;
+            }
+        }
+    }
+
     protected Blob getChunk(TransientStore ts, String key) {
         List<Blob> blobs = ts.getBlobs(key);
         if (CollectionUtils.isEmpty(blobs)) {
@@ -265,6 +520,59 @@ public class BatchFileEntry {
         if (!isChunked()) {
             throw new NuxeoException("Cannot add a chunk to a non chunked file entry.");
         }
+        if (isDirect()) {
+            throw new NuxeoException("Cannot add a chunk without offset to a direct file entry.");
+        }
+        checkChunkIndex(index);
+
+        String chunkEntryKey = key + "_" + index;
+        transientStore.putBlobs(chunkEntryKey, Collections.singletonList(blob));
+        transientStore.putParameter(key, String.valueOf(index), chunkEntryKey);
+
+        return chunkEntryKey;
+    }
+
+    /**
+     * Writes a chunk of a direct file entry at the given offset of its file.
+     *
+     * @param index the chunk index
+     * @param in the chunk content, closed by the caller
+     * @param offset the chunk offset in the file
+     * @return the number of bytes written
+     * @since 11.1
+     */
+    public long addChunk(int index, InputStream in, long offset) throws IOException {
+        if (!isDirect()) {
+            throw new NuxeoException("Cannot write a chunk at an offset in a non direct file entry.");
+        }
+        checkDirectNode("add chunk " + index + " to");
+        checkChunkIndex(index);
+        long fileSize = getFileSize();
+        if (offset < 0 || offset > fileSize) {
+            throw new NuxeoException(String.format(
+                    "Cannot add chunk with offset %d to file entry %s as file size is %d.", offset, key, fileSize));
+        }
+        Path path = Paths.get((String) params.get(TMP_CHUNKED_FILE_PATH_PARAM_NAME));
+        long length;
+        // concurrent chunks write to distinct regions of the file, writing beyond its end leaves a sparse hole
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            length = channel.transferFrom(Channels.newChannel(in), offset, fileSize - offset);
+            if (in.read() != -1) {
+                throw new NuxeoException(String.format(
+                        "Cannot add chunk with index %d to file entry %s as it goes beyond file size %d.", index,
+                        key, fileSize));
+            }
+        }
+        // the node is recorded with the chunk in case another node concurrently created the entry
+        String chunk = offset + ":" + length + ":" + getCurrentNodeId();
+        transientStore.putParameter(key, String.valueOf(index), chunk);
+        params.put(String.valueOf(index), chunk);
+        // digest what can be digested now, while the chunk is likely still in the OS cache
+        advancePrefixDigest(path);
+        return length;
+    }
+
+    protected void checkChunkIndex(int index) {
         int chunkCount = getChunkCount();
         if (index < 0) {
             throw new NuxeoException(String.format("Cannot add chunk with negative index %d.", index));
@@ -277,16 +585,11 @@ public class BatchFileEntry {
             throw new NuxeoException(
                     String.format("Cannot add chunk with index %d to file entry %s as it already exists.", index, key));
         }
-
-        String chunkEntryKey = key + "_" + index;
-        transientStore.putBlobs(chunkEntryKey, Collections.singletonList(blob));
-        transientStore.putParameter(key, String.valueOf(index), chunkEntryKey);
-
-        return chunkEntryKey;
     }
 
     public void beforeRemove() {
-        String tmpChunkedFilePath = (String) transientStore.getParameter(key, "tmpChunkedFilePath");
+        PREFIX_DIGESTS.invalidate(key);
+        String tmpChunkedFilePath = (String) transientStore.getParameter(key, TMP_CHUNKED_FILE_PATH_PARAM_NAME);
         if (tmpChunkedFilePath != null) {
             File tmpChunkedFile = new File(tmpChunkedFilePath);
             if (tmpChunkedFile.exists()) {
@@ -83,6 +83,17 @@ public interface BatchManager {
     void addBlob(String batchId, String index, Blob blob, int chunkCount, int chunkIndex, String name, String mime,
             long fileSize) throws IOException;
 
+    /**
+     * Adds an inputStream as a chunk to a batch, writing it directly at the given offset of the file. Will create a new
+     * {@link Batch} if needed.
+     * <p>
+     * The chunks of such a file can be added concurrently and in any order, but all on the same node.
+     *
+     * @since 11.1
+     */
+    void addStream(String batchId, String index, InputStream is, long chunkOffset, int chunkCount, int chunkIndex,
+            String name, String mime, long fileSize) throws IOException;
+
     /**
      * Returns true if there is a batch for the given {@code batchId}, false otherwise.
      *
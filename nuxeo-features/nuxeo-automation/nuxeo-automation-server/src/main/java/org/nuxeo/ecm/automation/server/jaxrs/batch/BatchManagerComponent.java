@@ -203,6 +203,23 @@ public class BatchManagerComponent extends DefaultComponent implements BatchMana
         }
     }
 
+    @Override
+    public void addStream(String batchId, String index, InputStream is, long chunkOffset, int chunkCount,
+            int chunkIndex, String name, String mime, long fileSize) throws IOException {
+        uploadInProgress.incrementAndGet();
+        try {
+            Batch batch = getBatch(batchId);
+            if (batch == null) {
+                batch = initBatchInternal(batchId);
+            }
+            batch.addChunk(index, is, chunkOffset, chunkCount, chunkIndex, name, mime, fileSize);
+            log.debug("Added chunk {} at offset {} to file {} [{}] in batch {}", chunkIndex, chunkOffset, index, name,
+                    batch.getKey());
+        } finally {
+            uploadInProgress.decrementAndGet();
+        }
+    }
+
     @Override
     public boolean hasBatch(String batchId) {
         return handlers.values().stream().anyMatch(batchHandler -> batchHandler.getBatch(batchId) != null);
@@ -26,6 +26,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
@@ -37,6 +38,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.collections.ListUtils;
 import org.junit.Assert;
 import org.junit.Test;
@@ -50,6 +52,8 @@ import org.nuxeo.ecm.core.transientstore.api.TransientStore;
 import org.nuxeo.ecm.core.transientstore.api.TransientStoreProvider;
 import org.nuxeo.ecm.platform.test.NuxeoLoginFeature;
 import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.cluster.ClusterService;
+import org.nuxeo.runtime.cluster.ClusterServiceImpl;
 import org.nuxeo.runtime.test.runner.Deploy;
 import org.nuxeo.runtime.test.runner.Features;
 import org.nuxeo.runtime.test.runner.FeaturesRunner;
@@ -255,6 +259,99 @@ public class BatchManagerFixture {
         assertEquals(0, tsm.getStorageSize());
     }
 
+    @Test
+    public void testAddDirectChunkStream() throws IOException {
+        // Add 3 chunk streams at their offset, in disorder
+        BatchManager bm = Framework.getService(BatchManager.class);
+        String batchId = bm.initBatch();
+
+        byte[] chunk1 = "Contenu accentu".getBytes("UTF-8");
+        byte[] chunk2 = "\u00e9 compos\u00e9 de ".getBytes("UTF-8");
+        byte[] chunk3 = "3 chunks".getBytes("UTF-8");
+        String fileContent = "Contenu accentu\u00e9 compos\u00e9 de 3 chunks";
+        long fileSize = chunk1.length + chunk2.length + chunk3.length;
+        bm.addStream(batchId, "0", new ByteArrayInputStream(chunk3), chunk1.length + chunk2.length, 3, 2,
+                "Mon doc.txt", "text/plain", fileSize);
+        bm.addStream(batchId, "0", new ByteArrayInputStream(chunk1), 0, 3, 0, "Mon doc.txt", "text/plain",
+                fileSize);
+
+        // Check missing chunks
+        BatchFileEntry fileEntry = bm.getFileEntry(batchId, "0");
+        assertTrue(fileEntry.isChunked());
+        assertTrue(fileEntry.isDirect());
+        assertFalse(fileEntry.isChunksCompleted());
+        assertEquals(Arrays.asList(0, 2), fileEntry.getOrderedChunkIndexes());
+        assertEquals(Arrays.asList(1), fileEntry.getMissingChunkIndexes());
+
+        bm.addStream(batchId, "0", new ByteArrayInputStream(chunk2), chunk1.length, 3, 1, "Mon doc.txt",
+                "text/plain", fileSize);
+
+        // Check batch blob
+        Blob blob = bm.getBlob(batchId, "0");
+        assertEquals("Mon doc.txt", blob.getFilename());
+        assertEquals("text/plain", blob.getMimeType());
+        assertEquals(fileContent, blob.getString());
+        assertEquals(DigestUtils.md5Hex(fileContent.getBytes("UTF-8")), blob.getDigest());
+
+        // Chunks are not stored in the transient store
+        fileEntry = bm.getFileEntry(batchId, "0");
+        assertTrue(fileEntry.isChunksCompleted());
+        assertTrue(fileEntry.getMissingChunkIndexes().isEmpty());
+        assertTrue(fileEntry.getChunkEntryKeys().isEmpty());
+
+        // Clean batch
+        File file = blob.getFile();
+        assertTrue(file.exists());
+        bm.clean(batchId);
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void testAddDirectChunkStreamOnOtherNode() throws IOException {
+        BatchManager bm = Framework.getService(BatchManager.class);
+        ClusterServiceImpl clusterService = (ClusterServiceImpl) Framework.getService(ClusterService.class);
+        String nodeId = clusterService.getNodeId();
+        String batchId = bm.initBatch();
+
+        byte[] chunk1 = "Hello ".getBytes("UTF-8");
+        byte[] chunk2 = "World".getBytes("UTF-8");
+        long fileSize = chunk1.length + chunk2.length;
+        bm.addStream(batchId, "0", new ByteArrayInputStream(chunk1), 0, 2, 0, "Hello.txt", "text/plain", fileSize);
+        assertEquals(nodeId, bm.getFileEntry(batchId, "0").getNodeId());
+
+        try {
+            clusterService.setNodeId(nodeId + "-other");
+            // chunks are rejected on another node
+            try {
+                bm.addStream(batchId, "0", new ByteArrayInputStream(chunk2), chunk1.length, 2, 1, "Hello.txt",
+                        "text/plain", fileSize);
+                fail("Adding a chunk on another node should fail");
+            } catch (NuxeoException e) {
+                assertEquals(409, e.getStatusCode());
+            }
+            assertEquals(Arrays.asList(1), bm.getFileEntry(batchId, "0").getMissingChunkIndexes());
+        } finally {
+            clusterService.setNodeId(nodeId);
+        }
+
+        bm.addStream(batchId, "0", new ByteArrayInputStream(chunk2), chunk1.length, 2, 1, "Hello.txt", "text/plain",
+                fileSize);
+        try {
+            clusterService.setNodeId(nodeId + "-other");
+            // so is the blob
+            try {
+                bm.getBlob(batchId, "0");
+                fail("Getting the blob on another node should fail");
+            } catch (NuxeoException e) {
+                assertEquals(409, e.getStatusCode());
+            }
+        } finally {
+            clusterService.setNodeId(nodeId);
+        }
+        assertEquals("Hello World", bm.getBlob(batchId, "0").getString());
+        bm.clean(batchId);
+    }
+
     @Test
     public void testBatchCleanup() throws IOException {
         BatchManager bm = Framework.getService(BatchManager.class);
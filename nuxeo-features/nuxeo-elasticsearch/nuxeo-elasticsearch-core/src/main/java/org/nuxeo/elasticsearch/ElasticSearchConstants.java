@@ -121,6 +121,28 @@ public final class ElasticSearchConstants {
 
     public static final String INDEX_BULK_MAX_SIZE_PROPERTY = "elasticsearch.index.bulkMaxSize";
 
+    /**
+     * The number of bulk requests that can be in flight while the next one is being built, {@code 0} for synchronous
+     * bulk requests.
+     *
+     * @since 11.1
+     */
+    public static final String INDEX_BULK_CONCURRENT_REQUESTS_PROPERTY = "elasticsearch.index.bulkConcurrentRequests";
+
+    /**
+     * The number of retries of the bulk items rejected by Elasticsearch, with an exponential backoff.
+     *
+     * @since 11.1
+     */
+    public static final String INDEX_BULK_MAX_RETRIES_PROPERTY = "elasticsearch.index.bulkMaxRetries";
+
+    /**
+     * The number of documents loaded from the repository with a single query when indexing in bulk.
+     *
+     * @since 11.1
+     */
+    public static final String INDEX_FETCH_BATCH_SIZE_PROPERTY = "elasticsearch.index.fetchBatchSize";
+
     public static final String DISABLE_AUTO_INDEXING = "disableAutoIndexing";
 
     public static final String ES_SYNC_INDEXING_FLAG = "ESSyncIndexing";
@@ -147,11 +147,12 @@ public class IndexingCommand implements Serializable {
     }
 
     /**
-     * Return the document or null if it does not exists anymore.
+     * Return the session the command is attached to.
      *
      * @throws java.lang.IllegalStateException if there is no session attached
+     * @since 11.1
      */
-    public DocumentModel getTargetDocument() {
+    public CoreSession getAttachedSession() {
         CoreSession session = null;
         if (sessionId != null) {
             session = Framework.getService(CoreSessionService.class).getCoreSession(sessionId);
@@ -159,6 +160,16 @@ public class IndexingCommand implements Serializable {
         if (session == null) {
             throw new IllegalStateException("Command is not attached to a valid session: " + this);
         }
+        return session;
+    }
+
+    /**
+     * Return the document or null if it does not exists anymore.
+     *
+     * @throws java.lang.IllegalStateException if there is no session attached
+     */
+    public DocumentModel getTargetDocument() {
+        CoreSession session = getAttachedSession();
         IdRef idref = new IdRef(targetDocumentId);
         if (!session.exists(idref)) {
             // Doc was deleted : no way we can fetch it
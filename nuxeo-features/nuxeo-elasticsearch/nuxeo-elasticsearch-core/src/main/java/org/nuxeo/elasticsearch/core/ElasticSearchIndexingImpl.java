@@ -22,17 +22,27 @@ package org.nuxeo.elasticsearch.core;
 
 import static org.nuxeo.elasticsearch.ElasticSearchConstants.CHILDREN_FIELD;
 import static org.nuxeo.elasticsearch.ElasticSearchConstants.DOC_TYPE;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.INDEX_BULK_CONCURRENT_REQUESTS_PROPERTY;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.INDEX_BULK_MAX_RETRIES_PROPERTY;
 import static org.nuxeo.elasticsearch.ElasticSearchConstants.INDEX_BULK_MAX_SIZE_PROPERTY;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.INDEX_FETCH_BATCH_SIZE_PROPERTY;
 import static org.nuxeo.elasticsearch.ElasticSearchConstants.PATH_FIELD;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.elasticsearch.action.bulk.BackoffPolicy;
 import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
@@ -44,6 +54,8 @@ import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchScrollRequest;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.index.VersionType;
@@ -55,6 +67,7 @@ import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
 import org.nuxeo.common.logging.SequenceTracer;
 import org.nuxeo.ecm.core.api.ConcurrentUpdateException;
+import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.DocumentNotFoundException;
 import org.nuxeo.ecm.core.api.NuxeoException;
@@ -85,6 +98,16 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
     // send the bulk indexing command when this size is reached, optimal is 5-10m
     private static final int DEFAULT_MAX_BULK_SIZE = 5 * 1024 * 1024;
 
+    // number of bulk requests sent asynchronously while the next one is built
+    private static final int DEFAULT_BULK_CONCURRENT_REQUESTS = 2;
+
+    // retries of the items rejected by elasticsearch because its queues are full
+    private static final int DEFAULT_BULK_MAX_RETRIES = 8;
+
+    private static final int DEFAULT_FETCH_BATCH_SIZE = 100;
+
+    private static final long BULK_CLOSE_TIMEOUT_MINUTES = 10;
+
     private final ElasticSearchAdminImpl esa;
 
     private final Timer deleteTimer;
@@ -93,6 +116,12 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
 
     private final Timer bulkIndexTimer;
 
+    private final Timer bulkFetchTimer;
+
+    private final Timer bulkRenderTimer;
+
+    private final Timer bulkSendTimer;
+
     private final boolean useExternalVersion;
 
     private JsonESDocumentWriter jsonESDocumentWriter;
@@ -105,6 +134,11 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
         indexTimer = registry.timer(MetricRegistry.name("nuxeo", "elasticsearch", "service", "index"));
         deleteTimer = registry.timer(MetricRegistry.name("nuxeo", "elasticsearch", "service", "delete"));
         bulkIndexTimer = registry.timer(MetricRegistry.name("nuxeo", "elasticsearch", "service", "bulkIndex"));
+        bulkFetchTimer = registry.timer(
+                MetricRegistry.name("nuxeo", "elasticsearch", "service", "bulkIndex", "fetch"));
+        bulkRenderTimer = registry.timer(
+                MetricRegistry.name("nuxeo", "elasticsearch", "service", "bulkIndex", "render"));
+        bulkSendTimer = registry.timer(MetricRegistry.name("nuxeo", "elasticsearch", "service", "bulkIndex", "send"));
         this.jsonESDocumentWriter = new JsonESDocumentWriter();// default writer
         this.useExternalVersion = esa.useExternalVersion();
     }
@@ -161,11 +195,17 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
         }
     }
 
+    /**
+     * Indexes the documents in bulk.
+     * <p>
+     * Documents are loaded from the repository in batches, and the bulk requests are sent asynchronously by an
+     * elasticsearch {@link BulkProcessor}, so that the rendering of the next documents overlaps with the indexing of
+     * the previous ones. The number of bulk requests in flight is bounded, when reached the rendering waits. The items
+     * rejected by elasticsearch are retried with an exponential backoff.
+     */
     void processBulkIndexCommands(List<IndexingCommand> cmds) {
-        BulkRequest bulkRequest = new BulkRequest();
+        List<IndexingCommand> indexCmds = new ArrayList<>(cmds.size());
         Set<String> docIds = new HashSet<>(cmds.size());
-        int bulkSize = 0;
-        final int maxBulkSize = getMaxBulkSize();
         for (IndexingCommand cmd : cmds) {
             if (cmd.getType() == Type.DELETE || cmd.getType() == Type.UPDATE_DIRECT_CHILDREN) {
                 continue;
@@ -174,29 +214,90 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
                 // do not submit the same doc 2 times
                 continue;
             }
-            try {
-                IndexRequest idxRequest = buildEsIndexingRequest(cmd);
-                if (idxRequest != null) {
-                    bulkSize += idxRequest.source().length();
-                    bulkRequest.add(idxRequest);
+            indexCmds.add(cmd);
+        }
+        if (indexCmds.isEmpty()) {
+            return;
+        }
+        int maxBulkSize = getMaxBulkSize();
+        BulkListener listener = new BulkListener(maxBulkSize);
+        BulkProcessor bulkProcessor = esa.getClient()
+                                         .bulkProcessorBuilder(listener)
+                                         .setConcurrentRequests(getBulkConcurrentRequests())
+                                         .setBulkSize(new ByteSizeValue(maxBulkSize, ByteSizeUnit.BYTES))
+                                         .setBulkActions(-1)
+                                         .setBackoffPolicy(
+                                                 BackoffPolicy.exponentialBackoff(TimeValue.timeValueMillis(50),
+                                                         getBulkMaxRetries()))
+                                         .build();
+        try {
+            int batchSize = getFetchBatchSize();
+            for (int i = 0; i < indexCmds.size(); i += batchSize) {
+                List<IndexingCommand> batch = indexCmds.subList(i, Math.min(i + batchSize, indexCmds.size()));
+                Map<String, DocumentModel> docs;
+                try (Context ignored = bulkFetchTimer.time()) {
+                    docs = fetchDocuments(batch);
+                }
+                for (IndexingCommand cmd : batch) {
+                    IndexRequest idxRequest = null;
+                    try (Context ignored = bulkRenderTimer.time()) {
+                        idxRequest = buildEsIndexingRequest(cmd, docs.get(cmd.getTargetDocumentId()));
+                        if (idxRequest == null) {
+                            log.info("Ignore indexing command in bulk, doc does not exists anymore: " + cmd);
+                        }
+                    } catch (BlobNotFoundException be) {
+                        log.info("Ignore indexing command in bulk, blob does not exists anymore: " + cmd);
+                    } catch (ConcurrentUpdateException e) {
+                        throw e; // bubble up, usually until AbstractWork catches it and maybe retries
+                    } catch (DocumentNotFoundException e) {
+                        log.info("Ignore indexing command in bulk, doc does not exists anymore: " + cmd);
+                    } catch (IllegalArgumentException e) {
+                        log.error("Ignore indexing command in bulk, fail to create request: " + cmd, e);
+                    }
+                    if (idxRequest != null) {
+                        // blocks when the maximum number of bulk requests are in flight
+                        bulkProcessor.add(idxRequest);
+                    }
                 }
-            } catch (BlobNotFoundException be) {
-                log.info("Ignore indexing command in bulk, blob does not exists anymore: " + cmd);
-            } catch (ConcurrentUpdateException e) {
-                throw e; // bubble up, usually until AbstractWork catches it and maybe retries
-            } catch (DocumentNotFoundException e) {
-                log.info("Ignore indexing command in bulk, doc does not exists anymore: " + cmd);
-            } catch (IllegalArgumentException e) {
-                log.error("Ignore indexing command in bulk, fail to create request: " + cmd, e);
             }
-            if (bulkSize > maxBulkSize) {
-                log.warn("Max bulk size reached " + bulkSize + ", sending bulk command");
-                sendBulkCommand(bulkRequest, bulkSize);
-                bulkRequest = new BulkRequest();
-                bulkSize = 0;
+        } finally {
+            awaitClose(bulkProcessor);
+        }
+        listener.checkFailure();
+    }
+
+    /**
+     * Loads the target documents of the commands in bulk, keyed by id.
+     */
+    Map<String, DocumentModel> fetchDocuments(List<IndexingCommand> cmds) {
+        Map<String, DocumentModel> docs = new HashMap<>(cmds.size());
+        if (cmds.size() == 1) {
+            IndexingCommand cmd = cmds.get(0);
+            DocumentModel doc = cmd.getTargetDocument();
+            if (doc != null) {
+                docs.put(cmd.getTargetDocumentId(), doc);
             }
+            return docs;
+        }
+        // commands of a bulk are attached to the same session
+        CoreSession session = cmds.get(0).getAttachedSession();
+        List<String> ids = new ArrayList<>(cmds.size());
+        cmds.forEach(cmd -> ids.add(cmd.getTargetDocumentId()));
+        for (DocumentModel doc : session.getDocumentsByIds(ids, null)) {
+            docs.put(doc.getId(), doc);
+        }
+        return docs;
+    }
+
+    void awaitClose(BulkProcessor bulkProcessor) {
+        try {
+            if (!bulkProcessor.awaitClose(BULK_CLOSE_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+                throw new NuxeoException("Timeout waiting for elasticsearch bulk requests to complete");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NuxeoException("Interrupted while waiting for elasticsearch bulk requests", e);
         }
-        sendBulkCommand(bulkRequest, bulkSize);
     }
 
     int getMaxBulkSize() {
@@ -204,18 +305,80 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
         return Integer.parseInt(value);
     }
 
-    void sendBulkCommand(BulkRequest bulkRequest, int bulkSize) {
-        if (bulkRequest.numberOfActions() > 0) {
+    int getBulkConcurrentRequests() {
+        String value = Framework.getProperty(INDEX_BULK_CONCURRENT_REQUESTS_PROPERTY,
+                String.valueOf(DEFAULT_BULK_CONCURRENT_REQUESTS));
+        return Integer.parseInt(value);
+    }
+
+    int getBulkMaxRetries() {
+        String value = Framework.getProperty(INDEX_BULK_MAX_RETRIES_PROPERTY, String.valueOf(DEFAULT_BULK_MAX_RETRIES));
+        return Integer.parseInt(value);
+    }
+
+    int getFetchBatchSize() {
+        String value = Framework.getProperty(INDEX_FETCH_BATCH_SIZE_PROPERTY, String.valueOf(DEFAULT_FETCH_BATCH_SIZE));
+        return Math.max(1, Integer.parseInt(value));
+    }
+
+    /**
+     * Listener of the bulk processor, called from the thread sending the bulk requests.
+     */
+    protected class BulkListener implements BulkProcessor.Listener {
+
+        protected final Map<Long, Context> contexts = new ConcurrentHashMap<>();
+
+        protected final int maxBulkSize;
+
+        protected volatile Throwable failure;
+
+        protected BulkListener(int maxBulkSize) {
+            this.maxBulkSize = maxBulkSize;
+        }
+
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request) {
+            long bulkSize = request.estimatedSizeInBytes();
+            if (bulkSize >= maxBulkSize) {
+                log.warn("Max bulk size reached " + bulkSize + ", sending bulk command");
+            }
             if (log.isDebugEnabled()) {
                 logDebugMessageTruncated(String.format(
                         "Index %d docs (%d bytes) in bulk request: curl -XPOST 'http://localhost:9200/_bulk' -d '%s'",
-                        bulkRequest.numberOfActions(), bulkSize, bulkRequest.requests().toString()), MAX_CURL_LINE);
+                        request.numberOfActions(), bulkSize, request.requests().toString()),
+                        MAX_CURL_LINE);
             }
-            BulkResponse response = esa.getClient().bulk(bulkRequest);
+            contexts.put(executionId, bulkSendTimer.time());
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+            stopTimer(executionId);
             if (response.hasFailures()) {
                 logBulkFailure(response);
             }
         }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+            stopTimer(executionId);
+            log.error(String.format("Elasticsearch bulk %s fails, contains %d actions", executionId,
+                    request.numberOfActions()), failure);
+            this.failure = failure;
+        }
+
+        protected void stopTimer(long executionId) {
+            Context context = contexts.remove(executionId);
+            if (context != null) {
+                context.stop();
+            }
+        }
+
+        protected void checkFailure() {
+            if (failure != null) {
+                throw new NuxeoException("Elasticsearch bulk indexing failed", failure);
+            }
+        }
     }
 
     void logBulkFailure(BulkResponse response) {
@@ -406,7 +569,15 @@ public class ElasticSearchIndexingImpl implements ElasticSearchIndexing {
      * @throws java.lang.IllegalStateException if the command is not attached to a session
      */
     IndexRequest buildEsIndexingRequest(IndexingCommand cmd) {
-        DocumentModel doc = cmd.getTargetDocument();
+        return buildEsIndexingRequest(cmd, cmd.getTargetDocument());
+    }
+
+    /**
+     * Return indexing request for an already loaded document or null if the doc does not exists anymore.
+     *
+     * @since 11.1
+     */
+    IndexRequest buildEsIndexingRequest(IndexingCommand cmd, DocumentModel doc) {
         if (doc == null) {
             return null;
         }
@@ -34,7 +34,6 @@ import org.nuxeo.ecm.core.api.CoreInstance;
 import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.impl.DocumentModelListImpl;
-import org.nuxeo.ecm.core.query.sql.NXQL;
 import org.nuxeo.ecm.platform.query.api.PageProvider;
 
 /**
@@ -44,8 +43,20 @@ public class VcsFetcher extends Fetcher {
 
     private static final int CHUNK_SIZE = 100;
 
+    private final String[] schemas;
+
     public VcsFetcher(CoreSession session, SearchResponse response, Map<String, String> repoNames) {
+        this(session, response, repoNames, null);
+    }
+
+    /**
+     * @param schemas the schemas to load eagerly, or {@code null} for the prefetched schemas
+     * @since 11.1
+     */
+    public VcsFetcher(CoreSession session, SearchResponse response, Map<String, String> repoNames,
+            String[] schemas) {
         super(session, response, repoNames);
+        this.schemas = schemas;
     }
 
     @Override
@@ -120,16 +131,7 @@ public class VcsFetcher extends Fetcher {
     }
 
     private List<DocumentModel> fetchFromVcsChunk(final List<String> ids, CoreSession session) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("SELECT * FROM Document, Relation WHERE ecm:uuid IN (");
-        for (int i = 0; i < ids.size(); i++) {
-            sb.append(NXQL.escapeString(ids.get(i)));
-            if (i < ids.size() - 1) {
-                sb.append(", ");
-            }
-        }
-        sb.append(")");
-        return session.query(sb.toString());
+        return session.getDocumentsByIds(ids, schemas);
     }
 
     private void addHighlights(List<DocumentModel> docs) {
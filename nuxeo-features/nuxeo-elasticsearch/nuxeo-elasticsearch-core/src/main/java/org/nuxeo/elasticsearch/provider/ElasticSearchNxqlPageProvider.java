@@ -25,6 +25,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.elasticsearch.index.query.QueryBuilder;
@@ -58,6 +59,13 @@ public class ElasticSearchNxqlPageProvider extends CoreQueryDocumentPageProvider
 
     public static final String SEARCH_ON_ALL_REPOSITORIES_PROPERTY = "searchAllRepositories";
 
+    /**
+     * Comma-separated list of the schemas loaded eagerly for the documents of a page.
+     *
+     * @since 11.1
+     */
+    public static final String FETCH_SCHEMAS_PROPERTY = "fetchSchemas";
+
     // @since 9.2
     public static final String ES_MAX_RESULT_WINDOW_PROPERTY = "org.nuxeo.elasticsearch.provider.maxResultWindow";
 
@@ -104,6 +112,10 @@ public class ElasticSearchNxqlPageProvider extends CoreQueryDocumentPageProvider
                 nxQuery.searchOnAllRepositories();
             }
             nxQuery.useUnrestrictedSession(useUnrestrictedSession());
+            String[] fetchSchemas = getFetchSchemas();
+            if (fetchSchemas != null) {
+                nxQuery.fetchSchemas(fetchSchemas);
+            }
 
             List<String> highlightFields = getHighlights();
             if (highlightFields != null && !highlightFields.isEmpty()) {
@@ -190,6 +202,17 @@ public class ElasticSearchNxqlPageProvider extends CoreQueryDocumentPageProvider
         return Boolean.parseBoolean(value);
     }
 
+    /**
+     * @since 11.1
+     */
+    protected String[] getFetchSchemas() {
+        String value = (String) getProperties().get(FETCH_SCHEMAS_PROPERTY);
+        if (StringUtils.isBlank(value)) {
+            return null;
+        }
+        return StringUtils.split(value.replace(" ", ""), ',');
+    }
+
     @Override
     public boolean hasAggregateSupport() {
         return true;
@@ -103,6 +103,8 @@ public class NxQueryBuilder {
 
     protected boolean useUnrestrictedSession;
 
+    protected String[] fetchSchemas;
+
     public NxQueryBuilder(CoreSession coreSession) {
         session = coreSession;
         repositories.add(coreSession.getRepositoryName());
@@ -193,6 +195,17 @@ public class NxQueryBuilder {
         return this;
     }
 
+    /**
+     * The schemas to load eagerly when fetching the documents from the repository, other schemas are loaded lazily. By
+     * default the prefetched schemas of each document type are loaded.
+     *
+     * @since 11.1
+     */
+    public NxQueryBuilder fetchSchemas(String... schemas) {
+        fetchSchemas = schemas;
+        return this;
+    }
+
     /**
      * Fetch the documents using VCS (database) engine. This is done by default
      */
@@ -469,7 +482,14 @@ public class NxQueryBuilder {
         if (isFetchFromElasticsearch()) {
             return new EsFetcher(session, response, repoNames, hitDocConsumer);
         }
-        return new VcsFetcher(session, response, repoNames);
+        return new VcsFetcher(session, response, repoNames, fetchSchemas);
+    }
+
+    /**
+     * @since 11.1
+     */
+    public String[] getFetchSchemas() {
+        return fetchSchemas;
     }
 
     /**
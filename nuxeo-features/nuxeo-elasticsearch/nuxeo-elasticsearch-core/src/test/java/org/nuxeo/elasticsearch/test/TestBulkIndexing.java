@@ -0,0 +1,162 @@
+/*
+ * (C) Copyright 2019 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Benoit Delbosc
+ */
+package org.nuxeo.elasticsearch.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.DOC_TYPE;
+import static org.nuxeo.elasticsearch.ElasticSearchConstants.INDEX_FETCH_BATCH_SIZE_PROPERTY;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.elasticsearch.api.ElasticSearchAdmin;
+import org.nuxeo.elasticsearch.api.ElasticSearchIndexing;
+import org.nuxeo.elasticsearch.commands.IndexingCommand;
+import org.nuxeo.elasticsearch.commands.IndexingCommand.Type;
+import org.nuxeo.elasticsearch.core.ElasticSearchIndexingImpl;
+import org.nuxeo.runtime.test.runner.ConsoleLogLevelThreshold;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.LogCaptureFeature;
+
+/**
+ * Tests the bulk indexing of documents, with batched fetches of the documents and asynchronous bulk requests.
+ *
+ * @since 11.1
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ RepositoryElasticSearchFeature.class, LogCaptureFeature.class })
+@Deploy("org.nuxeo.elasticsearch.core:disable-listener-contrib.xml")
+@Deploy("org.nuxeo.elasticsearch.core:elasticsearch-test-contrib.xml")
+@Deploy("org.nuxeo.elasticsearch.core:elasticsearch-test-dynamic-mapping-contrib.xml")
+public class TestBulkIndexing {
+
+    private static final String IDX_NAME = "nxutest";
+
+    @Inject
+    protected CoreSession session;
+
+    @Inject
+    protected ElasticSearchIndexing esi;
+
+    @Inject
+    protected ElasticSearchAdmin esa;
+
+    @Inject
+    protected LogCaptureFeature.Result logCaptureResult;
+
+    @Before
+    public void setupIndex() {
+        esa.initIndexes(true);
+    }
+
+    protected DocumentModel createNote(String name, String json) {
+        DocumentModel doc = session.createDocumentModel("/", name, "Note");
+        doc.setPropertyValue("dc:title", name);
+        // the custom writer indexes the note as raw json, dynamically mapped
+        doc.setPropertyValue("note:note", json);
+        return session.createDocument(doc);
+    }
+
+    protected Map<String, Object> getSource(String id) {
+        GetResponse response = esa.getClient().get(new GetRequest(IDX_NAME, DOC_TYPE, id));
+        return response.isExists() ? response.getSourceAsMap() : null;
+    }
+
+    @Test
+    @LogCaptureFeature.FilterOn(logLevel = "ERROR", loggerClass = ElasticSearchIndexingImpl.class)
+    @ConsoleLogLevelThreshold("FATAL")
+    public void testBulkItemFailureIsReported() throws Exception {
+        DocumentModel valid = createNote("valid", "{\"type1\":{\"type1:id_int\":10}}");
+        // not an integer, rejected by elasticsearch
+        DocumentModel invalid = createNote("invalid", "{\"type1\":{\"type1:id_int\":\"notanumber\"}}");
+        session.save();
+
+        List<IndexingCommand> cmds = new ArrayList<>();
+        cmds.add(new IndexingCommand(valid, Type.INSERT, true, false));
+        cmds.add(new IndexingCommand(invalid, Type.INSERT, true, false));
+        esi.indexNonRecursive(cmds);
+
+        // the failure of one item doesn't prevent the indexing of the others
+        assertNotNull(getSource(valid.getId()));
+        assertEquals(null, getSource(invalid.getId()));
+        // the failed item is reported
+        List<String> events = logCaptureResult.getCaughtEventMessages();
+        assertFalse("Expecting error message", events.isEmpty());
+        String message = events.get(events.size() - 1);
+        assertTrue(message, message.contains(invalid.getId()));
+        assertFalse(message, message.contains(valid.getId()));
+    }
+
+    @Test
+    public void testBatchedFetchIndexesSameContent() throws Exception {
+        List<DocumentModel> docs = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            DocumentModel doc = session.createDocumentModel("/", "file" + i, "File");
+            doc.setPropertyValue("dc:title", "File " + i);
+            doc.setPropertyValue("dc:description", "Description " + i);
+            docs.add(session.createDocument(doc));
+        }
+        DocumentModel removed = session.createDocument(session.createDocumentModel("/", "removed", "File"));
+        session.save();
+
+        // one document at a time
+        Map<String, Map<String, Object>> expected = new HashMap<>();
+        for (DocumentModel doc : docs) {
+            esi.indexNonRecursive(new IndexingCommand(doc, Type.INSERT, true, false));
+            Map<String, Object> source = getSource(doc.getId());
+            assertNotNull(source);
+            expected.put(doc.getId(), source);
+        }
+
+        // same documents in bulk, fetched by batches of 2 with a document that doesn't exist anymore
+        esa.initIndexes(true);
+        List<IndexingCommand> cmds = new ArrayList<>();
+        docs.forEach(doc -> cmds.add(new IndexingCommand(doc, Type.INSERT, true, false)));
+        cmds.add(2, new IndexingCommand(removed, Type.INSERT, true, false));
+        session.removeDocument(removed.getRef());
+        session.save();
+        System.setProperty(INDEX_FETCH_BATCH_SIZE_PROPERTY, "2");
+        try {
+            esi.indexNonRecursive(cmds);
+        } finally {
+            System.clearProperty(INDEX_FETCH_BATCH_SIZE_PROPERTY);
+        }
+        for (DocumentModel doc : docs) {
+            assertEquals(doc.getName(), expected.get(doc.getId()), getSource(doc.getId()));
+        }
+        assertEquals(null, getSource(removed.getId()));
+    }
+
+}
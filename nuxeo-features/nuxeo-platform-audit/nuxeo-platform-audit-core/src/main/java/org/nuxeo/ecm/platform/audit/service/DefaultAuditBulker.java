@@ -40,6 +40,8 @@ import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.Timer.Context;
 
 /**
  * @deprecated since 10.10, audit bulker is now handled with nuxeo-stream, no replacement
@@ -66,6 +68,8 @@ public class DefaultAuditBulker implements AuditBulkerMBean, AuditBulker {
 
     final Counter drainedCount = registry.counter(MetricRegistry.name("nuxeo", "audit", "drained"));
 
+    final Timer writeTimer = registry.timer(MetricRegistry.name("nuxeo", "audit", "write"));
+
     int timeout;
 
     int bulksize;
@@ -157,7 +161,9 @@ public class DefaultAuditBulker implements AuditBulkerMBean, AuditBulker {
         while (!queue.isEmpty()) {
             entries.add(queue.remove());
         }
-        backend.addLogEntries(entries);
+        try (Context ignored = writeTimer.time()) {
+            backend.addLogEntries(entries);
+        }
         int delta = entries.size();
         size.addAndGet(-delta);
         drainedCount.inc(delta);
@@ -221,4 +227,19 @@ public class DefaultAuditBulker implements AuditBulkerMBean, AuditBulker {
         queuedCount.dec(queuedCount.getCount());
         drainedCount.dec(drainedCount.getCount());
     }
+
+    @Override
+    public long getBacklog() {
+        return size.get();
+    }
+
+    @Override
+    public long getDropped() {
+        return 0;
+    }
+
+    @Override
+    public double getMeanWriteTime() {
+        return writeTimer.getSnapshot().getMean() / 1_000_000d;
+    }
 }
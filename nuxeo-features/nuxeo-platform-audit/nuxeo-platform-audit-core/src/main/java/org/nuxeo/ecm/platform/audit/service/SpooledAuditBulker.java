@@ -0,0 +1,453 @@
+/*
+ * (C) Copyright 2019 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.platform.audit.service;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.nuxeo.common.Environment;
+import org.nuxeo.ecm.core.io.registry.MarshallerHelper;
+import org.nuxeo.ecm.core.io.registry.context.RenderingContext;
+import org.nuxeo.ecm.platform.audit.api.LogEntry;
+import org.nuxeo.ecm.platform.audit.impl.LogEntryImpl;
+import org.nuxeo.ecm.platform.audit.service.extension.AuditBulkerDescriptor;
+import org.nuxeo.ecm.platform.audit.service.management.AuditBulkerMBean;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.management.ResourcePublisher;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.Timer.Context;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * An audit bulker that spools the entries to local append-only segment files instead of keeping them in memory.
+ * <p>
+ * Each entry is appended as a JSON line to the current segment, which is closed when it reaches the bulk size or when
+ * the bulk timeout expires. Closed segments are written to the backend in one batch by several writer threads, then
+ * deleted. The segments left by a previous run are written at startup, so entries are not lost if the server stops
+ * or crashes; an entry may be written twice if the server stops between the write of a segment and its deletion.
+ * <p>
+ * When the number of entries not yet written reaches the maximum backlog, logging waits for the writers.
+ * <p>
+ * Like the other bulkers, this is only used when the stream audit is disabled.
+ *
+ * @since 11.1
+ */
+public class SpooledAuditBulker implements AuditBulkerMBean, AuditBulker {
+
+    private static final Log log = LogFactory.getLog(SpooledAuditBulker.class);
+
+    protected static final String SEGMENT_PREFIX = "audit-";
+
+    protected static final String SEGMENT_SUFFIX = ".log";
+
+    protected static final String SIZE_GAUGE = MetricRegistry.name("nuxeo", "audit", "size");
+
+    protected static final ObjectMapper MAPPER = new ObjectMapper();
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    protected final Counter queuedCount = registry.counter(MetricRegistry.name("nuxeo", "audit", "queued"));
+
+    protected final Counter drainedCount = registry.counter(MetricRegistry.name("nuxeo", "audit", "drained"));
+
+    protected final Counter droppedCount = registry.counter(MetricRegistry.name("nuxeo", "audit", "dropped"));
+
+    protected final Timer writeTimer = registry.timer(MetricRegistry.name("nuxeo", "audit", "write"));
+
+    protected final AuditBackend backend;
+
+    protected final Path spoolDir;
+
+    protected final int nbWriters;
+
+    protected final int maxBacklog;
+
+    protected volatile int timeout;
+
+    protected volatile int bulksize;
+
+    /** Number of spooled entries not yet written. */
+    protected final AtomicLong backlog = new AtomicLong();
+
+    /** Closed segments, to be written. */
+    protected final BlockingQueue<Path> segments = new LinkedBlockingQueue<>();
+
+    /** Protects the current segment. */
+    protected final ReentrantLock lock = new ReentrantLock();
+
+    /** Signaled when a segment has been written. */
+    protected final Condition written = lock.newCondition();
+
+    protected Path currentPath;
+
+    protected Writer current;
+
+    protected int currentCount;
+
+    protected long sequence;
+
+    protected final List<Thread> threads = new ArrayList<>();
+
+    protected volatile boolean stopped;
+
+    SpooledAuditBulker(AuditBackend backend, AuditBulkerDescriptor config) {
+        this.backend = backend;
+        timeout = config.timeout;
+        bulksize = config.size;
+        nbWriters = Math.max(1, config.writers);
+        maxBacklog = config.maxBacklog;
+        if (config.spoolDirectory == null) {
+            spoolDir = Environment.getDefault().getData().toPath().resolve("audit").resolve("spool");
+        } else {
+            spoolDir = Paths.get(config.spoolDirectory);
+        }
+    }
+
+    @Override
+    public void onApplicationStarted() {
+        stopped = false;
+        backlog.set(0);
+        segments.clear();
+        recoverSegments();
+        for (int i = 0; i < nbWriters; i++) {
+            Thread thread = new Thread(this::runWriter, "Nuxeo-Audit-Bulker-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+        ResourcePublisher publisher = Framework.getService(ResourcePublisher.class);
+        if (publisher != null) {
+            publisher.registerResource("audit-bulker", "audit-bulker", AuditBulkerMBean.class, this);
+        }
+        registry.register(SIZE_GAUGE, (Gauge<Long>) backlog::get);
+    }
+
+    @Override
+    public void onApplicationStopped() {
+        registry.remove(SIZE_GAUGE);
+        ResourcePublisher publisher = Framework.getService(ResourcePublisher.class);
+        if (publisher != null) {
+            publisher.unregisterResource("audit-bulker", "audit-bulker");
+        }
+        stopped = true;
+        try {
+            for (Thread thread : threads) {
+                thread.join(2L * timeout);
+                thread.interrupt();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            threads.forEach(Thread::interrupt);
+        } finally {
+            threads.clear();
+            lock.lock();
+            try {
+                // the current segment is kept and will be written at next startup
+                closeCurrent();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Queues the segments left by a previous run.
+     */
+    protected void recoverSegments() {
+        List<Path> paths = new ArrayList<>();
+        try {
+            Files.createDirectories(spoolDir);
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(spoolDir,
+                    SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+                ds.forEach(paths::add);
+            }
+            paths.sort(null);
+            for (Path path : paths) {
+                try (BufferedReader reader = Files.newBufferedReader(path, UTF_8)) {
+                    backlog.addAndGet(reader.lines().count());
+                }
+                segments.add(path);
+                sequence = Math.max(sequence, getSequence(path) + 1);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read audit spool directory: " + spoolDir, e);
+        }
+        if (!paths.isEmpty()) {
+            log.warn("Recovering " + backlog.get() + " audit entries from " + paths.size() + " segments in "
+                    + spoolDir);
+        }
+    }
+
+    protected long getSequence(Path path) {
+        String name = path.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public void offer(LogEntry entry) {
+        if (log.isDebugEnabled()) {
+            log.debug("offered " + entry);
+        }
+        String json = asJson(entry);
+        if (json == null) {
+            droppedCount.inc();
+            return;
+        }
+        lock.lock();
+        try {
+            waitForBacklog();
+            if (current == null) {
+                currentPath = spoolDir.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, sequence++, SEGMENT_SUFFIX));
+                current = Files.newBufferedWriter(currentPath, UTF_8, CREATE_NEW, WRITE);
+            }
+            current.write(json);
+            current.write('\n');
+            // flush to the OS so that the entry survives a JVM crash
+            current.flush();
+            currentCount++;
+            backlog.incrementAndGet();
+            queuedCount.inc();
+            if (currentCount >= bulksize) {
+                closeCurrent();
+            }
+        } catch (IOException e) {
+            droppedCount.inc();
+            log.error("Cannot spool audit entry, dropping it: " + entry, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the backlog is under its maximum. Called under lock.
+     */
+    protected void waitForBacklog() {
+        try {
+            while (maxBacklog > 0 && backlog.get() >= maxBacklog && !stopped) {
+                written.await(timeout, TimeUnit.MILLISECONDS); // NOSONAR (spurious wakeups don't matter)
+            }
+        } catch (InterruptedException e) {
+            // spool the entry anyway
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    protected String asJson(LogEntry entry) {
+        RenderingContext ctx = RenderingContext.CtxBuilder.get();
+        try {
+            return MarshallerHelper.objectToJson(entry, ctx);
+        } catch (IOException e) {
+            log.error("Unable to translate entry into json, dropping it, eventId:" + entry.getEventId(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Closes the current segment and queues it for writing, if it's not empty. Called under lock.
+     */
+    protected void closeCurrent() {
+        if (current == null) {
+            return;
+        }
+        try {
+            current.close();
+        } catch (IOException e) {
+            log.error("Cannot close audit spool segment: " + currentPath, e);
+        }
+        if (!stopped) {
+            segments.add(currentPath);
+        }
+        current = null;
+        currentPath = null;
+        currentCount = 0;
+    }
+
+    protected void rotate() {
+        lock.lock();
+        try {
+            if (currentCount > 0) {
+                closeCurrent();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean await(long time, TimeUnit unit) throws InterruptedException {
+        rotate();
+        lock.lock();
+        try {
+            long nanos = unit.toNanos(time);
+            while (backlog.get() > 0) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = written.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    protected void runWriter() {
+        log.info("bulk audit logger started");
+        while (!stopped) {
+            Path segment;
+            try {
+                segment = segments.poll(timeout, TimeUnit.MILLISECONDS);
+                if (segment == null) {
+                    // nothing to write, flush what's been logged since the bulk timeout
+                    rotate();
+                    continue;
+                }
+                if (!write(segment)) {
+                    // retry later, the segment is still on disk
+                    Thread.sleep(timeout);
+                    segments.add(segment);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        log.info("bulk audit logger stopped");
+    }
+
+    /**
+     * Writes a segment to the backend and deletes it. Returns {@code false} if the backend failed.
+     */
+    protected boolean write(Path segment) {
+        List<LogEntry> entries = new ArrayList<>();
+        long count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(segment, UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                count++;
+                try {
+                    entries.add(MAPPER.readValue(line, LogEntryImpl.class));
+                } catch (IOException e) {
+                    droppedCount.inc();
+                    log.error("Discard invalid audit entry in " + segment + ": " + line, e);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Cannot read audit spool segment: " + segment, e);
+            return false;
+        }
+        if (!entries.isEmpty()) {
+            try (Context ignored = writeTimer.time()) {
+                backend.addLogEntries(entries);
+            } catch (RuntimeException e) {
+                log.error("Cannot write " + entries.size() + " audit entries, will retry", e);
+                return false;
+            }
+        }
+        try {
+            Files.delete(segment);
+        } catch (IOException e) {
+            log.error("Cannot delete audit spool segment: " + segment, e);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("flushed " + entries.size() + " events");
+        }
+        drainedCount.inc(entries.size());
+        backlog.addAndGet(-count);
+        lock.lock();
+        try {
+            written.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    @Override
+    public int getBulkTimeout() {
+        return timeout;
+    }
+
+    @Override
+    public void setBulkTimeout(int value) {
+        timeout = value;
+    }
+
+    @Override
+    public int getBulkSize() {
+        return bulksize;
+    }
+
+    @Override
+    public void setBulkSize(int value) {
+        bulksize = value;
+    }
+
+    @Override
+    public void resetMetrics() {
+        queuedCount.dec(queuedCount.getCount());
+        drainedCount.dec(drainedCount.getCount());
+        droppedCount.dec(droppedCount.getCount());
+    }
+
+    @Override
+    public long getBacklog() {
+        return backlog.get();
+    }
+
+    @Override
+    public long getDropped() {
+        return droppedCount.getCount();
+    }
+
+    @Override
+    public double getMeanWriteTime() {
+        return writeTimer.getSnapshot().getMean() / 1_000_000d;
+    }
+
+}
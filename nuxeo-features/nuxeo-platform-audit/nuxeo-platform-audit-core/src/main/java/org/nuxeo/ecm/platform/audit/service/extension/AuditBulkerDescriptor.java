@@ -45,6 +45,31 @@ public class AuditBulkerDescriptor implements Serializable {
     @XNode("size")
     public int size = 1000;
 
+    /**
+     * Directory where {@link org.nuxeo.ecm.platform.audit.service.SpooledAuditBulker} spools the entries, defaults
+     * to a directory in the server data.
+     *
+     * @since 11.1
+     */
+    @XNode("spoolDirectory")
+    public String spoolDirectory;
+
+    /**
+     * Number of threads writing the spooled entries to the backend.
+     *
+     * @since 11.1
+     */
+    @XNode("writers")
+    public int writers = 2;
+
+    /**
+     * Maximum number of spooled entries not yet written, above which logging waits, {@code 0} for no limit.
+     *
+     * @since 11.1
+     */
+    @XNode("maxBacklog")
+    public int maxBacklog = 1_000_000;
+
     public AuditBulker newInstance(AuditBackend backend) {
         try {
             Constructor<? extends AuditBulker> declaredConstructor = klass.getDeclaredConstructor(AuditBackend.class, AuditBulkerDescriptor.class);
@@ -28,4 +28,25 @@ public interface AuditBulkerMBean {
     void setBulkSize(int value);
 
     void resetMetrics();
+
+    /**
+     * Gets the number of entries waiting to be written to the audit backend.
+     *
+     * @since 11.1
+     */
+    long getBacklog();
+
+    /**
+     * Gets the number of entries dropped because they could not be queued or read back.
+     *
+     * @since 11.1
+     */
+    long getDropped();
+
+    /**
+     * Gets the mean time to write a batch of entries to the audit backend, in milliseconds.
+     *
+     * @since 11.1
+     */
+    double getMeanWriteTime();
 }
@@ -0,0 +1,84 @@
+/*
+ * (C) Copyright 2019 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.platform.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.nuxeo.ecm.platform.audit.TestNXAuditEventsService.MyInit.YOUPS_PATH;
+import static org.nuxeo.ecm.platform.audit.api.BuiltinLogEntryData.LOG_DOC_UUID;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.common.Environment;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.PathRef;
+import org.nuxeo.ecm.core.event.Event;
+import org.nuxeo.ecm.core.event.EventContext;
+import org.nuxeo.ecm.core.event.impl.DocumentEventContext;
+import org.nuxeo.ecm.core.query.sql.model.Predicates;
+import org.nuxeo.ecm.core.test.annotations.Granularity;
+import org.nuxeo.ecm.core.test.annotations.RepositoryConfig;
+import org.nuxeo.ecm.platform.audit.TestNXAuditEventsService.MyInit;
+import org.nuxeo.ecm.platform.audit.api.AuditQueryBuilder;
+import org.nuxeo.ecm.platform.audit.api.LogEntry;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+
+@RunWith(FeaturesRunner.class)
+@Features(AuditBulkerFeature.class)
+@RepositoryConfig(init = MyInit.class, cleanup = Granularity.METHOD)
+@Deploy("org.nuxeo.ecm.platform.audit:test-audit-spooled-bulker-contrib.xml")
+public class TestNXAuditSpooledBulkerEventsService extends TestNXAuditEventsService {
+
+    @Override
+    public boolean extendedInfosComputedWithFullDocumentModel() {
+        return false;
+    }
+
+    @Test
+    public void testSpooledEntriesAreWritten() throws IOException {
+        DocumentModel source = session.getDocument(new PathRef(YOUPS_PATH));
+        int count = 25; // more than the bulk size
+        for (int i = 0; i < count; i++) {
+            EventContext ctx = new DocumentEventContext(session, session.getPrincipal(), source);
+            Event event = ctx.newEvent("documentSecurityUpdated"); // auditable
+            event.setInline(false);
+            event.setImmediate(true);
+            eventService.fireEvent(event);
+        }
+        waitForAsyncCompletion();
+
+        List<LogEntry> entries = serviceUnderTest.queryLogs(
+                new AuditQueryBuilder().predicate(Predicates.eq(LOG_DOC_UUID, source.getId())).defaultOrder());
+        assertEquals(count, entries.stream().filter(e -> "documentSecurityUpdated".equals(e.getEventId())).count());
+
+        // all segments have been written and deleted
+        Path spoolDir = Environment.getDefault().getData().toPath().resolve("audit").resolve("spool");
+        try (Stream<Path> files = Files.list(spoolDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+}
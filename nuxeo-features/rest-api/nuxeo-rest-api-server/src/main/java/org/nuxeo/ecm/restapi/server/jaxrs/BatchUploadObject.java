@@ -96,6 +96,9 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  * <li>DELETE /upload/{batchId}, see {@link #cancel(String)}</li>
  * <li>DELETE /upload/{batchId}/{fileIdx}, see {@link #removeFile(String, String)}</li>
  * </ul>
+ * Chunks uploaded with an {@code X-Upload-Chunk-Offset} header are written directly at this offset in the final file,
+ * they can then be uploaded concurrently and in any order.
+ * <p>
  * Largely inspired by the excellent Google Drive REST API documentation about
  * <a href="https://developers.google.com/drive/web/manage-uploads#resumable">resumable upload</a>.
  *
@@ -207,6 +210,7 @@ public class BatchUploadObject extends AbstractResource<ResourceTypeImpl> {
         }
         String uploadChunkIndexHeader = request.getHeader("X-Upload-Chunk-Index");
         String chunkCountHeader = request.getHeader("X-Upload-Chunk-Count");
+        String chunkOffsetHeader = request.getHeader("X-Upload-Chunk-Offset");
         String fileName = request.getHeader("X-File-Name");
         String fileSizeHeader = request.getHeader("X-File-Size");
         String mimeType = request.getHeader("X-File-Type");
@@ -216,14 +220,18 @@ public class BatchUploadObject extends AbstractResource<ResourceTypeImpl> {
         int chunkCount = -1;
         int uploadChunkIndex = -1;
         long fileSize = -1;
+        long chunkOffset = -1;
         if (UPLOAD_TYPE_CHUNKED.equals(uploadType)) {
             try {
                 chunkCount = Integer.parseInt(chunkCountHeader);
                 uploadChunkIndex = Integer.parseInt(uploadChunkIndexHeader);
                 fileSize = Long.parseLong(fileSizeHeader);
+                if (StringUtils.isNotEmpty(chunkOffsetHeader)) {
+                    chunkOffset = Long.parseLong(chunkOffsetHeader);
+                }
             } catch (NumberFormatException e) {
-                throw new IllegalParameterException(
-                        "X-Upload-Chunk-Index, X-Upload-Chunk-Count and X-File-Size headers must be numbers");
+                throw new IllegalParameterException("X-Upload-Chunk-Index, X-Upload-Chunk-Count, "
+                        + "X-Upload-Chunk-Offset and X-File-Size headers must be numbers");
             }
         }
 
@@ -248,7 +256,7 @@ public class BatchUploadObject extends AbstractResource<ResourceTypeImpl> {
             }
             uploadedSize = blob.getLength();
             addBlob(uploadType, batchId, fileIdx, blob, fileName, mimeType, uploadedSize, chunkCount, uploadChunkIndex,
-                    fileSize);
+                    fileSize, chunkOffset);
         } else if (Framework.isBooleanPropertyTrue(NginxConstants.X_ACCEL_ENABLED)
                 && StringUtils.isNotEmpty(requestBodyFile)) {
             if (StringUtils.isNotEmpty(fileName)) {
@@ -263,15 +271,21 @@ public class BatchUploadObject extends AbstractResource<ResourceTypeImpl> {
 
             uploadedSize = file.length();
             addBlob(uploadType, batchId, fileIdx, blob, fileName, mimeType, uploadedSize, chunkCount, uploadChunkIndex,
-                    fileSize);
+                    fileSize, chunkOffset);
         } else {
             if (StringUtils.isNotEmpty(fileName)) {
                 fileName = URLDecoder.decode(fileName, "UTF-8");
             }
             try (InputStream is = request.getInputStream()) {
-                Blob blob = Blobs.createBlob(is);
-                addBlob(uploadType, batchId, fileIdx, blob, fileName, mimeType, uploadedSize, chunkCount,
-                        uploadChunkIndex, fileSize);
+                if (chunkOffset >= 0) {
+                    // write the chunk at its offset without going through a temporary file
+                    bm.addStream(batchId, fileIdx, is, chunkOffset, chunkCount, uploadChunkIndex, fileName, mimeType,
+                            fileSize);
+                } else {
+                    Blob blob = Blobs.createBlob(is);
+                    addBlob(uploadType, batchId, fileIdx, blob, fileName, mimeType, uploadedSize, chunkCount,
+                            uploadChunkIndex, fileSize);
+                }
             }
         }
 
@@ -286,6 +300,7 @@ public class BatchUploadObject extends AbstractResource<ResourceTypeImpl> {
             BatchFileEntry fileEntry = bm.getFileEntry(batchId, fileIdx);
             if (fileEntry != null) {
                 result.put("uploadedChunkIds", fileEntry.getOrderedChunkIndexes());
+                result.put("missingChunkIds", fileEntry.getMissingChunkIndexes());
                 result.put("chunkCount", fileEntry.getChunkCount());
                 if (!fileEntry.isChunksCompleted()) {
                     status = new ResumeIncompleteStatusType();
@@ -303,6 +318,21 @@ public class BatchUploadObject extends AbstractResource<ResourceTypeImpl> {
         return Long.parseLong(contentLength);
     }
 
+    protected void addBlob(String uploadType, String batchId, String fileIdx, Blob blob, String fileName,
+            String mimeType, long uploadedSize, int chunkCount, int uploadChunkIndex, long fileSize,
+            long chunkOffset) throws IOException {
+        if (UPLOAD_TYPE_CHUNKED.equals(uploadType) && chunkOffset >= 0) {
+            try (InputStream is = blob.getStream()) {
+                Framework.getService(BatchManager.class)
+                         .addStream(batchId, fileIdx, is, chunkOffset, chunkCount, uploadChunkIndex, fileName,
+                                 mimeType, fileSize);
+            }
+        } else {
+            addBlob(uploadType, batchId, fileIdx, blob, fileName, mimeType, uploadedSize, chunkCount,
+                    uploadChunkIndex, fileSize);
+        }
+    }
+
     protected void addBlob(String uploadType, String batchId, String fileIdx, Blob blob, String fileName,
             String mimeType, long uploadedSize, int chunkCount, int uploadChunkIndex, long fileSize) {
         BatchManager bm = Framework.getService(BatchManager.class);
@@ -553,6 +583,7 @@ public class BatchUploadObject extends AbstractResource<ResourceTypeImpl> {
         info.put("uploadType", uploadType);
         if (chunked) {
             info.put("uploadedChunkIds", fileEntry.getOrderedChunkIndexes());
+            info.put("missingChunkIds", fileEntry.getMissingChunkIndexes());
             info.put("chunkCount", fileEntry.getChunkCount());
         }
         return info;
@@ -35,8 +35,14 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URLEncoder;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.ws.rs.core.Response.Status;
@@ -588,6 +594,171 @@ public class BatchUploadFixture extends BaseTest {
         bm.clean(batchId);
     }
 
+    protected static List<Integer> toIntList(JsonNode node) {
+        List<Integer> list = new ArrayList<>();
+        node.forEach(element -> list.add(element.asInt()));
+        return list;
+    }
+
+    /**
+     * Tests the use of /upload with file chunks written directly at their X-Upload-Chunk-Offset.
+     *
+     * @since 11.1
+     */
+    @Test
+    public void testChunkedUploadWithOffset() throws IOException {
+        String batchId = initializeDeprecatedNewBatch();
+
+        String fileName = URLEncoder.encode("Fichier accentué.txt", UTF_8);
+        String fileContent = "Contenu accentué composé de 3 chunks";
+        String fileSize = String.valueOf(getUTF8Bytes(fileContent).length);
+        String[] chunks = { "Contenu accentu", "é composé de ", "3 chunks" };
+        String[] offsets = { "0", String.valueOf(getUTF8Bytes(chunks[0]).length),
+                String.valueOf(getUTF8Bytes(chunks[0] + chunks[1]).length) };
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Content-Type", "text/plain");
+        headers.put("X-Upload-Type", "chunked");
+        headers.put("X-Upload-Chunk-Count", "3");
+        headers.put("X-File-Name", fileName);
+        headers.put("X-File-Size", fileSize);
+        headers.put("X-File-Type", "text/plain");
+
+        // Upload chunks in desorder
+        headers.put("X-Upload-Chunk-Index", "2");
+        headers.put("X-Upload-Chunk-Offset", offsets[2]);
+        try (CloseableClientResponse response = getResponse(RequestType.POST, "upload/" + batchId + "/0", chunks[2],
+                headers)) {
+            assertEquals(308, response.getStatus());
+            JsonNode node = mapper.readTree(response.getEntityInputStream());
+            assertEquals("true", node.get("uploaded").asText());
+            assertEquals(List.of(2), toIntList(node.get("uploadedChunkIds")));
+            assertEquals(List.of(0, 1), toIntList(node.get("missingChunkIds")));
+            assertEquals("3", node.get("chunkCount").asText());
+        }
+
+        headers.put("X-Upload-Chunk-Index", "0");
+        headers.put("X-Upload-Chunk-Offset", offsets[0]);
+        try (CloseableClientResponse response = getResponse(RequestType.POST, "upload/" + batchId + "/0", chunks[0],
+                headers)) {
+            assertEquals(308, response.getStatus());
+            JsonNode node = mapper.readTree(response.getEntityInputStream());
+            assertEquals(List.of(0, 2), toIntList(node.get("uploadedChunkIds")));
+            assertEquals(List.of(1), toIntList(node.get("missingChunkIds")));
+        }
+
+        // Get file info, to resume the upload
+        try (CloseableClientResponse response = getResponse(RequestType.GET, "upload/" + batchId + "/0")) {
+            assertEquals(308, response.getStatus());
+            JsonNode node = mapper.readTree(response.getEntityInputStream());
+            assertEquals("Fichier accentué.txt", node.get("name").asText());
+            assertEquals(fileSize, node.get("size").asText());
+            assertEquals(List.of(0, 2), toIntList(node.get("uploadedChunkIds")));
+            assertEquals(List.of(1), toIntList(node.get("missingChunkIds")));
+        }
+
+        headers.put("X-Upload-Chunk-Index", "1");
+        headers.put("X-Upload-Chunk-Offset", offsets[1]);
+        try (CloseableClientResponse response = getResponse(RequestType.POST, "upload/" + batchId + "/0", chunks[1],
+                headers)) {
+            assertEquals(Status.CREATED.getStatusCode(), response.getStatus());
+            JsonNode node = mapper.readTree(response.getEntityInputStream());
+            assertEquals(List.of(0, 1, 2), toIntList(node.get("uploadedChunkIds")));
+            assertEquals(List.of(), toIntList(node.get("missingChunkIds")));
+        }
+
+        // Get batch info
+        try (CloseableClientResponse response = getResponse(RequestType.GET, "upload/" + batchId)) {
+            assertEquals(Status.OK.getStatusCode(), response.getStatus());
+            ArrayNode nodes = (ArrayNode) mapper.readTree(response.getEntityInputStream());
+            assertEquals(1, nodes.size());
+            assertEquals(List.of(0, 1, 2), toIntList(nodes.get(0).get("uploadedChunkIds")));
+            assertEquals(List.of(), toIntList(nodes.get(0).get("missingChunkIds")));
+        }
+
+        // A chunk with an invalid offset is rejected
+        headers.put("X-Upload-Chunk-Offset", "foo");
+        try (CloseableClientResponse response = getResponse(RequestType.POST, "upload/" + batchId + "/0", chunks[1],
+                headers)) {
+            assertEquals(Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+        }
+
+        BatchManager bm = Framework.getService(BatchManager.class);
+        Blob blob = bm.getBlob(batchId, "0");
+        assertNotNull(blob);
+        assertEquals("Fichier accentué.txt", blob.getFilename());
+        assertEquals("text/plain", blob.getMimeType());
+        assertEquals(fileContent, blob.getString());
+        assertEquals(DigestUtils.md5Hex(getUTF8Bytes(fileContent)), blob.getDigest());
+
+        bm.clean(batchId);
+    }
+
+    /**
+     * Tests the use of /upload with file chunks uploaded concurrently and in disorder at their X-Upload-Chunk-Offset.
+     *
+     * @since 11.1
+     */
+    @Test
+    public void testConcurrentChunkedUploadWithOffset() throws Exception {
+        String batchId = initializeDeprecatedNewBatch();
+
+        int chunkCount = 10;
+        List<String> chunks = new ArrayList<>();
+        StringBuilder fileContent = new StringBuilder();
+        for (int i = 0; i < chunkCount; i++) {
+            String chunk = "chunk " + i + " of " + chunkCount + "\n";
+            chunks.add(chunk);
+            fileContent.append(chunk);
+        }
+        String fileSize = String.valueOf(fileContent.length());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            // last chunks first
+            for (int i = chunkCount - 1; i >= 0; i--) {
+                String chunk = chunks.get(i);
+                Map<String, String> headers = new HashMap<>();
+                headers.put("Content-Type", "text/plain");
+                headers.put("X-Upload-Type", "chunked");
+                headers.put("X-Upload-Chunk-Index", String.valueOf(i));
+                headers.put("X-Upload-Chunk-Count", String.valueOf(chunkCount));
+                headers.put("X-Upload-Chunk-Offset", String.valueOf(fileContent.indexOf(chunk)));
+                headers.put("X-File-Name", "chunks.txt");
+                headers.put("X-File-Size", fileSize);
+                headers.put("X-File-Type", "text/plain");
+                futures.add(executor.submit(() -> {
+                    try (CloseableClientResponse response = getResponse(RequestType.POST, "upload/" + batchId + "/0",
+                            chunk, headers)) {
+                        return response.getStatus();
+                    }
+                }));
+            }
+            for (Future<Integer> future : futures) {
+                int status = future.get(30, TimeUnit.SECONDS);
+                assertTrue(String.valueOf(status), status == 308 || status == Status.CREATED.getStatusCode());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        try (CloseableClientResponse response = getResponse(RequestType.GET, "upload/" + batchId + "/0")) {
+            assertEquals(Status.OK.getStatusCode(), response.getStatus());
+            JsonNode node = mapper.readTree(response.getEntityInputStream());
+            assertEquals(chunkCount, node.get("uploadedChunkIds").size());
+            assertEquals(List.of(), toIntList(node.get("missingChunkIds")));
+        }
+
+        BatchManager bm = Framework.getService(BatchManager.class);
+        Blob blob = bm.getBlob(batchId, "0");
+        assertNotNull(blob);
+        assertEquals(fileContent.toString(), blob.getString());
+        assertEquals(DigestUtils.md5Hex(fileContent.toString()), blob.getDigest());
+
+        bm.clean(batchId);
+    }
+
     /**
      * Tests the use of /upload using file chunks + /upload/{batchId}/{fileIdx}/execute.
      *
@@ -0,0 +1,162 @@
+/*
+ * (C) Copyright 2019 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.runtime.kv.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.nuxeo.runtime.kv.KeyValueBatch;
+import org.nuxeo.runtime.kv.KeyValueStore;
+import org.nuxeo.runtime.kv.MemKeyValueStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the throughput (keys/s) of per-operation calls on a {@link KeyValueStore} with the equivalent batch calls.
+ * <p>
+ * Each benchmark invocation processes {@link #BATCH_SIZE} keys, either one call per key or a single batch call.
+ *
+ * @since 11.1
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(4)
+public class KeyValueStoreBenchmark {
+
+    protected static final int BATCH_SIZE = 100;
+
+    @State(Scope.Benchmark)
+    public static class StoreState {
+
+        @Param({ "100" })
+        public int valueSize;
+
+        @Param({ "0", "60" })
+        public long ttl;
+
+        protected MemKeyValueStore store;
+
+        protected byte[] value;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            store = new MemKeyValueStore();
+            value = new byte[valueSize];
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            store.clear();
+            store.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Keys {
+
+        protected final List<String> keys = new ArrayList<>(BATCH_SIZE);
+
+        protected final Map<String, byte[]> values = new HashMap<>();
+
+        protected final Map<String, Long> deltas = new HashMap<>();
+
+        @Setup(Level.Trial)
+        public void setup(StoreState state) {
+            String prefix = Thread.currentThread().getName() + "-";
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                String key = prefix + i;
+                keys.add(key);
+                values.put(key, state.value);
+                deltas.put(key, Long.valueOf(1));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void putPerOperation(StoreState state, Keys keys) {
+        for (String key : keys.keys) {
+            state.store.put(key, state.value, state.ttl);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void putBatch(StoreState state, Keys keys) {
+        state.store.putAll(keys.values, state.ttl);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void addAndGetPerOperation(StoreState state, Keys keys, Blackhole blackhole) {
+        for (String key : keys.keys) {
+            blackhole.consume(state.store.addAndGet("counter-" + key, 1));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public Map<String, Long> addAndGetBatch(StoreState state, Keys keys) {
+        Map<String, Long> deltas = new HashMap<>();
+        keys.deltas.forEach((key, delta) -> deltas.put("counter-" + key, delta));
+        return state.store.addAndGetAll(deltas);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void mixedPerOperation(StoreState state, Keys keys) {
+        KeyValueStore store = state.store;
+        for (String key : keys.keys) {
+            store.put(key, state.value, state.ttl);
+            store.setTTL(key, 0);
+            store.put(key, (byte[]) null);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<Long> mixedBatch(StoreState state, Keys keys) {
+        KeyValueBatch batch = new KeyValueBatch();
+        for (String key : keys.keys) {
+            batch.put(key, state.value, state.ttl).setTTL(key, 0).delete(key);
+        }
+        return state.store.apply(batch);
+    }
+
+}
@@ -24,8 +24,10 @@ import java.nio.ByteBuffer;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -206,4 +208,70 @@ public abstract class AbstractKeyValueStoreProvider implements KeyValueStoreProv
         }
     }
 
+    // the batch operations go through apply, so that stores only have to override it to use fewer round trips
+
+    @Override
+    public void putAll(Map<String, byte[]> values) {
+        putAll(values, 0);
+    }
+
+    @Override
+    public void putAll(Map<String, byte[]> values, long ttl) {
+        KeyValueBatch batch = new KeyValueBatch();
+        values.forEach((key, value) -> batch.put(key, value, ttl));
+        apply(batch);
+    }
+
+    @Override
+    public void putStrings(Map<String, String> values, long ttl) {
+        KeyValueBatch batch = new KeyValueBatch();
+        values.forEach((key, value) -> batch.put(key, value, ttl));
+        apply(batch);
+    }
+
+    @Override
+    public void putLongs(Map<String, Long> values, long ttl) {
+        KeyValueBatch batch = new KeyValueBatch();
+        values.forEach((key, value) -> batch.put(key, value, ttl));
+        apply(batch);
+    }
+
+    @Override
+    public void deleteAll(Collection<String> keys) {
+        KeyValueBatch batch = new KeyValueBatch();
+        keys.forEach(batch::delete);
+        apply(batch);
+    }
+
+    @Override
+    public Map<String, Long> addAndGetAll(Map<String, Long> deltas) {
+        KeyValueBatch batch = new KeyValueBatch();
+        List<String> keys = new ArrayList<>(deltas.size());
+        deltas.forEach((key, delta) -> {
+            batch.addAndGet(key, delta.longValue());
+            keys.add(key);
+        });
+        List<Long> results = apply(batch);
+        Map<String, Long> map = new HashMap<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            map.put(keys.get(i), results.get(i));
+        }
+        return map;
+    }
+
+    /**
+     * Converts a batch operation value to bytes.
+     *
+     * @since 11.1
+     */
+    protected static byte[] valueToBytes(Object value) {
+        if (value instanceof String) {
+            return stringToBytes((String) value);
+        } else if (value instanceof Long) {
+            return longToBytes((Long) value);
+        } else {
+            return (byte[]) value;
+        }
+    }
+
 }
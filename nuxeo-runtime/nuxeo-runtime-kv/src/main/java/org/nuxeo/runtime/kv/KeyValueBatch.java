@@ -0,0 +1,254 @@
+/*
+ * (C) Copyright 2019 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.runtime.kv;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A batch of write operations to apply to a {@link KeyValueStore} using {@link KeyValueStore#apply}.
+ * <p>
+ * The operations are applied in order, each one atomically, but the batch as a whole is not atomic. Stores send the
+ * batch to their backend in as few round trips as possible.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @since 11.1
+ */
+public class KeyValueBatch {
+
+    /**
+     * The type of an operation.
+     */
+    public enum Type {
+        /** Sets a value, or deletes the key if the value is {@code null}. */
+        PUT,
+        /** Deletes a key. */
+        DELETE,
+        /** Sets the TTL of an existing key. */
+        SET_TTL,
+        /** Adds a delta to a long value. */
+        ADD_AND_GET
+    }
+
+    /**
+     * An operation of the batch.
+     */
+    public static class Operation {
+
+        protected final Type type;
+
+        protected final String key;
+
+        protected final Object value;
+
+        protected final long ttl;
+
+        protected final long delta;
+
+        protected Operation(Type type, String key, Object value, long ttl, long delta) {
+            this.type = type;
+            this.key = Objects.requireNonNull(key);
+            this.value = value;
+            this.ttl = ttl;
+            this.delta = delta;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Gets the value of a {@link Type#PUT}: a {@code byte[]}, a {@link String}, a {@link Long}, or {@code null}.
+         */
+        public Object getValue() {
+            return value;
+        }
+
+        /**
+         * Gets the TTL of a {@link Type#PUT} or {@link Type#SET_TTL}, in seconds (0 for infinite).
+         */
+        public long getTTL() {
+            return ttl;
+        }
+
+        /**
+         * Gets the delta of a {@link Type#ADD_AND_GET}.
+         */
+        public long getDelta() {
+            return delta;
+        }
+
+        /**
+         * Applies this operation alone to a store.
+         *
+         * @return the new value for a {@link Type#ADD_AND_GET}, {@code null} otherwise
+         */
+        public Long applyTo(KeyValueStore store) {
+            switch (type) {
+            case PUT:
+                if (value instanceof String) {
+                    store.put(key, (String) value, ttl);
+                } else if (value instanceof Long) {
+                    store.put(key, (Long) value, ttl);
+                } else {
+                    store.put(key, (byte[]) value, ttl);
+                }
+                return null;
+            case DELETE:
+                store.put(key, (byte[]) null);
+                return null;
+            case SET_TTL:
+                store.setTTL(key, ttl);
+                return null;
+            case ADD_AND_GET:
+                return Long.valueOf(store.addAndGet(key, delta));
+            default:
+                throw new UnsupportedOperationException(type.name());
+            }
+        }
+
+        @Override
+        public String toString() {
+            return type + "(" + key + ")";
+        }
+    }
+
+    protected final List<Operation> operations = new ArrayList<>();
+
+    protected KeyValueBatch add(Type type, String key, Object value, long ttl, long delta) {
+        operations.add(new Operation(type, key, value, ttl, delta));
+        return this;
+    }
+
+    /**
+     * Sets the value associated to the key.
+     *
+     * @param key the key
+     * @param value the value, which may be {@code null}
+     */
+    public KeyValueBatch put(String key, byte[] value) {
+        return put(key, value, 0);
+    }
+
+    /**
+     * Sets the value associated to the key, and a TTL.
+     *
+     * @param key the key
+     * @param value the value, which may be {@code null}
+     * @param ttl the TTL, in seconds (0 for infinite)
+     */
+    public KeyValueBatch put(String key, byte[] value, long ttl) {
+        return add(Type.PUT, key, value == null ? null : value.clone(), ttl, 0);
+    }
+
+    /**
+     * Sets the value associated to the key.
+     *
+     * @param key the key
+     * @param value the value, which may be {@code null}
+     */
+    public KeyValueBatch put(String key, String value) {
+        return put(key, value, 0);
+    }
+
+    /**
+     * Sets the value associated to the key, and a TTL.
+     *
+     * @param key the key
+     * @param value the value, which may be {@code null}
+     * @param ttl the TTL, in seconds (0 for infinite)
+     */
+    public KeyValueBatch put(String key, String value, long ttl) {
+        return add(Type.PUT, key, value, ttl, 0);
+    }
+
+    /**
+     * Sets the value associated to the key.
+     *
+     * @param key the key
+     * @param value the value, which may be {@code null}
+     */
+    public KeyValueBatch put(String key, Long value) {
+        return put(key, value, 0);
+    }
+
+    /**
+     * Sets the value associated to the key, and a TTL.
+     *
+     * @param key the key
+     * @param value the value, which may be {@code null}
+     * @param ttl the TTL, in seconds (0 for infinite)
+     */
+    public KeyValueBatch put(String key, Long value, long ttl) {
+        return add(Type.PUT, key, value, ttl, 0);
+    }
+
+    /**
+     * Deletes the value associated to the key.
+     *
+     * @param key the key
+     */
+    public KeyValueBatch delete(String key) {
+        return add(Type.DELETE, key, null, 0, 0);
+    }
+
+    /**
+     * Sets the TTL for an existing key. Nothing is done if the key does not exist.
+     *
+     * @param key the key
+     * @param ttl the TTL, in seconds (0 for infinite)
+     */
+    public KeyValueBatch setTTL(String key, long ttl) {
+        return add(Type.SET_TTL, key, null, ttl, 0);
+    }
+
+    /**
+     * Adds the delta to the value associated to the key, interpreted as a long. The new value is returned in the result
+     * of {@link KeyValueStore#apply}, at the index of this operation.
+     *
+     * @param key the key
+     * @param delta the delta to add
+     */
+    public KeyValueBatch addAndGet(String key, long delta) {
+        return add(Type.ADD_AND_GET, key, null, 0, delta);
+    }
+
+    /**
+     * Gets the operations of this batch, in order.
+     */
+    public List<Operation> getOperations() {
+        return Collections.unmodifiableList(operations);
+    }
+
+    public int size() {
+        return operations.size();
+    }
+
+    public boolean isEmpty() {
+        return operations.isEmpty();
+    }
+
+}
@@ -18,7 +18,10 @@
  */
 package org.nuxeo.runtime.kv;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -223,4 +226,107 @@ public interface KeyValueStore {
      */
     long addAndGet(String key, long delta);
 
+    /**
+     * Sets the values associated to the keys.
+     * <p>
+     * The default implementation sets the values one by one, stores override it to use fewer round trips.
+     *
+     * @param values the key/value map, values may be {@code null}
+     * @since 11.1
+     */
+    default void putAll(Map<String, byte[]> values) {
+        putAll(values, 0);
+    }
+
+    /**
+     * Sets the values associated to the keys, and a TTL.
+     * <p>
+     * The default implementation sets the values one by one, stores override it to use fewer round trips.
+     *
+     * @param values the key/value map, values may be {@code null}
+     * @param ttl the TTL, in seconds (0 for infinite)
+     * @since 11.1
+     */
+    default void putAll(Map<String, byte[]> values, long ttl) {
+        values.forEach((key, value) -> put(key, value, ttl));
+    }
+
+    /**
+     * Sets the values associated to the keys, and a TTL.
+     * <p>
+     * The default implementation sets the values one by one, stores override it to use fewer round trips.
+     *
+     * @param values the key/value map, values may be {@code null}
+     * @param ttl the TTL, in seconds (0 for infinite)
+     * @since 11.1
+     */
+    default void putStrings(Map<String, String> values, long ttl) {
+        values.forEach((key, value) -> put(key, value, ttl));
+    }
+
+    /**
+     * Sets the values associated to the keys, and a TTL.
+     * <p>
+     * The default implementation sets the values one by one, stores override it to use fewer round trips.
+     *
+     * @param values the key/value map, values may be {@code null}
+     * @param ttl the TTL, in seconds (0 for infinite)
+     * @since 11.1
+     */
+    default void putLongs(Map<String, Long> values, long ttl) {
+        values.forEach((key, value) -> put(key, value, ttl));
+    }
+
+    /**
+     * Deletes the values associated to the keys.
+     * <p>
+     * The default implementation deletes the values one by one, stores override it to use fewer round trips.
+     *
+     * @param keys the keys
+     * @since 11.1
+     */
+    default void deleteAll(Collection<String> keys) {
+        keys.forEach(key -> put(key, (byte[]) null));
+    }
+
+    /**
+     * Atomically adds the deltas to the values associated to the keys, interpreted as longs represented as strings.
+     * <p>
+     * Each addition is atomic, but the whole operation is not.
+     * <p>
+     * The default implementation adds the deltas one by one, stores override it to use fewer round trips.
+     *
+     * @param deltas the key/delta map
+     * @return the key/new value map
+     * @throws NumberFormatException if an existing value cannot be interpreted as a {@code long}
+     * @since 11.1
+     */
+    default Map<String, Long> addAndGetAll(Map<String, Long> deltas) {
+        Map<String, Long> results = new HashMap<>(deltas.size());
+        deltas.forEach((key, delta) -> results.put(key, Long.valueOf(addAndGet(key, delta.longValue()))));
+        return results;
+    }
+
+    /**
+     * Applies a batch of operations, in order, in as few round trips to the storage as possible.
+     * <p>
+     * Each operation is atomic, but the whole batch is not.
+     * <p>
+     * The default implementation applies the operations one by one, stores override it to use fewer round trips.
+     *
+     * @param batch the batch
+     * @return the results of the operations, in the order of the operations of the batch: the new value for an
+     *         {@link KeyValueBatch#addAndGet} operation, {@code null} for the other operations
+     * @throws NumberFormatException if the value of an {@link KeyValueBatch#addAndGet} operation cannot be interpreted
+     *             as a {@code long}
+     * @since 11.1
+     */
+    default List<Long> apply(KeyValueBatch batch) {
+        List<Long> results = new ArrayList<>(batch.size());
+        for (KeyValueBatch.Operation op : batch.getOperations()) {
+            results.add(op.applyTo(this));
+        }
+        return results;
+    }
+
 }
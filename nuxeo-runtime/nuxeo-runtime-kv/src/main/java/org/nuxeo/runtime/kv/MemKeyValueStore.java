@@ -145,4 +145,19 @@ public class MemKeyValueStore extends AbstractKeyValueStoreProvider {
         }
     }
 
+    @Override
+    public List<Long> apply(KeyValueBatch batch) {
+        List<Long> results = new ArrayList<>(batch.size());
+        // take the lock once for the whole batch instead of once per operation
+        writeLock.lock();
+        try {
+            for (KeyValueBatch.Operation op : batch.getOperations()) {
+                results.add(op.applyTo(this));
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        return results;
+    }
+
 }
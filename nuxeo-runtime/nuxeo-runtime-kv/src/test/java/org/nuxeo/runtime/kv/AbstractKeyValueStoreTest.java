@@ -379,6 +379,17 @@ public abstract class AbstractKeyValueStoreTest {
         }
     }
 
+    @Test
+    public void testGetManyLargeSet() {
+        // more keys than fit in a single query on some backends
+        Map<String, String> map = new HashMap<>();
+        for (int i = 0; i < 2500; i++) {
+            map.put("key" + i, "value" + i);
+        }
+        store.putStrings(map, 0);
+        assertEquals(map, store.getStrings(map.keySet()));
+    }
+
     @Test
     public void testCompareAndSet() {
         String key = "foo";
@@ -539,6 +550,73 @@ public abstract class AbstractKeyValueStoreTest {
         }
     }
 
+    @Test
+    public void testBatchPutAndDelete() {
+        Map<String, byte[]> bytes = new HashMap<>();
+        bytes.put("a", BAR_B);
+        bytes.put("b", NOT_UTF_8);
+        store.putAll(bytes);
+        Map<String, String> strings = new HashMap<>();
+        strings.put("c", GEE);
+        strings.put("d", null);
+        store.putStrings(strings, 0);
+        store.putLongs(Collections.singletonMap("e", Long.valueOf(123)), 0);
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c", "e")), storeKeys());
+        assertEquals(BAR, store.getString("a"));
+        assertArrayEquals(NOT_UTF_8, store.get("b"));
+        assertEquals(GEE, store.getString("c"));
+        assertEquals(Long.valueOf(123), store.getLong("e"));
+
+        store.deleteAll(Arrays.asList("a", "b", "zzz"));
+        assertEquals(new HashSet<>(Arrays.asList("c", "e")), storeKeys());
+    }
+
+    @Test
+    public void testBatchAddAndGet() {
+        Map<String, Long> deltas = new HashMap<>();
+        deltas.put("a", Long.valueOf(1));
+        deltas.put("b", Long.valueOf(-5));
+        store.put("b", Long.valueOf(10));
+        Map<String, Long> results = store.addAndGetAll(deltas);
+        assertEquals(Long.valueOf(1), results.get("a"));
+        assertEquals(Long.valueOf(5), results.get("b"));
+        assertEquals(Long.valueOf(1), store.getLong("a"));
+        assertEquals(Long.valueOf(5), store.getLong("b"));
+    }
+
+    @Test
+    public void testBatchMixedOperations() throws Exception {
+        store.put("old", MOO);
+        KeyValueBatch batch = new KeyValueBatch().put("a", BAR)
+                                                 .put("a", GEE) // overwrites previous put
+                                                 .addAndGet("counter", 2)
+                                                 .delete("old")
+                                                 .put("b", MOO_B)
+                                                 .setTTL("b", 1000)
+                                                 .addAndGet("counter", 3)
+                                                 .put("c", (String) null);
+        List<Long> results = store.apply(batch);
+        // results by operation, both additions on the same key are returned
+        assertEquals(Arrays.asList(null, null, Long.valueOf(2), null, null, null, Long.valueOf(5), null), results);
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "counter")), storeKeys());
+        assertEquals(GEE, store.getString("a"));
+        assertEquals(MOO, store.getString("b"));
+        assertEquals(Long.valueOf(5), store.getLong("counter"));
+
+        // empty batch
+        assertEquals(Collections.emptyList(), store.apply(new KeyValueBatch()));
+
+        // with TTL
+        assumeFalse("Ignored because of slow TTL expiration", hasSlowTTLExpiration());
+        int shortTTL = 3; // 3s
+        store.apply(new KeyValueBatch().put("ttl", BAR, shortTTL).setTTL("a", shortTTL));
+        assertEquals(BAR, store.getString("ttl"));
+        Thread.sleep((shortTTL + 2) * 1000); // sleep a bit more in case expiration is late
+        sleepForTTLExpiration();
+        assertNull(store.get("ttl"));
+        assertNull(store.get("a"));
+    }
+
     @Test
     public void testKeyStream() throws Exception {
         // keyStream() already tested by all other test methods indirectly
@@ -130,6 +130,8 @@ public class StreamProcessorDescriptor implements Descriptor {
 
         public static final Duration DEFAULT_BATCH_THRESHOLD = Duration.ofSeconds(1);
 
+        public static final Integer DEFAULT_READ_BATCH_CAPACITY = 1;
+
         @XNode("@name")
         public String name;
 
@@ -165,6 +167,10 @@ public class StreamProcessorDescriptor implements Descriptor {
         @XNode("@batchThreshold")
         public Duration batchThreshold = DEFAULT_BATCH_THRESHOLD;
 
+        // @since 11.1 number of records read and checkpointed in a single pass
+        @XNode("@readBatchCapacity")
+        public Integer readBatchCapacity = DEFAULT_READ_BATCH_CAPACITY;
+
     }
 
     public static final Integer DEFAULT_CONCURRENCY = 4;
@@ -231,6 +237,7 @@ public class StreamProcessorDescriptor implements Descriptor {
         return new ComputationPolicyBuilder().retryPolicy(retryPolicy)
                                              .batchPolicy(policyDescriptor.batchCapacity,
                                                      policyDescriptor.batchThreshold)
+                                             .readBatchCapacity(policyDescriptor.readBatchCapacity)
                                              .continueOnFailure(policyDescriptor.continueOnFailure)
                                              .skipFirstFailures(getSkipFirstFailures(policyDescriptor))
                                              .build();
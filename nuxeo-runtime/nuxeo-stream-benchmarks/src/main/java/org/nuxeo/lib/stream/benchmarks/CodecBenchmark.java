@@ -0,0 +1,83 @@
+/*
+ * (C) Copyright 2019 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     bdelbosc
+ */
+package org.nuxeo.lib.stream.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.nuxeo.lib.stream.codec.AvroBinaryCodec;
+import org.nuxeo.lib.stream.codec.AvroMessageCodec;
+import org.nuxeo.lib.stream.codec.Codec;
+import org.nuxeo.lib.stream.codec.SerializableCodec;
+import org.nuxeo.lib.stream.computation.Record;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of encoding and decoding a {@link Record} with each codec, without any Log involved. The legacy
+ * encoding has no codec, it relies on {@link java.io.Externalizable} directly inside the Log implementation.
+ *
+ * @since 11.1
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+
+    @Param({ SerializableCodec.NAME, AvroMessageCodec.NAME, AvroBinaryCodec.NAME })
+    public String codec;
+
+    @Param({ "100", "1024", "10240" })
+    public int recordSize;
+
+    protected Codec<Record> recordCodec;
+
+    protected Record record;
+
+    protected byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        recordCodec = LogState.getRecordCodec(codec);
+        record = LogState.createRecordPool(recordSize)[0];
+        encoded = recordCodec.encode(record);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return recordCodec.encode(record);
+    }
+
+    @Benchmark
+    public Record decode() {
+        return recordCodec.decode(encoded);
+    }
+}
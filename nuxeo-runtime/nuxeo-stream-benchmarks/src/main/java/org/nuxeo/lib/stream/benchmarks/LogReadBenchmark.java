@@ -0,0 +1,122 @@
+/*
+ * (C) Copyright 2019 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     bdelbosc
+ */
+package org.nuxeo.lib.stream.benchmarks;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.nuxeo.lib.stream.computation.Record;
+import org.nuxeo.lib.stream.log.LogRecord;
+import org.nuxeo.lib.stream.log.LogTailer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the Log read throughput (records/s) and latency distribution (p50, p99 ...).
+ * <p/>
+ * The Log is filled once per trial, each benchmark thread uses its own consumer group and rewinds to the beginning of
+ * the Log as soon as the known number of records has been read, so that no read ever waits for the timeout.
+ *
+ * @since 11.1
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+public class LogReadBenchmark {
+
+    protected static final Duration READ_TIMEOUT = Duration.ofSeconds(1);
+
+    @State(Scope.Benchmark)
+    public static class FilledLogState extends LogState {
+
+        @Param({ "100000" })
+        public int records;
+
+        @Override
+        protected void prepare() {
+            for (int i = 0; i < records; i++) {
+                appender.append(i % partitions, getRecord(i));
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Consumer {
+
+        protected LogTailer<Record> tailer;
+
+        protected int records;
+
+        protected int read;
+
+        @Setup(Level.Trial)
+        public void setup(FilledLogState state) {
+            String group = "bench-" + Thread.currentThread().getId();
+            tailer = state.manager.createTailer(group, state.logName, state.recordCodec);
+            records = state.records;
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            if (tailer != null) {
+                tailer.close();
+                tailer = null;
+            }
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public LogRecord<Record> readThroughput(Consumer consumer) throws InterruptedException {
+        return read(consumer);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public LogRecord<Record> readLatency(Consumer consumer) throws InterruptedException {
+        return read(consumer);
+    }
+
+    protected LogRecord<Record> read(Consumer consumer) throws InterruptedException {
+        if (consumer.read >= consumer.records) {
+            // all records have been read, rewind instead of waiting for the read timeout at the end of the Log
+            consumer.tailer.toStart();
+            consumer.read = 0;
+        }
+        LogRecord<Record> record = consumer.tailer.read(READ_TIMEOUT);
+        if (record == null) {
+            throw new IllegalStateException("Missing record after " + consumer.read + "/" + consumer.records);
+        }
+        consumer.read++;
+        return record;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * (C) Copyright 2019 Nuxeo SA (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     bdelbosc
+ */
+package org.nuxeo.lib.stream.benchmarks;
+
+import static org.nuxeo.lib.stream.codec.NoCodec.NO_CODEC;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.nuxeo.lib.stream.codec.AvroBinaryCodec;
+import org.nuxeo.lib.stream.codec.AvroMessageCodec;
+import org.nuxeo.lib.stream.codec.Codec;
+import org.nuxeo.lib.stream.codec.NoCodec;
+import org.nuxeo.lib.stream.codec.SerializableCodec;
+import org.nuxeo.lib.stream.computation.Record;
+import org.nuxeo.lib.stream.log.LogAppender;
+import org.nuxeo.lib.stream.log.LogManager;
+import org.nuxeo.lib.stream.log.chronicle.ChronicleLogManager;
+import org.nuxeo.lib.stream.log.kafka.KafkaLogManager;
+import org.nuxeo.lib.stream.log.kafka.KafkaUtils;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Benchmark state holding a Log created with the requested backend, codec, record size and number of partitions.
+ * <p/>
+ * The Chronicle backend works offline using a temporary directory. The Kafka backend requires a broker reachable using
+ * the {@code kafka.bootstrap.servers} system property, for instance the one provided by the {@code docker/kafka}
+ * compose file of nuxeo-stream.
+ *
+ * @since 11.1
+ */
+@State(Scope.Benchmark)
+public class LogState {
+
+    public static final String CHRONICLE = "chronicle";
+
+    public static final String KAFKA = "kafka";
+
+    /** Number of distinct records appended in a round robin way, must be a power of 2. */
+    public static final int RECORD_POOL_SIZE = 64;
+
+    @Param({ CHRONICLE })
+    public String backend;
+
+    @Param({ NoCodec.NAME, SerializableCodec.NAME, AvroMessageCodec.NAME, AvroBinaryCodec.NAME })
+    public String codec;
+
+    @Param({ "100", "1024", "10240" })
+    public int recordSize;
+
+    @Param({ "1", "4" })
+    public int partitions;
+
+    protected Path basePath;
+
+    protected LogManager manager;
+
+    protected String logName;
+
+    protected Codec<Record> recordCodec;
+
+    protected LogAppender<Record> appender;
+
+    protected Record[] recordPool;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        manager = createManager();
+        logName = "bench-" + System.currentTimeMillis();
+        manager.createIfNotExists(logName, partitions);
+        recordCodec = getRecordCodec(codec);
+        appender = manager.getAppender(logName, recordCodec);
+        recordPool = createRecordPool(recordSize);
+        prepare();
+    }
+
+    /**
+     * Called once the Log and its appender are created.
+     */
+    protected void prepare() throws Exception {
+        // nothing to do by default
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (manager != null) {
+            if (KAFKA.equals(backend)) {
+                manager.delete(logName);
+            }
+            manager.close();
+            manager = null;
+        }
+        if (basePath != null) {
+            FileUtils.deleteDirectory(basePath.toFile());
+            basePath = null;
+        }
+    }
+
+    public Record getRecord(int index) {
+        return recordPool[index & (RECORD_POOL_SIZE - 1)];
+    }
+
+    protected LogManager createManager() throws IOException {
+        switch (backend) {
+        case CHRONICLE:
+            basePath = Files.createTempDirectory("nuxeo-stream-bench");
+            return new ChronicleLogManager(basePath);
+        case KAFKA:
+            return new KafkaLogManager("nuxeo-bench-" + System.currentTimeMillis() + "-", getProducerProps(),
+                    getConsumerProps());
+        default:
+            throw new IllegalArgumentException("Unknown backend: " + backend);
+        }
+    }
+
+    protected Properties getProducerProps() {
+        Properties props = new Properties();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, KafkaUtils.getBootstrapServers());
+        return props;
+    }
+
+    protected Properties getConsumerProps() {
+        Properties props = new Properties();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, KafkaUtils.getBootstrapServers());
+        props.put(ConsumerConfig.REQUEST_TIMEOUT_MS_CONFIG, 30000);
+        props.put(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, 60000);
+        return props;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Codec<Record> getRecordCodec(String codec) {
+        switch (codec) {
+        case NoCodec.NAME:
+            return NO_CODEC;
+        case SerializableCodec.NAME:
+            return new SerializableCodec<>();
+        case AvroMessageCodec.NAME:
+            return new AvroMessageCodec<>(Record.class);
+        case AvroBinaryCodec.NAME:
+            return new AvroBinaryCodec<>(Record.class);
+        default:
+            throw new IllegalArgumentException("Unknown codec: " + codec);
+        }
+    }
+
+    public static Record[] createRecordPool(int recordSize) {
+        // fixed seed so all runs append the same content
+        Random random = new Random(42);
+        Record[] ret = new Record[RECORD_POOL_SIZE];
+        for (int i = 0; i < RECORD_POOL_SIZE; i++) {
+            byte[] data = new byte[recordSize];
+            random.nextBytes(data);
+            ret[i] = Record.of("key-" + i, data);
+        }
+        return ret;
+    }
+}
@@ -46,12 +46,15 @@ public class ComputationPolicy {
 
     protected final int skipFirstFailures;
 
+    protected final int readBatchCapacity;
+
     public ComputationPolicy(ComputationPolicyBuilder builder) {
         batchCapacity = builder.batchCapacity;
         batchThreshold = builder.batchThreshold;
         skipFailure = builder.skipFailure;
         retryPolicy = builder.retryPolicy;
         skipFirstFailures = builder.skipFirstFailures;
+        readBatchCapacity = builder.readBatchCapacity;
     }
 
     public RetryPolicy getRetryPolicy() {
@@ -74,6 +77,15 @@ public class ComputationPolicy {
         return skipFirstFailures;
     }
 
+    /**
+     * Returns the maximum number of records read from the input streams before processing and checkpointing them.
+     *
+     * @since 11.1
+     */
+    public int getReadBatchCapacity() {
+        return readBatchCapacity;
+    }
+
     /**
      * @deprecated since 10.3 use {@link #continueOnFailure()} instead
      */
@@ -86,6 +98,7 @@ public class ComputationPolicy {
     public String toString() {
         return "ComputationPolicy{" + "maxRetries=" + retryPolicy.getMaxRetries() + ", delay=" + retryPolicy.getDelay()
                 + ", delayMax=" + retryPolicy.getMaxDelay() + ", continueOnFailure=" + skipFailure + ", batchCapacity="
-                + batchCapacity + ", batchThreshold=" + batchThreshold + '}';
+                + batchCapacity + ", batchThreshold=" + batchThreshold + ", readBatchCapacity=" + readBatchCapacity
+                + '}';
     }
 }
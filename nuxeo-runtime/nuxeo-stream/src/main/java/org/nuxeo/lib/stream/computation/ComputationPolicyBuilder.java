@@ -33,6 +33,8 @@ public class ComputationPolicyBuilder {
 
     protected static final int DEFAULT_BATCH_THRESHOLD_SECOND = 1;
 
+    protected static final int DEFAULT_READ_BATCH_CAPACITY = 1;
+
     protected RetryPolicy retryPolicy = ComputationPolicy.NO_RETRY;
 
     protected boolean skipFailure = false;
@@ -43,6 +45,8 @@ public class ComputationPolicyBuilder {
 
     protected Duration batchThreshold = Duration.ofSeconds(DEFAULT_BATCH_THRESHOLD_SECOND);
 
+    protected int readBatchCapacity = DEFAULT_READ_BATCH_CAPACITY;
+
     public ComputationPolicyBuilder() {
         // Empty constructor
     }
@@ -61,6 +65,30 @@ public class ComputationPolicyBuilder {
         return this;
     }
 
+    /**
+     * Defines how many records are read from the input streams in a single pass.
+     * <p>
+     * The records are read without waiting until the capacity is reached or there is no more record available, they
+     * are processed one by one and a single checkpoint is done at the end of the batch if requested. This reduces the
+     * number of polls and offset commits on high throughput streams, the default capacity of 1 processes records as
+     * soon as they are read. When a record asks for a checkpoint before the end of the batch, the checkpoint is done at
+     * this record and the remaining records are read again.
+     * <p>
+     * The read batch is not handed over as a whole to the computation, an
+     * {@link org.nuxeo.lib.stream.computation.AbstractBatchComputation} still calls its batch processing according to
+     * the batch capacity and threshold.
+     *
+     * @param capacity the maximum number of records read in a single pass
+     * @since 11.1
+     */
+    public ComputationPolicyBuilder readBatchCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid read batch capacity: " + capacity);
+        }
+        readBatchCapacity = capacity;
+        return this;
+    }
+
     /**
      * Defines what to do in case of failure during the batch processing.
      */
@@ -19,6 +19,7 @@
 package org.nuxeo.lib.stream.computation.log;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -38,6 +39,7 @@ import org.nuxeo.lib.stream.computation.Record;
 import org.nuxeo.lib.stream.computation.Watermark;
 import org.nuxeo.lib.stream.computation.internals.ComputationContextImpl;
 import org.nuxeo.lib.stream.computation.internals.WatermarkMonotonicInterval;
+import org.nuxeo.lib.stream.log.LogOffset;
 import org.nuxeo.lib.stream.log.LogPartition;
 import org.nuxeo.lib.stream.log.LogRecord;
 import org.nuxeo.lib.stream.log.LogTailer;
@@ -130,6 +132,9 @@ public class ComputationRunner implements Runnable, RebalanceListener {
     // @since 11.1
     protected boolean recordActivity;
 
+    // @since 11.1 reused buffer of records read in a single pass
+    protected final List<LogRecord<Record>> readBatch;
+
     @SuppressWarnings("unchecked")
     public ComputationRunner(Supplier<Computation> supplier, ComputationMetadataMapping metadata,
             List<LogPartition> defaultAssignment, LogStreamManager streamManager, ComputationPolicy policy) {
@@ -148,6 +153,7 @@ public class ComputationRunner implements Runnable, RebalanceListener {
             assignmentLatch.countDown();
         }
         this.defaultAssignment = defaultAssignment;
+        this.readBatch = new ArrayList<>(policy.getReadBatchCapacity());
     }
 
     public void stop() {
@@ -320,6 +326,9 @@ public class ComputationRunner implements Runnable, RebalanceListener {
         if (tailer == null) {
             return false;
         }
+        if (policy.getReadBatchCapacity() > 1) {
+            return processRecordBatch();
+        }
         Duration timeoutRead = getTimeoutDuration();
         LogRecord<Record> logRecord = null;
         try {
@@ -327,28 +336,13 @@ public class ComputationRunner implements Runnable, RebalanceListener {
         } catch (RebalanceException e) {
             // the revoke has done a checkpoint we can continue
         }
-        Record record;
         if (logRecord != null) {
-            record = logRecord.message();
-            String stream = logRecord.offset().partition().name();
-            Record filteredRecord = streamManager.getFilter(stream).afterRead(record, logRecord.offset());
-            if (filteredRecord == null) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Filtering skip record: " + record);
-                }
+            logRecord = filterRecord(logRecord);
+            if (logRecord == null) {
                 return false;
-            } else if (filteredRecord != record) {
-                logRecord = new LogRecord<>(filteredRecord, logRecord.offset());
-                record = filteredRecord;
             }
             lastReadTime = System.currentTimeMillis();
-            inRecords++;
-            lowWatermark.mark(record.getWatermark());
-            context.setLastOffset(logRecord.offset());
-            String from = metadata.reverseMap(stream);
-            processRecordWithRetry(from, record);
-            checkRecordFlags(record);
-            checkSourceLowWatermark();
+            processLogRecord(logRecord);
             setThreadName("record");
             checkpointIfNecessary();
             return true;
@@ -356,6 +350,114 @@ public class ComputationRunner implements Runnable, RebalanceListener {
         return false;
     }
 
+    /**
+     * Reads up to the policy read batch capacity records without waiting once a first record is available, then
+     * processes them and checkpoints only once at the end of the batch.
+     * <p>
+     * The records are still dispatched one by one to {@link Computation#processRecord} so that the retry and fallback
+     * policies apply per record. An {@code AbstractBatchComputation} keeps building its own batches according to the
+     * batch capacity and threshold of the policy, independently of the read batch.
+     * <p>
+     * As the tailer commits everything it has read, dispatching stops at the record that asks for a checkpoint, and the
+     * tailer is moved back to the records not processed so that they are read again after the checkpoint.
+     *
+     * @since 11.1
+     */
+    protected boolean processRecordBatch() throws InterruptedException {
+        readBatch.clear();
+        try {
+            LogRecord<Record> logRecord = tailer.read(getTimeoutDuration());
+            for (int i = 1; logRecord != null; i++) {
+                logRecord = filterRecord(logRecord);
+                if (logRecord != null) {
+                    readBatch.add(logRecord);
+                    if (logRecord.message().getFlags().contains(Record.Flag.POISON_PILL)) {
+                        // nothing must be read after a poison pill
+                        break;
+                    }
+                }
+                if (i >= policy.getReadBatchCapacity()) {
+                    break;
+                }
+                logRecord = tailer.read(Duration.ZERO);
+            }
+        } catch (RebalanceException e) {
+            // the revoke has done a checkpoint, the records already read may come from revoked partitions
+            // discard them, they will be read again from the committed offsets
+            readBatch.clear();
+            return false;
+        }
+        if (readBatch.isEmpty()) {
+            return false;
+        }
+        lastReadTime = System.currentTimeMillis();
+        int processed = 0;
+        for (LogRecord<Record> logRecord : readBatch) {
+            if (context.requireTerminate() || context.requireCheckpoint()) {
+                break;
+            }
+            processLogRecord(logRecord);
+            processed++;
+        }
+        if (processed < readBatch.size()) {
+            // offsets of the records not processed must not be committed
+            rewind(readBatch.subList(processed, readBatch.size()));
+        }
+        readBatch.clear();
+        setThreadName("record");
+        checkpointIfNecessary();
+        return true;
+    }
+
+    /**
+     * Moves the tailer back to the first of the given records of each partition, so that they are read again.
+     *
+     * @since 11.1
+     */
+    protected void rewind(List<LogRecord<Record>> unprocessed) {
+        Map<LogPartition, LogOffset> firstOffsets = new LinkedHashMap<>();
+        unprocessed.forEach(logRecord -> firstOffsets.putIfAbsent(logRecord.offset().partition(), logRecord.offset()));
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("%s: Rewind %d unprocessed records to: %s", metadata.name(), unprocessed.size(),
+                    firstOffsets.values()));
+        }
+        firstOffsets.values().forEach(tailer::seek);
+    }
+
+    /**
+     * Applies the stream filter, returns {@code null} if the record must be skipped.
+     *
+     * @since 11.1
+     */
+    protected LogRecord<Record> filterRecord(LogRecord<Record> logRecord) {
+        Record record = logRecord.message();
+        String stream = logRecord.offset().partition().name();
+        Record filteredRecord = streamManager.getFilter(stream).afterRead(record, logRecord.offset());
+        if (filteredRecord == null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Filtering skip record: " + record);
+            }
+            return null;
+        } else if (filteredRecord != record) {
+            return new LogRecord<>(filteredRecord, logRecord.offset());
+        }
+        return logRecord;
+    }
+
+    /**
+     * @since 11.1
+     */
+    protected void processLogRecord(LogRecord<Record> logRecord) {
+        Record record = logRecord.message();
+        inRecords++;
+        lowWatermark.mark(record.getWatermark());
+        context.setLastOffset(logRecord.offset());
+        String from = metadata.reverseMap(logRecord.offset().partition().name());
+        processRecordWithRetry(from, record);
+        checkRecordFlags(record);
+        checkSourceLowWatermark();
+    }
+
     protected void processRecordWithRetry(String from, Record record) {
         runningCount.inc();
         try (Timer.Context ignored = processRecordTimer.time()) {
@@ -275,10 +275,10 @@ public class KafkaLogTailer<M extends Externalizable> implements LogTailer<M>, C
         TopicPartition topicPartition = new TopicPartition(ns.getTopicName(offset.partition().name()),
                 offset.partition().partition());
         consumer.seek(topicPartition, offset.offset());
-        lastOffsets.remove(topicPartition);
-        int partition = topicPartition.partition();
-        records.removeIf(rec -> rec.partition() == partition);
-        consumerMoved = true;
+        // the next commit is at the seek offset, other partitions keep the offset of their last read record
+        lastOffsets.put(topicPartition, offset.offset() - 1);
+        records.removeIf(rec -> rec.partition() == topicPartition.partition()
+                && rec.topic().equals(topicPartition.topic()));
     }
 
     @Override
@@ -28,6 +28,8 @@ import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -38,9 +40,12 @@ import org.nuxeo.lib.stream.codec.AvroJsonCodec;
 import org.nuxeo.lib.stream.codec.AvroMessageCodec;
 import org.nuxeo.lib.stream.codec.Codec;
 import org.nuxeo.lib.stream.codec.SerializableCodec;
+import org.nuxeo.lib.stream.computation.AbstractComputation;
+import org.nuxeo.lib.stream.computation.ComputationContext;
 import org.nuxeo.lib.stream.computation.ComputationPolicy;
 import org.nuxeo.lib.stream.computation.ComputationPolicyBuilder;
 import org.nuxeo.lib.stream.computation.Record;
+import org.nuxeo.lib.stream.computation.RecordFilter;
 import org.nuxeo.lib.stream.computation.Settings;
 import org.nuxeo.lib.stream.computation.StreamManager;
 import org.nuxeo.lib.stream.computation.StreamProcessor;
@@ -51,6 +56,7 @@ import org.nuxeo.lib.stream.log.Latency;
 import org.nuxeo.lib.stream.log.LogAppender;
 import org.nuxeo.lib.stream.log.LogLag;
 import org.nuxeo.lib.stream.log.LogManager;
+import org.nuxeo.lib.stream.log.LogOffset;
 import org.nuxeo.lib.stream.log.LogPartition;
 import org.nuxeo.lib.stream.log.LogRecord;
 import org.nuxeo.lib.stream.log.LogTailer;
@@ -681,6 +687,114 @@ public abstract class TestStreamProcessor {
 
     }
 
+    @Test
+    public void testReadBatchPolicy() throws Exception {
+        int nbRecords = 101;
+        int readBatchCapacity = 10;
+        // track the records read, the filter is called when a record is read before it is processed
+        AtomicLong maxReadOffset = new AtomicLong(-1);
+        AtomicInteger processCount = new AtomicInteger();
+        AtomicLong maxReadAhead = new AtomicLong();
+        RecordFilter readCounter = new RecordFilter() {
+            @Override
+            public Record afterRead(Record record, LogOffset offset) {
+                maxReadOffset.accumulateAndGet(offset.offset(), Math::max);
+                return record;
+            }
+        };
+        Topology topology = Topology.builder()
+                                    .addComputation(() -> new AbstractComputation("C1", 1, 1) {
+                                        @Override
+                                        public void processRecord(ComputationContext context, String inputStreamName,
+                                                Record record) {
+                                            // number of records read but not yet processed, including this one
+                                            long readAhead = maxReadOffset.get() - context.getLastOffset().offset() + 1;
+                                            maxReadAhead.accumulateAndGet(readAhead, Math::max);
+                                            context.produceRecord("o1", record);
+                                            int count = processCount.incrementAndGet();
+                                            if (count % readBatchCapacity == 0 || count == nbRecords) {
+                                                context.askForCheckpoint();
+                                            }
+                                        }
+                                    }, Arrays.asList("i1:input", "o1:output"))
+                                    .build();
+        ComputationPolicy policy = new ComputationPolicyBuilder().readBatchCapacity(readBatchCapacity).build();
+        assertEquals(readBatchCapacity, policy.getReadBatchCapacity());
+        try (LogManager manager = getLogManager()) {
+            StreamManager streamManager = new LogStreamManager(manager);
+            Settings settings = new Settings(1, 1, policy).addFilter("input", readCounter);
+            StreamProcessor processor = streamManager.registerAndCreateProcessor("processor", topology, settings);
+            // append before starting so that full batches are available
+            for (int i = 0; i < nbRecords; i++) {
+                streamManager.append("input", Record.of("key" + i, null));
+            }
+            processor.start();
+            processor.waitForAssignments(Duration.ofSeconds(10));
+            assertTrue(processor.drainAndStop(Duration.ofSeconds(20)));
+            LogLag lag = manager.getLag("input", "C1");
+            assertEquals(lag.toString(), 0, lag.lag());
+            assertEquals(nbRecords, countRecordIn(manager, "output"));
+            assertEquals(nbRecords, processCount.get());
+            // records are read by batch before being processed, never more than the capacity
+            long readAhead = maxReadAhead.get();
+            assertTrue(String.valueOf(readAhead), readAhead > 1 && readAhead <= readBatchCapacity);
+        }
+    }
+
+    @Test
+    public void testReadBatchPolicyWithBatchComputation() throws Exception {
+        Topology topology = Topology.builder()
+                                    .addComputation(() -> new ComputationBatchForward("C1", 1),
+                                            Arrays.asList("i1:input", "o1:output"))
+                                    .build();
+        int nbRecords = 10;
+        // the batch capacity doesn't divide the read batch capacity, the last record stays in the computation batch
+        int batchCapacity = 3;
+        int readBatchCapacity = 10;
+        ComputationPolicy policy = new ComputationPolicyBuilder().batchPolicy(batchCapacity, Duration.ofMinutes(10))
+                                                                .readBatchCapacity(readBatchCapacity)
+                                                                .build();
+        try (LogManager manager = getLogManager()) {
+            StreamManager streamManager = new LogStreamManager(manager);
+            Settings settings = new Settings(1, 1, policy);
+            StreamProcessor processor = streamManager.registerAndCreateProcessor("processor", topology, settings);
+            // append before starting so that the records are read in a single batch
+            for (int i = 0; i < nbRecords; i++) {
+                streamManager.append("input", Record.of("key" + i, null));
+            }
+            processor.start();
+            processor.waitForAssignments(Duration.ofSeconds(10));
+            long deadline = System.currentTimeMillis() + Duration.ofSeconds(20).toMillis();
+            while (countRecordIn(manager, "output") < nbRecords - 1) {
+                assertTrue("Timeout waiting for the batches", System.currentTimeMillis() < deadline);
+                Thread.sleep(100);
+            }
+            Thread.sleep(200);
+            // stop without processing the pending computation batch
+            processor.shutdown();
+            assertEquals(nbRecords - 1, countRecordIn(manager, "output"));
+            // the record still in the computation batch must not be committed
+            LogLag lag = manager.getLag("input", "C1");
+            assertEquals(lag.toString(), 1, lag.lag());
+        }
+
+        // after a restart the pending record is read again and processed
+        policy = new ComputationPolicyBuilder().batchPolicy(batchCapacity, Duration.ofMillis(100))
+                                               .readBatchCapacity(readBatchCapacity)
+                                               .build();
+        try (LogManager manager = getSameLogManager()) {
+            StreamManager streamManager = new LogStreamManager(manager);
+            Settings settings = new Settings(1, 1, policy);
+            StreamProcessor processor = streamManager.registerAndCreateProcessor("processor", topology, settings);
+            processor.start();
+            processor.waitForAssignments(Duration.ofSeconds(10));
+            assertTrue(processor.drainAndStop(Duration.ofSeconds(20)));
+            LogLag lag = manager.getLag("input", "C1");
+            assertEquals(lag.toString(), 0, lag.lag());
+            assertEquals(nbRecords, countRecordIn(manager, "output"));
+        }
+    }
+
     // ---------------------------------
     // helpers
     protected int readOutputCounter(LogManager manager) throws InterruptedException {